@@ -0,0 +1,137 @@
+package com.sachett.samosa.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Provides the samosa programs the benchmarks run over.
+ * A program name is either the name of a file in src/test/data/positive-compile-run/test-programs
+ * of samosac (e.g. "Functions1.samo"), "synthetic-N" for a generated program with N chunks of
+ * declarations, a function, an if-else and a while loop, or "controlflow-N" for a generated program
+ * with N functions made of nested loops and branches.
+ */
+public final class BenchmarkPrograms {
+    /**
+     * The directory with the test programs can be overridden with -Dsamosa.bench.programsDir=dir
+     */
+    private static final String PROGRAMS_DIR_PROPERTY = "samosa.bench.programsDir";
+    private static final String[] DEFAULT_PROGRAMS_DIRS = {
+            "src/test/data/positive-compile-run/test-programs",
+            "../src/test/data/positive-compile-run/test-programs"
+    };
+
+    private static final String SYNTHETIC_PREFIX = "synthetic-";
+    private static final String CONTROL_FLOW_PREFIX = "controlflow-";
+
+    private BenchmarkPrograms() {}
+
+    public static String load(String programName) throws IOException {
+        if (programName.startsWith(SYNTHETIC_PREFIX)) {
+            return synthetic(Integer.parseInt(programName.substring(SYNTHETIC_PREFIX.length())));
+        }
+        if (programName.startsWith(CONTROL_FLOW_PREFIX)) {
+            return controlFlow(Integer.parseInt(programName.substring(CONTROL_FLOW_PREFIX.length())));
+        }
+        return Files.readString(new File(programsDir(), programName).toPath(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The file name to compile a program as (decides the generated class name).
+     */
+    public static File sourceFileFor(String programName) {
+        return new File(programName.endsWith(".samo") ? programName : programName + ".samo");
+    }
+
+    /**
+     * Generates a valid program with the given number of chunks. Each chunk declares variables,
+     * defines and calls a function, and has an if-else and a while loop.
+     */
+    public static String synthetic(int chunks) {
+        StringBuilder program = new StringBuilder("<samosa>\n");
+        for (int i = 0; i < chunks; i++) {
+            program.append("bro, a").append(i).append(": int = ").append(i).append(" * 2 + 1.\n")
+                    .append("let f").append(i).append("(x: int): int {\n")
+                    .append("    return x + ").append(i).append(".\n")
+                    .append("}\n")
+                    .append("bro, b").append(i).append(" = (a").append(i).append(") -> f").append(i).append(".\n")
+                    .append("if (b").append(i).append(" > 5 and a").append(i).append(" < 100) {\n")
+                    .append("    bro, c").append(i).append(" = \"s\" + (b").append(i).append(") -> itos.\n")
+                    .append("    (c").append(i).append(") -> putout.\n")
+                    .append("}\n")
+                    .append("else {\n")
+                    .append("    b").append(i).append(" = b").append(i).append(" - 1.\n")
+                    .append("}\n")
+                    .append("while (b").append(i).append(" < ").append(i).append(" + 10) {\n")
+                    .append("    b").append(i).append(" = b").append(i).append(" + 1.\n")
+                    .append("}\n")
+                    .append("(b").append(i).append(") -> putout.\n");
+        }
+        return program.append("</samosa>\n").toString();
+    }
+
+    /**
+     * Generates a valid program with the given number of functions, each with nested while loops, if-else-if
+     * chains, early returns, breaks, continues and uncertain statements, i.e. many labels and stack map frames.
+     */
+    public static String controlFlow(int functions) {
+        StringBuilder program = new StringBuilder("<samosa>\n");
+        for (int i = 0; i < functions; i++) {
+            program.append("let g").append(i).append("(n: int, m: int): int {\n")
+                    .append("    bro, acc: int = 0.\n")
+                    .append("    bro, i: int = 0.\n")
+                    .append("    while (i < n) {\n")
+                    .append("        bro, j: int = 0.\n")
+                    .append("        while (j < m) {\n")
+                    .append("            bro, t = i * m + j.\n")
+                    .append("            if (t > 1000) {\n")
+                    .append("                return acc.\n")
+                    .append("            }\n")
+                    .append("            else if (t == ").append(i % 7).append(") {\n")
+                    .append("                j = j + 2.\n")
+                    .append("                thanku_next.\n")
+                    .append("            }\n")
+                    .append("            else if (t < ").append(i % 5).append(") {\n")
+                    .append("                acc = acc - t.\n")
+                    .append("            }\n")
+                    .append("            else {\n")
+                    .append("                acc = acc + t.\n")
+                    .append("            }\n")
+                    .append("            acc = acc + 1. ? [50] acc = acc - 1.\n")
+                    .append("            if (acc > 100000) {\n")
+                    .append("                yamete_kudasai.\n")
+                    .append("            }\n")
+                    .append("            j = j + 1.\n")
+                    .append("        }\n")
+                    .append("        i = i + 1.\n")
+                    .append("    }\n")
+                    .append("    return acc.\n")
+                    .append("}\n")
+                    .append("((").append(i % 10).append(", 10) -> g").append(i).append(") -> putout.\n");
+        }
+        return program.append("</samosa>\n").toString();
+    }
+
+    /**
+     * The compiler prints progress and traces to stdout; that should not be measured.
+     */
+    public static void silenceStdout() {
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    private static File programsDir() {
+        String configured = System.getProperty(PROGRAMS_DIR_PROPERTY);
+        if (configured != null) {
+            return new File(configured);
+        }
+        for (String dir : DEFAULT_PROGRAMS_DIRS) {
+            if (new File(dir).isDirectory()) {
+                return new File(dir);
+            }
+        }
+        throw new IllegalStateException("Test programs not found; set -D" + PROGRAMS_DIR_PROPERTY);
+    }
+}
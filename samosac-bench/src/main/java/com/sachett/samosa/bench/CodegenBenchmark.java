@@ -0,0 +1,69 @@
+package com.sachett.samosa.bench;
+
+import com.sachett.samosa.parser.SamosaLexer;
+import com.sachett.samosa.parser.SamosaParser;
+import com.sachett.samosa.samosac.codegen.ClassFileGenerator;
+import com.sachett.samosa.samosac.compiler.VerificationLevel;
+import com.sachett.samosa.samosac.staticchecker.StaticTypesChecker;
+import com.sachett.samosa.samosac.symbol.symboltable.SymbolTable;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks class file generation of a checked program, with and without (structural or full) verification.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CodegenBenchmark {
+    @Param({"HelloWorld.samo", "Functions1.samo", "While1.samo", "synthetic-10", "synthetic-100",
+            "controlflow-100", "controlflow-1000"})
+    public String program;
+
+    private SamosaParser.ProgramContext programContext;
+    private SymbolTable symbolTable;
+    private File sourceFile;
+    private final File outputDir = new File("out");
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        BenchmarkPrograms.silenceStdout();
+        String source = BenchmarkPrograms.load(program);
+        sourceFile = BenchmarkPrograms.sourceFileFor(program);
+        programContext =
+                new SamosaParser(new CommonTokenStream(new SamosaLexer(CharStreams.fromString(source)))).program();
+
+        symbolTable = new SymbolTable();
+        new StaticTypesChecker(symbolTable).visit(programContext);
+    }
+
+    @Benchmark
+    public byte[] generateClass() {
+        ClassFileGenerator classFileGenerator = new ClassFileGenerator(programContext, sourceFile, outputDir, symbolTable);
+        classFileGenerator.emitClass();
+        return classFileGenerator.getClassBytes();
+    }
+
+    @Benchmark
+    public byte[] generateAndVerifyClassStructure() {
+        ClassFileGenerator classFileGenerator = new ClassFileGenerator(programContext, sourceFile, outputDir, symbolTable);
+        classFileGenerator.emitClass();
+        classFileGenerator.verifyClass(VerificationLevel.STRUCTURAL);
+        return classFileGenerator.getClassBytes();
+    }
+
+    @Benchmark
+    public byte[] generateAndVerifyClass() {
+        ClassFileGenerator classFileGenerator = new ClassFileGenerator(programContext, sourceFile, outputDir, symbolTable);
+        classFileGenerator.generateClass();
+        return classFileGenerator.getClassBytes();
+    }
+}
@@ -0,0 +1,134 @@
+package com.sachett.samosa.bench;
+
+import com.sachett.samosa.samosac.compiler.BytecodeTargetKt;
+import com.sachett.samosa.samosac.compiler.CompiledClass;
+import com.sachett.samosa.samosac.compiler.CompilerKt;
+import com.sachett.samosa.samosac.compiler.CompilerOptions;
+import com.sachett.samosa.samosac.compiler.InMemoryRunner;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.commons.CodeSizeEvaluator;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks conditions made of and, or, not, strictor, relational and comparison operators: a program that calls
+ * one function per condition (an if statement on the condition) in a loop.
+ * The bytecode size and the number of jumps of every function are printed (to stderr) when the trial starts.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConditionBenchmark {
+    private static final int ITERATIONS = 10000;
+
+    private static final String[] CONDITIONS = {
+            "a and b",
+            "a or b",
+            "not a",
+            "a strictor b",
+            "(n > 2) and (n <= 5)",
+            "a and (b or c)",
+            "not (a and b) or c",
+            "(a or b) and not (c strictor a)",
+            "((n > 1) and a) or ((n < 4) and not b) or (n == 6)",
+    };
+
+    private static final String PROGRAM = program();
+
+    private InMemoryRunner runner;
+    private CompiledClass compiledClass;
+    private Method mainMethod;
+
+    private static String program() {
+        StringBuilder program = new StringBuilder("<samosa>\n");
+        for (int i = 0; i < CONDITIONS.length; i++) {
+            program.append("let c").append(i).append("(a: boolie, b: boolie, c: boolie, n: int): int {\n")
+                    .append("    if (").append(CONDITIONS[i]).append(") {\n")
+                    .append("        return 1.\n")
+                    .append("    }\n")
+                    .append("    return 0.\n")
+                    .append("}\n");
+        }
+        program.append("bro, i: int = 0.\n")
+                .append("bro, hits: int = 0.\n")
+                .append("while (i < ").append(ITERATIONS).append(") {\n");
+        for (int i = 0; i < CONDITIONS.length; i++) {
+            program.append("    hits = hits + (i % 2 == 0, i % 3 == 0, i % 5 == 0, i % 7) -> c").append(i).append(".\n");
+        }
+        return program.append("    i = i + 1.\n")
+                .append("}\n")
+                .append("(hits) -> putout.\n")
+                .append("</samosa>\n")
+                .toString();
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        BenchmarkPrograms.silenceStdout();
+        CompilerOptions options = CompilerOptions.Companion.parse(new String[0]);
+        compiledClass = CompilerKt.compileSource(
+                new File("Conditions.samo"), PROGRAM.getBytes(StandardCharsets.UTF_8), options, null, true
+        );
+        runner = new InMemoryRunner(options);
+        printConditionSizes(compiledClass.getClassBytes());
+    }
+
+    /**
+     * The globals of the program are static fields, so every run needs a freshly loaded class.
+     */
+    @Setup(Level.Invocation)
+    public void loadProgram() throws Exception {
+        mainMethod = runner.load(compiledClass).getMethod("main", String[].class);
+    }
+
+    @Benchmark
+    public void conditionsInLoop() throws Exception {
+        mainMethod.invoke(null, (Object) new String[0]);
+    }
+
+    private static void printConditionSizes(byte[] classBytes) {
+        BytecodeTargetKt.classReaderFor(classBytes).accept(new ClassVisitor(Opcodes.ASM9) {
+            @Override
+            public MethodVisitor visitMethod(
+                    int access, String name, String descriptor, String signature, String[] exceptions
+            ) {
+                if (!name.startsWith("c")) {
+                    return null;
+                }
+                int index = Integer.parseInt(name.substring(1));
+                return new CodeSizeEvaluator(null) {
+                    private int conditionalJumps = 0;
+                    private int gotos = 0;
+
+                    @Override
+                    public void visitJumpInsn(int opcode, Label label) {
+                        super.visitJumpInsn(opcode, label);
+                        if (opcode == Opcodes.GOTO) {
+                            gotos++;
+                        } else {
+                            conditionalJumps++;
+                        }
+                    }
+
+                    @Override
+                    public void visitEnd() {
+                        System.err.printf(
+                                "%-55s %4d bytes, %2d conditional jumps, %2d gotos%n",
+                                CONDITIONS[index], getMaxSize(), conditionalJumps, gotos
+                        );
+                    }
+                };
+            }
+        }, 0);
+    }
+}
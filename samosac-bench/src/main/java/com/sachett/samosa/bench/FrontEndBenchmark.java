@@ -0,0 +1,67 @@
+package com.sachett.samosa.bench;
+
+import com.sachett.samosa.parser.SamosaLexer;
+import com.sachett.samosa.parser.SamosaParser;
+import com.sachett.samosa.samosac.compiler.ProgramParserKt;
+import com.sachett.samosa.samosac.staticchecker.StaticTypesChecker;
+import com.sachett.samosa.samosac.symbol.symboltable.SymbolTable;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the lexer, the parser (with plain LL prediction and with the SLL-first parse the compiler uses)
+ * and the static types checker.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FrontEndBenchmark {
+    @Param({"HelloWorld.samo", "Functions1.samo", "Scopes3.samo", "synthetic-10", "synthetic-100", "synthetic-1000"})
+    public String program;
+
+    private String source;
+    private CommonTokenStream tokens;
+    private SamosaParser.ProgramContext programContext;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        BenchmarkPrograms.silenceStdout();
+        source = BenchmarkPrograms.load(program);
+        tokens = new CommonTokenStream(new SamosaLexer(CharStreams.fromString(source)));
+        tokens.fill();
+        programContext = new SamosaParser(tokens).program();
+    }
+
+    @Benchmark
+    public CommonTokenStream lex() {
+        CommonTokenStream tokenStream = new CommonTokenStream(new SamosaLexer(CharStreams.fromString(source)));
+        tokenStream.fill();
+        return tokenStream;
+    }
+
+    @Benchmark
+    public SamosaParser.ProgramContext parse() {
+        tokens.seek(0);
+        return new SamosaParser(tokens).program();
+    }
+
+    @Benchmark
+    public SamosaParser.ProgramContext parseSllFirst() {
+        tokens.seek(0);
+        return ProgramParserKt.parseProgram(tokens, false, program);
+    }
+
+    @Benchmark
+    public SymbolTable staticTypesCheck() {
+        SymbolTable symbolTable = new SymbolTable();
+        new StaticTypesChecker(symbolTable).visit(programContext);
+        return symbolTable;
+    }
+}
@@ -0,0 +1,69 @@
+package com.sachett.samosa.bench;
+
+import com.sachett.samosa.samosac.compiler.CompiledClass;
+import com.sachett.samosa.samosac.compiler.CompilerKt;
+import com.sachett.samosa.samosac.compiler.CompilerOptions;
+import com.sachett.samosa.samosac.compiler.InMemoryRunner;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks a loop of the top-level code calling small helper functions with the calls inlined by the compiler
+ * (--inline) against the same calls compiled as invocations (the default).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InlineBenchmark {
+    private static final String PROGRAM = "<samosa>\n"
+            + "let sq(x: int): int {\n"
+            + "    return x * x.\n"
+            + "}\n"
+            + "let maxOf(a: int, b: int): int {\n"
+            + "    if (a > b) {\n"
+            + "        return a.\n"
+            + "    }\n"
+            + "    return b.\n"
+            + "}\n"
+            + "let isEven(n: int): boolie {\n"
+            + "    return n % 2 == 0.\n"
+            + "}\n"
+            + "bro, i: int = 0.\n"
+            + "bro, total: int = 0.\n"
+            + "while (i < 100000) {\n"
+            + "    total = total + ((i % 100) -> sq, i) -> maxOf.\n"
+            + "    if ((i) -> isEven) {\n"
+            + "        total = total + 1.\n"
+            + "    }\n"
+            + "    i = i + 1.\n"
+            + "}\n"
+            + "(total) -> putout.\n"
+            + "</samosa>\n";
+
+    @Param({"none", "35"})
+    public String inline;
+
+    private Method mainMethod;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        BenchmarkPrograms.silenceStdout();
+        CompilerOptions options = CompilerOptions.Companion.parse(new String[]{"--inline=" + inline});
+        CompiledClass compiledClass = CompilerKt.compileSource(
+                new File("Inline.samo"), PROGRAM.getBytes(StandardCharsets.UTF_8), options, null, true
+        );
+        mainMethod = new InMemoryRunner(options).load(compiledClass).getMethod("main", String[].class);
+    }
+
+    @Benchmark
+    public void helperCalls() throws Exception {
+        mainMethod.invoke(null, (Object) new String[0]);
+    }
+}
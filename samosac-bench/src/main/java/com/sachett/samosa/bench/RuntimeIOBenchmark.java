@@ -0,0 +1,75 @@
+package com.sachett.samosa.bench;
+
+import com.sachett.samosa.runtime.SamosaRuntime;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the I/O builtins of generated programs: reading and printing ints through the runtime support class,
+ * against System.out.println and a Scanner. The builtins used to create a new Scanner for every read, which loses the
+ * input a previous Scanner has buffered; a single shared Scanner is the baseline here.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RuntimeIOBenchmark {
+    @Param({"1000", "100000"})
+    public int count;
+
+    private byte[] input;
+    private int[] values;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkPrograms.silenceStdout();
+        Random random = new Random(42);
+        values = new int[count];
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            values[i] = random.nextInt();
+            builder.append(values[i]).append('\n');
+        }
+        input = builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public void readIntsRuntime(Blackhole blackhole) {
+        System.setIn(new ByteArrayInputStream(input));
+        for (int i = 0; i < count; i++) {
+            blackhole.consume(SamosaRuntime.readInt());
+        }
+    }
+
+    @Benchmark
+    public void readIntsScanner(Blackhole blackhole) {
+        System.setIn(new ByteArrayInputStream(input));
+        Scanner scanner = new Scanner(System.in);
+        for (int i = 0; i < count; i++) {
+            blackhole.consume(scanner.nextInt());
+        }
+    }
+
+    @Benchmark
+    public void printIntsRuntime() {
+        for (int value : values) {
+            SamosaRuntime.println(value);
+        }
+        SamosaRuntime.flush();
+    }
+
+    @Benchmark
+    public void printIntsSystemOut() {
+        for (int value : values) {
+            System.out.println(value);
+        }
+    }
+}
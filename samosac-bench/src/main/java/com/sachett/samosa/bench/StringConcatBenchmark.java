@@ -0,0 +1,60 @@
+package com.sachett.samosa.bench;
+
+import com.sachett.samosa.samosac.compiler.CompiledClass;
+import com.sachett.samosa.samosac.compiler.CompilerKt;
+import com.sachett.samosa.samosac.compiler.CompilerOptions;
+import com.sachett.samosa.samosac.compiler.InMemoryRunner;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks a string-heavy program compiled for different targets: a single StringBuilder per concatenation
+ * on Java 8, a StringConcatFactory call site on Java 9+.
+ * (Java 21 is not measured, since the benchmarks may run on an older JVM.)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StringConcatBenchmark {
+    private static final String PROGRAM = "<samosa>\n"
+            + "let build(n: int): string {\n"
+            + "    bro, i: int = 0.\n"
+            + "    bro, last: string = \"\".\n"
+            + "    while (i < n) {\n"
+            + "        bro, s = (i) -> itos.\n"
+            + "        last = \"item \" + s + \": \" + last + \" (\" + s + \" of \" + (n) -> itos + \")\".\n"
+            + "        last = \"[\" + s + \"]\".\n"
+            + "        i = i + 1.\n"
+            + "    }\n"
+            + "    return last.\n"
+            + "}\n"
+            + "((10000) -> build) -> putout.\n"
+            + "</samosa>\n";
+
+    @Param({"8", "11", "17"})
+    public String target;
+
+    private Method mainMethod;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        BenchmarkPrograms.silenceStdout();
+        CompilerOptions options = CompilerOptions.Companion.parse(new String[]{"--target=" + target});
+        CompiledClass compiledClass = CompilerKt.compileSource(
+                new File("StringConcat.samo"), PROGRAM.getBytes(StandardCharsets.UTF_8), options, null, true
+        );
+        mainMethod = new InMemoryRunner(options).load(compiledClass).getMethod("main", String[].class);
+    }
+
+    @Benchmark
+    public void stringConcatenation() throws Exception {
+        mainMethod.invoke(null, (Object) new String[0]);
+    }
+}
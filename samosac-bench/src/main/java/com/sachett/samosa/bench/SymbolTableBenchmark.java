@@ -0,0 +1,128 @@
+package com.sachett.samosa.bench;
+
+import com.sachett.samosa.samosac.symbol.IntSymbol;
+import com.sachett.samosa.samosac.symbol.symboltable.SymbolTable;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks symbol table lookups in a large, machine-generated scope tree, the way codegen does them:
+ * go to a block, resolve the names used in it, and come back.
+ * The tree has chains of NESTING_DEPTH nested blocks, each declaring SYMBOLS_PER_BLOCK symbols, under a
+ * global scope with GLOBALS symbols. The heap retained by the table is printed once per trial.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class SymbolTableBenchmark {
+    private static final int NESTING_DEPTH = 8;
+    private static final int SYMBOLS_PER_BLOCK = 10;
+    private static final int GLOBALS = 100;
+    private static final int LOOKUPS_PER_OPERATION = 64;
+
+    @Param({"10000", "100000", "1000000"})
+    public int symbols;
+
+    private SymbolTable symbolTable;
+    private int blocks;
+
+    /* Pre-generated (block, name) pairs to look up, so that the benchmark does not measure string building */
+    private int[] lookupBlocks;
+    private String[] lookupNames;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        long heapBefore = usedHeap();
+        symbolTable = buildTable(symbols);
+        long heapAfter = usedHeap();
+        System.err.printf("%nSymbol table with %d symbols in %d scopes retains about %.1f MB%n",
+                symbolTable.symbolCount(), symbolTable.scopeCount(), (heapAfter - heapBefore) / (1024.0 * 1024.0));
+
+        Random random = new Random(42);
+        lookupBlocks = new int[LOOKUPS_PER_OPERATION];
+        lookupNames = new String[LOOKUPS_PER_OPERATION];
+        for (int i = 0; i < LOOKUPS_PER_OPERATION; i++) {
+            int block = random.nextInt(blocks);
+            lookupBlocks[i] = block;
+            switch (random.nextInt(3)) {
+                case 0:
+                    // declared in the block itself
+                    lookupNames[i] = "v" + block + "_" + random.nextInt(SYMBOLS_PER_BLOCK);
+                    break;
+                case 1:
+                    // declared in the outermost block of the chain
+                    int outermost = block - block % NESTING_DEPTH;
+                    lookupNames[i] = "v" + outermost + "_" + random.nextInt(SYMBOLS_PER_BLOCK);
+                    break;
+                default:
+                    lookupNames[i] = "g" + random.nextInt(GLOBALS);
+            }
+        }
+    }
+
+    private SymbolTable buildTable(int nSymbols) {
+        SymbolTable table = new SymbolTable();
+        for (int i = 0; i < GLOBALS; i++) {
+            table.insert("g" + i, intSymbol("g" + i, 1));
+        }
+
+        blocks = Math.max(1, (nSymbols - GLOBALS) / SYMBOLS_PER_BLOCK);
+        int block = 0;
+        while (block < blocks) {
+            int depth = Math.min(NESTING_DEPTH, blocks - block);
+            for (int level = 0; level < depth; level++) {
+                table.incrementScope();
+                for (int j = 0; j < SYMBOLS_PER_BLOCK; j++) {
+                    String name = "v" + (block + level) + "_" + j;
+                    table.insert(name, intSymbol(name, block + level + 2));
+                }
+            }
+            // blocks are registered when they are closed, like the static types checker does
+            for (int level = depth - 1; level >= 0; level--) {
+                table.registerBlockInCurrentCoordinates(block + level + 2, 0);
+                table.decrementScope();
+            }
+            block += depth;
+        }
+        table.resetScopeIndex();
+        return table;
+    }
+
+    private static IntSymbol intSymbol(String name, int line) {
+        return new IntSymbol(name, line, false, 0, true, true, null);
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS_PER_OPERATION)
+    public void goToBlockAndLookup(Blackhole blackhole) {
+        for (int i = 0; i < LOOKUPS_PER_OPERATION; i++) {
+            symbolTable.goToBlock(lookupBlocks[i] + 2, 0);
+            blackhole.consume(symbolTable.lookup(lookupNames[i]));
+            symbolTable.restoreLastCoordinates();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS_PER_OPERATION)
+    public void goToBlockAndLookupBinding(Blackhole blackhole) {
+        for (int i = 0; i < LOOKUPS_PER_OPERATION; i++) {
+            symbolTable.goToBlock(lookupBlocks[i] + 2, 0);
+            blackhole.consume(symbolTable.lookupBinding(lookupNames[i]));
+            symbolTable.restoreLastCoordinates();
+        }
+    }
+}
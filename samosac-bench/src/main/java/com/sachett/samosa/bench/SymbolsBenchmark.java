@@ -0,0 +1,83 @@
+package com.sachett.samosa.bench;
+
+import com.sachett.samosa.parser.SamosaLexer;
+import com.sachett.samosa.parser.SamosaParser;
+import com.sachett.samosa.samosac.staticchecker.ExpressionTypeDetector;
+import com.sachett.samosa.samosac.staticchecker.StaticTypesChecker;
+import com.sachett.samosa.samosac.symbol.symboltable.SymbolTable;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.TerminalNode;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks type detection of expressions and symbol lookups, over the expressions and
+ * identifiers in the global scope of a (checked) program.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SymbolsBenchmark {
+    @Param({"Expressions1.samo", "Functions1.samo", "synthetic-100", "synthetic-1000"})
+    public String program;
+
+    private SymbolTable symbolTable;
+    private final List<SamosaParser.ExprContext> globalExprs = new ArrayList<>();
+    private final List<String> globalIdentifiers = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        BenchmarkPrograms.silenceStdout();
+        String source = BenchmarkPrograms.load(program);
+        SamosaParser.ProgramContext programContext =
+                new SamosaParser(new CommonTokenStream(new SamosaLexer(CharStreams.fromString(source)))).program();
+
+        symbolTable = new SymbolTable();
+        new StaticTypesChecker(symbolTable).visit(programContext);
+        symbolTable.resetScopeIndex();
+
+        collectGlobals(programContext);
+    }
+
+    private void collectGlobals(ParseTree tree) {
+        if (tree instanceof SamosaParser.BlockContext) {
+            return;
+        }
+        if (tree instanceof SamosaParser.ExprContext) {
+            globalExprs.add((SamosaParser.ExprContext) tree);
+            return;
+        }
+        if (tree instanceof TerminalNode
+                && ((TerminalNode) tree).getSymbol().getType() == SamosaLexer.IDENTIFIER) {
+            globalIdentifiers.add(tree.getText());
+        }
+        for (int i = 0; i < tree.getChildCount(); i++) {
+            collectGlobals(tree.getChild(i));
+        }
+    }
+
+    @Benchmark
+    public void expressionTypeDetection(Blackhole blackhole) {
+        ExpressionTypeDetector typeDetector = new ExpressionTypeDetector(symbolTable);
+        for (SamosaParser.ExprContext expr : globalExprs) {
+            blackhole.consume(typeDetector.getType(expr));
+        }
+    }
+
+    @Benchmark
+    public void symbolTableLookup(Blackhole blackhole) {
+        for (String identifier : globalIdentifiers) {
+            blackhole.consume(symbolTable.lookup(identifier));
+        }
+    }
+}
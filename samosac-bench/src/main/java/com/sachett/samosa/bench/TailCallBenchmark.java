@@ -0,0 +1,69 @@
+package com.sachett.samosa.bench;
+
+import com.sachett.samosa.samosac.compiler.CompiledClass;
+import com.sachett.samosa.samosac.compiler.CompilerKt;
+import com.sachett.samosa.samosac.compiler.CompilerOptions;
+import com.sachett.samosa.samosac.compiler.InMemoryRunner;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks accumulator-style recursive functions with self tail calls compiled as jumps back to the start of the
+ * function (the default) against the same functions compiled as recursive calls (--no-tail-calls).
+ * The recursion is kept shallow enough for the recursive form not to overflow the stack.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TailCallBenchmark {
+    private static final String PROGRAM = "<samosa>\n"
+            + "let sum(n: int, acc: int): int {\n"
+            + "    if (n == 0) {\n"
+            + "        return acc.\n"
+            + "    }\n"
+            + "    return (n - 1, acc + n) -> sum.\n"
+            + "}\n"
+            + "let gcd(a: int, b: int): int {\n"
+            + "    if (b == 0) {\n"
+            + "        return a.\n"
+            + "    }\n"
+            + "    return (b, a % b) -> gcd.\n"
+            + "}\n"
+            + "bro, i: int = 0.\n"
+            + "bro, total: int = 0.\n"
+            + "while (i < 1000) {\n"
+            + "    total = total + (2000 + i, 0) -> sum + (i * 987, 610) -> gcd.\n"
+            + "    i = i + 1.\n"
+            + "}\n"
+            + "(total) -> putout.\n"
+            + "</samosa>\n";
+
+    @Param({"true", "false"})
+    public boolean tailCalls;
+
+    private Method mainMethod;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        BenchmarkPrograms.silenceStdout();
+        CompilerOptions options = CompilerOptions.Companion.parse(
+                tailCalls ? new String[0] : new String[]{"--no-tail-calls"}
+        );
+        CompiledClass compiledClass = CompilerKt.compileSource(
+                new File("TailCalls.samo"), PROGRAM.getBytes(StandardCharsets.UTF_8), options, null, true
+        );
+        mainMethod = new InMemoryRunner(options).load(compiledClass).getMethod("main", String[].class);
+    }
+
+    @Benchmark
+    public void recursiveFunctions() throws Exception {
+        mainMethod.invoke(null, (Object) new String[0]);
+    }
+}
@@ -0,0 +1,93 @@
+package com.sachett.samosa.bench;
+
+import com.sachett.samosa.runtime.SamosaRuntime;
+import com.sachett.samosa.samosac.compiler.CompiledClass;
+import com.sachett.samosa.samosac.compiler.CompilerKt;
+import com.sachett.samosa.samosac.compiler.CompilerOptions;
+import com.sachett.samosa.samosac.compiler.InMemoryRunner;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks uncertain statements inside while loops: a compiled program running loops of uncertain (simple and
+ * compound) statements with constant and variable probabilities, and the random number generation they used to be compiled to
+ * (a new java.util.Random per statement) against the runtime's shared generator.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UncertainStatementBenchmark {
+    private static final int ITERATIONS = 10000;
+
+    private static final String PROGRAM = "<samosa>\n"
+            + "bro, i: int = 0.\n"
+            + "bro, p: int = 30.\n"
+            + "bro, acc: int = 0.\n"
+            + "while (i < " + ITERATIONS + ") {\n"
+            + "    acc = acc + 1. ? [50] ...\n"
+            + "    acc = acc + 2. ? [p] acc = acc - 2.\n"
+            + "    if (acc > 100) {\n"
+            + "        acc = acc - 100.\n"
+            + "    } ? [p] if (acc < 0) {\n"
+            + "        acc = acc + 100.\n"
+            + "    }\n"
+            + "    .\n"
+            + "    i = i + 1.\n"
+            + "}\n"
+            + "(acc) -> putout.\n"
+            + "</samosa>\n";
+
+    @Param({"", "42"})
+    public String seed;
+
+    private InMemoryRunner runner;
+    private CompiledClass compiledClass;
+    private Method mainMethod;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        BenchmarkPrograms.silenceStdout();
+        String[] args = seed.isEmpty() ? new String[0] : new String[]{"--seed=" + seed};
+        CompilerOptions options = CompilerOptions.Companion.parse(args);
+        compiledClass = CompilerKt.compileSource(
+                new File("UncertainLoop.samo"), PROGRAM.getBytes(StandardCharsets.UTF_8), options, null, true
+        );
+        runner = new InMemoryRunner(options);
+    }
+
+    /**
+     * The globals of the program are static fields, so every run needs a freshly loaded class.
+     */
+    @Setup(Level.Invocation)
+    public void loadProgram() throws Exception {
+        mainMethod = runner.load(compiledClass).getMethod("main", String[].class);
+    }
+
+    @Benchmark
+    public void uncertainStatementsInLoop() throws Exception {
+        mainMethod.invoke(null, (Object) new String[0]);
+    }
+
+    @Benchmark
+    public void newRandomPerStatement(Blackhole blackhole) {
+        for (int i = 0; i < ITERATIONS; i++) {
+            blackhole.consume(new Random().nextInt(101));
+        }
+    }
+
+    @Benchmark
+    public void runtimeRandomPercent(Blackhole blackhole) {
+        for (int i = 0; i < ITERATIONS; i++) {
+            blackhole.consume(SamosaRuntime.randomPercent());
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.sachett.samosa.builtins;
 
 import com.sachett.samosa.logging.LoggingUtilsKt;
 import com.sachett.samosa.parser.SamosaParser;
+import com.sachett.samosa.runtime.SamosaRuntime;
 import com.sachett.samosa.samosac.codegen.function.FunctionGenerationContext;
 import com.sachett.samosa.samosac.staticchecker.ExpressionTypeDetector;
 import com.sachett.samosa.samosac.symbol.*;
@@ -9,6 +10,7 @@ import com.sachett.samosa.samosac.symbol.symboltable.SymbolTable;
 import kotlin.Pair;
 import org.antlr.v4.runtime.tree.ParseTree;
 import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
 
 import java.lang.annotation.Repeatable;
 import java.lang.annotation.Retention;
@@ -22,6 +24,45 @@ import java.util.stream.Collectors;
  * Provides support for builtin functions and variables.
  */
 public class Builtins {
+    /**
+     * The internal name of the runtime support class the I/O builtins are compiled to calls into.
+     * It is written to the output directory along with the generated classes.
+     */
+    public static final String RUNTIME_CLASS = Type.getInternalName(SamosaRuntime.class);
+
+    /**
+     * Generates a call to flush the output buffered by the runtime (see SamosaRuntime).
+     * @param functionGenerationCtx The function generation context in which to place the call.
+     */
+    public static void flushOutput(FunctionGenerationContext functionGenerationCtx) {
+        functionGenerationCtx.getMv().visitMethodInsn(
+                Opcodes.INVOKESTATIC, RUNTIME_CLASS, "flush", "()V", false
+        );
+    }
+
+    /**
+     * Generates a call to seed the random numbers of uncertain statements (see SamosaRuntime.randomPercent).
+     * @param functionGenerationCtx The function generation context in which to place the call.
+     * @param seed                  The seed.
+     */
+    public static void seedRandom(FunctionGenerationContext functionGenerationCtx, long seed) {
+        functionGenerationCtx.getMv().visitLdcInsn(seed);
+        functionGenerationCtx.getMv().visitMethodInsn(
+                Opcodes.INVOKESTATIC, RUNTIME_CLASS, "seedRandom", "(J)V", false
+        );
+    }
+
+    /**
+     * Generates a call to get a random number in [0, 100] (both inclusive) for an uncertain statement,
+     * and leaves it on the stack.
+     * @param functionGenerationCtx The function generation context in which to place the call.
+     */
+    public static void randomPercent(FunctionGenerationContext functionGenerationCtx) {
+        functionGenerationCtx.getMv().visitMethodInsn(
+                Opcodes.INVOKESTATIC, RUNTIME_CLASS, "randomPercent", "()I", false
+        );
+    }
+
     /**
      * Provides codegen for builtin functions.
      * The info about the public static functions defined in this class are dynamically populated into the
@@ -42,8 +83,6 @@ public class Builtins {
          */
         public interface IBuiltinFunctionCodegenParams {}
 
-        public static IBuiltinFunctionCodegenParams currentBuiltinFunctionCodegenParams = null;
-
         /**
          * TODO: (Refactor) Move this class somewhere else?
          */
@@ -178,12 +217,7 @@ public class Builtins {
 
                 ExpressionTypeDetector typeDetector = new ExpressionTypeDetector(symbolTable);
                 for (ParseTree pt : ctxCallParamsChildren) {
-                    var ptClassName = pt.getClass().getName();
-                    // Kind of a hack, but well it does the job
-                    if (ptClassName.contains("Expr") && !ptClassName.contains("Boolean")) {
-                        if (ptClassName.contains("ExprFunctionCall")) {
-
-                        }
+                    if (pt instanceof SamosaParser.ExprContext) {
                         // normal expression
                         var exprCtx = normalParams.get(normalParamsCounter);
                         Pair<Boolean, SymbolType> typeInfo = typeDetector.getType(exprCtx);
@@ -207,7 +241,7 @@ public class Builtins {
                         normalParamsCounter++;
                         paramsCounter++;
                     }
-                    else if (ptClassName.contains("Boolean")) {
+                    else if (pt instanceof SamosaParser.BooleanExprContext) {
                         descriptor.append("Z");
                         booleanParamsCounter++;
                         paramsCounter++;
@@ -217,10 +251,6 @@ public class Builtins {
                 descriptor.append(")");
                 return descriptor.toString();
             }
-
-            public static void setBuiltinFunctionCodegenParams(IBuiltinFunctionCodegenParams params) {
-                currentBuiltinFunctionCodegenParams = params;
-            }
         }
 
         @Retention(RetentionPolicy.RUNTIME)
@@ -342,11 +372,12 @@ public class Builtins {
             LoggingUtilsKt.err("[Error] The function call: () -> main to start from the beginning" +
                     " is currently not supported. ");
 
-            if (!(currentBuiltinFunctionCodegenParams instanceof GotoBeginningParams)) {
+            var codegenParams = functionGenerationContext.getBuiltinFunctionCodegenParams();
+            if (!(codegenParams instanceof GotoBeginningParams)) {
                 return;
             }
 
-            String className = ((GotoBeginningParams) currentBuiltinFunctionCodegenParams).className;
+            String className = ((GotoBeginningParams) codegenParams).className;
 
             // TODO: we somehow need to put the cmdline args received back on stack before the next line
             functionGenerationContext.getMv().visitMethodInsn(
@@ -358,11 +389,11 @@ public class Builtins {
             );
 
             // clear this
-            currentBuiltinFunctionCodegenParams = null;
+            functionGenerationContext.setBuiltinFunctionCodegenParams(null);
         }
 
         /**
-         * Displays text to stdout (or stderr). Also adds an end-line at the end.
+         * Displays text to stdout (buffered by the runtime). Also adds an end-line at the end.
          * Function call example: ("hello") -> println.
          * Will load arguments on stack using argsLoader; required arguments: one single value of type symbolTypeToPrint
          * that will be output to stdout or stderr.
@@ -379,8 +410,6 @@ public class Builtins {
                 FunctionGenerationContext functionGenerationCtx,
                 SymbolType symbolTypeToPrint
         ) {
-            functionGenerationCtx.getMv().visitFieldInsn(Opcodes.GETSTATIC, "java/lang/System", "out",
-                    "Ljava/io/PrintStream;");
             argsLoader.loadArgumentsToStack();
 
             String printlnDescriptor = "(Ljava/lang/String;)V";
@@ -396,12 +425,12 @@ public class Builtins {
                     break;
             }
 
-            functionGenerationCtx.getMv().visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/io/PrintStream",
+            functionGenerationCtx.getMv().visitMethodInsn(Opcodes.INVOKESTATIC, RUNTIME_CLASS,
                     "println", printlnDescriptor, false);
         }
 
         /**
-         * Inputs a value from stdin using Scanner. The value taken as input is present on the stack on top after this function finishes.
+         * Inputs a value from stdin using the runtime (see SamosaRuntime). The value taken as input is present on the stack on top after this function finishes.
          *
          * @param functionGenerationCtx The function generation context in which to place the function call to this.
          * @param symbolTypeToInput     The type of value to be taken as input. Can be INT, BOOL, or STRING.
@@ -416,38 +445,28 @@ public class Builtins {
                     && (symbolTypeToInput != SymbolType.STRING)) {
                 return;
             }
-            // Make a scanner
-            functionGenerationCtx.getMv().visitTypeInsn(Opcodes.NEW, "java/util/Scanner");
-            functionGenerationCtx.getMv().visitInsn(Opcodes.DUP);
-            functionGenerationCtx.getMv().visitFieldInsn(
-                    Opcodes.GETSTATIC, "java/lang/System", "in", "Ljava/io/InputStream;"
-            );
-            functionGenerationCtx.getMv().visitMethodInsn(
-                    Opcodes.INVOKESPECIAL, "java/util/Scanner", "<init>", "(Ljava/io/InputStream;)V", false
-            );
-
-            // scan next required thing
+            // read the next required thing through the runtime's shared stdin buffer
             switch (symbolTypeToInput) {
                 case INT:
                     functionGenerationCtx.getMv().visitMethodInsn(
-                        Opcodes.INVOKEVIRTUAL, "java/util/Scanner", "nextInt", "()I", false
+                        Opcodes.INVOKESTATIC, RUNTIME_CLASS, "readInt", "()I", false
                     );
                     break;
                 case BOOL:
                     functionGenerationCtx.getMv().visitMethodInsn(
-                        Opcodes.INVOKEVIRTUAL, "java/util/Scanner", "nextBoolean", "()Z", false
+                        Opcodes.INVOKESTATIC, RUNTIME_CLASS, "readBoolean", "()Z", false
                     );
                     break;
                 case STRING:
                     functionGenerationCtx.getMv().visitMethodInsn(
-                        Opcodes.INVOKEVIRTUAL, "java/util/Scanner", "nextLine", "()Ljava/lang/String;", false
+                        Opcodes.INVOKESTATIC, RUNTIME_CLASS, "readLine", "()Ljava/lang/String;", false
                     );
                     break;
             }
         }
 
         /**
-         * Uses System.exit to exit.
+         * Flushes the buffered output and uses System.exit to exit (see SamosaRuntime.exit).
          * Expects arguments to be loaded by argsLoader; expected arguments: one int value (exit status code).
          *
          * @param argsLoader                An implementation of the functional interface FunctionArgsLoader (a lambda) whose
@@ -460,7 +479,7 @@ public class Builtins {
             argsLoader.loadArgumentsToStack();
 
             functionGenerationContext.getMv().visitMethodInsn(
-                    Opcodes.INVOKESTATIC, "java/lang/System", "exit", "(I)V", false
+                    Opcodes.INVOKESTATIC, RUNTIME_CLASS, "exit", "(I)V", false
             );
         }
     }
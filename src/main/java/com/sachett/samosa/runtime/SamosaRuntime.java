@@ -0,0 +1,397 @@
+package com.sachett.samosa.runtime;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.InputMismatchException;
+import java.util.NoSuchElementException;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Runtime support for the I/O builtins and uncertain statements of samosa programs. The generated code calls into
+ * this class for putout, putin*, exit and the random numbers of uncertain statements, and samosac writes it next to
+ * the classes it generates.
+ *
+ * Output is buffered, and written to System.out when the buffer is full, before reading input (so that prompts are
+ * seen), at the end of the program and on exit(). Input is read from System.in through a single shared buffer
+ * and tokenized at the byte level.
+ *
+ * Samosa programs are single-threaded, so none of this is synchronized.
+ *
+ * NOTE: This class is copied into the output of the compiler and loaded by the JVM the program runs on, which may be
+ * older than the one running the compiler: it must not use nested classes or string concatenation.
+ */
+public final class SamosaRuntime {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static final byte[] out = new byte[BUFFER_SIZE];
+    private static int outLength = 0;
+    private static final byte[] lineSeparator = System.lineSeparator().getBytes(Charset.defaultCharset());
+    private static final byte[] trueBytes = {'t', 'r', 'u', 'e'};
+    private static final byte[] falseBytes = {'f', 'a', 'l', 's', 'e'};
+
+    private static final byte[] in = new byte[BUFFER_SIZE];
+    private static int inPosition = 0;
+    private static int inLength = 0;
+
+    /**
+     * The system property to seed the random numbers of a run with (if the program was not compiled with a seed).
+     */
+    public static final String SEED_PROPERTY = "samosa.seed";
+
+    /* The generator of a seeded run, null if the run is not seeded (ThreadLocalRandom is used then) */
+    private static SplittableRandom seededRandom;
+
+    static {
+        Long seed = Long.getLong(SEED_PROPERTY);
+        if (seed != null) {
+            seededRandom = new SplittableRandom(seed);
+        }
+        // in case the program does not reach the end of main (e.g. an exception is thrown)
+        Runtime.getRuntime().addShutdownHook(new Thread(SamosaRuntime::flush));
+    }
+
+    private SamosaRuntime() {}
+
+    // ---------------- OUTPUT --------------------------
+
+    public static void println(int value) {
+        // at most 11 characters, for Integer.MIN_VALUE
+        ensureOutCapacity(11 + lineSeparator.length);
+        if (value < 0) {
+            out[outLength++] = '-';
+        } else {
+            // digits are generated for the negated value, since -Integer.MIN_VALUE does not fit in an int
+            value = -value;
+        }
+        int start = outLength;
+        do {
+            out[outLength++] = (byte) ('0' - value % 10);
+            value /= 10;
+        } while (value != 0);
+        reverse(start, outLength - 1);
+        writeLineSeparator();
+    }
+
+    public static void println(boolean value) {
+        write(value ? trueBytes : falseBytes);
+        writeLineSeparator();
+    }
+
+    public static void println(String value) {
+        if (value == null) {
+            value = "null";
+        }
+        int length = value.length();
+        int i = 0;
+        // ASCII is copied as is; the rest of the string (if any) is encoded with the default charset
+        while (i < length) {
+            char c = value.charAt(i);
+            if (c >= 0x80) {
+                write(value.substring(i).getBytes(Charset.defaultCharset()));
+                break;
+            }
+            if (outLength == BUFFER_SIZE) {
+                flush();
+            }
+            out[outLength++] = (byte) c;
+            i++;
+        }
+        writeLineSeparator();
+    }
+
+    /**
+     * Writes the buffered output to System.out.
+     */
+    public static void flush() {
+        if (outLength == 0) {
+            return;
+        }
+        System.out.write(out, 0, outLength);
+        System.out.flush();
+        outLength = 0;
+    }
+
+    /**
+     * Flushes the output and exits the program.
+     */
+    public static void exit(int status) {
+        flush();
+        System.exit(status);
+    }
+
+    private static void write(byte[] bytes) {
+        if (bytes.length > BUFFER_SIZE - outLength) {
+            flush();
+            if (bytes.length > BUFFER_SIZE) {
+                System.out.write(bytes, 0, bytes.length);
+                return;
+            }
+        }
+        System.arraycopy(bytes, 0, out, outLength, bytes.length);
+        outLength += bytes.length;
+    }
+
+    private static void writeLineSeparator() {
+        write(lineSeparator);
+    }
+
+    private static void ensureOutCapacity(int bytes) {
+        if (bytes > BUFFER_SIZE - outLength) {
+            flush();
+        }
+    }
+
+    private static void reverse(int from, int to) {
+        while (from < to) {
+            byte b = out[from];
+            out[from++] = out[to];
+            out[to--] = b;
+        }
+    }
+
+    // ---------------- RANDOM NUMBERS --------------------------
+
+    /**
+     * Seeds the random numbers, so that the rest of the run makes the same choices every time.
+     * Called at the start of main by programs compiled with a seed.
+     */
+    public static void seedRandom(long seed) {
+        seededRandom = new SplittableRandom(seed);
+    }
+
+    /**
+     * A random number in [0, 100] (both inclusive), that uncertain statements compare their probability with.
+     */
+    public static int randomPercent() {
+        SplittableRandom random = seededRandom;
+        if (random == null) {
+            return ThreadLocalRandom.current().nextInt(101);
+        }
+        return random.nextInt(101);
+    }
+
+    // ---------------- INPUT --------------------------
+
+    /**
+     * Reads the next whitespace separated token as an int.
+     * @throws InputMismatchException   If the token is not an int.
+     * @throws NoSuchElementException   If there is no more input.
+     */
+    public static int readInt() {
+        skipWhitespace();
+        boolean negative = false;
+        int c = peek();
+        if (c == '-' || c == '+') {
+            negative = c == '-';
+            inPosition++;
+        }
+
+        // accumulated as a negative number, to be able to read Integer.MIN_VALUE
+        int value = 0;
+        int digits = 0;
+        while (true) {
+            c = peek();
+            if (c < '0' || c > '9') {
+                break;
+            }
+            int digit = c - '0';
+            if (value < (Integer.MIN_VALUE + digit) / 10) {
+                throw new InputMismatchException("Integer out of range");
+            }
+            value = value * 10 - digit;
+            digits++;
+            inPosition++;
+        }
+
+        if (digits == 0 || !isTokenEnd(c)) {
+            throw new InputMismatchException("Not an integer");
+        }
+        if (!negative) {
+            if (value == Integer.MIN_VALUE) {
+                throw new InputMismatchException("Integer out of range");
+            }
+            value = -value;
+        }
+        skipLineEnd();
+        return value;
+    }
+
+    /**
+     * Reads the next whitespace separated token as a boolean ("true" or "false", in any case).
+     * @throws InputMismatchException   If the token is not a boolean.
+     * @throws NoSuchElementException   If there is no more input.
+     */
+    public static boolean readBoolean() {
+        skipWhitespace();
+        boolean value;
+        if (matchesIgnoreCase(trueBytes)) {
+            value = true;
+        } else if (matchesIgnoreCase(falseBytes)) {
+            value = false;
+        } else {
+            throw new InputMismatchException("Not a boolean");
+        }
+        skipLineEnd();
+        return value;
+    }
+
+    /**
+     * Reads the rest of the current line (without the line terminator). After an int or a boolean that ended its line,
+     * this is the next line.
+     * @throws NoSuchElementException   If there is no more input.
+     */
+    public static String readLine() {
+        if (peek() < 0) {
+            throw new NoSuchElementException("No line found");
+        }
+
+        byte[] line = null;
+        int lineLength = 0;
+        while (true) {
+            if (inPosition == inLength && !fill()) {
+                break;
+            }
+            int start = inPosition;
+            while (inPosition < inLength && in[inPosition] != '\n') {
+                inPosition++;
+            }
+            int chunkLength = inPosition - start;
+            if (line == null && inPosition < inLength) {
+                // the whole line is in the buffer (the usual case)
+                inPosition++;
+                return decodeLine(in, start, chunkLength);
+            }
+            if (line == null) {
+                line = new byte[Math.max(chunkLength * 2, 128)];
+            } else if (line.length < lineLength + chunkLength) {
+                line = Arrays.copyOf(line, Math.max(line.length * 2, lineLength + chunkLength));
+            }
+            System.arraycopy(in, start, line, lineLength, chunkLength);
+            lineLength += chunkLength;
+            if (inPosition < inLength) {
+                inPosition++;
+                break;
+            }
+        }
+        return decodeLine(line, 0, lineLength);
+    }
+
+    private static String decodeLine(byte[] bytes, int start, int length) {
+        if (length > 0 && bytes[start + length - 1] == '\r') {
+            length--;
+        }
+        return new String(bytes, start, length, Charset.defaultCharset());
+    }
+
+    private static boolean matchesIgnoreCase(byte[] word) {
+        for (int i = 0; i < word.length; i++) {
+            int c = peekAt(i);
+            if (c < 0 || Character.toLowerCase((char) c) != word[i]) {
+                return false;
+            }
+        }
+        if (!isTokenEnd(peekAt(word.length))) {
+            return false;
+        }
+        inPosition += word.length;
+        return true;
+    }
+
+    private static void skipWhitespace() {
+        int c;
+        while ((c = peek()) >= 0 && isWhitespace(c)) {
+            inPosition++;
+        }
+        if (c < 0) {
+            throw new NoSuchElementException();
+        }
+    }
+
+    /**
+     * Skips the blanks after a token, and the line terminator if the token was the last one on its line,
+     * so that a readLine() after it reads the next line.
+     */
+    private static void skipLineEnd() {
+        int c;
+        while ((c = peekInBuffer()) == ' ' || c == '\t' || c == '\r') {
+            inPosition++;
+        }
+        if (c == '\n') {
+            inPosition++;
+        }
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '\f' || c == 0x0b;
+    }
+
+    private static boolean isTokenEnd(int c) {
+        return c < 0 || isWhitespace(c);
+    }
+
+    /**
+     * The next byte of the input (without consuming it), or -1 at the end of the input.
+     */
+    private static int peek() {
+        if (inPosition == inLength && !fill()) {
+            return -1;
+        }
+        return in[inPosition] & 0xff;
+    }
+
+    /**
+     * The next byte of the input if it has been read already (does not block), else -1.
+     */
+    private static int peekInBuffer() {
+        return inPosition < inLength ? in[inPosition] & 0xff : -1;
+    }
+
+    /**
+     * The byte at the given offset from the current position, or -1 if the input ends before it.
+     * Offsets are small (the length of a boolean token), so the unread bytes are moved to the start of the buffer
+     * to make room if needed.
+     */
+    private static int peekAt(int offset) {
+        while (inPosition + offset >= inLength) {
+            if (inPosition > 0) {
+                System.arraycopy(in, inPosition, in, 0, inLength - inPosition);
+                inLength -= inPosition;
+                inPosition = 0;
+            }
+            if (!readMore()) {
+                return -1;
+            }
+        }
+        return in[inPosition + offset] & 0xff;
+    }
+
+    /**
+     * Refills the (fully consumed) input buffer.
+     * @return  <code>false</code> at the end of the input.
+     */
+    private static boolean fill() {
+        inPosition = 0;
+        inLength = 0;
+        return readMore();
+    }
+
+    private static boolean readMore() {
+        // a prompt written before reading input should be seen
+        flush();
+        try {
+            InputStream stdin = System.in;
+            int read = stdin.read(in, inLength, BUFFER_SIZE - inLength);
+            if (read <= 0) {
+                return false;
+            }
+            inLength += read;
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -1,46 +1,100 @@
 package com.sachett.samosa.samosac.codegen;
 
+import com.sachett.samosa.builtins.Builtins;
 import com.sachett.samosa.logging.LoggingUtilsKt;
 import com.sachett.samosa.samosac.codegen.compoundstmt.FunctionCodegen;
+import com.sachett.samosa.samosac.codegen.function.FunctionInliner;
 import com.sachett.samosa.samosac.codegen.expressions.BooleanExprCodegen;
 import com.sachett.samosa.samosac.codegen.expressions.IntExprCodegen;
 import com.sachett.samosa.samosac.codegen.expressions.StringExprCodegen;
 import com.sachett.samosa.samosac.codegen.function.FunctionGenerationContext;
+import com.sachett.samosa.samosac.codegen.peephole.PeepholeOptimizer;
 import com.sachett.samosa.samosac.codegen.utils.delegation.CodegenDelegatedMethod;
 import com.sachett.samosa.samosac.codegen.utils.delegation.CodegenDelegationManager;
 import com.sachett.samosa.samosac.codegen.utils.delegation.CodegenDelegatable;
+import com.sachett.samosa.samosac.compiler.BytecodeVerifier;
+import com.sachett.samosa.samosac.compiler.CodegenOptions;
+import com.sachett.samosa.samosac.compiler.VerificationFailure;
+import com.sachett.samosa.samosac.compiler.VerificationLevel;
+import com.sachett.samosa.samosac.ir.Binding;
+import com.sachett.samosa.samosac.staticchecker.analyzers.VariableEscapeAnalyzer;
 import com.sachett.samosa.samosac.symbol.*;
 import com.sachett.samosa.samosac.symbol.symboltable.SymbolTable;
 
 import com.sachett.samosa.parser.SamosaParser;
-import kotlin.Pair;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.tree.ParseTree;
 import org.apache.commons.io.FileUtils;
 import org.jetbrains.annotations.NotNull;
 
 import org.jetbrains.annotations.Nullable;
-import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
-import org.objectweb.asm.util.CheckClassAdapter;
 import org.objectweb.asm.util.TraceClassVisitor;
 
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 public class ClassFileGenerator extends CodegenDelegatable {
-    private final TraceClassVisitor classWriter;
+    private final ClassVisitor classWriter;
     private final ClassWriter delegateClassWriter;
+
+    /**
+     * Where the disassembly of the generated class is written, if it is being dumped (else null).
+     */
+    private PrintWriter disassemblyWriter = null;
     private final SamosaParser.ProgramContext programContext;
     private String fileName;
     private File outputDir;
     private String className;
     private final ArrayDeque<FunctionGenerationContext> functionGenerationContextStack = new ArrayDeque<>();
     private FunctionGenerationContext currentFunctionGenerationContext;
+
+    /**
+     * The context of main. Once main is too big, the top-level code is continued in other methods (see
+     * visitStatements), which main calls in order.
+     */
+    private final FunctionGenerationContext mainGenerationContext;
+    private int mainChunkCount = 0;
+    private int outlinedLoopCount = 0;
+
+    /**
+     * The contexts of the methods of the top-level code: main, the methods it is continued in and the outlined loops.
+     */
+    private final Set<FunctionGenerationContext> topLevelGenerationContexts
+            = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * The variables that are referenced from a function (see VariableEscapeAnalyzer). The other variables of the
+     * top-level code are kept in locals (see declareVariable).
+     */
+    private final Set<ISymbol> escapingSymbols;
+
+    /**
+     * The globals that are locals of main, until the top-level code is split (see startMainChunk).
+     */
+    private final ArrayList<ISymbol> mainLocalGlobals = new ArrayList<>();
     private final CodegenCommons delegateCodegenCommons;
     private final SymbolTable symbolTable;
+    private final CodegenOptions codegenOptions;
+
+    /**
+     * Optimizes the methods before they are written, if any peephole passes are enabled (else null).
+     */
+    private final PeepholeOptimizer peepholeOptimizer;
+
+    /**
+     * Records the methods of the functions and inlines the small ones at their calls, if inlining is enabled
+     * (else null).
+     */
+    private final FunctionInliner functionInliner;
 
     /**
      * Stores the variables that are supposed to be static when code gets generated.
@@ -63,9 +117,44 @@ public class ClassFileGenerator extends CodegenDelegatable {
             @NotNull File sourceFile,
             @NotNull File outputDir,
             @NotNull SymbolTable symbolTable
+    ) {
+        this(programContext, sourceFile, outputDir, symbolTable, null);
+    }
+
+    /**
+     * @param disassemblyDir    If not null, the disassembly of the generated class is written to
+     *                          [className].asm.txt in this directory. The class is not textified otherwise.
+     */
+    public ClassFileGenerator(
+            SamosaParser.ProgramContext programContext,
+            @NotNull File sourceFile,
+            @NotNull File outputDir,
+            @NotNull SymbolTable symbolTable,
+            @Nullable File disassemblyDir
+    ) {
+        this(programContext, sourceFile, outputDir, symbolTable, disassemblyDir, new CodegenOptions());
+    }
+
+    /**
+     * @param disassemblyDir    If not null, the disassembly of the generated class is written to
+     *                          [className].asm.txt in this directory. The class is not textified otherwise.
+     * @param codegenOptions    The options that affect the generated code.
+     */
+    public ClassFileGenerator(
+            SamosaParser.ProgramContext programContext,
+            @NotNull File sourceFile,
+            @NotNull File outputDir,
+            @NotNull SymbolTable symbolTable,
+            @Nullable File disassemblyDir,
+            @NotNull CodegenOptions codegenOptions
     ) {
         super();
 
+        this.codegenOptions = codegenOptions;
+        this.peepholeOptimizer = codegenOptions.getPeepholePasses().isEmpty()
+                ? null
+                : new PeepholeOptimizer(codegenOptions.getPeepholePasses());
+
         this.fileName = sourceFile.getName();
         this.outputDir = outputDir;
         /**
@@ -99,6 +188,7 @@ public class ClassFileGenerator extends CodegenDelegatable {
 
         // ensure that the symbol table's currentScopeIndex is reset
         symbolTable.resetScopeIndex();
+        this.escapingSymbols = new VariableEscapeAnalyzer(symbolTable).findEscapingSymbols(programContext);
 
         String[] fileNameParts = fileName.split("\\.");
         StringBuilder genClassNameBuilder = new StringBuilder();
@@ -129,12 +219,28 @@ public class ClassFileGenerator extends CodegenDelegatable {
         this.className = (tempClassNameNoNumbers + tempClassNameNumbers).replaceAll("[^0-9a-zA-Z]", "");
 
         // Generate a default class
-        // TODO: Make this COMPUTE_MAXS and compute frames properly in jumps
-        // This is being done already, but for some reason the JVM complains EVEN IF the stack frames are consistent.
-        // To try it, change COMPUTE_FRAMES to COMPUTE_MAXS and try running the generated class file.
-        this.delegateClassWriter = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
-        this.classWriter = new TraceClassVisitor(delegateClassWriter, new PrintWriter(System.out));
-        classWriter.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, this.className, null, "java/lang/Object", null);
+        // Stack map frames are emitted by codegen at every label it jumps to (see FunctionGenerationContext.visitFrame),
+        // so the class writer only computes the max stack and locals.
+        this.delegateClassWriter = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        if (disassemblyDir != null) {
+            File disassemblyFile = new File(disassemblyDir, this.className + ".asm.txt");
+            try {
+                disassemblyWriter = new PrintWriter(new OutputStreamWriter(
+                        FileUtils.openOutputStream(disassemblyFile), StandardCharsets.UTF_8
+                ));
+            } catch (IOException e) {
+                LoggingUtilsKt.err("samosac: Could not write the disassembly to " + disassemblyFile.getPath()
+                        + ": " + e.getMessage());
+            }
+            this.classWriter = new TraceClassVisitor(delegateClassWriter, disassemblyWriter);
+        } else {
+            this.classWriter = delegateClassWriter;
+        }
+        classWriter.visit(codegenOptions.getTarget().getClassFileVersion(), Opcodes.ACC_PUBLIC, this.className, null, "java/lang/Object", null);
+        classWriter.visitSource(this.fileName, null);
+        functionInliner = codegenOptions.getInlineBudget() == 0
+                ? null
+                : new FunctionInliner(classWriter, this.className, codegenOptions.getInlineBudget());
 
         // Generate a default main function
         currentFunctionGenerationContext = new FunctionGenerationContext(
@@ -143,10 +249,16 @@ public class ClassFileGenerator extends CodegenDelegatable {
                 "main",
                 "([Ljava/lang/String;)V",
                 null,
-                null
+                null,
+                peepholeOptimizer
         );
         currentFunctionGenerationContext.setParentClassGenerator(this);
         currentFunctionGenerationContext.getMv().visitCode();
+        mainGenerationContext = currentFunctionGenerationContext;
+        topLevelGenerationContexts.add(mainGenerationContext);
+        if (codegenOptions.getRandomSeed() != null) {
+            Builtins.seedRandom(currentFunctionGenerationContext, codegenOptions.getRandomSeed());
+        }
         delegateCodegenCommons = new CodegenCommons(this,
                 currentFunctionGenerationContext,
                 symbolTable,
@@ -155,19 +267,61 @@ public class ClassFileGenerator extends CodegenDelegatable {
     }
 
     public void generateClass() {
+        emitClass();
+        verifyClass();
+    }
+
+    /**
+     * Generates the class without verifying it.
+     */
+    public void emitClass() {
         this.visit(this.programContext);
-        currentFunctionGenerationContext.getMv().visitInsn(Opcodes.RETURN); // end main function
-        currentFunctionGenerationContext.getMv().visitMaxs(0, 0);
-        currentFunctionGenerationContext.getMv().visitEnd();
+        if (currentFunctionGenerationContext != mainGenerationContext) {
+            endTopLevelMethod(currentFunctionGenerationContext);
+            currentFunctionGenerationContext = mainGenerationContext;
+        }
+        Builtins.flushOutput(currentFunctionGenerationContext); // write out what the program printed
+        endTopLevelMethod(currentFunctionGenerationContext); // end main function
         classWriter.visitEnd();
-        CheckClassAdapter.verify(new ClassReader(delegateClassWriter.toByteArray()), true, new PrintWriter(System.out));
+
+        if (disassemblyWriter != null) {
+            disassemblyWriter.close();
+        }
+    }
+
+    /**
+     * Verifies the generated class at the given level and reports the failures as errors.
+     * Should be called after emitClass().
+     * @return  <code>true</code> if the class passed the verification.
+     */
+    public boolean verifyClass(VerificationLevel verificationLevel) {
+        List<VerificationFailure> failures = BytecodeVerifier.INSTANCE.verify(
+                verificationLevel, new File(fileName), className, delegateClassWriter.toByteArray()
+        );
+        for (VerificationFailure failure : failures) {
+            failure.report();
+        }
+        return failures.isEmpty();
+    }
+
+    /**
+     * Fully verifies the generated class. Should be called after emitClass().
+     */
+    public void verifyClass() {
+        verifyClass(VerificationLevel.FULL);
     }
 
     public void writeClass() {
-        byte[] classBytes = delegateClassWriter.toByteArray();
+        writeClassBytes(outputDir, this.className, delegateClassWriter.toByteArray());
+    }
+
+    /**
+     * Writes the bytes of a class to the file [className].class in outputDir.
+     */
+    public static void writeClassBytes(File outputDir, String className, byte[] classBytes) {
         try (FileOutputStream stream
                      = FileUtils.openOutputStream(new File(
-                             outputDir.getAbsolutePath() + File.separator + this.className + ".class"
+                             outputDir.getAbsolutePath() + File.separator + className + ".class"
         ))) {
             stream.write(classBytes);
         } catch (Exception e) {
@@ -175,13 +329,86 @@ public class ClassFileGenerator extends CodegenDelegatable {
         }
     }
 
-    private ISymbol makeFieldFromSymbol(String idName) {
+    public CodegenOptions getCodegenOptions() {
+        return codegenOptions;
+    }
+
+    /**
+     * The optimizer of the methods of the class, or null if no peephole passes are enabled.
+     */
+    @Nullable
+    public PeepholeOptimizer getPeepholeOptimizer() {
+        return peepholeOptimizer;
+    }
+
+    /**
+     * The inliner of the calls of the functions of the class, or null if inlining is not enabled.
+     */
+    @Nullable
+    public FunctionInliner getFunctionInliner() {
+        return functionInliner;
+    }
+
+    public String getClassName() {
+        return this.className;
+    }
+
+    public byte[] getClassBytes() {
+        return delegateClassWriter.toByteArray();
+    }
+
+    /**
+     * Declares the variable of a declaration in the top-level code: as a local of the method the code is generated in,
+     * if no function references it, else as a static field. A constant global is a static final field (whose value
+     * is also used in place of every read of it, see IExprCodegen).
+     * A global is a local of main only until the top-level code is split: it is moved to a static field then, for the
+     * other methods.
+     */
+    private ISymbol declareVariable(String idName) {
         ISymbol symbol = symbolTable.lookup(idName);
 
         if (symbol == null) {
             return null;
         }
 
+        if (symbol.getSymbolCoordinates() == null) {
+            LoggingUtilsKt.err("Internal error: Invalid symbol coordinates for symbol " + symbol.getName());
+        }
+
+        boolean isGlobal = symbol.getSymbolCoordinates().getFirst() == 0;
+        if (topLevelGenerationContexts.contains(currentFunctionGenerationContext)
+                && !escapingSymbols.contains(symbol)
+                && !isConstantGlobal(symbol)
+                && (!isGlobal || currentFunctionGenerationContext == mainGenerationContext)) {
+            currentFunctionGenerationContext.newScopedLocal(symbol.getAugmentedName(), getVariableType(symbol));
+            if (isGlobal) {
+                mainLocalGlobals.add(symbol);
+            }
+            return symbol;
+        }
+
+        return makeFieldFromSymbol(symbol);
+    }
+
+    /**
+     * Whether the symbol is a global that is a constant (see Binding.isConstant).
+     */
+    private static boolean isConstantGlobal(ISymbol symbol) {
+        return new Binding(symbol, symbol.getSymbolCoordinates().getFirst()).isConstant();
+    }
+
+    private static Type getVariableType(ISymbol symbol) {
+        switch (symbol.getSymbolType()) {
+            case BOOL:
+                return Type.BOOLEAN_TYPE;
+            case STRING:
+                return Type.getType(String.class);
+            default:
+                return Type.INT_TYPE;
+        }
+    }
+
+    private ISymbol makeFieldFromSymbol(ISymbol symbol) {
         // Put it in staticVars
         if (symbol.getSymbolCoordinates() == null) {
             LoggingUtilsKt.err("Internal error: Invalid symbol coordinates for symbol " + symbol.getName());
@@ -204,10 +431,12 @@ public class ClassFileGenerator extends CodegenDelegatable {
             symbolName = symbol.getAugmentedName();
         }
 
+        // a constant is initialized by the ConstantValue of its field, and never assigned to
+        int finalAccess = isConstantGlobal(symbol) ? Opcodes.ACC_FINAL : 0;
         SymbolType symbolType = symbol.getSymbolType();
         if (symbolType == SymbolType.INT) {
             classWriter.visitField(
-                    Opcodes.ACC_STATIC + Opcodes.ACC_PRIVATE,
+                    Opcodes.ACC_STATIC + Opcodes.ACC_PRIVATE + finalAccess,
                     symbolName,
                     Type.INT_TYPE.getDescriptor(),
                     null,
@@ -215,7 +444,7 @@ public class ClassFileGenerator extends CodegenDelegatable {
             ).visitEnd();
         } else if (symbolType == SymbolType.BOOL) {
             classWriter.visitField(
-                    Opcodes.ACC_STATIC + Opcodes.ACC_PRIVATE,
+                    Opcodes.ACC_STATIC + Opcodes.ACC_PRIVATE + finalAccess,
                     symbolName,
                     Type.BOOLEAN_TYPE.getDescriptor(),
                     null,
@@ -223,7 +452,7 @@ public class ClassFileGenerator extends CodegenDelegatable {
             ).visitEnd();
         } else if (symbolType == SymbolType.STRING) {
             classWriter.visitField(
-                    Opcodes.ACC_STATIC + Opcodes.ACC_PUBLIC,
+                    Opcodes.ACC_STATIC + Opcodes.ACC_PUBLIC + finalAccess,
                     symbolName,
                     Type.getType(String.class).getDescriptor(),
                     null,
@@ -234,7 +463,62 @@ public class ClassFileGenerator extends CodegenDelegatable {
         return symbol;
     }
 
+    /**
+     * Initializes a variable that is kept in a local of the current method, with its initializer (or the default
+     * value of its type). Unlike a field, a local has no initial value in the class: it is always stored to.
+     */
+    private void initializeLocal(ISymbol symbol, @Nullable ParserRuleContext initExpr) {
+        switch (symbol.getSymbolType()) {
+            case INT:
+                if (initExpr != null) {
+                    new IntExprCodegen(
+                            (SamosaParser.ExprContext) initExpr, symbolTable, currentFunctionGenerationContext,
+                            className, ""
+                    ).doCodegen();
+                } else {
+                    currentFunctionGenerationContext.visitIntConstant((Integer) SymbolType.INT.getDefaultValue());
+                }
+                break;
+
+            case BOOL:
+                if (initExpr instanceof SamosaParser.BooleanExprContext) {
+                    new BooleanExprCodegen(
+                            (SamosaParser.BooleanExprContext) initExpr, symbolTable, currentFunctionGenerationContext,
+                            className, ""
+                    ).doCodegen();
+                } else if (initExpr != null) {
+                    // a boolean function call or variable, parsed as an expr
+                    new BooleanExprCodegen(null, symbolTable, currentFunctionGenerationContext, className, "")
+                            .doSpecialCodegen((SamosaParser.ExprContext) initExpr);
+                } else {
+                    currentFunctionGenerationContext.visitIntConstant(0);
+                }
+                break;
+
+            case STRING:
+                if (initExpr != null) {
+                    new StringExprCodegen(
+                            (SamosaParser.ExprContext) initExpr, symbolTable, currentFunctionGenerationContext,
+                            className, ""
+                    ).doCodegen();
+                } else {
+                    currentFunctionGenerationContext.getMv().visitLdcInsn(SymbolType.STRING.getDefaultValue());
+                }
+                break;
+        }
+
+        currentFunctionGenerationContext.getMv().visitVarInsn(
+                getVariableType(symbol).getOpcode(Opcodes.ISTORE),
+                currentFunctionGenerationContext.getLocalVarIndex(symbol.getAugmentedName())
+        );
+    }
+
     private void initializeField(ISymbol symbol, @Nullable SamosaParser.ExprContext initExpr) {
+        if (currentFunctionGenerationContext.hasLocal(symbol.getAugmentedName())) {
+            initializeLocal(symbol, initExpr);
+            return;
+        }
+
         if (symbol.getSymbolCoordinates() == null) {
             LoggingUtilsKt.err("Internal error: Invalid symbol coordinates for symbol " + symbol.getName());
         }
@@ -257,7 +541,7 @@ public class ClassFileGenerator extends CodegenDelegatable {
                         );
                         intExprCodegen.doCodegen();
                     } else {
-                        currentFunctionGenerationContext.getMv().visitLdcInsn(SymbolType.INT.getDefaultValue());
+                        currentFunctionGenerationContext.visitIntConstant((Integer) SymbolType.INT.getDefaultValue());
                     }
 
                     currentFunctionGenerationContext.getMv().visitFieldInsn(
@@ -303,6 +587,12 @@ public class ClassFileGenerator extends CodegenDelegatable {
     }
 
     private void initializeBooleanField(ISymbol symbol, SamosaParser.BooleanExprContext initExpr) {
+        if (symbol.getSymbolType() == SymbolType.BOOL
+                && currentFunctionGenerationContext.hasLocal(symbol.getAugmentedName())) {
+            initializeLocal(symbol, initExpr);
+            return;
+        }
+
         if (symbol.getSymbolCoordinates() == null) {
             LoggingUtilsKt.err("Internal error: Invalid symbol coordinates for symbol " + symbol.getName());
         }
@@ -333,16 +623,144 @@ public class ClassFileGenerator extends CodegenDelegatable {
         }
     }
 
+    /**
+     * Generates the top-level code of the program, in main as long as it is smaller than the chunk size of the
+     * codegen options. Past it, the code of the next statements is generated in a new method (main$1, main$2, ...),
+     * that main calls: HotSpot never JIT-compiles a method bigger than 8000 bytes, and a method can't be bigger than
+     * 64KB. Once the code is split, the top-level loops are also generated in methods of their own (main$loop1, ...),
+     * so that each of them can be compiled apart from the rest of the code.
+     * The methods share no locals: a variable of a block is only used by the statement it is in, and the globals that
+     * are locals of main are moved to static fields when the code is first split.
+     */
+    @Override
+    public Void visitStatements(SamosaParser.StatementsContext ctx) {
+        if (codegenOptions.getMainChunkSize() <= 0
+                || !isBeingDelegated()
+                || !(ctx.getParent() instanceof SamosaParser.ProgramContext)) {
+            return super.visitStatements(ctx);
+        }
+
+        for (ParseTree child : ctx.children) {
+            if (!(child instanceof SamosaParser.StatementContext
+                    || child instanceof SamosaParser.CompoundStmtContext
+                    || child instanceof SamosaParser.UncertainCompoundStmtContext)) {
+                // the function definitions and the comments generate no code in main
+                child.accept(this);
+                continue;
+            }
+
+            int line = ((ParserRuleContext) child).getStart().getLine();
+            if (currentFunctionGenerationContext.getCodeSize() >= codegenOptions.getMainChunkSize()) {
+                startMainChunk(line);
+            }
+
+            if (currentFunctionGenerationContext != mainGenerationContext
+                    && child instanceof SamosaParser.CompoundStmtContext
+                    && ((SamosaParser.CompoundStmtContext) child).whileStmt() != null) {
+                outlineLoop((SamosaParser.CompoundStmtContext) child, line);
+            } else {
+                child.accept(this);
+            }
+        }
+        return null;
+    }
+
+    private FunctionGenerationContext makeTopLevelMethod(String name) {
+        FunctionGenerationContext functionGenerationContext = new FunctionGenerationContext(
+                classWriter,
+                Opcodes.ACC_PRIVATE + Opcodes.ACC_STATIC,
+                name,
+                "()V",
+                null,
+                null,
+                peepholeOptimizer
+        );
+        functionGenerationContext.setParentClassGenerator(this);
+        functionGenerationContext.getMv().visitCode();
+        topLevelGenerationContexts.add(functionGenerationContext);
+        return functionGenerationContext;
+    }
+
+    private void endTopLevelMethod(FunctionGenerationContext functionGenerationContext) {
+        functionGenerationContext.getMv().visitInsn(Opcodes.RETURN);
+        functionGenerationContext.getMv().visitMaxs(0, 0);
+        functionGenerationContext.getMv().visitEnd();
+    }
+
+    /**
+     * Ends the method the top-level code is being generated in (unless it's main), and continues the code
+     * in a new one, called from main.
+     * @param line  The source line of the first statement of the new method.
+     */
+    private void startMainChunk(int line) {
+        if (currentFunctionGenerationContext != mainGenerationContext) {
+            endTopLevelMethod(currentFunctionGenerationContext);
+        } else {
+            spillMainLocalGlobals();
+        }
+
+        String chunkName = "main$" + (++mainChunkCount);
+        mainGenerationContext.visitLineNumber(line);
+        mainGenerationContext.getMv().visitMethodInsn(Opcodes.INVOKESTATIC, className, chunkName, "()V", false);
+
+        currentFunctionGenerationContext = makeTopLevelMethod(chunkName);
+        delegateCodegenCommons.setFunctionCodegen(currentFunctionGenerationContext);
+    }
+
+    /**
+     * Moves the globals that are locals of main to static fields, for the methods the rest of the top-level code
+     * is generated in.
+     */
+    private void spillMainLocalGlobals() {
+        for (ISymbol symbol : mainLocalGlobals) {
+            makeFieldFromSymbol(symbol);
+            Type type = getVariableType(symbol);
+            mainGenerationContext.getMv().visitVarInsn(
+                    type.getOpcode(Opcodes.ILOAD), mainGenerationContext.getLocalVarIndex(symbol.getAugmentedName())
+            );
+            mainGenerationContext.getMv().visitFieldInsn(
+                    Opcodes.PUTSTATIC, className, symbol.getName(), type.getDescriptor()
+            );
+        }
+        mainLocalGlobals.clear();
+    }
+
+    /**
+     * Generates a top-level while statement in a method of its own, called where the statement is.
+     */
+    private void outlineLoop(SamosaParser.CompoundStmtContext ctx, int line) {
+        String loopName = "main$loop" + (++outlinedLoopCount);
+        currentFunctionGenerationContext.visitLineNumber(line);
+        currentFunctionGenerationContext.getMv().visitMethodInsn(
+                Opcodes.INVOKESTATIC, className, loopName, "()V", false
+        );
+
+        FunctionGenerationContext loopGenerationContext = makeTopLevelMethod(loopName);
+        setCurrentFunctionCodegen(loopGenerationContext);
+        ctx.accept(this);
+        endTopLevelMethod(loopGenerationContext);
+        restoreLastFunctionCodegen();
+    }
+
     @Override
     public Void visitBlock(SamosaParser.BlockContext ctx) {
+        FunctionGenerationContext blockGenerationContext = currentFunctionGenerationContext;
+        if (!topLevelGenerationContexts.contains(blockGenerationContext)) {
+            delegateCodegenCommons.visitBlock(ctx);
+            return null;
+        }
+
+        // the locals of the variables of the block are out of scope after it, and their slots can be reused
+        int localsMark = blockGenerationContext.getScopedLocalsMark();
         delegateCodegenCommons.visitBlock(ctx);
+        blockGenerationContext.releaseScopedLocals(localsMark);
         return null;
     }
 
     @Override
     public Void visitDeclStmt(SamosaParser.DeclStmtContext ctx) {
         String idName = ctx.IDENTIFIER().getSymbol().getText();
-        ISymbol symbol = makeFieldFromSymbol(idName);
+        ISymbol symbol = declareVariable(idName);
         if (symbol != null) {
             initializeField(symbol, null);
         }
@@ -352,7 +770,7 @@ public class ClassFileGenerator extends CodegenDelegatable {
     @Override
     public Void visitNormalDeclAssignStmt(SamosaParser.NormalDeclAssignStmtContext ctx) {
         String idName = ctx.IDENTIFIER().getSymbol().getText();
-        ISymbol symbol = makeFieldFromSymbol(idName);
+        ISymbol symbol = declareVariable(idName);
         if (symbol != null) {
             initializeField(symbol, ctx.expr());
         }
@@ -362,7 +780,7 @@ public class ClassFileGenerator extends CodegenDelegatable {
     @Override
     public Void visitBooleanDeclAssignStmt(SamosaParser.BooleanDeclAssignStmtContext ctx) {
         String idName = ctx.IDENTIFIER().getSymbol().getText();
-        ISymbol symbol = makeFieldFromSymbol(idName);
+        ISymbol symbol = declareVariable(idName);
         if (symbol != null) {
             initializeBooleanField(symbol, ctx.booleanExpr());
         }
@@ -372,7 +790,7 @@ public class ClassFileGenerator extends CodegenDelegatable {
     @Override
     public Void visitTypeInferredDeclAssignStmt(SamosaParser.TypeInferredDeclAssignStmtContext ctx) {
         String idName = ctx.IDENTIFIER().getSymbol().getText();
-        ISymbol symbol = makeFieldFromSymbol(idName);
+        ISymbol symbol = declareVariable(idName);
         if (symbol != null) {
             initializeField(symbol, ctx.expr());
         }
@@ -382,7 +800,7 @@ public class ClassFileGenerator extends CodegenDelegatable {
     @Override
     public Void visitTypeInferredBooleanDeclAssignStmt(SamosaParser.TypeInferredBooleanDeclAssignStmtContext ctx) {
         String idName = ctx.IDENTIFIER().getSymbol().getText();
-        ISymbol symbol = makeFieldFromSymbol(idName);
+        ISymbol symbol = declareVariable(idName);
         if (symbol != null) {
             initializeBooleanField(symbol, ctx.booleanExpr());
         }
@@ -399,32 +817,23 @@ public class ClassFileGenerator extends CodegenDelegatable {
     public Void visitBooleanExprAssign(SamosaParser.BooleanExprAssignContext ctx) {
         String idName = ctx.IDENTIFIER().getText();
 
-        Pair<ISymbol, Integer> lookupInfo = symbolTable.lookupWithNearestScopeValue(idName);
-        if (lookupInfo.getFirst() == null) {
+        Binding binding = symbolTable.getTypedParseTree().getBinding(ctx);
+        if (binding == null) {
+            binding = symbolTable.lookupBinding(idName);
+        }
+        if (binding == null) {
             // lookup failed
             return null;
         }
 
-        // Let's just trust the compile-time type checker here
-        Type type = Type.BOOLEAN_TYPE;
-        int storeInstruction = Opcodes.ISTORE;
-
         // Do codegen of RHS
         BooleanExprCodegen boolCodegen = new BooleanExprCodegen(
                 ctx.booleanExpr(), symbolTable, currentFunctionGenerationContext, className, "");
         boolCodegen.doCodegen();
 
         // Store the value generated into the variable
-        if (lookupInfo.getSecond() == 0) {
-            // we're talking about a global variable
-            // (a static field of the class during generation)
-            currentFunctionGenerationContext.getMv().visitFieldInsn(
-                    Opcodes.PUTSTATIC, className, idName, type.getDescriptor()
-            );
-        } else {
-            Integer localVarIndex = currentFunctionGenerationContext.getLocalVarIndex(idName);
-            currentFunctionGenerationContext.getMv().visitVarInsn(storeInstruction, localVarIndex);
-        }
+        // (let's just trust the compile-time type checker here)
+        delegateCodegenCommons.storeVariable(binding, Type.BOOLEAN_TYPE);
 
         return super.visitBooleanExprAssign(ctx);
     }
@@ -452,6 +861,11 @@ public class ClassFileGenerator extends CodegenDelegatable {
         return currentFunctionGenerationContext;
     }
 
+    @Override
+    protected FunctionGenerationContext getFunctionGenerationContext() {
+        return currentFunctionGenerationContext;
+    }
+
     private void restoreLastFunctionCodegen() {
         currentFunctionGenerationContext = functionGenerationContextStack.pop();
 
@@ -474,11 +888,12 @@ public class ClassFileGenerator extends CodegenDelegatable {
 
         String funcDescriptor = FunctionGenerationContext.generateDescriptor(functionSymbol);
         FunctionGenerationContext functionGenerationContext = new FunctionGenerationContext(
-                classWriter,
+                functionInliner != null ? functionInliner : classWriter,
                 Opcodes.ACC_STATIC + Opcodes.ACC_PUBLIC,
                 functionSymbol.getName(),
                 funcDescriptor,
-                null, null
+                null, null,
+                peepholeOptimizer
         );
 
         functionGenerationContext.setParentClassGenerator(this);
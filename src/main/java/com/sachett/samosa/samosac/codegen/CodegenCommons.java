@@ -1,5 +1,6 @@
 package com.sachett.samosa.samosac.codegen;
 
+import com.sachett.samosa.builtins.Builtins;
 import com.sachett.samosa.parser.SamosaBaseVisitor;
 import com.sachett.samosa.parser.SamosaParser;
 import com.sachett.samosa.samosac.codegen.compoundstmt.ControlNodeCodegenType;
@@ -12,9 +13,9 @@ import com.sachett.samosa.samosac.codegen.expressions.StringExprCodegen;
 import com.sachett.samosa.samosac.codegen.function.FunctionCallCodegen;
 import com.sachett.samosa.samosac.codegen.function.FunctionGenerationContext;
 import com.sachett.samosa.samosac.codegen.utils.delegation.CodegenDelegatable;
-import com.sachett.samosa.samosac.symbol.ISymbol;
+import com.sachett.samosa.samosac.ir.Binding;
+import com.sachett.samosa.samosac.staticchecker.evaluators.IntConstantFolder;
 import com.sachett.samosa.samosac.symbol.symboltable.SymbolTable;
-import kotlin.Pair;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
@@ -71,8 +72,7 @@ public class CodegenCommons extends SamosaBaseVisitor<Void> {
     @Override
     public Void visitBlock(SamosaParser.BlockContext ctx) {
         // keep track of scopes in the symbol table
-        Pair<Integer, Integer> blockStart = new Pair<>(ctx.start.getLine(), ctx.start.getCharPositionInLine());
-        symbolTable.goToBlock(blockStart);
+        symbolTable.goToBlock(ctx.start.getLine(), ctx.start.getCharPositionInLine());
         parentCodegen.visitChildren(ctx);
         symbolTable.restoreLastCoordinates();
         return null;
@@ -83,20 +83,21 @@ public class CodegenCommons extends SamosaBaseVisitor<Void> {
         // because static type check has already ensured compatibility on both sides
         String idName = ctx.IDENTIFIER().getText();
 
-        Pair<ISymbol, Integer> lookupInfo = symbolTable.lookupWithNearestScopeValue(idName);
-        if (lookupInfo.getFirst() == null) {
+        Binding binding = symbolTable.getTypedParseTree().getBinding(ctx);
+        if (binding == null) {
+            binding = symbolTable.lookupBinding(idName);
+        }
+        if (binding == null) {
             // lookup failed
             return null;
         }
 
         Type type = null;
-        int storeInstruction = Opcodes.ASTORE;
 
         // Do codegen of RHS
-        switch (lookupInfo.getFirst().getSymbolType()) {
+        switch (binding.getSymbol().getSymbolType()) {
             case INT:
                 type = Type.INT_TYPE;
-                storeInstruction = Opcodes.ISTORE;
                 IntExprCodegen intCodegen = new IntExprCodegen(
                         ctx.expr(), symbolTable, functionGenerationContext, className, packageName);
                 intCodegen.doCodegen();
@@ -108,7 +109,6 @@ public class CodegenCommons extends SamosaBaseVisitor<Void> {
                 // or,
                 // aBoolVar = anotherBoolVar.
                 type = Type.BOOLEAN_TYPE;
-                storeInstruction = Opcodes.ISTORE;
                 BooleanExprCodegen boolCodegen = new BooleanExprCodegen(
                         null, symbolTable, functionGenerationContext, className, packageName);
                 boolCodegen.doSpecialCodegen(ctx.expr());
@@ -125,18 +125,39 @@ public class CodegenCommons extends SamosaBaseVisitor<Void> {
         }
 
         // Store the value generated into the variable
-        if (lookupInfo.getSecond() == 0) {
+        assert type != null;
+        storeVariable(binding, type);
+        return null;
+    }
+
+    /**
+     * Stores the value on the top of the stack into the variable the binding refers to: into its local, if it has one
+     * in the current function, else into its static field.
+     */
+    public void storeVariable(Binding binding, Type type) {
+        String augmentedName = binding.getSymbol().getAugmentedName();
+        if (functionGenerationContext.hasLocal(augmentedName)) {
+            functionGenerationContext.getMv().visitVarInsn(
+                    type.getOpcode(Opcodes.ISTORE), functionGenerationContext.getLocalVarIndex(augmentedName)
+            );
+        } else if (binding.isGlobal()) {
             // we're talking about a global variable
             // (a static field of the class during generation)
-            assert type != null;
             functionGenerationContext.getMv().visitFieldInsn(
-                    Opcodes.PUTSTATIC, className, idName, type.getDescriptor()
+                    Opcodes.PUTSTATIC, className, binding.getSymbol().getName(), type.getDescriptor()
+            );
+        } else if (functionGenerationContext
+                        .getParentClassGenerator()
+                        .getStaticVarsAugmentedNames()
+                        .containsKey(augmentedName)) {
+            // static variable but stored in symbol table with augmented name
+            functionGenerationContext.getMv().visitFieldInsn(
+                    Opcodes.PUTSTATIC, className, augmentedName, type.getDescriptor()
             );
         } else {
-            Integer localVarIndex = functionGenerationContext.getLocalVarIndex(lookupInfo.getFirst().getAugmentedName());
-            functionGenerationContext.getMv().visitVarInsn(storeInstruction, localVarIndex);
+            // not a variable of this function: fails with an internal error
+            functionGenerationContext.getLocalVarIndex(augmentedName);
         }
-        return null;
     }
 
     @Override
@@ -230,70 +251,157 @@ public class CodegenCommons extends SamosaBaseVisitor<Void> {
         return null;
     }
 
-    private void generateRandomNumber() {
-        functionGenerationContext.getMv().visitTypeInsn(Opcodes.NEW, "java/util/Random");
-        functionGenerationContext.getMv().visitInsn(Opcodes.DUP);
-        functionGenerationContext.getMv().visitMethodInsn(Opcodes.INVOKESPECIAL, "java/util/Random", "<init>", "()V", false);
-        functionGenerationContext.getMv().visitIntInsn(Opcodes.BIPUSH, 101);
-        functionGenerationContext.getMv().visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/util/Random", "nextInt", "(I)I", false);
+    /**
+     * The probability of an uncertain statement, if it is a compile-time constant (else null).
+     */
+    private Integer constantProbability(SamosaParser.ExprContext probabilityExpr) {
+        return new IntConstantFolder().fold(probabilityExpr);
+    }
+
+    /**
+     * Generates the comparison of a random number in [0, 100] with the probability of an uncertain statement:
+     * jumps to skipLabel if the statement is not to be executed (i.e., the number is greater than the probability).
+     * @param constantProbability   The probability, if it is a compile-time constant (else null: the probability
+     *                              expression is evaluated every time).
+     */
+    private void generateUncertaintyCheck(
+            SamosaParser.ExprContext probabilityExpr, Integer constantProbability, Label skipLabel
+    ) {
+        Builtins.randomPercent(functionGenerationContext);
+        if (constantProbability != null) {
+            functionGenerationContext.visitIntConstant(constantProbability);
+        } else {
+            IntExprCodegen intExprCodegen = new IntExprCodegen(
+                    probabilityExpr,
+                    symbolTable,
+                    functionGenerationContext,
+                    className,
+                    packageName
+            );
+            intExprCodegen.doCodegen();
+        }
+        functionGenerationContext.getMv().visitJumpInsn(Opcodes.IF_ICMPGT, skipLabel);
     }
 
     @Override
     public Void visitUncertainStatementSingle(SamosaParser.UncertainStatementSingleContext ctx) {
-        generateRandomNumber();
-        IntExprCodegen intExprCodegen = new IntExprCodegen(
-                ctx.expr(),
-                symbolTable,
-                functionGenerationContext,
-                className,
-                packageName
-        );
-        intExprCodegen.doCodegen();
+        functionGenerationContext.visitLineNumber(ctx.getStart().getLine());
+
+        // a constant probability decides at compile time if the statement is always or never executed
+        Integer probability = constantProbability(ctx.expr());
+        if (probability != null && probability >= 100) {
+            parentCodegen.visit(ctx.statement());
+            return null;
+        }
+        if (probability != null && probability < 0) {
+            return null;
+        }
+
+        // the end of the uncertain statement is reached with the locals that were there before it
+        var entryFrame = functionGenerationContext.getCurrentFrameStackInfo();
 
         // if the generated number is lower than or equal to the probability value given,
-        // we execute the statement, else we skip it (comparison happens at runtime)
+        // we execute the statement, else we skip it
         Label endUncertaintyLabel = new Label();
-        functionGenerationContext.getMv().visitJumpInsn(Opcodes.IF_ICMPGT, endUncertaintyLabel);
+        generateUncertaintyCheck(ctx.expr(), probability, endUncertaintyLabel);
         parentCodegen.visit(ctx.statement());
         functionGenerationContext.getMv().visitLabel(endUncertaintyLabel);
+        functionGenerationContext.visitFrame(entryFrame);
 
         return null;
     }
 
     @Override
     public Void visitUncertainStatementMultiple(SamosaParser.UncertainStatementMultipleContext ctx) {
-        generateRandomNumber();
-        IntExprCodegen intExprCodegen = new IntExprCodegen(
-                ctx.expr(),
-                symbolTable,
-                functionGenerationContext,
-                className,
-                packageName
-        );
-        intExprCodegen.doCodegen();
+        functionGenerationContext.visitLineNumber(ctx.getStart().getLine());
+
+        // a constant probability decides at compile time which of the statements is executed
+        Integer probability = constantProbability(ctx.expr());
+        if (probability != null && probability >= 100) {
+            parentCodegen.visit(ctx.statement(0));
+            return null;
+        }
+        if (probability != null && probability < 0) {
+            parentCodegen.visit(ctx.statement(1));
+            return null;
+        }
+
+        // both statements and the end of the uncertain statement are reached with the locals that were there before it
+        var entryFrame = functionGenerationContext.getCurrentFrameStackInfo();
 
         // if the generated number is lower than or equal to the probability value given,
-        // we execute the statement, else we skip it (comparison happens at runtime)
+        // we execute the first statement, else the second one
         Label secondStmt = new Label();
-        functionGenerationContext.getMv().visitJumpInsn(Opcodes.IF_ICMPGT, secondStmt);
+        generateUncertaintyCheck(ctx.expr(), probability, secondStmt);
         parentCodegen.visit(ctx.statement(0));
         Label endUncertaintyLabel = new Label();
         functionGenerationContext.getMv().visitJumpInsn(Opcodes.GOTO, endUncertaintyLabel);
         functionGenerationContext.getMv().visitLabel(secondStmt);
+        functionGenerationContext.visitFrame(entryFrame);
         parentCodegen.visit(ctx.statement(1));
         functionGenerationContext.getMv().visitJumpInsn(Opcodes.GOTO, endUncertaintyLabel);
         functionGenerationContext.getMv().visitLabel(endUncertaintyLabel);
+        functionGenerationContext.visitFrame(entryFrame);
 
         return null;
     }
 
     @Override
     public Void visitUncertainCompoundStmtSingle(SamosaParser.UncertainCompoundStmtSingleContext ctx) {
-        return super.visitUncertainCompoundStmtSingle(ctx);
+        functionGenerationContext.visitLineNumber(ctx.getStart().getLine());
+
+        // the probability is evaluated once, when the compound statement is reached:
+        // a loop is either run (to its end) or skipped as a whole
+        Integer probability = constantProbability(ctx.expr());
+        if (probability != null && probability >= 100) {
+            parentCodegen.visit(ctx.compoundStmt());
+            return null;
+        }
+        if (probability != null && probability < 0) {
+            return null;
+        }
+
+        // the end of the uncertain statement is reached with the locals that were there before it
+        var entryFrame = functionGenerationContext.getCurrentFrameStackInfo();
+
+        Label endUncertaintyLabel = new Label();
+        generateUncertaintyCheck(ctx.expr(), probability, endUncertaintyLabel);
+        parentCodegen.visit(ctx.compoundStmt());
+        functionGenerationContext.getMv().visitLabel(endUncertaintyLabel);
+        functionGenerationContext.visitFrame(entryFrame);
+
+        return null;
     }
 
     @Override
     public Void visitUncertainCompoundStmtMultiple(SamosaParser.UncertainCompoundStmtMultipleContext ctx) {
-        return super.visitUncertainCompoundStmtMultiple(ctx);
+        functionGenerationContext.visitLineNumber(ctx.getStart().getLine());
+
+        // the probability is evaluated once, when the compound statement is reached
+        Integer probability = constantProbability(ctx.expr());
+        if (probability != null && probability >= 100) {
+            parentCodegen.visit(ctx.compoundStmt(0));
+            return null;
+        }
+        if (probability != null && probability < 0) {
+            parentCodegen.visit(ctx.compoundStmt(1));
+            return null;
+        }
+
+        // both compound statements and the end are reached with the locals that were there before it
+        var entryFrame = functionGenerationContext.getCurrentFrameStackInfo();
+
+        Label secondStmt = new Label();
+        Label endUncertaintyLabel = new Label();
+        generateUncertaintyCheck(ctx.expr(), probability, secondStmt);
+        parentCodegen.visit(ctx.compoundStmt(0));
+        functionGenerationContext.getMv().visitJumpInsn(Opcodes.GOTO, endUncertaintyLabel);
+        functionGenerationContext.getMv().visitLabel(secondStmt);
+        functionGenerationContext.visitFrame(entryFrame);
+        parentCodegen.visit(ctx.compoundStmt(1));
+        functionGenerationContext.getMv().visitLabel(endUncertaintyLabel);
+        functionGenerationContext.visitFrame(entryFrame);
+
+        return null;
     }
 }
@@ -5,21 +5,34 @@ import com.sachett.samosa.samosac.codegen.CodegenCommons;
 import com.sachett.samosa.samosac.codegen.expressions.BooleanExprCodegen;
 import com.sachett.samosa.samosac.codegen.expressions.IntExprCodegen;
 import com.sachett.samosa.samosac.codegen.expressions.StringExprCodegen;
+import com.sachett.samosa.samosac.codegen.function.FunctionCallCodegen;
 import com.sachett.samosa.samosac.codegen.function.FunctionGenerationContext;
 import com.sachett.samosa.samosac.codegen.utils.delegation.CodegenDelegatedMethod;
 import com.sachett.samosa.samosac.codegen.utils.delegation.CodegenDelegatable;
+import com.sachett.samosa.samosac.ir.ResolvedCall;
 import com.sachett.samosa.samosac.staticchecker.ExpressionTypeDetector;
 import com.sachett.samosa.samosac.symbol.FunctionSymbol;
 import com.sachett.samosa.samosac.symbol.ISymbol;
 import com.sachett.samosa.samosac.symbol.SymbolType;
 import com.sachett.samosa.samosac.symbol.symboltable.SymbolTable;
 import kotlin.Pair;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.TerminalNode;
+import org.objectweb.asm.Label;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
 
 import java.util.HashSet;
 import java.util.List;
 
+/**
+ * Generates the method of a function.
+ *
+ * A return of a call of the function to itself, (args) -> f as the whole expression of the return statement, is a
+ * self tail call: the arguments are stored into the parameters and the code jumps back to the start of the method
+ * (tailCallEntry) instead of calling it. The function then runs in constant stack space, however deep the recursion.
+ * Tail calls can be turned off with CodegenOptions.tailCalls (--no-tail-calls).
+ */
 public class FunctionCodegen extends CodegenDelegatable {
     private SymbolTable symbolTable;
     private FunctionGenerationContext functionGenerationContext;
@@ -30,6 +43,9 @@ public class FunctionCodegen extends CodegenDelegatable {
     private String packageName;
     private FunctionSymbol functionSymbol;
 
+    /* Start of the body of the function, that the self tail calls jump to (null if the function has none) */
+    private Label tailCallEntry = null;
+
     public FunctionCodegen(
             CodegenDelegatable delegatedParentCodegen,
             FunctionGenerationContext functionGenerationContext,
@@ -76,6 +92,11 @@ public class FunctionCodegen extends CodegenDelegatable {
         this.packageName = packageName;
     }
 
+    @Override
+    protected FunctionGenerationContext getFunctionGenerationContext() {
+        return functionGenerationContext;
+    }
+
     @Override
     public Void visitBreakControlStmt(SamosaParser.BreakControlStmtContext ctx) {
         return delegatedParentCodegen.visitBreakControlStmt(ctx);
@@ -173,6 +194,13 @@ public class FunctionCodegen extends CodegenDelegatable {
 
     @Override
     public Void visitReturnStmtWithExpr(SamosaParser.ReturnStmtWithExprContext ctx) {
+        SamosaParser.FunctionCallContext selfTailCall = getSelfTailCall(ctx.expr());
+        if (selfTailCall != null && tailCallEntry != null) {
+            doSelfTailCallCodegen(selfTailCall);
+            undelegateSelf();
+            return null;
+        }
+
         ExpressionTypeDetector typeDetector = new ExpressionTypeDetector(symbolTable);
         Pair<Boolean, SymbolType> typeInfo = typeDetector.getType(ctx.expr());
         if (typeInfo.getFirst()) {
@@ -217,13 +245,19 @@ public class FunctionCodegen extends CodegenDelegatable {
 
     @Override
     public Void visitReturnStmtWithBooleanExpr(SamosaParser.ReturnStmtWithBooleanExprContext ctx) {
+        SamosaParser.FunctionCallContext selfTailCall = getSelfTailCall(ctx.booleanExpr());
+        if (selfTailCall != null && tailCallEntry != null) {
+            doSelfTailCallCodegen(selfTailCall);
+            undelegateSelf();
+            return null;
+        }
+
         BooleanExprCodegen booleanExprCodegen = new BooleanExprCodegen(
                 ctx.booleanExpr(),
                 symbolTable, functionGenerationContext,
                 className, packageName
         );
-        booleanExprCodegen.doCodegen();
-        functionGenerationContext.getMv().visitInsn(Opcodes.IRETURN);
+        booleanExprCodegen.doReturnCodegen();
 
         undelegateSelf();
         return null;
@@ -244,7 +278,7 @@ public class FunctionCodegen extends CodegenDelegatable {
         switch (symbolType) {
             case INT:
                 functionGenerationContext.newLocal(symbolAugmentedName, Type.INT_TYPE);
-                functionGenerationContext.getMv().visitLdcInsn(symbolTypeDefaultValue);
+                functionGenerationContext.visitIntConstant((Integer) symbolTypeDefaultValue);
                 functionGenerationContext.getMv().visitVarInsn(Opcodes.ISTORE, functionGenerationContext.getLocalVarIndex(symbolAugmentedName));
                 break;
             case STRING:
@@ -255,7 +289,7 @@ public class FunctionCodegen extends CodegenDelegatable {
             case BOOL:
                 functionGenerationContext.newLocal(symbol.getAugmentedName(), Type.BOOLEAN_TYPE);
                 symbolTypeDefaultValue = Boolean.TRUE.equals(symbolType.getDefaultValue()) ? 1 : 0;
-                functionGenerationContext.getMv().visitLdcInsn(symbolTypeDefaultValue);
+                functionGenerationContext.visitIntConstant((Integer) symbolTypeDefaultValue);
                 functionGenerationContext.getMv().visitVarInsn(Opcodes.ISTORE, functionGenerationContext.getLocalVarIndex(symbolAugmentedName));
                 break;
         }
@@ -406,6 +440,107 @@ public class FunctionCodegen extends CodegenDelegatable {
         }
     }
 
+    /**
+     * The call of the function to itself that is the whole of the expression (but for parentheses), or null.
+     */
+    private SamosaParser.FunctionCallContext getSelfTailCall(SamosaParser.ExprContext expr) {
+        while (expr instanceof SamosaParser.ExprParenContext) {
+            expr = ((SamosaParser.ExprParenContext) expr).expr();
+        }
+        if (!(expr instanceof SamosaParser.ExprFunctionCallContext)) {
+            return null;
+        }
+        SamosaParser.FunctionCallContext call = ((SamosaParser.ExprFunctionCallContext) expr).functionCall();
+        return isSelfCall(call) ? call : null;
+    }
+
+    private SamosaParser.FunctionCallContext getSelfTailCall(SamosaParser.BooleanExprContext booleanExpr) {
+        while (booleanExpr instanceof SamosaParser.BooleanExprParenContext) {
+            booleanExpr = ((SamosaParser.BooleanExprParenContext) booleanExpr).booleanExpr();
+        }
+        if (!(booleanExpr instanceof SamosaParser.BooleanFunctionCallContext)) {
+            return null;
+        }
+        SamosaParser.FunctionCallContext call = ((SamosaParser.BooleanFunctionCallContext) booleanExpr).functionCall();
+        return isSelfCall(call) ? call : null;
+    }
+
+    private boolean isSelfCall(SamosaParser.FunctionCallContext call) {
+        TerminalNode funcIdentifier = null;
+        if (call instanceof SamosaParser.FunctionCallNoArgsContext) {
+            funcIdentifier = ((SamosaParser.FunctionCallNoArgsContext) call).IDENTIFIER();
+        } else if (call instanceof SamosaParser.FunctionCallWithArgsContext) {
+            funcIdentifier = ((SamosaParser.FunctionCallWithArgsContext) call).IDENTIFIER();
+        }
+        if (funcIdentifier == null || !funcIdentifier.getText().equals(functionSymbol.getName())) {
+            return false;
+        }
+
+        ResolvedCall resolvedCall = symbolTable.getTypedParseTree().getCall(call);
+        if (resolvedCall != null) {
+            return !resolvedCall.isBuiltin() && resolvedCall.getFunctionSymbol() == functionSymbol;
+        }
+        return symbolTable.lookupInCoordinates(functionSymbol.getName(), new Pair<>(0, 0)) == functionSymbol;
+    }
+
+    /**
+     * Whether there is a return of a self tail call under the tree.
+     */
+    private boolean hasSelfTailCall(ParseTree tree) {
+        if (tree instanceof SamosaParser.ReturnStmtWithExprContext) {
+            return getSelfTailCall(((SamosaParser.ReturnStmtWithExprContext) tree).expr()) != null;
+        }
+        if (tree instanceof SamosaParser.ReturnStmtWithBooleanExprContext) {
+            return getSelfTailCall(((SamosaParser.ReturnStmtWithBooleanExprContext) tree).booleanExpr()) != null;
+        }
+        for (int i = 0; i < tree.getChildCount(); i++) {
+            if (hasSelfTailCall(tree.getChild(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Marks the start of the body as the target of the self tail calls, if the function has any.
+     * The frame there only has the parameters: the locals of the body are all stored before they are loaded.
+     */
+    private void startTailCallEntry(ParseTree funcDefCtx) {
+        if (!functionGenerationContext.getParentClassGenerator().getCodegenOptions().getTailCalls()
+                || !hasSelfTailCall(funcDefCtx)) {
+            return;
+        }
+        FunctionGenerationContext.FrameStackMap entryFrame = functionGenerationContext.getCurrentFrameStackInfo();
+        tailCallEntry = new Label();
+        functionGenerationContext.getMv().visitLabel(tailCallEntry);
+        functionGenerationContext.visitFrame(entryFrame);
+    }
+
+    /**
+     * Generates a self tail call: the arguments are all pushed (they may read the parameters) before they are
+     * stored into the parameters, last one first, and the code jumps back to the start of the body.
+     */
+    private void doSelfTailCallCodegen(SamosaParser.FunctionCallContext call) {
+        if (call instanceof SamosaParser.FunctionCallWithArgsContext) {
+            FunctionCallCodegen functionCallCodegen = new FunctionCallCodegen(
+                    symbolTable, className, functionGenerationContext, className, packageName
+            );
+            functionCallCodegen.pushArgumentsToStack(
+                    functionSymbol, (SamosaParser.FunctionCallWithArgsContext) call
+            );
+        }
+
+        List<ISymbol> paramList = functionSymbol.getParamList();
+        for (int i = paramList.size() - 1; i >= 0; i--) {
+            ISymbol param = paramList.get(i);
+            int storeOpcode = param.getSymbolType() == SymbolType.STRING ? Opcodes.ASTORE : Opcodes.ISTORE;
+            functionGenerationContext.getMv().visitVarInsn(
+                    storeOpcode, functionGenerationContext.getLocalVarIndex(param.getAugmentedName())
+            );
+        }
+        functionGenerationContext.getMv().visitJumpInsn(Opcodes.GOTO, tailCallEntry);
+    }
+
     @Override
     public Void visitExplicitRetTypeFuncDef(SamosaParser.ExplicitRetTypeFuncDefContext ctx) {
         return super.visitExplicitRetTypeFuncDef(ctx);
@@ -419,12 +554,14 @@ public class FunctionCodegen extends CodegenDelegatable {
     public void generateImplicitRetTypeFuncDef(SamosaParser.ImplicitRetTypeFuncDefContext ctx) {
         registerArguments();
         functionGenerationContext.setNeedsNoExprReturn(true);
+        startTailCallEntry(ctx);
         visitChildren(ctx);
     }
 
     public void generateExplicitRetTypeFuncDef(SamosaParser.ExplicitRetTypeFuncDefContext ctx) {
         registerArguments();
         functionGenerationContext.setNeedsNoExprReturn(functionSymbol.getReturnType() == SymbolType.VOID);
+        startTailCallEntry(ctx);
         visitChildren(ctx);
     }
 
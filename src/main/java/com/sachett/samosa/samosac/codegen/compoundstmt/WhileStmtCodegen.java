@@ -60,6 +60,11 @@ public class WhileStmtCodegen extends CodegenDelegatable implements IControlNode
         this.symbolTable = symbolTable;
     }
 
+    @Override
+    protected FunctionGenerationContext getFunctionGenerationContext() {
+        return functionGenerationContext;
+    }
+
     private boolean isGlobalBlock() {
         return delegatedParentCodegen instanceof ClassFileGenerator;
     }
@@ -140,6 +145,21 @@ public class WhileStmtCodegen extends CodegenDelegatable implements IControlNode
         return delegatedParentCodegen.visitFunctionCallNoArgs(ctx);
     }
 
+    @Override
+    public Void visitReturnStmtNoExpr(SamosaParser.ReturnStmtNoExprContext ctx) {
+        return delegatedParentCodegen.visitReturnStmtNoExpr(ctx);
+    }
+
+    @Override
+    public Void visitReturnStmtWithExpr(SamosaParser.ReturnStmtWithExprContext ctx) {
+        return delegatedParentCodegen.visitReturnStmtWithExpr(ctx);
+    }
+
+    @Override
+    public Void visitReturnStmtWithBooleanExpr(SamosaParser.ReturnStmtWithBooleanExprContext ctx) {
+        return delegatedParentCodegen.visitReturnStmtWithBooleanExpr(ctx);
+    }
+
     public void setDelegatedParentCodegen(CodegenDelegatable delegatedParentCodegen) {
         this.delegatedParentCodegen = delegatedParentCodegen;
     }
@@ -174,32 +194,37 @@ public class WhileStmtCodegen extends CodegenDelegatable implements IControlNode
     }
 
     public void generateWhileStmt(SamosaParser.WhileStmtContext ctx) {
+        // A loop whose condition is always false never runs, and one whose condition is always true needs no test
+        Boolean conditionValue = symbolTable.getTypedParseTree().getConditionValue(ctx.booleanExpr());
+        if (Boolean.FALSE.equals(conditionValue)) {
+            return;
+        }
+
         Label loopLabel = new Label();
         Label exitLoopLabel = new Label();
         this.whileLoopStartLabel = loopLabel;
         this.whileLoopExitLabel = exitLoopLabel;
 
-        var currentStackFrame = functionGenerationContext.getCurrentFrameStackInfo();
+        // Both the start and the exit of the loop are reached with the locals that were there before the loop
+        // (the locals declared inside the block are out of scope after it) and an empty stack.
+        var entryFrame = functionGenerationContext.getCurrentFrameStackInfo();
 
         functionGenerationContext.getMv().visitLabel(loopLabel);
-        functionGenerationContext.getMv().visitFrame(Opcodes.F_NEW,
-                currentStackFrame.numLocals, currentStackFrame.locals,
-                currentStackFrame.numStack, currentStackFrame.stack
-        );
-
-        // check condition
-        BooleanExprCodegen booleanExprCodegen = new BooleanExprCodegen(
-                ctx.booleanExpr(),
-                symbolTable,
-                functionGenerationContext,
-                className,
-                packageName
-        );
-        booleanExprCodegen.doCodegen();
-
-        // if condition is false, exit loop
-        currentStackFrame = functionGenerationContext.getCurrentFrameStackInfo();
-        functionGenerationContext.getMv().visitJumpInsn(Opcodes.IFEQ, exitLoopLabel);
+        functionGenerationContext.visitFrame(entryFrame);
+
+        if (conditionValue == null) {
+            // check condition
+            BooleanExprCodegen booleanExprCodegen = new BooleanExprCodegen(
+                    ctx.booleanExpr(),
+                    symbolTable,
+                    functionGenerationContext,
+                    className,
+                    packageName
+            );
+
+            // if condition is false, exit loop
+            booleanExprCodegen.doConditionCodegen(exitLoopLabel, false);
+        }
 
         this.generatingWhileBlock = true;
         undelegateSelf();
@@ -212,10 +237,7 @@ public class WhileStmtCodegen extends CodegenDelegatable implements IControlNode
         // start next iteration
         functionGenerationContext.getMv().visitJumpInsn(Opcodes.GOTO, loopLabel);
         functionGenerationContext.getMv().visitLabel(exitLoopLabel);
-        functionGenerationContext.getMv().visitFrame(Opcodes.F_NEW,
-                currentStackFrame.numLocals, currentStackFrame.locals,
-                currentStackFrame.numStack, currentStackFrame.stack
-        );
+        functionGenerationContext.visitFrame(entryFrame);
     }
 
     @Override
@@ -22,37 +22,6 @@ public class BooleanExprCodegen extends SamosaBaseVisitor<Void> implements IExpr
     private final String packageName;
     private final String qualifiedClassName;
 
-    /**
-     * Indicates whether the labels generated will have more code inserted in them.
-     * This should be true in the case of if, while etc.
-     * but false for cases where the boolean result of the evaluation should be stored
-     * on top of the stack after doCodegen(); for example, in case of assignment statements.
-     */
-    private boolean jumpLabelsHaveBlocks = false;
-
-    /**
-     * jump instructions are inverted to jump to false labels
-     * for example if it is var1 > var2, codegen generates jump to falseLabel if var1 <= var 2
-     * and if jumpToFalseLabel is set to false:
-     * for var1 > var2, codegen generates jump to trueLabel if var2 > var2
-     */
-    private boolean jumpToFalseLabel = true;
-
-    private Label trueLabel = new Label();  // to jump to when condition is true
-    private Label falseLabel = new Label(); // to jump to when condition is false
-    private Label nextLabel = new Label();  // to jump to after the boolean expression is evaluated
-
-    /* Stores the actual label to which the jump is performed on condition true/false (trueLabel or falseLabel) */
-    private Label conditionJumpLabel = new Label();
-
-    public Label getActualJumpLabel() {
-        return conditionJumpLabel;
-    }
-
-    public Label getNextLabel() {
-        return nextLabel;
-    }
-
     public BooleanExprCodegen(
             SamosaParser.BooleanExprContext exprContext,
             SymbolTable symbolTable,
@@ -68,9 +37,46 @@ public class BooleanExprCodegen extends SamosaBaseVisitor<Void> implements IExpr
         this.qualifiedClassName = packageName.replace(".", "/") + className;
     }
 
+    /**
+     * Pushes the value of the boolean expression (0 or 1) on the stack.
+     */
     @Override
     public void doCodegen() {
-        visit(this.exprContext);
+        generateValue(this.exprContext);
+    }
+
+    /**
+     * Generates the boolean expression as a condition: jumps to target if the expression evaluates to jumpIfTrue,
+     * and falls through otherwise. Nothing is left on the stack.
+     * Used by if and while statements: the value of the expression is never materialized, only branched on.
+     * @param target        The label to jump to. The caller visits it, with the frame of the code before the condition.
+     * @param jumpIfTrue    Whether to jump when the expression is true (or when it is false).
+     */
+    public void doConditionCodegen(Label target, boolean jumpIfTrue) {
+        generateCondition(this.exprContext, target, jumpIfTrue);
+    }
+
+    /**
+     * Generates return (boolean expression): a condition with an IRETURN of a constant on each of its branches,
+     * unless the value can be pushed without jumps.
+     */
+    public void doReturnCodegen() {
+        SamosaParser.BooleanExprContext ctx = unwrapParens(this.exprContext);
+        if (hasJumpFreeValue(ctx)) {
+            generateValue(ctx);
+            functionGenerationContext.getMv().visitInsn(Opcodes.IRETURN);
+            return;
+        }
+
+        var entryFrame = functionGenerationContext.getCurrentFrameStackInfo();
+        Label falseLabel = new Label();
+        generateCondition(ctx, falseLabel, false);
+        functionGenerationContext.visitIntConstant(1);
+        functionGenerationContext.getMv().visitInsn(Opcodes.IRETURN);
+        functionGenerationContext.getMv().visitLabel(falseLabel);
+        functionGenerationContext.visitFrame(entryFrame);
+        functionGenerationContext.visitIntConstant(0);
+        functionGenerationContext.getMv().visitInsn(Opcodes.IRETURN);
     }
 
     public void setBooleanExprContext(SamosaParser.BooleanExprContext booleanExprContext) {
@@ -88,28 +94,151 @@ public class BooleanExprCodegen extends SamosaBaseVisitor<Void> implements IExpr
         visit(specialExprContext);
     }
 
-    public void setJumpLabelsHaveBlocks(boolean jumpLabelsHaveBlocks) {
-        this.jumpLabelsHaveBlocks = jumpLabelsHaveBlocks;
+    private static SamosaParser.BooleanExprContext unwrapParens(SamosaParser.BooleanExprContext ctx) {
+        while (ctx instanceof SamosaParser.BooleanExprParenContext) {
+            ctx = ((SamosaParser.BooleanExprParenContext) ctx).booleanExpr();
+        }
+        return ctx;
     }
 
-    public void setTrueLabel(Label label) {
-        this.trueLabel = label;
+    /**
+     * Whether the value of the expression can be pushed without any jump:
+     * identifiers, function calls and literals, and the nots and strictors of those.
+     */
+    private static boolean hasJumpFreeValue(SamosaParser.BooleanExprContext ctx) {
+        ctx = unwrapParens(ctx);
+        if (ctx instanceof SamosaParser.BooleanExprNotContext) {
+            return hasJumpFreeValue(((SamosaParser.BooleanExprNotContext) ctx).booleanExpr());
+        }
+        if (ctx instanceof SamosaParser.BooleanExprXorContext) {
+            var xorCtx = (SamosaParser.BooleanExprXorContext) ctx;
+            return hasJumpFreeValue(xorCtx.booleanExpr(0)) && hasJumpFreeValue(xorCtx.booleanExpr(1));
+        }
+        return ctx instanceof SamosaParser.BooleanExprIdentifierContext
+                || ctx instanceof SamosaParser.BooleanFunctionCallContext
+                || ctx instanceof SamosaParser.BooleanTrueContext
+                || ctx instanceof SamosaParser.BooleanFalseContext;
     }
 
-    public void setFalseLabel(Label label) {
-        this.falseLabel = label;
+    /**
+     * Pushes the value of a boolean expression.
+     * Values that need a jump are generated as a condition that falls through to a 1 and jumps to a 0.
+     */
+    private void generateValue(SamosaParser.BooleanExprContext ctx) {
+        ctx = unwrapParens(ctx);
+
+        if (ctx instanceof SamosaParser.BooleanExprNotContext && hasJumpFreeValue(ctx)) {
+            // I couldn't find a JVM "not" instruction.
+            // So, here's a little trick: xoring anything with true gives its complement
+            generateValue(((SamosaParser.BooleanExprNotContext) ctx).booleanExpr());
+            functionGenerationContext.visitIntConstant(1);
+            functionGenerationContext.getMv().visitInsn(Opcodes.IXOR);
+            return;
+        }
+
+        if (ctx instanceof SamosaParser.BooleanExprXorContext) {
+            // a strictor b is true when exactly one of them is true: the values can be xored without jumps
+            generateValue(((SamosaParser.BooleanExprXorContext) ctx).booleanExpr(0));
+            generateValue(((SamosaParser.BooleanExprXorContext) ctx).booleanExpr(1));
+            functionGenerationContext.getMv().visitInsn(Opcodes.IXOR);
+            return;
+        }
+
+        if (hasJumpFreeValue(ctx)) {
+            visit(ctx);
+            return;
+        }
+
+        // the false branch is reached with the stack and locals of the code before the expression
+        var entryFrame = functionGenerationContext.getCurrentFrameStackInfo();
+        Label falseLabel = new Label();
+        Label nextLabel = new Label();
+
+        generateCondition(ctx, falseLabel, false);
+        functionGenerationContext.visitIntConstant(1);
+
+        // the stack map at nextLabel has the result on top
+        // (not read after the constant: a condition that is always false leaves it unreachable)
+        var nextFrame = entryFrame.withPushed(Opcodes.INTEGER);
+        functionGenerationContext.getMv().visitJumpInsn(Opcodes.GOTO, nextLabel);
+
+        functionGenerationContext.getMv().visitLabel(falseLabel);
+        functionGenerationContext.visitFrame(entryFrame);
+        functionGenerationContext.visitIntConstant(0);
+
+        functionGenerationContext.getMv().visitLabel(nextLabel);
+        functionGenerationContext.visitFrame(nextFrame);
     }
 
-    public void setNextLabel(Label label) {
-        this.nextLabel = label;
+    /**
+     * Generates a boolean expression as a condition (see doConditionCodegen()).
+     * and/or short-circuit by threading the jumps of their operands: the right operand is only evaluated if
+     * the left one did not decide the result.
+     */
+    private void generateCondition(SamosaParser.BooleanExprContext ctx, Label target, boolean jumpIfTrue) {
+        ctx = unwrapParens(ctx);
+
+        if (ctx instanceof SamosaParser.BooleanExprNotContext) {
+            generateCondition(((SamosaParser.BooleanExprNotContext) ctx).booleanExpr(), target, !jumpIfTrue);
+        } else if (ctx instanceof SamosaParser.BooleanExprAndContext) {
+            var andCtx = (SamosaParser.BooleanExprAndContext) ctx;
+            generateShortCircuit(andCtx.booleanExpr(0), andCtx.booleanExpr(1), target, jumpIfTrue, false);
+        } else if (ctx instanceof SamosaParser.BooleanExprOrContext) {
+            var orCtx = (SamosaParser.BooleanExprOrContext) ctx;
+            generateShortCircuit(orCtx.booleanExpr(0), orCtx.booleanExpr(1), target, jumpIfTrue, true);
+        } else if (ctx instanceof SamosaParser.BooleanExprXorContext) {
+            // both operands are always needed: compare their values
+            var xorCtx = (SamosaParser.BooleanExprXorContext) ctx;
+            generateValue(xorCtx.booleanExpr(0));
+            generateValue(xorCtx.booleanExpr(1));
+            functionGenerationContext.getMv().visitJumpInsn(
+                    jumpIfTrue ? Opcodes.IF_ICMPNE : Opcodes.IF_ICMPEQ, target
+            );
+        } else if (ctx instanceof SamosaParser.BooleanExprRelOpContext) {
+            generateRelOpCondition((SamosaParser.BooleanExprRelOpContext) ctx, target, jumpIfTrue);
+        } else if (ctx instanceof SamosaParser.BooleanExprCompOpContext) {
+            generateCompOpCondition((SamosaParser.BooleanExprCompOpContext) ctx, target, jumpIfTrue);
+        } else if (ctx instanceof SamosaParser.BooleanTrueContext || ctx instanceof SamosaParser.BooleanFalseContext) {
+            boolean value = ctx instanceof SamosaParser.BooleanTrueContext;
+            if (value == jumpIfTrue) {
+                functionGenerationContext.getMv().visitJumpInsn(Opcodes.GOTO, target);
+            }
+        } else {
+            // identifiers and function calls
+            visit(ctx);
+            functionGenerationContext.getMv().visitJumpInsn(jumpIfTrue ? Opcodes.IFNE : Opcodes.IFEQ, target);
+        }
     }
 
-    public void setJumpToFalseLabel(boolean jumpToFalseLabel) {
-        this.jumpToFalseLabel = jumpToFalseLabel;
+    /**
+     * Generates left and right, or left or right, as a condition.
+     * @param isOr  Whether the operator is or (else and): the value of left that decides the result.
+     */
+    private void generateShortCircuit(
+            SamosaParser.BooleanExprContext left,
+            SamosaParser.BooleanExprContext right,
+            Label target,
+            boolean jumpIfTrue,
+            boolean isOr
+    ) {
+        if (jumpIfTrue == isOr) {
+            // left decides the result by jumping to the target itself
+            // (or: a true left jumps to target if jumping on true; and: a false left jumps to target on false)
+            generateCondition(left, target, jumpIfTrue);
+            generateCondition(right, target, jumpIfTrue);
+            return;
+        }
+
+        // left decides the result by skipping the jump of right
+        var entryFrame = functionGenerationContext.getCurrentFrameStackInfo();
+        Label skipLabel = new Label();
+        generateCondition(left, skipLabel, isOr);
+        generateCondition(right, target, jumpIfTrue);
+        functionGenerationContext.getMv().visitLabel(skipLabel);
+        functionGenerationContext.visitFrame(entryFrame);
     }
 
-    @Override
-    public Void visitBooleanExprRelOp(SamosaParser.BooleanExprRelOpContext ctx) {
+    private void generateRelOpCondition(SamosaParser.BooleanExprRelOpContext ctx, Label target, boolean jumpIfTrue) {
         var lhs = ctx.expr(0);
         var rhs = ctx.expr(1);
 
@@ -117,109 +246,38 @@ public class BooleanExprCodegen extends SamosaBaseVisitor<Void> implements IExpr
         var lhsType = typeDetector.getType(lhs);
         var rhsType = typeDetector.getType(rhs);
 
-        // check for incompatible types
+        // Since we only have int expressions that can be compared using relops right now
         if ((!lhsType.getFirst() || !rhsType.getFirst())
-                || (lhsType.getSecond() != rhsType.getSecond())
-                || !lhsType.getSecond().getCanBeUsedWithCompOp()
+                || lhsType.getSecond() != SymbolType.INT
+                || rhsType.getSecond() != SymbolType.INT
         ) {
-            return null;
+            return;
         }
 
-        var theRelOp = ctx.relOp();
-        var exprType = lhsType.getSecond();
-
-        // Since we only have int expressions that can be compared using relops right now
-        if (exprType == SymbolType.INT) {
-            // evaluate the left and right sides of the relOp expression
-            IntExprCodegen intExprCodegen = new IntExprCodegen(ctx.expr(0), symbolTable, functionGenerationContext, className, packageName);
-            intExprCodegen.doCodegen();
-
-            intExprCodegen.setExprContext(ctx.expr(1));
-            intExprCodegen.doCodegen();
-        }
-
-        Label labelToJump = new Label();
-        conditionJumpLabel = labelToJump;
-        nextLabel = new Label();
-        // save current stack map
-        var currentFrameStack = functionGenerationContext.getCurrentFrameStackInfo();
+        // evaluate the left and right sides of the relOp expression
+        IntExprCodegen intExprCodegen = new IntExprCodegen(lhs, symbolTable, functionGenerationContext, className, packageName);
+        intExprCodegen.doCodegen();
+        intExprCodegen.setExprContext(rhs);
+        intExprCodegen.doCodegen();
 
+        var theRelOp = ctx.relOp();
+        int opcode;
         if (theRelOp.GT() != null) {
-            if (lhsType.getSecond() == SymbolType.INT && rhsType.getSecond() == SymbolType.INT) {
-                int opcode = this.jumpToFalseLabel ? Opcodes.IF_ICMPLE : Opcodes.IF_ICMPGT;
-                functionGenerationContext.getMv().visitJumpInsn(opcode, labelToJump);
-            }
+            opcode = jumpIfTrue ? Opcodes.IF_ICMPGT : Opcodes.IF_ICMPLE;
         } else if (theRelOp.GTEQ() != null) {
-            if (lhsType.getSecond() == SymbolType.INT && rhsType.getSecond() == SymbolType.INT) {
-                int opcode = this.jumpToFalseLabel ? Opcodes.IF_ICMPLT : Opcodes.IF_ICMPGE;
-                functionGenerationContext.getMv().visitJumpInsn(opcode, labelToJump);
-            }
+            opcode = jumpIfTrue ? Opcodes.IF_ICMPGE : Opcodes.IF_ICMPLT;
         } else if (theRelOp.LT() != null) {
-            if (lhsType.getSecond() == SymbolType.INT && rhsType.getSecond() == SymbolType.INT) {
-                int opcode = this.jumpToFalseLabel ? Opcodes.IF_ICMPGE : Opcodes.IF_ICMPLT;
-                functionGenerationContext.getMv().visitJumpInsn(opcode, labelToJump);
-            }
+            opcode = jumpIfTrue ? Opcodes.IF_ICMPLT : Opcodes.IF_ICMPGE;
         } else if (theRelOp.LTEQ() != null) {
-            if (lhsType.getSecond() == SymbolType.INT && rhsType.getSecond() == SymbolType.INT) {
-                int opcode = this.jumpToFalseLabel ? Opcodes.IF_ICMPGE : Opcodes.IF_ICMPLT;
-                functionGenerationContext.getMv().visitJumpInsn(opcode, labelToJump);
-            }
+            opcode = jumpIfTrue ? Opcodes.IF_ICMPLE : Opcodes.IF_ICMPGT;
         } else {
             err("[Error] Unknown relational operator.");
+            return;
         }
-
-        if (!this.jumpLabelsHaveBlocks) {
-            // the argument passed in the next line
-            // is the simplification of: this.jumpToFalseLabel ? true : false
-            functionGenerationContext.getMv().visitLdcInsn(this.jumpToFalseLabel ? 1 : 0);
-
-            functionGenerationContext.getMv().visitJumpInsn(Opcodes.GOTO, nextLabel);
-            functionGenerationContext.getMv().visitLabel(labelToJump);
-            functionGenerationContext.getMv().visitFrame(
-                    Opcodes.F_NEW,
-                    currentFrameStack.numLocals, currentFrameStack.locals,
-                    currentFrameStack.numStack, currentFrameStack.stack
-            );
-
-            // the argument passed in the next line
-            // is the simplification of: this.jumpToFalseLabel ? false : true
-            functionGenerationContext.getMv().visitLdcInsn(this.jumpToFalseLabel ? 0 : 1);
-            currentFrameStack = functionGenerationContext.getCurrentFrameStackInfo();
-            functionGenerationContext.getMv().visitJumpInsn(Opcodes.GOTO, nextLabel);
-
-            functionGenerationContext.getMv().visitLabel(nextLabel);
-            // see the Javadoc about visitFrame to know what is Opcodes.F_SAME1
-            functionGenerationContext.getMv().visitFrame(
-                    Opcodes.F_NEW,
-                    currentFrameStack.numLocals, currentFrameStack.locals,
-                    currentFrameStack.numStack, currentFrameStack.stack
-            );
-        }
-
-        return null;
-    }
-
-    @Override
-    public Void visitBooleanExprOr(SamosaParser.BooleanExprOrContext ctx) {
-        // TODO: implement short circuiting
-        visit(ctx.booleanExpr(0));
-        visit(ctx.booleanExpr(1));
-        functionGenerationContext.getMv().visitInsn(Opcodes.IOR);
-        return null;
-    }
-
-    @Override
-    public Void visitBooleanExprNot(SamosaParser.BooleanExprNotContext ctx) {
-        // I couldn't find a JVM "not" instruction.
-        // So, here's a little trick: xoring anything with true gives its complement
-        visit(ctx.booleanExpr());
-        functionGenerationContext.getMv().visitLdcInsn(1);
-        functionGenerationContext.getMv().visitInsn(Opcodes.IXOR);
-        return null;
+        functionGenerationContext.getMv().visitJumpInsn(opcode, target);
     }
 
-    @Override
-    public Void visitBooleanExprCompOp(SamosaParser.BooleanExprCompOpContext ctx) {
+    private void generateCompOpCondition(SamosaParser.BooleanExprCompOpContext ctx, Label target, boolean jumpIfTrue) {
         var lhs = ctx.expr(0);
         var rhs = ctx.expr(1);
 
@@ -230,103 +288,54 @@ public class BooleanExprCodegen extends SamosaBaseVisitor<Void> implements IExpr
         // check for incompatible types
         if ((!lhsType.getFirst() || !rhsType.getFirst())
                 || (lhsType.getSecond() != rhsType.getSecond())
-                || !lhsType.getSecond().getCanBeUsedWithCompOp()
         ) {
-            return null;
+            return;
         }
 
-        var theCompOp = ctx.compOp();
         var exprType = lhsType.getSecond();
+        if (!exprType.getCanBeUsedWithCompOp()) {
+            fmtfatalerr("Cannot compare given types.", ctx.start.getLine());
+            return;
+        }
 
         // These are the types for which we support the comp ops for now
-        switch(exprType) {
+        switch (exprType) {
             case INT:
-                IntExprCodegen intExprCodegen = new IntExprCodegen(ctx.expr(0), symbolTable, functionGenerationContext, className, packageName);
+                IntExprCodegen intExprCodegen = new IntExprCodegen(lhs, symbolTable, functionGenerationContext, className, packageName);
                 intExprCodegen.doCodegen();
-                intExprCodegen.setExprContext(ctx.expr(1));
+                intExprCodegen.setExprContext(rhs);
                 intExprCodegen.doCodegen();
                 break;
             case STRING:
-                StringExprCodegen stringExprCodegen = new StringExprCodegen(ctx.expr(0), symbolTable, functionGenerationContext, className, packageName);
+                StringExprCodegen stringExprCodegen = new StringExprCodegen(lhs, symbolTable, functionGenerationContext, className, packageName);
                 stringExprCodegen.doCodegen();
-                stringExprCodegen.setExprContext(ctx.expr(1));
+                stringExprCodegen.setExprContext(rhs);
                 stringExprCodegen.doCodegen();
                 break;
             case BOOL:
-                BooleanExprCodegen booleanExprCodegen = new BooleanExprCodegen(null, symbolTable, functionGenerationContext, className, packageName);
-                booleanExprCodegen.doSpecialCodegen(ctx.expr(0));
-                booleanExprCodegen.doSpecialCodegen(ctx.expr(1));
+                doSpecialCodegen(lhs);
+                doSpecialCodegen(rhs);
                 break;
         }
 
-        Label labelToJump = new Label();
-        conditionJumpLabel = labelToJump;
-        nextLabel = new Label();
-        // save current stack map
-        var currentFrameStack = functionGenerationContext.getCurrentFrameStackInfo();
-
-        if (!exprType.getCanBeUsedWithCompOp()) {
-            fmtfatalerr("Cannot compare given types.", ctx.start.getLine());
-            return null;
-        }
-
+        var theCompOp = ctx.compOp();
+        boolean jumpIfEqual;
         if (theCompOp.COMP() != null) {
-            switch (exprType) {
-                case INT:
-                case BOOL:
-                    int opcode = Opcodes.IF_ICMPEQ;//this.jumpToFalseLabel ? Opcodes.IF_ICMPNE : Opcodes.IF_ICMPEQ;
-                    functionGenerationContext.getMv().visitJumpInsn(opcode, labelToJump);
-                    break;
-                case STRING:
-                    opcode = Opcodes.IF_ACMPEQ;//this.jumpToFalseLabel ? Opcodes.IF_ICMPNE : Opcodes.IF_ICMPEQ;
-                    functionGenerationContext.getMv().visitJumpInsn(opcode, labelToJump);
-                    break;
-            }
+            jumpIfEqual = jumpIfTrue;
         } else if (theCompOp.COMPNOTEQ() != null) {
-            switch (exprType) {
-                case INT:
-                case BOOL:
-                    int opcode = Opcodes.IF_ICMPNE;//this.jumpToFalseLabel ? Opcodes.IF_ICMPNE : Opcodes.IF_ICMPEQ;
-                    functionGenerationContext.getMv().visitJumpInsn(opcode, labelToJump);
-                    break;
-                case STRING:
-                    opcode = Opcodes.IF_ACMPNE;//this.jumpToFalseLabel ? Opcodes.IF_ICMPNE : Opcodes.IF_ICMPEQ;
-                    functionGenerationContext.getMv().visitJumpInsn(opcode, labelToJump);
-                    break;
-            }
+            jumpIfEqual = !jumpIfTrue;
         } else {
             err("[Error] Unknown relational operator.");
+            return;
         }
 
-        if (!this.jumpLabelsHaveBlocks) {
-            // the argument passed in the next line
-            // is the simplification of: this.jumpToFalseLabel ? true : false
-            functionGenerationContext.getMv().visitLdcInsn(this.jumpToFalseLabel ? 1 : 0);
-
-            functionGenerationContext.getMv().visitJumpInsn(Opcodes.GOTO, nextLabel);
-            functionGenerationContext.getMv().visitLabel(labelToJump);
-            functionGenerationContext.getMv().visitFrame(
-                    Opcodes.F_NEW,
-                    currentFrameStack.numLocals, currentFrameStack.locals,
-                    currentFrameStack.numStack, currentFrameStack.stack
-            );
-
-            // the argument passed in the next line
-            // is the simplification of: this.jumpToFalseLabel ? false : true
-            functionGenerationContext.getMv().visitLdcInsn(this.jumpToFalseLabel ? 0 : 1);
-            currentFrameStack = functionGenerationContext.getCurrentFrameStackInfo();
-            functionGenerationContext.getMv().visitJumpInsn(Opcodes.GOTO, nextLabel);
-
-            functionGenerationContext.getMv().visitLabel(nextLabel);
-            // see the Javadoc about visitFrame to know what is Opcodes.F_SAME1
-            functionGenerationContext.getMv().visitFrame(
-                    Opcodes.F_NEW,
-                    currentFrameStack.numLocals, currentFrameStack.locals,
-                    currentFrameStack.numStack, currentFrameStack.stack
-            );
+        int opcode;
+        if (exprType == SymbolType.STRING) {
+            opcode = jumpIfEqual ? Opcodes.IF_ACMPEQ : Opcodes.IF_ACMPNE;
+        } else {
+            opcode = jumpIfEqual ? Opcodes.IF_ICMPEQ : Opcodes.IF_ICMPNE;
         }
-
-        return null;
+        functionGenerationContext.getMv().visitJumpInsn(opcode, target);
     }
 
     @Override
@@ -338,7 +347,7 @@ public class BooleanExprCodegen extends SamosaBaseVisitor<Void> implements IExpr
     @Override
     public Void visitBooleanExprIdentifier(SamosaParser.BooleanExprIdentifierContext ctx) {
         String idName = ctx.IDENTIFIER().getText();
-        doIdentifierCodegen(idName, symbolTable, Type.BOOLEAN_TYPE, functionGenerationContext, qualifiedClassName, Opcodes.ILOAD);
+        doIdentifierCodegen(ctx, idName, symbolTable, Type.BOOLEAN_TYPE, functionGenerationContext, qualifiedClassName, Opcodes.ILOAD);
         return null;
     }
 
@@ -350,36 +359,19 @@ public class BooleanExprCodegen extends SamosaBaseVisitor<Void> implements IExpr
     public Void visitExprIdentifier(SamosaParser.ExprIdentifierContext ctx) {
         String idName = ctx.IDENTIFIER().getText();
         // Let's trust the static type checker here and assume that this identifier is of boolean type
-        doIdentifierCodegen(idName, symbolTable, Type.BOOLEAN_TYPE, functionGenerationContext, qualifiedClassName, Opcodes.ILOAD);
+        doIdentifierCodegen(ctx, idName, symbolTable, Type.BOOLEAN_TYPE, functionGenerationContext, qualifiedClassName, Opcodes.ILOAD);
         return null;
     }
 
     @Override
     public Void visitBooleanTrue(SamosaParser.BooleanTrueContext ctx) {
-        functionGenerationContext.getMv().visitLdcInsn(1);
+        functionGenerationContext.visitIntConstant(1);
         return null;
     }
 
     @Override
     public Void visitBooleanFalse(SamosaParser.BooleanFalseContext ctx) {
-        functionGenerationContext.getMv().visitLdcInsn(0);
-        return null;
-    }
-
-    @Override
-    public Void visitBooleanExprXor(SamosaParser.BooleanExprXorContext ctx) {
-        visit(ctx.booleanExpr(0));
-        visit(ctx.booleanExpr(1));
-        functionGenerationContext.getMv().visitInsn(Opcodes.IXOR); // TODO: TEST IF THIS WORKS!
-        return null;
-    }
-
-    @Override
-    public Void visitBooleanExprAnd(SamosaParser.BooleanExprAndContext ctx) {
-        // TODO: implement short circuiting
-        visit(ctx.booleanExpr(0));
-        visit(ctx.booleanExpr(1));
-        functionGenerationContext.getMv().visitInsn(Opcodes.IAND);
+        functionGenerationContext.visitIntConstant(0);
         return null;
     }
 
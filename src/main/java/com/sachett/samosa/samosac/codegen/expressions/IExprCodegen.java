@@ -1,17 +1,50 @@
 package com.sachett.samosa.samosac.codegen.expressions;
 
-import com.sachett.samosa.samosac.codegen.ClassFileGenerator;
+import com.sachett.samosa.parser.SamosaParser;
 import com.sachett.samosa.samosac.codegen.function.FunctionGenerationContext;
+import com.sachett.samosa.samosac.ir.Binding;
+import com.sachett.samosa.samosac.symbol.BoolSymbol;
 import com.sachett.samosa.samosac.symbol.ISymbol;
+import com.sachett.samosa.samosac.symbol.IntSymbol;
+import com.sachett.samosa.samosac.symbol.StringSymbol;
 import com.sachett.samosa.samosac.symbol.symboltable.SymbolTable;
-import kotlin.Pair;
+import org.antlr.v4.runtime.tree.ParseTree;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
 
 public interface IExprCodegen {
     void doCodegen();
 
+    /**
+     * The binding of an identifier: the one resolved by the static types checker, or else the one looked up
+     * (null if the lookup fails).
+     */
+    default Binding getIdentifierBinding(ParseTree idCtx, String idName, SymbolTable symbolTable) {
+        Binding binding = symbolTable.getTypedParseTree().getBinding(idCtx);
+        if (binding == null) {
+            binding = symbolTable.lookupBinding(idName);
+        }
+        return binding;
+    }
+
+    /**
+     * The value of an int identifier, if it refers to a constant (see Binding.isConstant), else null.
+     */
+    default Integer getIntConstantValue(SamosaParser.ExprIdentifierContext idCtx, SymbolTable symbolTable) {
+        Binding binding = getIdentifierBinding(idCtx, idCtx.IDENTIFIER().getText(), symbolTable);
+        if (binding == null || !binding.isConstant() || !(binding.getSymbol() instanceof IntSymbol)) {
+            return null;
+        }
+        return ((IntSymbol) binding.getSymbol()).getValue();
+    }
+
+    /**
+     * Loads the value of an identifier.
+     * @param idCtx     The context of the identifier expression, used to retrieve the binding resolved
+     *                  by the static types checker (if there's none, the identifier is looked up).
+     */
     default void doIdentifierCodegen(
+            ParseTree idCtx,
             String idName,
             SymbolTable symbolTable,
             Type type,
@@ -19,13 +52,33 @@ public interface IExprCodegen {
             String qualifiedClassName,
             int loadInstruction
     ) {
-        Pair<ISymbol, Integer> lookupInfo = symbolTable.lookupWithNearestScopeValue(idName);
-        if (lookupInfo.getFirst() == null) {
+        Binding binding = getIdentifierBinding(idCtx, idName, symbolTable);
+        if (binding == null) {
             // lookup failed
             return;
         }
 
-        if (lookupInfo.getSecond() == 0) {
+        if (binding.isConstant()) {
+            // the value of a constant is used in place of its field
+            ISymbol symbol = binding.getSymbol();
+            if (symbol instanceof IntSymbol) {
+                functionGenerationContext.visitIntConstant(((IntSymbol) symbol).getValue());
+            } else if (symbol instanceof BoolSymbol) {
+                functionGenerationContext.visitIntConstant(((BoolSymbol) symbol).getValue() ? 1 : 0);
+            } else if (symbol instanceof StringSymbol) {
+                functionGenerationContext.getMv().visitLdcInsn(((StringSymbol) symbol).getValue());
+            }
+            return;
+        }
+
+        String augmentedName = binding.getSymbol().getAugmentedName();
+        if (functionGenerationContext.hasLocal(augmentedName)) {
+            // a variable of the function, or a variable of the top-level code that is kept in a local
+            functionGenerationContext.getMv().visitVarInsn(
+                    loadInstruction, functionGenerationContext.getLocalVarIndex(augmentedName)
+            );
+        }
+        else if (binding.isGlobal()) {
             // we're talking about a global variable
             // that should be looked up in the symbol table without the augmented name
             // (a static field of the class during generation)
@@ -33,22 +86,19 @@ public interface IExprCodegen {
                     Opcodes.GETSTATIC, qualifiedClassName, idName, type.getDescriptor()
             );
         }
-        else if (lookupInfo.getSecond() != 0 && functionGenerationContext
-                                                .getParentClassGenerator()
-                                                .getStaticVarsAugmentedNames()
-                                                .containsKey(
-                                                        lookupInfo
-                                                                .getFirst()
-                                                                .getAugmentedName()))
+        else if (functionGenerationContext
+                        .getParentClassGenerator()
+                        .getStaticVarsAugmentedNames()
+                        .containsKey(augmentedName))
         {
             // static variable but stored in symbol table with augmented name
             functionGenerationContext.getMv().visitFieldInsn(
-                    Opcodes.GETSTATIC, qualifiedClassName, lookupInfo.getFirst().getAugmentedName(), type.getDescriptor()
+                    Opcodes.GETSTATIC, qualifiedClassName, augmentedName, type.getDescriptor()
             );
         }
         else {
-            Integer localVarIndex = functionGenerationContext.getLocalVarIndex(lookupInfo.getFirst().getAugmentedName());
-            functionGenerationContext.getMv().visitVarInsn(loadInstruction, localVarIndex);
+            // not a variable of this function: fails with an internal error
+            functionGenerationContext.getLocalVarIndex(augmentedName);
         }
     }
 }
@@ -4,7 +4,9 @@ import com.sachett.samosa.parser.SamosaBaseVisitor;
 import com.sachett.samosa.parser.SamosaParser;
 import com.sachett.samosa.samosac.codegen.function.FunctionCallCodegen;
 import com.sachett.samosa.samosac.codegen.function.FunctionGenerationContext;
+import com.sachett.samosa.samosac.staticchecker.evaluators.IntConstantFolder;
 import com.sachett.samosa.samosac.symbol.symboltable.SymbolTable;
+import org.antlr.v4.runtime.tree.ParseTree;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
 
@@ -15,6 +17,7 @@ public class IntExprCodegen extends SamosaBaseVisitor<Void> implements IExprCode
     private final String qualifiedClassName;
     private final String className;
     private final String packageName;
+    private final IntConstantFolder constantFolder;
 
     public IntExprCodegen(
             SamosaParser.ExprContext exprContext,
@@ -29,6 +32,7 @@ public class IntExprCodegen extends SamosaBaseVisitor<Void> implements IExprCode
         this.qualifiedClassName = packageName.replace(".", "/") + className;
         this.className = className;
         this.packageName = packageName;
+        this.constantFolder = new IntConstantFolder(idCtx -> getIntConstantValue(idCtx, symbolTable));
     }
 
     @Override
@@ -40,10 +44,25 @@ public class IntExprCodegen extends SamosaBaseVisitor<Void> implements IExprCode
         this.exprContext = exprContext;
     }
 
+    /**
+     * Expressions (and subexpressions) that are compile-time constants are pushed as their folded value.
+     */
+    @Override
+    public Void visit(ParseTree tree) {
+        if (tree instanceof SamosaParser.ExprContext) {
+            Integer constant = constantFolder.fold((SamosaParser.ExprContext) tree);
+            if (constant != null) {
+                functionGenerationContext.visitIntConstant(constant);
+                return null;
+            }
+        }
+        return super.visit(tree);
+    }
+
     @Override
     public Void visitExprDecint(SamosaParser.ExprDecintContext ctx) {
         int number = Integer.parseInt(ctx.DECINT().getText());
-        functionGenerationContext.getMv().visitLdcInsn(number);
+        functionGenerationContext.visitIntConstant(number);
         return null;
     }
 
@@ -103,7 +122,7 @@ public class IntExprCodegen extends SamosaBaseVisitor<Void> implements IExprCode
     @Override
     public Void visitExprIdentifier(SamosaParser.ExprIdentifierContext ctx) {
         String idName = ctx.IDENTIFIER().getText();
-        doIdentifierCodegen(idName, symbolTable, Type.INT_TYPE, functionGenerationContext, qualifiedClassName, Opcodes.ILOAD);
+        doIdentifierCodegen(ctx, idName, symbolTable, Type.INT_TYPE, functionGenerationContext, qualifiedClassName, Opcodes.ILOAD);
         return null;
     }
 
@@ -1,18 +1,44 @@
 package com.sachett.samosa.samosac.codegen.expressions;
 
-import com.sachett.samosa.logging.LoggingUtilsKt;
 import com.sachett.samosa.parser.SamosaBaseVisitor;
 import com.sachett.samosa.parser.SamosaParser;
 import com.sachett.samosa.samosac.codegen.function.FunctionCallCodegen;
 import com.sachett.samosa.samosac.codegen.function.FunctionGenerationContext;
 import com.sachett.samosa.samosac.symbol.symboltable.SymbolTable;
+import org.objectweb.asm.Handle;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 public class StringExprCodegen extends SamosaBaseVisitor<Void> implements IExprCodegen {
+    private static final Type STRING_TYPE = Type.getType(String.class);
+    private static final String STRING_BUILDER = Type.getInternalName(StringBuilder.class);
+    private static final String STRING_BUILDER_APPEND_DESCRIPTOR = "(Ljava/lang/String;)Ljava/lang/StringBuilder;";
+
+    /**
+     * The capacity a StringBuilder gets for each operand that is not a literal.
+     */
+    private static final int ESTIMATED_OPERAND_LENGTH = 16;
+
+    private static final Handle MAKE_CONCAT_WITH_CONSTANTS = new Handle(
+            Opcodes.H_INVOKESTATIC,
+            "java/lang/invoke/StringConcatFactory",
+            "makeConcatWithConstants",
+            "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;"
+                    + "Ljava/lang/String;[Ljava/lang/Object;)Ljava/lang/invoke/CallSite;",
+            false
+    );
+    private static final char RECIPE_ARG_TAG = '\u0001';
+    private static final char RECIPE_CONST_TAG = '\u0002';
+
+    /**
+     * StringConcatFactory takes at most 200 arguments; longer chains use a StringBuilder.
+     */
+    private static final int MAX_INDY_CONCAT_ARGS = 200;
+
     private SamosaParser.ExprContext exprContext;
     private final FunctionGenerationContext functionGenerationContext;
     private final SymbolTable symbolTable;
@@ -42,16 +68,14 @@ public class StringExprCodegen extends SamosaBaseVisitor<Void> implements IExprC
 
     @Override
     public Void visitExprString(SamosaParser.ExprStringContext ctx) {
-        String strText = ctx.getText();
-        String str = strText.substring(1, strText.length() - 1);
-        functionGenerationContext.getMv().visitLdcInsn(str);
+        functionGenerationContext.getMv().visitLdcInsn(literalText(ctx));
         return null;
     }
 
     @Override
     public Void visitExprIdentifier(SamosaParser.ExprIdentifierContext ctx) {
         String idName = ctx.IDENTIFIER().getText();
-        doIdentifierCodegen(idName, symbolTable, Type.getType(String.class),
+        doIdentifierCodegen(ctx, idName, symbolTable, Type.getType(String.class),
                 functionGenerationContext, qualifiedClassName, Opcodes.ALOAD);
         return super.visitExprIdentifier(ctx);
     }
@@ -60,69 +84,134 @@ public class StringExprCodegen extends SamosaBaseVisitor<Void> implements IExprC
         this.exprContext = exprContext;
     }
 
+    /**
+     * Collects the operands of a chain of concatenations (e.g. a + (b + c) + d), left to right.
+     */
+    private static void collectConcatOperands(SamosaParser.ExprContext expr, List<SamosaParser.ExprContext> operands) {
+        if (expr instanceof SamosaParser.ExprPlusContext) {
+            collectConcatOperands(((SamosaParser.ExprPlusContext) expr).expr(0), operands);
+            collectConcatOperands(((SamosaParser.ExprPlusContext) expr).expr(1), operands);
+        } else if (expr instanceof SamosaParser.ExprParenContext) {
+            collectConcatOperands(((SamosaParser.ExprParenContext) expr).expr(), operands);
+        } else {
+            operands.add(expr);
+        }
+    }
+
+    private static String literalText(SamosaParser.ExprContext expr) {
+        String strText = expr.getText();
+        return strText.substring(1, strText.length() - 1);
+    }
+
     @Override
     public Void visitExprPlus(SamosaParser.ExprPlusContext ctx) {
-        // Java equivalent:
-        // StringBuilder sb = new StringBuilder("stringLeft");
-        // sb.append("stringLeft")
-
-        // Make a StringBuilder object and duplicate it on the stack
-        // Note that we need to duplicate it ONE time because we will make three calls on it as follows:
-        // 1. <init>: pops off object ref
-        // 2. append: pops off object ref, does append, then pushes it back (see descriptor of append)
-        // 3. toString: pops off object ref, pushes string representation onto stack
-        functionGenerationContext.getMv().visitTypeInsn(Opcodes.NEW, Type.getType(StringBuilder.class).getInternalName());
-        functionGenerationContext.getMv().visitInsn(Opcodes.DUP);
-        // Process and put the left operand on the stack
-        visit(ctx.expr(0));
-
-        // Using Reflection API so that I don't have to write descriptor strings by hand
-        Constructor<StringBuilder> stringBuilderConstructor = null;
-        Method stringBuilderAppend = null;
-        Method stringBuilderToString = null;
-
-        try {
-             stringBuilderConstructor = StringBuilder.class.getConstructor(String.class);
-             stringBuilderAppend = StringBuilder.class.getMethod("append", String.class);
-             stringBuilderToString = StringBuilder.class.getMethod("toString");
-        } catch (NoSuchMethodException e) {
-            LoggingUtilsKt.err(String.valueOf(e));
+        // The whole chain of concatenations is generated at once, with adjacent literals merged.
+        // Each element of the parts is either a String (a literal) or an ExprContext (evaluated at runtime).
+        List<SamosaParser.ExprContext> operands = new ArrayList<>();
+        collectConcatOperands(ctx, operands);
+
+        List<Object> parts = new ArrayList<>();
+        int dynamicParts = 0;
+        for (SamosaParser.ExprContext operand : operands) {
+            if (operand instanceof SamosaParser.ExprStringContext) {
+                String literal = literalText(operand);
+                int last = parts.size() - 1;
+                if (last >= 0 && parts.get(last) instanceof String) {
+                    parts.set(last, parts.get(last) + literal);
+                } else {
+                    parts.add(literal);
+                }
+            } else {
+                parts.add(operand);
+                dynamicParts++;
+            }
         }
 
-        // Invoke the constructor of StringBuilder with the left operand
-        assert stringBuilderConstructor != null;
-        functionGenerationContext.getMv().visitMethodInsn(
-                Opcodes.INVOKESPECIAL,
-                Type.getType(StringBuilder.class).getInternalName(),
-                "<init>",
-                Type.getConstructorDescriptor(stringBuilderConstructor),
-                false
+        if (dynamicParts == 0) {
+            // only literals: the result is a constant
+            functionGenerationContext.getMv().visitLdcInsn(parts.isEmpty() ? "" : parts.get(0));
+            return null;
+        }
+
+        if (functionGenerationContext.getParentClassGenerator().getCodegenOptions().getTarget().getHasIndyStringConcat()
+                && dynamicParts <= MAX_INDY_CONCAT_ARGS) {
+            generateIndyConcat(parts, dynamicParts);
+        } else {
+            generateStringBuilderConcat(parts, dynamicParts);
+        }
+        return null;
+    }
+
+    /**
+     * Concatenates with a single StringConcatFactory.makeConcatWithConstants call site: the literals are a part of
+     * the recipe and the other operands are its arguments.
+     */
+    private void generateIndyConcat(List<Object> parts, int dynamicParts) {
+        StringBuilder recipe = new StringBuilder();
+        List<Object> recipeConstants = new ArrayList<>();
+        for (Object part : parts) {
+            if (part instanceof String) {
+                String literal = (String) part;
+                if (literal.indexOf(RECIPE_ARG_TAG) >= 0 || literal.indexOf(RECIPE_CONST_TAG) >= 0) {
+                    // the tag characters cannot appear in the recipe itself
+                    recipe.append(RECIPE_CONST_TAG);
+                    recipeConstants.add(literal);
+                } else {
+                    recipe.append(literal);
+                }
+            } else {
+                visit((SamosaParser.ExprContext) part);
+                recipe.append(RECIPE_ARG_TAG);
+            }
+        }
+
+        Object[] bootstrapArgs = new Object[recipeConstants.size() + 1];
+        bootstrapArgs[0] = recipe.toString();
+        for (int i = 0; i < recipeConstants.size(); i++) {
+            bootstrapArgs[i + 1] = recipeConstants.get(i);
+        }
+
+        Type[] argTypes = new Type[dynamicParts];
+        Arrays.fill(argTypes, STRING_TYPE);
+        functionGenerationContext.getMv().visitInvokeDynamicInsn(
+                "makeConcatWithConstants",
+                Type.getMethodDescriptor(STRING_TYPE, argTypes),
+                MAKE_CONCAT_WITH_CONSTANTS,
+                bootstrapArgs
         );
+    }
 
-        // Now process the right operand and put it on the stack
-        visit(ctx.expr(1));
+    /**
+     * Concatenates with a single StringBuilder, sized for the literals and (an estimate of) the other operands.
+     */
+    private void generateStringBuilderConcat(List<Object> parts, int dynamicParts) {
+        int capacity = dynamicParts * ESTIMATED_OPERAND_LENGTH;
+        for (Object part : parts) {
+            if (part instanceof String) {
+                capacity += ((String) part).length();
+            }
+        }
 
-        // Now invoke append on the StringBuilder object with the right operand
-        assert stringBuilderAppend != null;
+        functionGenerationContext.getMv().visitTypeInsn(Opcodes.NEW, STRING_BUILDER);
+        functionGenerationContext.getMv().visitInsn(Opcodes.DUP);
+        functionGenerationContext.visitIntConstant(capacity);
         functionGenerationContext.getMv().visitMethodInsn(
-                Opcodes.INVOKEVIRTUAL,
-                Type.getType(StringBuilder.class).getInternalName(),
-                "append",
-                Type.getMethodDescriptor(stringBuilderAppend),
-                false
+                Opcodes.INVOKESPECIAL, STRING_BUILDER, "<init>", "(I)V", false
         );
-
-        // Now get the string representation using toString()
-        assert stringBuilderToString != null;
+        for (Object part : parts) {
+            if (part instanceof String) {
+                functionGenerationContext.getMv().visitLdcInsn(part);
+            } else {
+                visit((SamosaParser.ExprContext) part);
+            }
+            // append returns the builder, which stays on the stack for the next operand
+            functionGenerationContext.getMv().visitMethodInsn(
+                    Opcodes.INVOKEVIRTUAL, STRING_BUILDER, "append", STRING_BUILDER_APPEND_DESCRIPTOR, false
+            );
+        }
         functionGenerationContext.getMv().visitMethodInsn(
-                Opcodes.INVOKEVIRTUAL,
-                Type.getType(StringBuilder.class).getInternalName(),
-                "toString",
-                Type.getMethodDescriptor(stringBuilderToString),
-                false
+                Opcodes.INVOKEVIRTUAL, STRING_BUILDER, "toString", "()Ljava/lang/String;", false
         );
-
-        return null;
     }
 
     @Override
@@ -1,22 +1,28 @@
 package com.sachett.samosa.samosac.codegen.function;
 
 import com.sachett.samosa.builtins.Builtins;
+import com.sachett.samosa.logging.CompilationFailedException;
 import com.sachett.samosa.logging.LoggingUtilsKt;
 import com.sachett.samosa.parser.SamosaParser;
+import com.sachett.samosa.samosac.codegen.ClassFileGenerator;
 import com.sachett.samosa.samosac.codegen.expressions.BooleanExprCodegen;
 import com.sachett.samosa.samosac.codegen.expressions.IntExprCodegen;
 import com.sachett.samosa.samosac.codegen.expressions.StringExprCodegen;
 import com.sachett.samosa.samosac.codegen.utils.delegation.CodegenDelegatable;
+import com.sachett.samosa.samosac.ir.ResolvedCall;
 import com.sachett.samosa.samosac.staticchecker.ExpressionTypeDetector;
 import com.sachett.samosa.samosac.symbol.FunctionSymbol;
 import com.sachett.samosa.samosac.symbol.ISymbol;
 import com.sachett.samosa.samosac.symbol.SymbolType;
 import com.sachett.samosa.samosac.symbol.symboltable.SymbolTable;
 import kotlin.Pair;
+import org.antlr.v4.runtime.ParserRuleContext;
 import org.objectweb.asm.Opcodes;
 
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.function.Supplier;
 
 public class FunctionCallCodegen extends CodegenDelegatable {
     private final SymbolTable symbolTable;
@@ -42,48 +48,86 @@ public class FunctionCallCodegen extends CodegenDelegatable {
         this.packageName = packageName;
     }
 
-    public void doNoArgFunctionCallCodegen(SamosaParser.FunctionCallNoArgsContext ctx, boolean discardResult) {
+    /**
+     * Returns the function the call resolves to. The resolution done by the static types checker is used if
+     * there is one, otherwise the function is looked up in this class and then in the builtins.
+     * @param ctx                   The FunctionCallNoArgsContext or FunctionCallWithArgsContext.
+     * @param funcName              The name of the called function.
+     * @param builtinDescriptor     Supplies the (partial) descriptor of the builtin overload to look up.
+     * @return  The resolved call, or null if the function could not be found.
+     */
+    private ResolvedCall resolveCall(
+            ParserRuleContext ctx, String funcName, Supplier<String> builtinDescriptor
+    ) {
+        ResolvedCall resolvedCall = symbolTable.getTypedParseTree().getCall(ctx);
+        if (resolvedCall != null) {
+            return resolvedCall;
+        }
+
         // first try to find the function within this class
-        String funcName = ctx.IDENTIFIER().getText();
         ISymbol functionSymbol = symbolTable.lookupInCoordinates(funcName, new Pair<>(0, 0));
-
-        if (functionSymbol == null) {
+        if (functionSymbol instanceof FunctionSymbol) {
+            resolvedCall = new ResolvedCall((FunctionSymbol) functionSymbol, null);
+        } else if (functionSymbol == null) {
             // TODO: find in the imported packages
 
             // builtins:
-            var expectedDescriptor = "()";
-            var theFunc = symbolTable.lookupBuiltinFunctionMatchingOverload(
-                    funcName, expectedDescriptor
-            );
-
-            if (theFunc == null) {
-                return;
+            var theFunc = symbolTable.lookupBuiltinFunctionMatchingOverload(funcName, builtinDescriptor.get());
+            if (theFunc != null) {
+                resolvedCall = new ResolvedCall(theFunc.getFirst(), theFunc.getSecond());
             }
+        }
 
-            Method theBuiltin = theFunc.getSecond();
+        if (resolvedCall != null) {
+            symbolTable.getTypedParseTree().setCall(ctx, resolvedCall);
+        }
+        return resolvedCall;
+    }
+
+    public void doNoArgFunctionCallCodegen(SamosaParser.FunctionCallNoArgsContext ctx, boolean discardResult) {
+        String funcName = ctx.IDENTIFIER().getText();
+        ResolvedCall resolvedCall = resolveCall(ctx, funcName, () -> "()");
+
+        if (resolvedCall == null) {
+            return;
+        }
+
+        if (resolvedCall.isBuiltin()) {
+            Method theBuiltin = resolvedCall.getBuiltin();
             Builtins.Functions.FunctionArgsLoader argsLoader = () -> {};
-            try {
-                setBuiltinCodegenParams(theBuiltin);
-                theBuiltin.invoke(null, argsLoader, functionGenerationContext);
-            } catch (Exception e) {
-                e.printStackTrace();
-                System.exit(-1);
-            }
+            setBuiltinCodegenParams(theBuiltin);
+            invokeBuiltinCodegen(theBuiltin, argsLoader);
         }
-        else if (functionSymbol instanceof FunctionSymbol) {
+        else {
             // the function exists in this class
             // currently all generated methods are static in this class
-            functionGenerationContext.getMv().visitMethodInsn(
-                    Opcodes.INVOKESTATIC,
-                    functionOwner,
-                    funcName,
-                    FunctionGenerationContext.generateDescriptor((FunctionSymbol) functionSymbol),
-                    false
-            );
+            if (!inlineCall(resolvedCall.getFunctionSymbol(), ctx)) {
+                functionGenerationContext.getMv().visitMethodInsn(
+                        Opcodes.INVOKESTATIC,
+                        functionOwner,
+                        funcName,
+                        FunctionGenerationContext.generateDescriptor(resolvedCall.getFunctionSymbol()),
+                        false
+                );
+            }
         }
     }
 
-    private void pushArgumentsToStack(FunctionSymbol funcSymbol, SamosaParser.FunctionCallWithArgsContext ctx) {
+    /**
+     * Inlines the call of a function of this class (whose arguments are on the stack), if inlining is enabled and
+     * the function can be inlined (see FunctionInliner).
+     * @return  <code>true</code> if the call was inlined.
+     */
+    private boolean inlineCall(FunctionSymbol funcSymbol, ParserRuleContext ctx) {
+        ClassFileGenerator classFileGenerator = functionGenerationContext.getParentClassGenerator();
+        FunctionInliner functionInliner = classFileGenerator == null ? null : classFileGenerator.getFunctionInliner();
+        return functionInliner != null && functionInliner.inlineCall(functionGenerationContext, funcSymbol, ctx);
+    }
+
+    /**
+     * Pushes the arguments of the call to the stack, in the order of the parameters of the function.
+     */
+    public void pushArgumentsToStack(FunctionSymbol funcSymbol, SamosaParser.FunctionCallWithArgsContext ctx) {
         int normalParamCounter = 0;
         int booleanParamCounter = 0;
         int argsPushed = 0;
@@ -98,7 +142,7 @@ public class FunctionCallCodegen extends CodegenDelegatable {
                     // We need to check if the normalPassedParams contains a boolean expr disguised as a normal one
                     // This can happen if it's just a single function call or an identifier with no boolean ops
 
-                    if (normalPassedParams.size() > 0) {
+                    if (normalParamCounter < normalPassedParams.size()) {
                         ExpressionTypeDetector typeDetector = new ExpressionTypeDetector(symbolTable);
                         var typeDetectionResult = typeDetector.getType(
                                 normalPassedParams.get(normalParamCounter)
@@ -145,6 +189,25 @@ public class FunctionCallCodegen extends CodegenDelegatable {
         }
     }
 
+    /**
+     * Invokes the codegen method of a builtin function.
+     * Fatal errors reported by the builtin's codegen are propagated as is.
+     */
+    private void invokeBuiltinCodegen(Method theBuiltin, Builtins.Functions.FunctionArgsLoader argsLoader) {
+        try {
+            theBuiltin.invoke(null, argsLoader, functionGenerationContext);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof CompilationFailedException) {
+                throw (CompilationFailedException) e.getCause();
+            }
+            e.printStackTrace();
+            LoggingUtilsKt.err("Internal error: Codegen for builtin function " + theBuiltin.getName() + " failed.");
+        } catch (IllegalAccessException e) {
+            e.printStackTrace();
+            LoggingUtilsKt.err("Internal error: Codegen for builtin function " + theBuiltin.getName() + " failed.");
+        }
+    }
+
     private void setBuiltinCodegenParams(Method theBuiltin) {
         if (theBuiltin.isAnnotationPresent(Builtins.Functions.RequiresCodegenParams.class)) {
             if (!theBuiltin.isAnnotationPresent(Builtins.Functions.SamosaBuiltinFuncName.class)) {
@@ -158,7 +221,7 @@ public class FunctionCallCodegen extends CodegenDelegatable {
             // Extend this as required.
             switch (samosaFuncName) {
                 case "main":
-                    Builtins.Functions.Utils.setBuiltinFunctionCodegenParams(
+                    functionGenerationContext.setBuiltinFunctionCodegenParams(
                             new Builtins.Functions.GotoBeginningParams(className)
                     );
             }
@@ -166,53 +229,43 @@ public class FunctionCallCodegen extends CodegenDelegatable {
     }
 
     public void doWithArgFunctionCallCodegen(SamosaParser.FunctionCallWithArgsContext ctx, boolean discardResult) {
-        // first try to find the function within this class
         String funcName = ctx.IDENTIFIER().getText();
-        ISymbol functionSymbol = symbolTable.lookupInCoordinates(funcName, new Pair<>(0, 0));
+        ResolvedCall resolvedCall = resolveCall(
+                ctx, funcName, () -> Builtins.Functions.Utils.ctxToDescriptor(ctx, symbolTable)
+        );
+
+        if (resolvedCall == null) {
+            return;
+        }
 
         var stackSize = functionGenerationContext.getAnalyzerAdapter().stack != null ?
                 functionGenerationContext.getAnalyzerAdapter().stack.size() : 0;
 
-        if (functionSymbol == null) {
-            // TODO: find in the imported packages
-
-            // builtins:
-            var expectedDescriptor = Builtins.Functions.Utils.ctxToDescriptor(ctx, symbolTable);
-            var theFunc = symbolTable.lookupBuiltinFunctionMatchingOverload(
-                    funcName, expectedDescriptor
-            );
-
-            if (theFunc == null) {
-                return;
-            }
-
-            Method theBuiltin = theFunc.getSecond();
+        if (resolvedCall.isBuiltin()) {
+            Method theBuiltin = resolvedCall.getBuiltin();
             Builtins.Functions.FunctionArgsLoader argsLoader = () -> {
-                pushArgumentsToStack(theFunc.getFirst(), ctx);
+                pushArgumentsToStack(resolvedCall.getFunctionSymbol(), ctx);
             };
-            try {
-                setBuiltinCodegenParams(theBuiltin);
-                theBuiltin.invoke(null, argsLoader, functionGenerationContext);
-            } catch (Exception e) {
-                e.printStackTrace();
-                System.exit(-1);
-            }
+            setBuiltinCodegenParams(theBuiltin);
+            invokeBuiltinCodegen(theBuiltin, argsLoader);
         }
-        else if (functionSymbol instanceof FunctionSymbol) {
+        else {
             // the function exists in this class
             // currently all generated methods are static in this class
 
-            var funcSymbol = (FunctionSymbol) functionSymbol;
+            var funcSymbol = resolvedCall.getFunctionSymbol();
             // first push its arguments to the stack
             pushArgumentsToStack(funcSymbol, ctx);
 
-            functionGenerationContext.getMv().visitMethodInsn(
-                    Opcodes.INVOKESTATIC,
-                    functionOwner,
-                    funcName,
-                    FunctionGenerationContext.generateDescriptor(funcSymbol),
-                    false
-            );
+            if (!inlineCall(funcSymbol, ctx)) {
+                functionGenerationContext.getMv().visitMethodInsn(
+                        Opcodes.INVOKESTATIC,
+                        functionOwner,
+                        funcName,
+                        FunctionGenerationContext.generateDescriptor(funcSymbol),
+                        false
+                );
+            }
         }
 
         if (discardResult) {
@@ -1,57 +1,114 @@
 package com.sachett.samosa.samosac.codegen.function;
 
+import com.sachett.samosa.builtins.Builtins;
 import com.sachett.samosa.samosac.codegen.ClassFileGenerator;
+import com.sachett.samosa.samosac.codegen.peephole.PeepholeOptimizer;
 import com.sachett.samosa.samosac.symbol.FunctionSymbol;
 import com.sachett.samosa.samosac.symbol.ISymbol;
 import org.apache.bcel.util.ClassPath;
+import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
 import org.objectweb.asm.commons.AnalyzerAdapter;
+import org.objectweb.asm.commons.CodeSizeEvaluator;
 import org.objectweb.asm.commons.LocalVariablesSorter;
 
 import java.util.HashMap;
 
 import com.sachett.samosa.logging.LoggingUtilsKt;
-import org.objectweb.asm.util.TraceClassVisitor;
 
 public class FunctionGenerationContext {
+    private final String methodName;
     private final MethodVisitor methodVisitor;
-    private final LocalVariablesSorter localVariablesSorter;
+    private final LocalsSorter localVariablesSorter;
     private final AnalyzerAdapter analyzerAdapter;
+    private final CodeSizeEvaluator codeSizeEvaluator;
     private final HashMap<String, Integer> localVariableIndex = new HashMap<>();
     private ClassFileGenerator parentClassGenerator = null;
 
+    /* The first free local slot for the locals allocated with newScopedLocal */
+    private int nextScopedLocal;
+
+    /* The source line of the code being generated, as last marked with visitLineNumber */
+    private int currentLine = -1;
+
     /**
      * Indicates if the function needs a RETURN instruction (with no expression)
      * at the end of the function visit.
      */
     private boolean needsNoExprReturn = false;
 
+    /**
+     * Extra parameters for the builtin function whose codegen is currently being invoked in this context.
+     * Kept per context (instead of globally) so that multiple classes can be generated in parallel.
+     */
+    private Builtins.Functions.IBuiltinFunctionCodegenParams builtinFunctionCodegenParams = null;
+
+    /**
+     * A LocalVariablesSorter that tells the next local it allocates.
+     */
+    private static class LocalsSorter extends LocalVariablesSorter {
+        LocalsSorter(int access, String descriptor, MethodVisitor methodVisitor) {
+            super(Opcodes.ASM9, access, descriptor, methodVisitor);
+        }
+
+        int getNextLocal() {
+            return nextLocal;
+        }
+    }
+
     public FunctionGenerationContext(
             ClassWriter classWriter,
             int access, String name, String descriptor,
             String signature, String[] exceptions
     ) {
+        this.methodName = name;
         this.methodVisitor = classWriter.visitMethod(access, name, descriptor, signature, exceptions);
+        codeSizeEvaluator = new CodeSizeEvaluator(this.methodVisitor);
         analyzerAdapter = new AnalyzerAdapter(
                 FunctionGenerationContext.class.getName(),
-                access, name, descriptor, this.methodVisitor
+                access, name, descriptor, new ReachableCodeFilter(codeSizeEvaluator)
         );
-        localVariablesSorter = new LocalVariablesSorter(access, descriptor, analyzerAdapter);
+        localVariablesSorter = new LocalsSorter(access, descriptor, analyzerAdapter);
+        nextScopedLocal = firstLocal(access, descriptor);
     }
 
     public FunctionGenerationContext(
-            TraceClassVisitor classWriter,
+            ClassVisitor classWriter,
             int access, String name, String descriptor,
             String signature, String[] exceptions
     ) {
-        this.methodVisitor = classWriter.visitMethod(access, name, descriptor, signature, exceptions);
+        this(classWriter, access, name, descriptor, signature, exceptions, null);
+    }
+
+    /**
+     * @param peepholeOptimizer If not null, the method is buffered and optimized by it before it is written
+     *                          to the class (at the visitEnd of the method).
+     */
+    public FunctionGenerationContext(
+            ClassVisitor classWriter,
+            int access, String name, String descriptor,
+            String signature, String[] exceptions,
+            PeepholeOptimizer peepholeOptimizer
+    ) {
+        this.methodName = name;
+        this.methodVisitor = peepholeOptimizer == null
+                ? classWriter.visitMethod(access, name, descriptor, signature, exceptions)
+                : peepholeOptimizer.bufferMethod(classWriter, access, name, descriptor, signature, exceptions);
+        codeSizeEvaluator = new CodeSizeEvaluator(this.methodVisitor);
         analyzerAdapter = new AnalyzerAdapter(
                 FunctionGenerationContext.class.getName(),
-                access, name, descriptor, this.methodVisitor
+                access, name, descriptor, new ReachableCodeFilter(codeSizeEvaluator)
         );
-        localVariablesSorter = new LocalVariablesSorter(access, descriptor, this.methodVisitor);
+        localVariablesSorter = new LocalsSorter(access, descriptor, this.methodVisitor);
+        nextScopedLocal = firstLocal(access, descriptor);
+    }
+
+    public String getMethodName() {
+        return methodName;
     }
 
     public MethodVisitor getMethodVisitor() {
@@ -66,6 +123,14 @@ public class FunctionGenerationContext {
         return analyzerAdapter;
     }
 
+    /**
+     * The size in bytes of the bytecode generated in this context so far, at most (before the peephole passes,
+     * if any, and counting every jump as a wide one).
+     */
+    public int getCodeSize() {
+        return codeSizeEvaluator.getMaxSize();
+    }
+
     public void setParentClassGenerator(ClassFileGenerator classFileGenerator) {
         this.parentClassGenerator = classFileGenerator;
     }
@@ -86,6 +151,19 @@ public class FunctionGenerationContext {
             this.numStack = numStack;
             this.stack = stack;
         }
+
+        /**
+         * The same locals, with one more value of the given type on top of the stack.
+         * Useful when the code before the label it is needed for may be unreachable (and so has no frame to read).
+         */
+        public FrameStackMap withPushed(Object type) {
+            Object[] newStack = new Object[numStack + 1];
+            if (stack != null) {
+                System.arraycopy(stack, 0, newStack, 0, numStack);
+            }
+            newStack[numStack] = type;
+            return new FrameStackMap(numLocals, locals, numStack + 1, newStack);
+        }
     }
 
     /**
@@ -101,6 +179,51 @@ public class FunctionGenerationContext {
         return new FrameStackMap(localsSize, locals, stackSize, stack);
     }
 
+    /**
+     * Visits a stack map frame with the given locals and stack (after a visitLabel call).
+     * Frames are not computed by the class writer, so every label that is jumped to needs one.
+     * @param frameStackMap Locals and stack at the label, as retrieved with getCurrentFrameStackInfo()
+     */
+    public void visitFrame(FrameStackMap frameStackMap) {
+        analyzerAdapter.visitFrame(
+                Opcodes.F_NEW,
+                frameStackMap.numLocals, frameStackMap.locals,
+                frameStackMap.numStack, frameStackMap.stack
+        );
+    }
+
+    /**
+     * Marks the code generated from here on as generated for the given source line (in the LineNumberTable).
+     * Used for the stack traces of the program and to report verification errors against the source.
+     * @param line  Line number in the samosa source.
+     */
+    public void visitLineNumber(int line) {
+        if (line == currentLine) {
+            return;
+        }
+        currentLine = line;
+        Label lineStart = new Label();
+        analyzerAdapter.visitLabel(lineStart);
+        analyzerAdapter.visitLineNumber(line, lineStart);
+    }
+
+    /**
+     * Pushes an int constant with the smallest instruction that can hold it
+     * (ICONST_M1 to ICONST_5, BIPUSH, SIPUSH, or LDC from the constant pool).
+     * @param value The constant.
+     */
+    public void visitIntConstant(int value) {
+        if (value >= -1 && value <= 5) {
+            getMv().visitInsn(Opcodes.ICONST_0 + value);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            getMv().visitIntInsn(Opcodes.BIPUSH, value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            getMv().visitIntInsn(Opcodes.SIPUSH, value);
+        } else {
+            getMv().visitLdcInsn(value);
+        }
+    }
+
     public LocalVariablesSorter getLocalVariablesSorter() {
         return localVariablesSorter;
     }
@@ -113,6 +236,60 @@ public class FunctionGenerationContext {
         localVariableIndex.put(name, index);
     }
 
+    /**
+     * Whether a local has been allocated or registered with the given name.
+     */
+    public boolean hasLocal(String name) {
+        return localVariableIndex.containsKey(name);
+    }
+
+    /**
+     * Allocates a local whose slot is freed by releaseScopedLocals, for the next locals to reuse.
+     * Not to be mixed with newLocal in the same method (the two allocate slots independently).
+     */
+    public void newScopedLocal(String name, Type type) {
+        localVariableIndex.put(name, nextScopedLocal);
+        nextScopedLocal += type.getSize();
+    }
+
+    /**
+     * The mark to pass to releaseScopedLocals at the end of a scope, to free the locals allocated in it.
+     */
+    public int getScopedLocalsMark() {
+        return nextScopedLocal;
+    }
+
+    /**
+     * Frees the locals allocated with newScopedLocal since the mark was taken. They are also dropped from the
+     * current frame, so that the frames of the code after the scope don't keep their types: the next locals can
+     * reuse their slots with other types.
+     */
+    public void releaseScopedLocals(int mark) {
+        localVariableIndex.values().removeIf(index -> index >= mark && index < nextScopedLocal);
+        nextScopedLocal = mark;
+        if (analyzerAdapter.locals != null) {
+            while (analyzerAdapter.locals.size() > mark) {
+                analyzerAdapter.locals.remove(analyzerAdapter.locals.size() - 1);
+            }
+        }
+    }
+
+    /**
+     * Allocates slots past every local allocated so far (with newLocal or newScopedLocal), for code that is copied
+     * into the method (see FunctionInliner). They are freed with releaseScopedLocals, given the first of them.
+     * @return  The first of the slots.
+     */
+    public int newSplicedLocals(int size) {
+        int first = Math.max(nextScopedLocal, localVariablesSorter.getNextLocal());
+        nextScopedLocal = first + size;
+        return first;
+    }
+
+    private static int firstLocal(int access, String descriptor) {
+        int argumentsSize = Type.getArgumentsAndReturnSizes(descriptor) >> 2;
+        return (access & Opcodes.ACC_STATIC) != 0 ? argumentsSize - 1 : argumentsSize;
+    }
+
     static public String generateDescriptor(FunctionSymbol functionSymbol) {
         StringBuilder descriptorString = new StringBuilder("(");
 
@@ -165,4 +342,12 @@ public class FunctionGenerationContext {
     public boolean getNeedsNoExprReturn() {
         return this.needsNoExprReturn;
     }
+
+    public void setBuiltinFunctionCodegenParams(Builtins.Functions.IBuiltinFunctionCodegenParams params) {
+        this.builtinFunctionCodegenParams = params;
+    }
+
+    public Builtins.Functions.IBuiltinFunctionCodegenParams getBuiltinFunctionCodegenParams() {
+        return this.builtinFunctionCodegenParams;
+    }
 }
@@ -0,0 +1,346 @@
+package com.sachett.samosa.samosac.codegen.function;
+
+import com.sachett.samosa.samosac.symbol.FunctionSymbol;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.CodeSizeEvaluator;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.FrameNode;
+import org.objectweb.asm.tree.IincInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.VarInsnNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Inlines the calls of small functions (see CompilerOptions: --inline), so that they don't take from the inlining
+ * budget of the JIT, which does not inline into big methods (like the main of a generated program) at all.
+ *
+ * The methods of the functions are recorded as they are written to the class (the inliner is the class visitor of
+ * their FunctionGenerationContexts). A function can be inlined if its method has at most the budget in bytes of
+ * bytecode and does not call itself: then FunctionCallCodegen calls inlineCall instead of generating an INVOKESTATIC.
+ * The code of the method is copied into the calling method: the arguments are stored into fresh locals, that the
+ * copy uses in place of the parameters and the locals of the function, and the returns jump to the end of the copy,
+ * with the returned value on the stack. A function is always defined before it is called, so its method is complete
+ * by the time of its calls.
+ *
+ * An inliner is meant to be used for a single class, by the thread that generates it.
+ */
+public class FunctionInliner extends ClassVisitor {
+    private final ClassVisitor classVisitor;
+    private final String owner;
+    private final int budget;
+
+    /* (method name + descriptor) -> the function that can be inlined */
+    private final HashMap<String, InlineCandidate> candidates = new HashMap<>();
+
+    private final ArrayList<InlinedCall> inlinedCalls = new ArrayList<>();
+
+    private static class InlineCandidate {
+        final MethodNode method;
+        final int size;
+        final int maxLocals;
+
+        InlineCandidate(MethodNode method, int size, int maxLocals) {
+            this.method = method;
+            this.size = size;
+            this.maxLocals = maxLocals;
+        }
+    }
+
+    /**
+     * A call site that was inlined, for the stats.
+     */
+    public static class InlinedCall {
+        public final int line;
+        public final int column;
+        public final String caller;
+        public final String callee;
+        public final int bytes;
+
+        public InlinedCall(int line, int column, String caller, String callee, int bytes) {
+            this.line = line;
+            this.column = column;
+            this.caller = caller;
+            this.callee = callee;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * @param classVisitor  The class visitor the methods are written to.
+     * @param owner         The internal name of the class.
+     * @param budget        The size in bytes of bytecode up to which the methods of the functions are inlined.
+     */
+    public FunctionInliner(ClassVisitor classVisitor, String owner, int budget) {
+        super(Opcodes.ASM9, classVisitor);
+        this.classVisitor = classVisitor;
+        this.owner = owner;
+        this.budget = budget;
+    }
+
+    /**
+     * Returns a method visitor that records the method, and writes it to the class visitor (at visitEnd).
+     */
+    @Override
+    public MethodVisitor visitMethod(
+            int access, String name, String descriptor, String signature, String[] exceptions
+    ) {
+        return new MethodNode(Opcodes.ASM9, access, name, descriptor, signature, exceptions) {
+            @Override
+            public void visitEnd() {
+                super.visitEnd();
+                record(this);
+                accept(classVisitor);
+            }
+        };
+    }
+
+    /**
+     * The calls that were inlined so far, in the order they were generated.
+     */
+    public List<InlinedCall> getInlinedCalls() {
+        return Collections.unmodifiableList(inlinedCalls);
+    }
+
+    private void record(MethodNode method) {
+        if (!method.tryCatchBlocks.isEmpty()) {
+            return;
+        }
+
+        int maxLocals = (Type.getArgumentsAndReturnSizes(method.desc) >> 2) - 1;
+        for (AbstractInsnNode insn : method.instructions) {
+            if (insn instanceof MethodInsnNode) {
+                MethodInsnNode methodInsn = (MethodInsnNode) insn;
+                if (methodInsn.owner.equals(owner) && methodInsn.name.equals(method.name)
+                        && methodInsn.desc.equals(method.desc)) {
+                    return; // recursive
+                }
+            } else if (insn instanceof FrameNode && ((FrameNode) insn).type != Opcodes.F_NEW) {
+                return; // the frames are only remapped in their expanded form
+            } else if (insn instanceof VarInsnNode) {
+                int opcode = insn.getOpcode();
+                boolean isWide = opcode == Opcodes.LLOAD || opcode == Opcodes.DLOAD
+                        || opcode == Opcodes.LSTORE || opcode == Opcodes.DSTORE;
+                maxLocals = Math.max(maxLocals, ((VarInsnNode) insn).var + (isWide ? 2 : 1));
+            } else if (insn instanceof IincInsnNode) {
+                maxLocals = Math.max(maxLocals, ((IincInsnNode) insn).var + 1);
+            }
+        }
+
+        CodeSizeEvaluator codeSizeEvaluator = new CodeSizeEvaluator(null);
+        method.instructions.accept(codeSizeEvaluator);
+        int size = codeSizeEvaluator.getMaxSize();
+        if (size > budget) {
+            return;
+        }
+        candidates.put(method.name + method.desc, new InlineCandidate(method, size, maxLocals));
+    }
+
+    /**
+     * Inlines a call of the function, whose arguments have been pushed to the stack, if the function can be inlined.
+     * @param callCtx   The FunctionCallNoArgsContext or FunctionCallWithArgsContext of the call (for the stats).
+     * @return  <code>true</code> if the call was inlined, <code>false</code> if it is still to be generated.
+     */
+    public boolean inlineCall(
+            FunctionGenerationContext functionGenerationContext, FunctionSymbol functionSymbol,
+            ParserRuleContext callCtx
+    ) {
+        String descriptor = FunctionGenerationContext.generateDescriptor(functionSymbol);
+        InlineCandidate candidate = candidates.get(functionSymbol.getName() + descriptor);
+        if (candidate == null || functionGenerationContext.getAnalyzerAdapter().locals == null) {
+            // not inlinable, or a call in unreachable code (which has no frame to build the frames of the copy on)
+            return false;
+        }
+
+        MethodVisitor mv = functionGenerationContext.getMv();
+        int firstLocal = functionGenerationContext.newSplicedLocals(candidate.maxLocals);
+
+        // the arguments are on the stack, the last one on top
+        Type[] argumentTypes = Type.getArgumentTypes(descriptor);
+        int[] argumentSlots = new int[argumentTypes.length];
+        int slot = 0;
+        for (int i = 0; i < argumentTypes.length; i++) {
+            argumentSlots[i] = slot;
+            slot += argumentTypes[i].getSize();
+        }
+        for (int i = argumentTypes.length - 1; i >= 0; i--) {
+            mv.visitVarInsn(argumentTypes[i].getOpcode(Opcodes.ISTORE), firstLocal + argumentSlots[i]);
+        }
+
+        FunctionGenerationContext.FrameStackMap callerFrame = functionGenerationContext.getCurrentFrameStackInfo();
+        Label end = new Label();
+        InliningMethodVisitor inliningMethodVisitor = new InliningMethodVisitor(mv, firstLocal, callerFrame, end);
+
+        AbstractInsnNode lastInsn = candidate.method.instructions.getLast();
+        while (lastInsn != null && lastInsn.getOpcode() < 0) {
+            lastInsn = lastInsn.getPrevious();
+        }
+        for (AbstractInsnNode node : candidate.method.instructions) {
+            if (node == candidate.method.instructions.getFirst() && argumentTypes.length == 0 && startsWithFrame(node)) {
+                // a method can only have one frame per offset, and the calling code may have one right here
+                mv.visitInsn(Opcodes.NOP);
+            }
+            if (node == lastInsn && isReturn(node)) {
+                continue; // the end of the copy is right after it
+            }
+            node.accept(inliningMethodVisitor);
+        }
+
+        mv.visitLabel(end);
+        if (inliningMethodVisitor.jumpsToEnd) {
+            Object[] locals = new Object[Math.min(firstLocal, callerFrame.numLocals)];
+            System.arraycopy(callerFrame.locals, 0, locals, 0, locals.length);
+            FunctionGenerationContext.FrameStackMap endFrame = new FunctionGenerationContext.FrameStackMap(
+                    locals.length, locals, callerFrame.numStack, callerFrame.stack
+            );
+            Type returnType = Type.getReturnType(descriptor);
+            if (returnType.getSort() != Type.VOID) {
+                endFrame = endFrame.withPushed(frameType(returnType));
+            }
+            functionGenerationContext.visitFrame(endFrame);
+            // the frame of the code that follows the call would be dropped if it was at the same offset
+            mv.visitInsn(Opcodes.NOP);
+        }
+        functionGenerationContext.releaseScopedLocals(firstLocal);
+
+        inlinedCalls.add(new InlinedCall(
+                callCtx.getStart().getLine(), callCtx.getStart().getCharPositionInLine(),
+                functionGenerationContext.getMethodName(), functionSymbol.getName(), candidate.size
+        ));
+        return true;
+    }
+
+    private static boolean startsWithFrame(AbstractInsnNode node) {
+        while (node != null && node.getOpcode() < 0) {
+            if (node instanceof FrameNode) {
+                return true;
+            }
+            node = node.getNext();
+        }
+        return false;
+    }
+
+    private static boolean isReturn(AbstractInsnNode insn) {
+        return insn.getOpcode() >= Opcodes.IRETURN && insn.getOpcode() <= Opcodes.RETURN;
+    }
+
+    /**
+     * The type of a value of a function (an int, a boolie or a string) in a frame.
+     */
+    private static Object frameType(Type type) {
+        return type.getSort() == Type.OBJECT ? type.getInternalName() : Opcodes.INTEGER;
+    }
+
+    /**
+     * Writes the code of the inlined method into the calling method: moves its locals past the locals of the calling
+     * method, replaces its returns with jumps to the end of the copy, and its labels with fresh ones (a function can
+     * be inlined more than once in a method). The frames are put on top of the locals and the stack of the calling
+     * method at the call. The line numbers are dropped: the code is reported at the line of the call.
+     */
+    private static class InliningMethodVisitor extends MethodVisitor {
+        private final int firstLocal;
+        private final FunctionGenerationContext.FrameStackMap callerFrame;
+        private final Label end;
+        private final HashMap<Label, Label> labels = new HashMap<>();
+        private boolean jumpsToEnd = false;
+
+        InliningMethodVisitor(
+                MethodVisitor methodVisitor, int firstLocal,
+                FunctionGenerationContext.FrameStackMap callerFrame, Label end
+        ) {
+            super(Opcodes.ASM9, methodVisitor);
+            this.firstLocal = firstLocal;
+            this.callerFrame = callerFrame;
+            this.end = end;
+        }
+
+        private Label label(Label label) {
+            return labels.computeIfAbsent(label, l -> new Label());
+        }
+
+        private Label[] labels(Label[] labels) {
+            Label[] newLabels = new Label[labels.length];
+            for (int i = 0; i < labels.length; i++) {
+                newLabels[i] = label(labels[i]);
+            }
+            return newLabels;
+        }
+
+        private Object frameValue(Object value) {
+            return value instanceof Label ? label((Label) value) : value;
+        }
+
+        @Override
+        public void visitInsn(int opcode) {
+            if (opcode >= Opcodes.IRETURN && opcode <= Opcodes.RETURN) {
+                super.visitJumpInsn(Opcodes.GOTO, end);
+                jumpsToEnd = true;
+                return;
+            }
+            super.visitInsn(opcode);
+        }
+
+        @Override
+        public void visitVarInsn(int opcode, int varIndex) {
+            super.visitVarInsn(opcode, firstLocal + varIndex);
+        }
+
+        @Override
+        public void visitIincInsn(int varIndex, int increment) {
+            super.visitIincInsn(firstLocal + varIndex, increment);
+        }
+
+        @Override
+        public void visitJumpInsn(int opcode, Label label) {
+            super.visitJumpInsn(opcode, label(label));
+        }
+
+        @Override
+        public void visitLabel(Label label) {
+            super.visitLabel(label(label));
+        }
+
+        @Override
+        public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+            super.visitTableSwitchInsn(min, max, label(dflt), labels(labels));
+        }
+
+        @Override
+        public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+            super.visitLookupSwitchInsn(label(dflt), keys, labels(labels));
+        }
+
+        @Override
+        public void visitLineNumber(int line, Label start) {
+        }
+
+        @Override
+        public void visitFrame(int type, int numLocal, Object[] local, int numStack, Object[] stack) {
+            Object[] newLocals = new Object[firstLocal + numLocal];
+            for (int i = 0; i < firstLocal; i++) {
+                newLocals[i] = i < callerFrame.numLocals ? callerFrame.locals[i] : Opcodes.TOP;
+            }
+            for (int i = 0; i < numLocal; i++) {
+                newLocals[firstLocal + i] = frameValue(local[i]);
+            }
+
+            Object[] newStack = new Object[callerFrame.numStack + numStack];
+            for (int i = 0; i < callerFrame.numStack; i++) {
+                newStack[i] = callerFrame.stack[i];
+            }
+            for (int i = 0; i < numStack; i++) {
+                newStack[callerFrame.numStack + i] = frameValue(stack[i]);
+            }
+            super.visitFrame(Opcodes.F_NEW, newLocals.length, newLocals, newStack.length, newStack);
+        }
+    }
+}
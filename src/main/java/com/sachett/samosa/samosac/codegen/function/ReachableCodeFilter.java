@@ -0,0 +1,182 @@
+package com.sachett.samosa.samosac.codegen.function;
+
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Sits between the AnalyzerAdapter of a function and the method writer, and drops the code that cannot be reached,
+ * so that the stack map frames emitted by codegen are the only frames the method needs.
+ *
+ * Codegen emits code that can never run, for example the GOTO to the end of an if statement after a block that ends
+ * with a return or a break. With COMPUTE_FRAMES, ClassWriter replaced such code with NOPs and an ATHROW; without it,
+ * the verifier rejects the class unless there is a frame for it.
+ *
+ * The code is unreachable after a GOTO, a return or an ATHROW, and becomes reachable again at a label that is the target
+ * of a reachable jump. Frames at unreachable labels, and frames at the same offset as the previous frame, are dropped.
+ * A line number is only passed on with the first instruction emitted after it, so that no line of the LineNumberTable
+ * starts at dropped code (the JVM rejects a line number whose start is past the end of the code).
+ */
+public class ReachableCodeFilter extends MethodVisitor {
+    private boolean reachable = true;
+
+    /* Whether an instruction was emitted since the last frame, i.e. if a frame can be emitted at the current offset */
+    private boolean instructionSinceFrame = true;
+
+    private final HashSet<Label> jumpTargets = new HashSet<>();
+
+    /* The last line number visited since an instruction was emitted (its start label is at the current offset) */
+    private Label pendingLineStart = null;
+    private int pendingLine;
+
+    public ReachableCodeFilter(MethodVisitor methodVisitor) {
+        super(Opcodes.ASM9, methodVisitor);
+    }
+
+    public boolean isReachable() {
+        return reachable;
+    }
+
+    private boolean emit() {
+        if (reachable) {
+            instructionSinceFrame = true;
+            if (pendingLineStart != null) {
+                super.visitLineNumber(pendingLine, pendingLineStart);
+                pendingLineStart = null;
+            }
+        }
+        return reachable;
+    }
+
+    @Override
+    public void visitLineNumber(int line, Label start) {
+        pendingLine = line;
+        pendingLineStart = start;
+    }
+
+    @Override
+    public void visitFrame(int type, int numLocal, Object[] local, int numStack, Object[] stack) {
+        if (reachable && instructionSinceFrame) {
+            super.visitFrame(type, numLocal, local, numStack, stack);
+            instructionSinceFrame = false;
+        }
+    }
+
+    @Override
+    public void visitLabel(Label label) {
+        super.visitLabel(label);
+        if (jumpTargets.contains(label)) {
+            reachable = true;
+        }
+    }
+
+    @Override
+    public void visitInsn(int opcode) {
+        if (emit()) {
+            super.visitInsn(opcode);
+            if ((opcode >= Opcodes.IRETURN && opcode <= Opcodes.RETURN) || opcode == Opcodes.ATHROW) {
+                reachable = false;
+            }
+        }
+    }
+
+    @Override
+    public void visitJumpInsn(int opcode, Label label) {
+        if (emit()) {
+            super.visitJumpInsn(opcode, label);
+            jumpTargets.add(label);
+            if (opcode == Opcodes.GOTO) {
+                reachable = false;
+            }
+        }
+    }
+
+    @Override
+    public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+        if (emit()) {
+            super.visitTableSwitchInsn(min, max, dflt, labels);
+            jumpTargets.add(dflt);
+            jumpTargets.addAll(List.of(labels));
+            reachable = false;
+        }
+    }
+
+    @Override
+    public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+        if (emit()) {
+            super.visitLookupSwitchInsn(dflt, keys, labels);
+            jumpTargets.add(dflt);
+            jumpTargets.addAll(List.of(labels));
+            reachable = false;
+        }
+    }
+
+    @Override
+    public void visitIntInsn(int opcode, int operand) {
+        if (emit()) {
+            super.visitIntInsn(opcode, operand);
+        }
+    }
+
+    @Override
+    public void visitVarInsn(int opcode, int varIndex) {
+        if (emit()) {
+            super.visitVarInsn(opcode, varIndex);
+        }
+    }
+
+    @Override
+    public void visitTypeInsn(int opcode, String type) {
+        if (emit()) {
+            super.visitTypeInsn(opcode, type);
+        }
+    }
+
+    @Override
+    public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+        if (emit()) {
+            super.visitFieldInsn(opcode, owner, name, descriptor);
+        }
+    }
+
+    @Override
+    public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+        if (emit()) {
+            super.visitMethodInsn(opcode, owner, name, descriptor, isInterface);
+        }
+    }
+
+    @Override
+    public void visitInvokeDynamicInsn(
+            String name, String descriptor, Handle bootstrapMethodHandle, Object... bootstrapMethodArguments
+    ) {
+        if (emit()) {
+            super.visitInvokeDynamicInsn(name, descriptor, bootstrapMethodHandle, bootstrapMethodArguments);
+        }
+    }
+
+    @Override
+    public void visitLdcInsn(Object value) {
+        if (emit()) {
+            super.visitLdcInsn(value);
+        }
+    }
+
+    @Override
+    public void visitIincInsn(int varIndex, int increment) {
+        if (emit()) {
+            super.visitIincInsn(varIndex, increment);
+        }
+    }
+
+    @Override
+    public void visitMultiANewArrayInsn(String descriptor, int numDimensions) {
+        if (emit()) {
+            super.visitMultiANewArrayInsn(descriptor, numDimensions);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.sachett.samosa.samosac.codegen.peephole;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.FrameNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.IntInsnNode;
+import org.objectweb.asm.tree.JumpInsnNode;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.LookupSwitchInsnNode;
+import org.objectweb.asm.tree.TableSwitchInsnNode;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Helpers for walking the instruction lists of the peephole passes.
+ * Labels, line numbers and frames are not instructions (their opcode is -1); the passes look through them, except for
+ * the labels that are jumped to and the frames, which are where the straight-line code of a method is cut.
+ */
+final class Instructions {
+    private Instructions() {
+    }
+
+    static boolean isInstruction(AbstractInsnNode node) {
+        return node != null && node.getOpcode() >= 0;
+    }
+
+    /**
+     * The first instruction at or after the given node, or null if there is none.
+     */
+    static AbstractInsnNode firstInstructionFrom(AbstractInsnNode node) {
+        while (node != null && !isInstruction(node)) {
+            node = node.getNext();
+        }
+        return node;
+    }
+
+    /**
+     * The instruction after the given one, if it is only reached from it: null if there's a jump target or a frame
+     * in between (or no instruction after it).
+     */
+    static AbstractInsnNode nextInStraightLine(AbstractInsnNode insn, Set<LabelNode> jumpTargets) {
+        AbstractInsnNode node = insn.getNext();
+        while (node != null && !isInstruction(node)) {
+            if (node instanceof FrameNode || jumpTargets.contains(node)) {
+                return null;
+            }
+            node = node.getNext();
+        }
+        return node;
+    }
+
+    /**
+     * Whether the label comes right after the node, with no instruction in between.
+     */
+    static boolean isRightAfter(LabelNode label, AbstractInsnNode node) {
+        for (AbstractInsnNode next = node.getNext(); next != null && !isInstruction(next); next = next.getNext()) {
+            if (next == label) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The labels that are jumped to by some instruction.
+     */
+    static Set<LabelNode> jumpTargets(InsnList instructions) {
+        HashSet<LabelNode> targets = new HashSet<>();
+        for (AbstractInsnNode node : instructions) {
+            if (node instanceof JumpInsnNode) {
+                targets.add(((JumpInsnNode) node).label);
+            } else if (node instanceof TableSwitchInsnNode) {
+                targets.add(((TableSwitchInsnNode) node).dflt);
+                targets.addAll(((TableSwitchInsnNode) node).labels);
+            } else if (node instanceof LookupSwitchInsnNode) {
+                targets.add(((LookupSwitchInsnNode) node).dflt);
+                targets.addAll(((LookupSwitchInsnNode) node).labels);
+            }
+        }
+        return targets;
+    }
+
+    /**
+     * Whether the code after the instruction can only be reached by jumping to it.
+     */
+    static boolean endsStraightLine(AbstractInsnNode insn) {
+        int opcode = insn.getOpcode();
+        return opcode == Opcodes.GOTO
+                || (opcode >= Opcodes.IRETURN && opcode <= Opcodes.RETURN)
+                || opcode == Opcodes.ATHROW
+                || opcode == Opcodes.TABLESWITCH
+                || opcode == Opcodes.LOOKUPSWITCH;
+    }
+
+    static boolean isReturnOrThrow(AbstractInsnNode insn) {
+        int opcode = insn.getOpcode();
+        return (opcode >= Opcodes.IRETURN && opcode <= Opcodes.RETURN) || opcode == Opcodes.ATHROW;
+    }
+
+    /**
+     * The int pushed by the instruction, if it is an int constant push (else null).
+     */
+    static Integer intConstant(AbstractInsnNode insn) {
+        int opcode = insn.getOpcode();
+        if (opcode >= Opcodes.ICONST_M1 && opcode <= Opcodes.ICONST_5) {
+            return opcode - Opcodes.ICONST_0;
+        }
+        if (opcode == Opcodes.BIPUSH || opcode == Opcodes.SIPUSH) {
+            return ((IntInsnNode) insn).operand;
+        }
+        if (opcode == Opcodes.LDC && ((LdcInsnNode) insn).cst instanceof Integer) {
+            return (Integer) ((LdcInsnNode) insn).cst;
+        }
+        return null;
+    }
+
+    /**
+     * The conditional jump that jumps when the given one does not, or -1 if the opcode is not a conditional jump.
+     */
+    static int invertedJump(int opcode) {
+        switch (opcode) {
+            case Opcodes.IFEQ: return Opcodes.IFNE;
+            case Opcodes.IFNE: return Opcodes.IFEQ;
+            case Opcodes.IFLT: return Opcodes.IFGE;
+            case Opcodes.IFGE: return Opcodes.IFLT;
+            case Opcodes.IFGT: return Opcodes.IFLE;
+            case Opcodes.IFLE: return Opcodes.IFGT;
+            case Opcodes.IF_ICMPEQ: return Opcodes.IF_ICMPNE;
+            case Opcodes.IF_ICMPNE: return Opcodes.IF_ICMPEQ;
+            case Opcodes.IF_ICMPLT: return Opcodes.IF_ICMPGE;
+            case Opcodes.IF_ICMPGE: return Opcodes.IF_ICMPLT;
+            case Opcodes.IF_ICMPGT: return Opcodes.IF_ICMPLE;
+            case Opcodes.IF_ICMPLE: return Opcodes.IF_ICMPGT;
+            case Opcodes.IF_ACMPEQ: return Opcodes.IF_ACMPNE;
+            case Opcodes.IF_ACMPNE: return Opcodes.IF_ACMPEQ;
+            case Opcodes.IFNULL: return Opcodes.IFNONNULL;
+            case Opcodes.IFNONNULL: return Opcodes.IFNULL;
+            default: return -1;
+        }
+    }
+
+    /**
+     * Removes the frames that are not followed by an instruction, and all but the last of the frames that are at
+     * the same offset (a method can have only one frame per offset). Passes that remove the instructions between
+     * two frames leave such frames behind.
+     * The last frame of a run is the one the code after it was generated for, and the others are assignable to it:
+     * the instructions that were removed from between them (a GOTO to the next instruction) kept the frame as is.
+     */
+    static void removeRedundantFrames(InsnList instructions) {
+        FrameNode frameAtOffset = null;
+        for (AbstractInsnNode node = instructions.getFirst(); node != null; node = node.getNext()) {
+            if (node instanceof FrameNode) {
+                if (frameAtOffset != null) {
+                    instructions.remove(frameAtOffset);
+                }
+                frameAtOffset = (FrameNode) node;
+            } else if (isInstruction(node)) {
+                frameAtOffset = null;
+            }
+        }
+        if (frameAtOffset != null) {
+            instructions.remove(frameAtOffset);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.sachett.samosa.samosac.codegen.peephole;
+
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.commons.CodeSizeEvaluator;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Runs a set of peephole passes over the methods of a class before they are written (see CompilerOptions: --peephole).
+ * The methods are buffered as MethodNodes (see bufferMethod), and every pass is run on them, in the order of
+ * PeepholePass, until none of them can rewrite anything more.
+ * The instructions and bytes that every pass saved, over all the methods, are kept for the stats.
+ *
+ * The passes only move the frames codegen emitted, so the stack map frames of the optimized methods stay valid
+ * without being computed again.
+ * An optimizer is meant to be used for a single class, by the thread that generates it.
+ */
+public class PeepholeOptimizer {
+    /**
+     * Rounds of all the passes over a method, at most. The passes enable each other (a redirected jump leaves dead code
+     * behind, whose removal leaves a GOTO to the next instruction), but a handful of rounds is enough for the code
+     * that is generated.
+     */
+    private static final int MAX_ROUNDS = 8;
+
+    private final EnumSet<PeepholePass> passes;
+    private final EnumMap<PeepholePass, Savings> savings = new EnumMap<>(PeepholePass.class);
+
+    /**
+     * The instructions and the bytes of bytecode a pass saved, and the number of rewrites it made.
+     * The store-load pass saves bytes (and loads) but no instructions: it replaces a load with a DUP.
+     */
+    public static class Savings {
+        public int rewrites = 0;
+        public int instructions = 0;
+        public int bytes = 0;
+    }
+
+    public PeepholeOptimizer(Set<PeepholePass> passes) {
+        this.passes = passes.isEmpty() ? EnumSet.noneOf(PeepholePass.class) : EnumSet.copyOf(passes);
+        for (PeepholePass pass : this.passes) {
+            savings.put(pass, new Savings());
+        }
+    }
+
+    /**
+     * Returns a method visitor that buffers the method, and writes it to the class visitor once it is optimized
+     * (at visitEnd). Used in place of classVisitor.visitMethod(...).
+     */
+    public MethodNode bufferMethod(
+            ClassVisitor classVisitor,
+            int access, String name, String descriptor, String signature, String[] exceptions
+    ) {
+        return new MethodNode(Opcodes.ASM9, access, name, descriptor, signature, exceptions) {
+            @Override
+            public void visitEnd() {
+                super.visitEnd();
+                optimize(this);
+                accept(classVisitor);
+            }
+        };
+    }
+
+    /**
+     * Runs the passes over the method, in place.
+     */
+    public void optimize(MethodNode method) {
+        InsnList instructions = method.instructions;
+        for (int round = 0; round < MAX_ROUNDS; round++) {
+            boolean rewritten = false;
+            for (PeepholePass pass : passes) {
+                int instructionsBefore = countInstructions(instructions);
+                int bytesBefore = codeSize(method);
+
+                int rewrites = pass.apply(instructions);
+                if (rewrites == 0) {
+                    continue;
+                }
+                Instructions.removeRedundantFrames(instructions);
+
+                Savings passSavings = savings.get(pass);
+                passSavings.rewrites += rewrites;
+                passSavings.instructions += instructionsBefore - countInstructions(instructions);
+                passSavings.bytes += bytesBefore - codeSize(method);
+                rewritten = true;
+            }
+            if (!rewritten) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * What every pass saved so far, over all the optimized methods.
+     */
+    public Map<PeepholePass, Savings> getSavings() {
+        return Collections.unmodifiableMap(savings);
+    }
+
+    private static int countInstructions(InsnList instructions) {
+        int count = 0;
+        for (AbstractInsnNode node : instructions) {
+            if (Instructions.isInstruction(node)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static int codeSize(MethodNode method) {
+        CodeSizeEvaluator codeSizeEvaluator = new CodeSizeEvaluator(null);
+        method.instructions.accept(codeSizeEvaluator);
+        // the min size counts the jumps as the short ones they are (the max size as GOTO_W and the like)
+        return codeSizeEvaluator.getMinSize();
+    }
+}
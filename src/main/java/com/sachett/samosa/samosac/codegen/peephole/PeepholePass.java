@@ -0,0 +1,272 @@
+package com.sachett.samosa.samosac.codegen.peephole;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.FrameNode;
+import org.objectweb.asm.tree.IincInsnNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.JumpInsnNode;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.VarInsnNode;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * The peephole passes of the PeepholeOptimizer (see CompilerOptions: --peephole), in the order they are run.
+ * Every pass rewrites the instructions of a method in place and returns the number of rewrites it made.
+ */
+public enum PeepholePass {
+    /**
+     * i = i + k (ILOAD, int constant, IADD or ISUB, ISTORE of the same local) becomes an IINC.
+     */
+    IINC("iinc") {
+        @Override
+        int apply(InsnList instructions) {
+            Set<LabelNode> jumpTargets = Instructions.jumpTargets(instructions);
+            int rewrites = 0;
+            for (AbstractInsnNode insn = instructions.getFirst(); insn != null; insn = insn.getNext()) {
+                if (insn.getOpcode() != Opcodes.ILOAD) {
+                    continue;
+                }
+                AbstractInsnNode constant = Instructions.nextInStraightLine(insn, jumpTargets);
+                Integer value = constant == null ? null : Instructions.intConstant(constant);
+                if (value == null) {
+                    continue;
+                }
+                AbstractInsnNode arithmetic = Instructions.nextInStraightLine(constant, jumpTargets);
+                if (arithmetic == null
+                        || (arithmetic.getOpcode() != Opcodes.IADD && arithmetic.getOpcode() != Opcodes.ISUB)) {
+                    continue;
+                }
+                AbstractInsnNode store = Instructions.nextInStraightLine(arithmetic, jumpTargets);
+                int local = ((VarInsnNode) insn).var;
+                if (store == null || store.getOpcode() != Opcodes.ISTORE || ((VarInsnNode) store).var != local) {
+                    continue;
+                }
+                long increment = arithmetic.getOpcode() == Opcodes.IADD ? (long) value : -(long) value;
+                if (increment < Short.MIN_VALUE || increment > Short.MAX_VALUE) {
+                    continue;
+                }
+
+                IincInsnNode iinc = new IincInsnNode(local, (int) increment);
+                instructions.set(insn, iinc);
+                instructions.remove(constant);
+                instructions.remove(arithmetic);
+                instructions.remove(store);
+                insn = iinc;
+                rewrites++;
+            }
+            return rewrites;
+        }
+    },
+
+    /**
+     * A store that is followed by a load of the same local or static field (an assignment or a declaration, and
+     * then a use of the variable) keeps a copy of the value on the stack instead: a DUP before the store replaces
+     * the load.
+     */
+    STORE_LOAD("store-load") {
+        @Override
+        int apply(InsnList instructions) {
+            Set<LabelNode> jumpTargets = Instructions.jumpTargets(instructions);
+            int rewrites = 0;
+            for (AbstractInsnNode store = instructions.getFirst(); store != null; store = store.getNext()) {
+                AbstractInsnNode load = null;
+                int dupOpcode = Opcodes.DUP;
+                if (store.getOpcode() >= Opcodes.ISTORE && store.getOpcode() <= Opcodes.ASTORE) {
+                    AbstractInsnNode next = Instructions.nextInStraightLine(store, jumpTargets);
+                    if (next != null
+                            && next.getOpcode() == store.getOpcode() - (Opcodes.ISTORE - Opcodes.ILOAD)
+                            && ((VarInsnNode) next).var == ((VarInsnNode) store).var) {
+                        load = next;
+                        if (store.getOpcode() == Opcodes.LSTORE || store.getOpcode() == Opcodes.DSTORE) {
+                            dupOpcode = Opcodes.DUP2;
+                        }
+                    }
+                } else if (store.getOpcode() == Opcodes.PUTSTATIC) {
+                    AbstractInsnNode next = Instructions.nextInStraightLine(store, jumpTargets);
+                    if (next != null && next.getOpcode() == Opcodes.GETSTATIC && isSameField(store, next)) {
+                        load = next;
+                        String descriptor = ((FieldInsnNode) store).desc;
+                        if (descriptor.equals("J") || descriptor.equals("D")) {
+                            dupOpcode = Opcodes.DUP2;
+                        }
+                    }
+                }
+                if (load == null) {
+                    continue;
+                }
+
+                instructions.insertBefore(store, new InsnNode(dupOpcode));
+                instructions.remove(load);
+                rewrites++;
+            }
+            return rewrites;
+        }
+
+        private boolean isSameField(AbstractInsnNode first, AbstractInsnNode second) {
+            FieldInsnNode firstField = (FieldInsnNode) first;
+            FieldInsnNode secondField = (FieldInsnNode) second;
+            return firstField.owner.equals(secondField.owner)
+                    && firstField.name.equals(secondField.name)
+                    && firstField.desc.equals(secondField.desc);
+        }
+    },
+
+    /**
+     * A jump to a GOTO jumps to the target of the GOTO instead, and a GOTO to a return (or an ATHROW)
+     * is replaced by a copy of it. The if statements and the loops nested in one another jump to each other's ends.
+     */
+    JUMP_CHAINS("jump-chains") {
+        @Override
+        int apply(InsnList instructions) {
+            int rewrites = 0;
+            for (AbstractInsnNode insn = instructions.getFirst(); insn != null; insn = insn.getNext()) {
+                if (!(insn instanceof JumpInsnNode)) {
+                    continue;
+                }
+                JumpInsnNode jump = (JumpInsnNode) insn;
+
+                LabelNode finalTarget = finalTarget(jump.label);
+                if (finalTarget != jump.label) {
+                    jump.label = finalTarget;
+                    rewrites++;
+                }
+
+                AbstractInsnNode atTarget = Instructions.firstInstructionFrom(jump.label);
+                if (jump.getOpcode() == Opcodes.GOTO && atTarget != null && Instructions.isReturnOrThrow(atTarget)) {
+                    InsnNode copy = new InsnNode(atTarget.getOpcode());
+                    instructions.set(jump, copy);
+                    insn = copy;
+                    rewrites++;
+                }
+            }
+            return rewrites;
+        }
+
+        /**
+         * The label the jumps to the given one end up at, following the GOTOs (up to a cycle).
+         */
+        private LabelNode finalTarget(LabelNode label) {
+            HashSet<LabelNode> visited = new HashSet<>();
+            LabelNode target = label;
+            while (visited.add(target)) {
+                AbstractInsnNode atTarget = Instructions.firstInstructionFrom(target);
+                if (atTarget == null || atTarget.getOpcode() != Opcodes.GOTO) {
+                    break;
+                }
+                target = ((JumpInsnNode) atTarget).label;
+            }
+            return target;
+        }
+    },
+
+    /**
+     * A conditional jump over a GOTO (IFxx L1, GOTO L2, L1:) becomes the inverse conditional jump (IFnotxx L2, L1:).
+     */
+    INVERT_BRANCHES("invert-branches") {
+        @Override
+        int apply(InsnList instructions) {
+            Set<LabelNode> jumpTargets = Instructions.jumpTargets(instructions);
+            int rewrites = 0;
+            for (AbstractInsnNode insn = instructions.getFirst(); insn != null; insn = insn.getNext()) {
+                int inverted = Instructions.invertedJump(insn.getOpcode());
+                if (inverted < 0) {
+                    continue;
+                }
+                JumpInsnNode jump = (JumpInsnNode) insn;
+                AbstractInsnNode next = Instructions.nextInStraightLine(jump, jumpTargets);
+                if (next == null || next.getOpcode() != Opcodes.GOTO || !Instructions.isRightAfter(jump.label, next)) {
+                    continue;
+                }
+
+                jump.setOpcode(inverted);
+                jump.label = ((JumpInsnNode) next).label;
+                instructions.remove(next);
+                rewrites++;
+            }
+            return rewrites;
+        }
+    },
+
+    /**
+     * A GOTO to the instruction right after it is removed. Every if statement ends with one after its last block.
+     */
+    GOTO_NEXT("goto-next") {
+        @Override
+        int apply(InsnList instructions) {
+            int rewrites = 0;
+            AbstractInsnNode insn = instructions.getFirst();
+            while (insn != null) {
+                AbstractInsnNode next = insn.getNext();
+                if (insn.getOpcode() == Opcodes.GOTO && Instructions.isRightAfter(((JumpInsnNode) insn).label, insn)) {
+                    instructions.remove(insn);
+                    rewrites++;
+                }
+                insn = next;
+            }
+            return rewrites;
+        }
+    },
+
+    /**
+     * The code after a GOTO, a return or an ATHROW that is not jumped to is removed (the other passes leave such code
+     * behind when they redirect the jumps to it).
+     */
+    DEAD_CODE("dead-code") {
+        @Override
+        int apply(InsnList instructions) {
+            Set<LabelNode> jumpTargets = Instructions.jumpTargets(instructions);
+            ArrayList<AbstractInsnNode> deadNodes = new ArrayList<>();
+            boolean reachable = true;
+            for (AbstractInsnNode node = instructions.getFirst(); node != null; node = node.getNext()) {
+                if (node instanceof LabelNode && jumpTargets.contains(node)) {
+                    reachable = true;
+                } else if (!reachable && (Instructions.isInstruction(node) || node instanceof FrameNode)) {
+                    deadNodes.add(node);
+                } else if (Instructions.isInstruction(node) && Instructions.endsStraightLine(node)) {
+                    reachable = false;
+                }
+            }
+
+            int rewrites = 0;
+            for (AbstractInsnNode node : deadNodes) {
+                if (Instructions.isInstruction(node)) {
+                    rewrites++;
+                }
+                instructions.remove(node);
+            }
+            return rewrites;
+        }
+    };
+
+    private final String optionName;
+
+    PeepholePass(String optionName) {
+        this.optionName = optionName;
+    }
+
+    public String getOptionName() {
+        return optionName;
+    }
+
+    /**
+     * Rewrites the instructions of a method.
+     * @return  The number of rewrites that were made (0 if the instructions were left as they were).
+     */
+    abstract int apply(InsnList instructions);
+
+    public static PeepholePass fromOptionName(String name) {
+        for (PeepholePass pass : values()) {
+            if (Objects.equals(pass.optionName, name)) {
+                return pass;
+            }
+        }
+        return null;
+    }
+}
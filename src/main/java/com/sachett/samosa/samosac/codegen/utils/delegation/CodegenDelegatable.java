@@ -1,6 +1,11 @@
 package com.sachett.samosa.samosac.codegen.utils.delegation;
 
+import com.sachett.samosa.logging.Diagnostics;
+import com.sachett.samosa.logging.TraceCategory;
+import com.sachett.samosa.parser.SamosaParser;
 import com.sachett.samosa.samosac.codegen.CodeGenerator;
+import com.sachett.samosa.samosac.codegen.function.FunctionGenerationContext;
+import org.antlr.v4.runtime.ParserRuleContext;
 import org.antlr.v4.runtime.tree.ParseTree;
 import org.antlr.v4.runtime.tree.RuleNode;
 
@@ -76,7 +81,10 @@ public abstract class CodegenDelegatable extends CodeGenerator {
 
     @Override
     public Void visit(ParseTree parseTree) {
-        System.out.println("Visiting ParseTree \t(type) " + parseTree.getClass().toString() + " \t\t(through) " + this.toString());
+        if (Diagnostics.isTraceEnabled(TraceCategory.DELEGATION)) {
+            Diagnostics.printTrace(TraceCategory.DELEGATION,
+                    "Visiting ParseTree \t(type) " + parseTree.getClass().toString() + " \t\t(through) " + this.toString());
+        }
         if (isBeingDelegated()) {
             return super.visit(parseTree);
         }
@@ -85,10 +93,33 @@ public abstract class CodegenDelegatable extends CodeGenerator {
         }
     }
 
+    /**
+     * The context of the function this generator is currently generating code in, or null if there is none.
+     * Used to mark the source lines of the statements.
+     */
+    protected FunctionGenerationContext getFunctionGenerationContext() {
+        return null;
+    }
+
+    private void markStatementLine(RuleNode node) {
+        if (node instanceof SamosaParser.RegularStmtContext
+                || node instanceof SamosaParser.CompoundStmtContext
+                || node instanceof SamosaParser.UncertainCompoundStmtContext) {
+            FunctionGenerationContext functionGenerationContext = getFunctionGenerationContext();
+            if (functionGenerationContext != null) {
+                functionGenerationContext.visitLineNumber(((ParserRuleContext) node).getStart().getLine());
+            }
+        }
+    }
+
     @Override
     public Void visitChildren(RuleNode node) {
-        System.out.println("Visiting RuleNode \t(type) " + node.getClass().toString() + " \t\t(through) " + this.toString());
+        if (Diagnostics.isTraceEnabled(TraceCategory.DELEGATION)) {
+            Diagnostics.printTrace(TraceCategory.DELEGATION,
+                    "Visiting RuleNode \t(type) " + node.getClass().toString() + " \t\t(through) " + this.toString());
+        }
         if (isBeingDelegated()) {
+            markStatementLine(node);
             return super.visitChildren(node);
         }
         else {
@@ -1,5 +1,7 @@
 package com.sachett.samosa.samosac.codegen.utils.delegation;
 
+import com.sachett.samosa.logging.Diagnostics;
+import com.sachett.samosa.logging.TraceCategory;
 import com.sachett.samosa.parser.SamosaBaseVisitor;
 import org.antlr.v4.runtime.tree.ParseTree;
 import org.antlr.v4.runtime.tree.RuleNode;
@@ -59,8 +61,8 @@ public class CodegenDelegationManager extends SamosaBaseVisitor<Void> {
     public Void visit(ParseTree parseTree) {
         CodegenDelegatedMethod method = CodegenMethodMap.getMethodFromClass(parseTree.getClass());
 
-        if (method == CodegenDelegatedMethod.NORMAL_DECLASSIGN) {
-            System.out.println("Delegating NormalDeclAssign"); //debug
+        if (method == CodegenDelegatedMethod.NORMAL_DECLASSIGN && Diagnostics.isTraceEnabled(TraceCategory.DELEGATION)) {
+            Diagnostics.printTrace(TraceCategory.DELEGATION, "Delegating NormalDeclAssign");
         }
 
         if (method == null) {
@@ -98,8 +100,8 @@ public class CodegenDelegationManager extends SamosaBaseVisitor<Void> {
     public Void visitChildren(RuleNode node) {
         CodegenDelegatedMethod method = CodegenMethodMap.getMethodFromClass(node.getClass());
 
-        if (method == CodegenDelegatedMethod.NORMAL_DECLASSIGN) {
-            System.out.println("Delegating NormalDeclAssign"); //debug
+        if (method == CodegenDelegatedMethod.NORMAL_DECLASSIGN && Diagnostics.isTraceEnabled(TraceCategory.DELEGATION)) {
+            Diagnostics.printTrace(TraceCategory.DELEGATION, "Delegating NormalDeclAssign");
         }
 
         if (method == null && currentCodeGenDelegated != null) {
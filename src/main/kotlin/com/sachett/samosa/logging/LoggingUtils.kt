@@ -1,35 +1,171 @@
 package com.sachett.samosa.logging
 
-import kotlin.system.exitProcess
+import java.io.PrintStream
 
 enum class Severity {
     WARNING, ERROR, FATAL
 }
 
+/**
+ * Thrown after a fatal error has been reported. The driver catches it and exits with status -1,
+ * while a long-running host (like the compile daemon) can fail just the current compilation.
+ */
+class CompilationFailedException(message: String) : RuntimeException(message)
+
+/* If set, diagnostics of the current thread are written here instead of System.out/System.err. */
+private val diagnosticsStreamOverride = ThreadLocal<PrintStream?>()
+
+/**
+ * Runs block with all the diagnostics reported on this thread redirected to stream.
+ */
+fun <T> withDiagnosticsStream(stream: PrintStream, block: () -> T): T {
+    val previous = diagnosticsStreamOverride.get()
+    diagnosticsStreamOverride.set(stream)
+    try {
+        return block()
+    } finally {
+        diagnosticsStreamOverride.set(previous)
+    }
+}
+
+private fun errorStream(): PrintStream = diagnosticsStreamOverride.get() ?: System.err
+
+private fun warningStream(): PrintStream = diagnosticsStreamOverride.get() ?: System.out
+
+/**
+ * The stream the compiler prints its progress and reports on this thread to: the thread's diagnostics stream
+ * (see withDiagnosticsStream) if it has one, else System.out.
+ */
+fun infoStream(): PrintStream = warningStream()
+
 /**
  * Fatal error.
  */
 fun err(message: String): Nothing {
-    System.err.println(message)
-    exitProcess(-1)
+    errorStream().println(message)
+    throw CompilationFailedException(message)
+}
+
+/**
+ * Error that does not stop the compilation by itself.
+ */
+fun nonfatalerr(message: String) {
+    errorStream().println(message)
 }
 
 fun fmtfatalerr(message: String, lineNumber: Int): Nothing {
-    System.err.println("[Error, Line $lineNumber] $message")
-    exitProcess(-1)
+    errorStream().println("[Error, Line $lineNumber] $message")
+    throw CompilationFailedException(message)
 }
 
 fun fmterror(message: String, lineNumber: Int, severity: Severity = Severity.FATAL) {
     when (severity) {
         Severity.WARNING -> {
-            println("[Warning, Line ${lineNumber}] $message")
+            warningStream().println("[Warning, Line ${lineNumber}] $message")
         }
         Severity.ERROR -> {
-            System.err.println("[Error, Line ${lineNumber}] $message")
+            errorStream().println("[Error, Line ${lineNumber}] $message")
         }
         Severity.FATAL -> {
-            System.err.println("[Error, Line ${lineNumber}] $message")
-            exitProcess(-1)
+            errorStream().println("[Error, Line ${lineNumber}] $message")
+            throw CompilationFailedException(message)
+        }
+    }
+}
+
+/**
+ * Categories of compiler traces. All of them are off unless enabled (see CompilerOptions: --trace).
+ */
+enum class TraceCategory(val optionName: String) {
+    /* The static checker's visits and analyses */
+    CHECKER("checker"),
+
+    /* Expression type detection */
+    TYPES("types"),
+
+    /* Delegation between the code generators */
+    DELEGATION("delegation");
+
+    companion object {
+        fun fromOptionName(name: String): TraceCategory? = values().firstOrNull { it.optionName == name }
+    }
+}
+
+/**
+ * Leveled diagnostics on top of errors and warnings (which are always reported):
+ * progress information (enabled with --verbose) and traces (enabled per TraceCategory).
+ *
+ * Callers should check isTraceEnabled (or use the inline trace function from Kotlin) before building a trace
+ * message, so that nothing is built when tracing is off.
+ * The settings are set once by the driver from the command line options (see configure); a thread can override
+ * them for the duration of a block (see withSettings), like the compile daemon does for each request.
+ */
+object Diagnostics {
+    private class Settings(val verbose: Boolean, val traceMask: Int)
+
+    @Volatile
+    private var globalSettings = Settings(false, 0)
+
+    private val threadSettings = ThreadLocal<Settings?>()
+
+    private fun settings(): Settings = threadSettings.get() ?: globalSettings
+
+    private fun settingsOf(verbose: Boolean, traceCategories: Set<TraceCategory>) =
+        Settings(verbose, traceCategories.fold(0) { mask, category -> mask or (1 shl category.ordinal) })
+
+    @JvmStatic
+    val isVerbose: Boolean
+        get() = settings().verbose
+
+    @JvmStatic
+    fun configure(verbose: Boolean, traceCategories: Set<TraceCategory>) {
+        globalSettings = settingsOf(verbose, traceCategories)
+    }
+
+    /**
+     * Runs block with the given settings on this thread, instead of the ones set with configure.
+     */
+    fun <T> withSettings(verbose: Boolean, traceCategories: Set<TraceCategory>, block: () -> T): T {
+        val previous = threadSettings.get()
+        threadSettings.set(settingsOf(verbose, traceCategories))
+        try {
+            return block()
+        } finally {
+            threadSettings.set(previous)
         }
     }
-}
\ No newline at end of file
+
+    @JvmStatic
+    fun isTraceEnabled(category: TraceCategory): Boolean = (settings().traceMask and (1 shl category.ordinal)) != 0
+
+    /**
+     * Prints a trace message. Does not check if the category is enabled.
+     */
+    @JvmStatic
+    fun printTrace(category: TraceCategory, message: String) {
+        warningStream().println("[${category.optionName}] $message")
+    }
+
+    /**
+     * Prints a trace message if the category is enabled. For Java callers, that pass an already built message.
+     */
+    @JvmStatic
+    fun trace(category: TraceCategory, message: String) {
+        if (isTraceEnabled(category)) printTrace(category, message)
+    }
+
+    /**
+     * Prints progress information if verbose output is enabled.
+     */
+    @JvmStatic
+    fun info(message: String) {
+        if (isVerbose) warningStream().println(message)
+    }
+}
+
+/**
+ * Prints the message built by message if tracing of category is enabled. The message is not built otherwise.
+ */
+inline fun trace(category: TraceCategory, message: () -> String) {
+    if (Diagnostics.isTraceEnabled(category)) Diagnostics.printTrace(category, message())
+}
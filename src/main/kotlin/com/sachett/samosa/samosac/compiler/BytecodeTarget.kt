@@ -0,0 +1,49 @@
+package com.sachett.samosa.samosac.compiler
+
+import org.objectweb.asm.ClassReader
+import org.objectweb.asm.Opcodes
+
+/**
+ * The Java release the generated classes are for (see CompilerOptions: --target).
+ * @param release           The Java release.
+ * @param classFileVersion  The class file version of the generated classes.
+ */
+enum class BytecodeTarget(val release: Int, val classFileVersion: Int) {
+    JAVA_8(8, Opcodes.V1_8),
+    JAVA_11(11, Opcodes.V11),
+    JAVA_17(17, Opcodes.V17),
+
+    /**
+     * The ASM in use only goes up to V18, so this is written as a number.
+     */
+    JAVA_21(21, 65);
+
+    /**
+     * Whether string concatenation can be done with StringConcatFactory (an invokedynamic), i.e. Java 9+.
+     */
+    val hasIndyStringConcat: Boolean get() = release >= 9
+
+    companion object {
+        fun fromRelease(release: Int): BytecodeTarget? = values().find { it.release == release }
+    }
+}
+
+/**
+ * The newest class file version the ASM in use can read.
+ */
+private const val MAX_READABLE_CLASS_FILE_VERSION = Opcodes.V18
+
+/**
+ * Returns a reader for the bytes of a generated class. Classes of a target that is newer than the ASM in use
+ * are read as the newest version it can read (the code samosac generates is the same from Java 9 onwards).
+ */
+fun classReaderFor(classBytes: ByteArray): ClassReader {
+    val majorVersion = ((classBytes[6].toInt() and 0xFF) shl 8) or (classBytes[7].toInt() and 0xFF)
+    if (majorVersion <= MAX_READABLE_CLASS_FILE_VERSION) {
+        return ClassReader(classBytes)
+    }
+    val readableBytes = classBytes.copyOf()
+    readableBytes[6] = (MAX_READABLE_CLASS_FILE_VERSION shr 8).toByte()
+    readableBytes[7] = MAX_READABLE_CLASS_FILE_VERSION.toByte()
+    return ClassReader(readableBytes)
+}
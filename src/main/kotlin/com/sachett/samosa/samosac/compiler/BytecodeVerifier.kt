@@ -0,0 +1,188 @@
+package com.sachett.samosa.samosac.compiler
+
+import com.sachett.samosa.logging.Severity
+import com.sachett.samosa.logging.fmterror
+import com.sachett.samosa.logging.nonfatalerr
+import org.objectweb.asm.ClassVisitor
+import org.objectweb.asm.Label
+import org.objectweb.asm.MethodVisitor
+import org.objectweb.asm.Opcodes
+import org.objectweb.asm.Type
+import org.objectweb.asm.tree.AbstractInsnNode
+import org.objectweb.asm.tree.ClassNode
+import org.objectweb.asm.tree.LineNumberNode
+import org.objectweb.asm.tree.analysis.Analyzer
+import org.objectweb.asm.tree.analysis.AnalyzerException
+import org.objectweb.asm.tree.analysis.SimpleVerifier
+import org.objectweb.asm.util.CheckClassAdapter
+import java.io.File
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+
+/**
+ * How thoroughly the generated classes are verified (see CompilerOptions: --verify).
+ */
+enum class VerificationLevel(val optionName: String) {
+    /**
+     * The classes are not verified.
+     */
+    NONE("none"),
+
+    /**
+     * The structure of the classes is checked: valid opcodes and operands, labels, constant pool entries etc.
+     * Cheap, so it is done right after codegen.
+     */
+    STRUCTURAL("structural"),
+
+    /**
+     * The structural checks and a data-flow analysis of every method (the types of the locals and of the stack
+     * at every instruction). As expensive as codegen, so the compiler does it in the background.
+     */
+    FULL("full");
+
+    companion object {
+        fun fromOptionName(name: String): VerificationLevel? = values().find { it.optionName == name }
+    }
+}
+
+/**
+ * A verification error in a generated method.
+ * @param line  The line of the samosa source the failing instruction was generated for, or null if it is not known.
+ */
+data class VerificationFailure(
+    val sourceFile: File,
+    val methodName: String,
+    val line: Int?,
+    val message: String
+) {
+    /**
+     * Reports this failure as an error (that does not stop the compilation by itself).
+     */
+    fun report() {
+        val errorMessage = "Internal error: The code generated for ${sourceFile.name} (in $methodName) " +
+                "failed verification: $message"
+        if (line != null) {
+            fmterror(errorMessage, line, Severity.ERROR)
+        } else {
+            nonfatalerr("samosac: $errorMessage")
+        }
+    }
+}
+
+/**
+ * Verifies generated classes. Failures are mapped back to source lines through the line numbers of the classes.
+ */
+object BytecodeVerifier {
+    fun verify(
+        level: VerificationLevel, sourceFile: File, className: String, classBytes: ByteArray
+    ): List<VerificationFailure> = when (level) {
+        VerificationLevel.NONE -> emptyList()
+        VerificationLevel.STRUCTURAL -> verifyStructure(sourceFile, classBytes)
+        VerificationLevel.FULL -> verifyStructure(sourceFile, classBytes).ifEmpty {
+            verifyDataFlow(sourceFile, className, classBytes)
+        }
+    }
+
+    private fun verifyStructure(sourceFile: File, classBytes: ByteArray): List<VerificationFailure> {
+        val lineTracker = LineTrackingClassVisitor()
+        return try {
+            classReaderFor(classBytes).accept(CheckClassAdapter(lineTracker, false), 0)
+            emptyList()
+        } catch (e: RuntimeException) {
+            // CheckClassAdapter throws on the first invalid instruction, after the line tracker has seen its line
+            listOf(VerificationFailure(sourceFile, lineTracker.methodName, lineTracker.line, e.message ?: e.toString()))
+        }
+    }
+
+    private fun verifyDataFlow(sourceFile: File, className: String, classBytes: ByteArray): List<VerificationFailure> {
+        val classNode = ClassNode()
+        classReaderFor(classBytes).accept(classNode, 0)
+
+        val failures = arrayListOf<VerificationFailure>()
+        for (method in classNode.methods) {
+            val verifier = SimpleVerifier(
+                Type.getObjectType(className), Type.getObjectType(classNode.superName), false
+            )
+            verifier.setClassLoader(BytecodeVerifier::class.java.classLoader)
+            try {
+                Analyzer(verifier).analyze(className, method)
+            } catch (e: AnalyzerException) {
+                failures.add(VerificationFailure(sourceFile, method.name, lineOf(e.node), e.message ?: e.toString()))
+            }
+        }
+        return failures
+    }
+
+    private fun lineOf(node: AbstractInsnNode?): Int? {
+        var current = node
+        while (current != null) {
+            if (current is LineNumberNode) {
+                return current.line
+            }
+            current = current.previous
+        }
+        return null
+    }
+
+    /**
+     * Remembers the method and the line number being visited.
+     */
+    private class LineTrackingClassVisitor : ClassVisitor(Opcodes.ASM9) {
+        var methodName = "<class>"
+        var line: Int? = null
+
+        override fun visitMethod(
+            access: Int, name: String, descriptor: String, signature: String?, exceptions: Array<out String>?
+        ): MethodVisitor {
+            methodName = name
+            line = null
+            return object : MethodVisitor(Opcodes.ASM9) {
+                override fun visitLineNumber(line: Int, start: Label) {
+                    this@LineTrackingClassVisitor.line = line
+                }
+            }
+        }
+    }
+}
+
+/**
+ * Runs the full verification of the generated classes on a pool of background threads, so that it is off the
+ * path of writing the class files. The failures are collected with awaitFailures(), on the calling thread.
+ */
+class BackgroundVerifier(threads: Int) : AutoCloseable {
+    private val pool: ExecutorService = Executors.newFixedThreadPool(threads) { runnable ->
+        Thread(runnable, "samosac-verifier").apply { isDaemon = true }
+    }
+    private val pending = arrayListOf<Future<List<VerificationFailure>>>()
+
+    /**
+     * Verifies a class in the background.
+     * @param onVerified    Called (on a verifier thread) if the class passes the verification.
+     */
+    fun submit(sourceFile: File, className: String, classBytes: ByteArray, onVerified: () -> Unit = {}) {
+        val future = pool.submit<List<VerificationFailure>> {
+            val failures = BytecodeVerifier.verify(VerificationLevel.FULL, sourceFile, className, classBytes)
+            if (failures.isEmpty()) {
+                onVerified()
+            }
+            failures
+        }
+        synchronized(pending) {
+            pending.add(future)
+        }
+    }
+
+    /**
+     * Waits for all the submitted classes to be verified.
+     * @return  The failures, in order of submission.
+     */
+    fun awaitFailures(): List<VerificationFailure> {
+        val futures = synchronized(pending) { pending.toList() }
+        return futures.flatMap { it.get() }
+    }
+
+    override fun close() {
+        pool.shutdown()
+    }
+}
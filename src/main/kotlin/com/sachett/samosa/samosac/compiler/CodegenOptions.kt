@@ -0,0 +1,52 @@
+package com.sachett.samosa.samosac.compiler
+
+import com.sachett.samosa.samosac.codegen.peephole.PeepholePass
+
+/**
+ * The options that affect the code generated for a program (see CompilerOptions for the command line flags).
+ * @param randomSeed    If not null, the seed of the random numbers of uncertain statements: every run of the program
+ *                      makes the same choices.
+ * @param target        The Java release the generated classes are for.
+ * @param peepholePasses    The peephole passes the generated methods are optimized with (none by default).
+ * @param mainChunkSize The size in bytes of bytecode past which the top-level code of a program is continued in
+ *                      another method (see ClassFileGenerator), or 0 to keep all of it in main.
+ * @param tailCalls     Whether a function that returns a call of itself jumps back to its start instead of calling
+ *                      itself (see FunctionCodegen).
+ * @param inlineBudget  The size in bytes of bytecode up to which the calls of a function are inlined
+ *                      (see FunctionInliner), or 0 to inline none.
+ */
+data class CodegenOptions(
+    val randomSeed: Long? = null,
+    val target: BytecodeTarget = BytecodeTarget.JAVA_8,
+    val peepholePasses: Set<PeepholePass> = emptySet(),
+    val mainChunkSize: Int = DEFAULT_MAIN_CHUNK_SIZE,
+    val tailCalls: Boolean = true,
+    val inlineBudget: Int = 0
+) {
+    /**
+     * These options as a string, for the incremental cache key.
+     */
+    fun flags(): String = listOfNotNull(
+        randomSeed?.let { "seed=$it" },
+        "target=${target.release}",
+        if (peepholePasses.isEmpty()) null
+        else "peephole=" + peepholePasses.sorted().joinToString("+") { it.optionName },
+        "split-main=$mainChunkSize",
+        if (tailCalls) null else "no-tail-calls",
+        if (inlineBudget == 0) null else "inline=$inlineBudget"
+    ).joinToString(",")
+
+    companion object {
+        /**
+         * Leaves room for the statement that crosses it under HotSpot's HugeMethodLimit (8000 bytes), past which
+         * a method is never JIT-compiled.
+         */
+        const val DEFAULT_MAIN_CHUNK_SIZE = 6000
+
+        /**
+         * HotSpot's MaxInlineSize: the size up to which the JIT inlines a method however rarely it is called (if it
+         * compiles the calling method at all, and has inlining budget left for it).
+         */
+        const val DEFAULT_INLINE_BUDGET = 35
+    }
+}
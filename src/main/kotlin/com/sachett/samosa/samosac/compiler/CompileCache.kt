@@ -0,0 +1,100 @@
+package com.sachett.samosa.samosac.compiler
+
+import com.sachett.samosa.logging.infoStream
+import java.io.*
+import java.nio.file.AtomicMoveNotSupportedException
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+import java.security.MessageDigest
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * On-disk cache of compiled classes.
+ * Entries are keyed by a hash of the source bytes, the source file name (which decides the class name),
+ * the compiler version (a hash of the compiler's code, see samosacVersion), the flags that affect code generation and
+ * the verification level (see CompilerOptions.cacheKeyFlags).
+ * Each entry stores the name and the bytes of the class file.
+ *
+ * The cache can be used concurrently: entries are written to a temporary file first and then moved in place.
+ */
+class CompileCache(private val cacheDir: File) {
+    private val hits = AtomicInteger(0)
+    private val misses = AtomicInteger(0)
+
+    companion object {
+        private const val ENTRY_MAGIC = 0x53414d4f // "SAMO"
+        private const val ENTRY_SUFFIX = ".centry"
+    }
+
+    /**
+     * Computes the cache key for a source file.
+     */
+    fun keyFor(sourceFileName: String, sourceBytes: ByteArray, flags: String): String {
+        val digest = MessageDigest.getInstance("SHA-256")
+        digest.update("samosac:$samosacVersion\u0000$flags\u0000$sourceFileName\u0000".toByteArray())
+        digest.update(sourceBytes)
+        return digest.digest().joinToString("") { "%02x".format(it) }
+    }
+
+    /**
+     * Looks up an entry. Unreadable or corrupt entries are treated as misses.
+     */
+    fun lookup(key: String): CompiledClass? {
+        val entryFile = entryFile(key)
+        if (!entryFile.isFile) {
+            misses.incrementAndGet()
+            return null
+        }
+
+        return try {
+            DataInputStream(BufferedInputStream(FileInputStream(entryFile))).use { input ->
+                if (input.readInt() != ENTRY_MAGIC) {
+                    throw IOException("Bad cache entry header")
+                }
+                val className = input.readUTF()
+                val classBytes = ByteArray(input.readInt())
+                input.readFully(classBytes)
+
+                hits.incrementAndGet()
+                CompiledClass(className, classBytes)
+            }
+        } catch (e: IOException) {
+            misses.incrementAndGet()
+            null
+        }
+    }
+
+    /**
+     * Stores an entry. Failure to write to the cache is not fatal to the compilation.
+     */
+    fun store(key: String, entry: CompiledClass) {
+        val entryFile = entryFile(key)
+        try {
+            entryFile.parentFile.mkdirs()
+            val tempFile = File.createTempFile(key, ".tmp", entryFile.parentFile)
+            DataOutputStream(BufferedOutputStream(FileOutputStream(tempFile))).use { output ->
+                output.writeInt(ENTRY_MAGIC)
+                output.writeUTF(entry.className)
+                output.writeInt(entry.classBytes.size)
+                output.write(entry.classBytes)
+            }
+
+            try {
+                Files.move(tempFile.toPath(), entryFile.toPath(), StandardCopyOption.ATOMIC_MOVE)
+            } catch (e: AtomicMoveNotSupportedException) {
+                Files.move(tempFile.toPath(), entryFile.toPath(), StandardCopyOption.REPLACE_EXISTING)
+            }
+        } catch (e: IOException) {
+            infoStream().println("samosac: Could not write cache entry for key $key: ${e.message}")
+        }
+    }
+
+    fun report() {
+        val total = hits.get() + misses.get()
+        val hitRate = if (total == 0) 0.0 else hits.get() * 100.0 / total
+        infoStream().println("samosac: Cache: ${hits.get()} hits, ${misses.get()} misses " +
+                "(${"%.1f".format(hitRate)}% hit rate) in ${cacheDir.path}")
+    }
+
+    private fun entryFile(key: String) = File(cacheDir, key.substring(0, 2) + File.separator + key + ENTRY_SUFFIX)
+}
@@ -0,0 +1,193 @@
+package com.sachett.samosa.samosac.compiler
+
+import com.sachett.samosa.logging.infoStream
+import com.sachett.samosa.samosac.codegen.function.FunctionInliner
+import com.sachett.samosa.samosac.codegen.peephole.PeepholeOptimizer
+import org.antlr.v4.runtime.tree.ParseTree
+import org.objectweb.asm.ClassVisitor
+import org.objectweb.asm.MethodVisitor
+import org.objectweb.asm.Opcodes
+import org.objectweb.asm.commons.CodeSizeEvaluator
+import java.io.File
+import java.lang.management.ManagementFactory
+
+/**
+ * Wall time and bytes allocated (by the compiling thread) during a single phase of compilation.
+ */
+class PhaseStats(val name: String, val nanos: Long, val allocatedBytes: Long)
+
+/**
+ * Metrics collected while compiling a single file (see --stats and --stats-json).
+ * An instance is meant to be used by the single thread that compiles the file.
+ */
+class FileStats(val sourceFile: File) {
+    val phases = arrayListOf<PhaseStats>()
+    var tokenCount = 0
+    var parseTreeNodeCount = 0
+    var symbolCount = 0
+
+    /* (method name + descriptor) -> size of the method's bytecode */
+    val methodBytecodeSizes = linkedMapOf<String, Int>()
+
+    /* peephole pass (option name) -> what it saved in the class (if the methods were optimized) */
+    val peepholeSavings = linkedMapOf<String, PeepholeOptimizer.Savings>()
+
+    /* the calls that were inlined in the class (if inlining is enabled) */
+    val inlinedCalls = arrayListOf<FunctionInliner.InlinedCall>()
+
+    /**
+     * Runs block as the phase with the given name and records its wall time and allocations.
+     */
+    fun <T> phase(name: String, block: () -> T): T {
+        val startAllocated = currentThreadAllocatedBytes()
+        val startTime = System.nanoTime()
+        try {
+            return block()
+        } finally {
+            val nanos = System.nanoTime() - startTime
+            val allocated = currentThreadAllocatedBytes() - startAllocated
+            phases.add(PhaseStats(name, nanos, if (startAllocated < 0) -1 else allocated))
+        }
+    }
+
+    fun recordMethodSizes(classBytes: ByteArray) {
+        classReaderFor(classBytes).accept(object : ClassVisitor(Opcodes.ASM9) {
+            override fun visitMethod(
+                access: Int, name: String, descriptor: String, signature: String?, exceptions: Array<out String>?
+            ): MethodVisitor {
+                return object : CodeSizeEvaluator(null) {
+                    override fun visitEnd() {
+                        methodBytecodeSizes[name + descriptor] = maxSize
+                    }
+                }
+            }
+        }, 0)
+    }
+
+    fun recordPeepholeSavings(peepholeOptimizer: PeepholeOptimizer) {
+        for ((pass, savings) in peepholeOptimizer.savings) {
+            peepholeSavings[pass.optionName] = savings
+        }
+    }
+
+    fun recordInlinedCalls(functionInliner: FunctionInliner) {
+        inlinedCalls.addAll(functionInliner.inlinedCalls)
+    }
+
+    companion object {
+        private val threadMXBean = ManagementFactory.getThreadMXBean()
+
+        /**
+         * Returns the bytes allocated so far by the current thread, or -1 if the JVM cannot tell.
+         */
+        private fun currentThreadAllocatedBytes(): Long {
+            val bean = threadMXBean
+            if (bean is com.sun.management.ThreadMXBean && bean.isThreadAllocatedMemorySupported) {
+                return bean.getThreadAllocatedBytes(Thread.currentThread().id)
+            }
+            return -1
+        }
+
+        /**
+         * Counts the nodes of a parse tree. Walks the tree with an explicit stack: a long chain of binary operators
+         * (a + b + c + ...) makes a tree as deep as the chain is long.
+         */
+        fun countParseTreeNodes(tree: ParseTree): Int {
+            var count = 0
+            val pending = ArrayDeque<ParseTree>()
+            pending.addLast(tree)
+            while (pending.isNotEmpty()) {
+                val node = pending.removeLast()
+                count++
+                for (i in 0 until node.childCount) {
+                    pending.addLast(node.getChild(i))
+                }
+            }
+            return count
+        }
+    }
+}
+
+/**
+ * Prints a human-readable summary of the stats of all the files (to infoStream()).
+ */
+fun printStats(allStats: List<FileStats>) {
+    val out = infoStream()
+    for (stats in allStats) {
+        out.println("samosac: Stats for ${stats.sourceFile.path}")
+        out.println("  tokens: ${stats.tokenCount}, parse tree nodes: ${stats.parseTreeNodeCount}, " +
+                "symbols: ${stats.symbolCount}")
+        for (phase in stats.phases) {
+            out.println("  %-10s %10.3f ms %14s".format(
+                phase.name, phase.nanos / 1e6,
+                if (phase.allocatedBytes < 0) "n/a" else "${phase.allocatedBytes} B"
+            ))
+        }
+        for ((method, size) in stats.methodBytecodeSizes) {
+            out.println("  method $method: $size bytes")
+        }
+        for ((pass, savings) in stats.peepholeSavings) {
+            out.println("  peephole $pass: ${savings.rewrites} rewrites, ${savings.instructions} instructions " +
+                    "and ${savings.bytes} bytes saved")
+        }
+        for (call in stats.inlinedCalls) {
+            out.println("  inlined ${call.callee} (${call.bytes} bytes) into ${call.caller} at ${call.line}:${call.column}")
+        }
+    }
+}
+
+/**
+ * Writes the stats of all the files to a JSON file.
+ */
+fun writeStatsJson(allStats: List<FileStats>, jsonFile: File) {
+    val json = StringBuilder()
+    json.append("{\n  \"files\": [")
+    allStats.forEachIndexed { fileIndex, stats ->
+        if (fileIndex > 0) json.append(",")
+        json.append("\n    {\n")
+        json.append("      \"file\": ${jsonString(stats.sourceFile.path)},\n")
+        json.append("      \"tokens\": ${stats.tokenCount},\n")
+        json.append("      \"parseTreeNodes\": ${stats.parseTreeNodeCount},\n")
+        json.append("      \"symbols\": ${stats.symbolCount},\n")
+        json.append("      \"phases\": [")
+        json.append(stats.phases.joinToString(",") {
+            "\n        {\"name\": ${jsonString(it.name)}, \"nanos\": ${it.nanos}, " +
+                    "\"allocatedBytes\": ${it.allocatedBytes}}"
+        })
+        json.append("\n      ],\n")
+        json.append("      \"methodBytecodeSizes\": {")
+        json.append(stats.methodBytecodeSizes.entries.joinToString(",") {
+            "\n        ${jsonString(it.key)}: ${it.value}"
+        })
+        json.append("\n      },\n")
+        json.append("      \"peephole\": {")
+        json.append(stats.peepholeSavings.entries.joinToString(",") {
+            "\n        ${jsonString(it.key)}: {\"rewrites\": ${it.value.rewrites}, " +
+                    "\"instructions\": ${it.value.instructions}, \"bytes\": ${it.value.bytes}}"
+        })
+        json.append("\n      },\n")
+        json.append("      \"inlinedCalls\": [")
+        json.append(stats.inlinedCalls.joinToString(",") {
+            "\n        {\"callee\": ${jsonString(it.callee)}, \"caller\": ${jsonString(it.caller)}, " +
+                    "\"line\": ${it.line}, \"column\": ${it.column}, \"bytes\": ${it.bytes}}"
+        })
+        json.append("\n      ]\n    }")
+    }
+    json.append("\n  ]\n}\n")
+
+    jsonFile.absoluteFile.parentFile?.mkdirs()
+    jsonFile.writeText(json.toString())
+}
+
+private fun jsonString(value: String): String {
+    val escaped = StringBuilder("\"")
+    for (c in value) {
+        when {
+            c == '"' -> escaped.append("\\\"")
+            c == '\\' -> escaped.append("\\\\")
+            c < ' ' -> escaped.append("\\u%04x".format(c.code))
+            else -> escaped.append(c)
+        }
+    }
+    return escaped.append('"').toString()
+}
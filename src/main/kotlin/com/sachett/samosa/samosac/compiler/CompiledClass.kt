@@ -0,0 +1,9 @@
+package com.sachett.samosa.samosac.compiler
+
+/**
+ * The result of compiling a single source file, held in memory.
+ */
+class CompiledClass(
+    val className: String,
+    val classBytes: ByteArray
+)
@@ -1,60 +1,329 @@
 package com.sachett.samosa.samosac.compiler
 
+import com.sachett.samosa.logging.CompilationFailedException
+import com.sachett.samosa.logging.Diagnostics
 import com.sachett.samosa.logging.err
+import com.sachett.samosa.logging.infoStream
 import com.sachett.samosa.parser.SamosaLexer
-import com.sachett.samosa.parser.SamosaParser
 import com.sachett.samosa.samosac.codegen.ClassFileGenerator
+import com.sachett.samosa.samosac.compiler.daemon.CompileDaemon
 import com.sachett.samosa.samosac.staticchecker.StaticTypesChecker
 import com.sachett.samosa.samosac.symbol.symboltable.SymbolTable
 import org.antlr.v4.runtime.CharStreams
 import org.antlr.v4.runtime.CommonTokenStream
 
-import kotlinx.coroutines.*
 import java.io.File
+import java.security.MessageDigest
+import java.util.UUID
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.Future
+import java.util.concurrent.Semaphore
+import kotlin.system.exitProcess
+
+/**
+ * Version of the compiler: a hash of the compiler's own code (its jar, or its class files when it is run from a
+ * directory). Part of the incremental cache key, so every build of the compiler that changes codegen (or anything
+ * else in the compiler) gets its own cache entries.
+ */
+val samosacVersion: String by lazy { hashCompilerCode() }
+
+private fun hashCompilerCode(): String {
+    val codeSource = CompileCache::class.java.protectionDomain.codeSource
+        // no way to tell this build from another one: never share cache entries with another process
+        ?: return "unknown-" + UUID.randomUUID()
+    val location = File(codeSource.location.toURI())
+    val digest = MessageDigest.getInstance("SHA-256")
+
+    if (location.isFile) {
+        location.inputStream().use { input ->
+            val buffer = ByteArray(64 * 1024)
+            var read = input.read(buffer)
+            while (read != -1) {
+                digest.update(buffer, 0, read)
+                read = input.read(buffer)
+            }
+        }
+    } else {
+        location.walkTopDown()
+            .filter { it.isFile && it.extension == "class" }
+            .sortedBy { it.relativeTo(location).invariantSeparatorsPath }
+            .forEach {
+                digest.update(it.relativeTo(location).invariantSeparatorsPath.toByteArray())
+                digest.update(it.readBytes())
+            }
+    }
+    return digest.digest().joinToString("") { "%02x".format(it) }
+}
+
+/**
+ * Result of compiling a single source file.
+ */
+data class FileCompileResult(
+    val sourceFile: File,
+    val classFile: File,
+    val sourceBytes: Long,
+    val nanos: Long,
+    val fromCache: Boolean = false,
+    val stats: FileStats? = null
+)
 
 fun main(args: Array<String>) {
+    try {
+        runCompiler(args)
+    } catch (e: CompilationFailedException) {
+        // the error has already been reported
+        exitProcess(-1)
+    }
+}
+
+private fun runCompiler(args: Array<String>) {
     if (args.isEmpty()) {
         err("samosac: No input files!")
     }
 
-    var outputDir = File("./out")
-    for (arg in args) {
-        if (arg.startsWith("-o")) {
-            outputDir = File(arg.substring(2))
+    if (args[0] == "run") {
+        runInMemory(args.drop(1))
+        return
+    }
+
+    val options = CompilerOptions.parse(args)
+    Diagnostics.configure(options.verbose, options.traceCategories)
+    if (options.daemon) {
+        CompileDaemon(options).serve()
+        return
+    }
+    if (options.inputFiles.isEmpty()) {
+        err("samosac: No input files!")
+    }
+
+    compileAndReport(options)
+}
+
+/**
+ * Compiles all the input files in the options (see compileAll), with the cache in options.cacheDir if there is one,
+ * and reports the throughput, the cache hits and the stats (if they are asked for with --stats or --stats-json).
+ */
+fun compileAndReport(options: CompilerOptions): List<FileCompileResult> {
+    val cache = options.cacheDir?.let { CompileCache(it) }
+
+    val startTime = System.nanoTime()
+    val results = compileAll(options, cache)
+    reportThroughput(results, System.nanoTime() - startTime)
+    cache?.report()
+
+    val allStats = results.mapNotNull { it.stats }
+    if (options.stats) {
+        printStats(allStats)
+    }
+    options.statsJson?.let { writeStatsJson(allStats, it) }
+    return results
+}
+
+/**
+ * Compiles all the input files in the options.
+ * Files are compiled in parallel on a work-stealing pool of options.jobs threads. A file is only submitted to the
+ * pool when fewer than options.jobs files are in flight (submitted and not compiled yet), so the pool's queue never
+ * holds more than options.jobs files, however many input files there are.
+ * The runtime support class the generated classes use is written to options.outputDir as well.
+ */
+fun compileAll(options: CompilerOptions, cache: CompileCache? = null): List<FileCompileResult> {
+    RuntimeSupport.install(options.outputDir)
+    val verifier = if (options.verificationLevel == VerificationLevel.FULL) BackgroundVerifier(options.jobs) else null
+    verifier.use {
+        val results = compileAllFiles(options, cache, verifier)
+        if (verifier != null) {
+            reportVerificationFailures(verifier.awaitFailures())
         }
+        return results
+    }
+}
+
+private fun compileAllFiles(
+    options: CompilerOptions, cache: CompileCache?, verifier: BackgroundVerifier?
+): List<FileCompileResult> {
+    if (options.inputFiles.size == 1 || options.jobs == 1) {
+        // No need for a pool, compile on this thread.
+        return options.inputFiles.map { compileFile(File(it), options, cache, verifier) }
     }
 
-    // parallel generation of class files
-    runBlocking {
-        repeat (args.size) {
-            if (args[it].startsWith("-")) {
-                return@repeat
+    val pool = ForkJoinPool(options.jobs)
+    val inFlight = Semaphore(options.jobs)
+
+    try {
+        val futures: List<Future<FileCompileResult>> = options.inputFiles.map { inputFile ->
+            // wait for a file in flight to be compiled before submitting the next one
+            inFlight.acquire()
+            pool.submit<FileCompileResult> {
+                try {
+                    compileFile(File(inputFile), options, cache, verifier)
+                } finally {
+                    inFlight.release()
+                }
             }
-            launch {
-                val inputStream = CharStreams.fromFileName(args[0])
-                val samosaGrammarLexer = SamosaLexer(inputStream)
-                val commonTokenStream = CommonTokenStream(samosaGrammarLexer)
-                val samosaParser = SamosaParser(commonTokenStream)
+        }
 
-                val programContext = samosaParser.program()
+        return futures.map {
+            try {
+                it.get()
+            } catch (e: ExecutionException) {
+                // rethrow the original failure on the calling thread
+                throw e.cause ?: e
+            }
+        }
+    } finally {
+        pool.shutdown()
+    }
+}
 
-                val symbolTable = SymbolTable()
+/**
+ * Compiles a single samosa source file to a class file in options.outputDir.
+ * Every call gets its own lexer, parser, symbol table, checker and generator, so this can be called
+ * concurrently for different files.
+ * If a cache is given and it has an entry for the source, the class file is written straight from the cache.
+ * If a background verifier is given, the class is verified by it after it is written (and stored in the cache only
+ * if it passes); else it is verified before it is written, at options.verificationLevel.
+ */
+fun compileFile(
+    sourceFile: File, options: CompilerOptions, cache: CompileCache? = null, verifier: BackgroundVerifier? = null
+): FileCompileResult {
+    val startTime = System.nanoTime()
+    val stats = if (options.collectStats) FileStats(sourceFile) else null
 
-                println("Visiting declarations...")
-                val staticTypesChecker = StaticTypesChecker(symbolTable)
-                staticTypesChecker.visit(programContext)
+    if (!sourceFile.exists()) {
+        err("samosac: Input source file ${sourceFile.path} not found, quitting.")
+    }
 
-                println("Beginning class file generation")
+    val sourceBytes = sourceFile.readBytes()
+    val cacheKey = cache?.keyFor(sourceFile.name, sourceBytes, options.cacheKeyFlags())
+    // a cached class would not be disassembled
+    if (cache != null && cacheKey != null && options.disassemblyDir == null) {
+        val cacheEntry = stats.measure("cache") { cache.lookup(cacheKey) }
+        if (cacheEntry != null) {
+            stats.measure("write") {
+                ClassFileGenerator.writeClassBytes(options.outputDir, cacheEntry.className, cacheEntry.classBytes)
+            }
+            val result = FileCompileResult(
+                sourceFile, classFileIn(options.outputDir, cacheEntry.className),
+                sourceBytes.size.toLong(), System.nanoTime() - startTime, true, stats
+            )
+            Diagnostics.info("samosac: ${sourceFile.name} is up to date (cached)")
+            return result
+        }
+    }
 
-                val sourceFile = File(args[it])
-                if (!sourceFile.exists()) {
-                    err("samosac: Input source file not found, quitting.")
-                }
+    val compiledClass = compileSource(sourceFile, sourceBytes, options, stats, verifyInline = verifier == null)
+    stats.measure("write") {
+        ClassFileGenerator.writeClassBytes(options.outputDir, compiledClass.className, compiledClass.classBytes)
+    }
 
-                val classFileGenerator = ClassFileGenerator(programContext, sourceFile, outputDir, symbolTable)
-                classFileGenerator.generateClass()
-                classFileGenerator.writeClass()
+    if (verifier != null) {
+        verifier.submit(sourceFile, compiledClass.className, compiledClass.classBytes) {
+            if (cache != null && cacheKey != null) {
+                cache.store(cacheKey, compiledClass)
             }
         }
+    } else if (cache != null && cacheKey != null) {
+        cache.store(cacheKey, compiledClass)
+    }
+
+    val result = FileCompileResult(
+        sourceFile, classFileIn(options.outputDir, compiledClass.className),
+        sourceBytes.size.toLong(), System.nanoTime() - startTime, false, stats
+    )
+    if (Diagnostics.isVerbose) {
+        Diagnostics.info("samosac: Compiled ${sourceFile.name} in ${formatMillis(result.nanos)} ms " +
+                "(${formatRate(result.sourceBytes, result.nanos)} KiB/s)")
     }
-}
\ No newline at end of file
+    return result
+}
+
+/**
+ * Compiles the source of a samosa file to a class in memory; nothing is written to the disk.
+ * @param sourceFile    The source file. Only its name is used (to name the class).
+ * @param sourceBytes   The contents of the source file.
+ * @param stats         If not null, the metrics of the compilation are recorded in it.
+ * @param verifyInline  Whether the class is verified (at options.verificationLevel) before it is returned.
+ *                      If it fails the verification, the compilation fails.
+ */
+fun compileSource(
+    sourceFile: File, sourceBytes: ByteArray, options: CompilerOptions, stats: FileStats? = null,
+    verifyInline: Boolean = true
+): CompiledClass {
+    val inputStream = CharStreams.fromString(String(sourceBytes, Charsets.UTF_8), sourceFile.path)
+    val samosaGrammarLexer = SamosaLexer(inputStream)
+    val commonTokenStream = CommonTokenStream(samosaGrammarLexer)
+    stats.measure("lex") { commonTokenStream.fill() }
+
+    val programContext = stats.measure("parse") {
+        parseProgram(commonTokenStream, options.profileParser, sourceFile.name)
+    }
+
+    val symbolTable = SymbolTable()
+
+    Diagnostics.info("samosac: Checking ${sourceFile.name}")
+    val staticTypesChecker = StaticTypesChecker(symbolTable)
+    stats.measure("check") { staticTypesChecker.visit(programContext) }
+
+    Diagnostics.info("samosac: Generating code for ${sourceFile.name}")
+
+    val classFileGenerator = ClassFileGenerator(
+        programContext, sourceFile, options.outputDir, symbolTable, options.disassemblyDir, options.codegenOptions
+    )
+    stats.measure("codegen") { classFileGenerator.emitClass() }
+    if (verifyInline && options.verificationLevel != VerificationLevel.NONE) {
+        val verified = stats.measure("verify") { classFileGenerator.verifyClass(options.verificationLevel) }
+        if (!verified) {
+            err("samosac: The generated class for ${sourceFile.name} failed verification, quitting.")
+        }
+    }
+
+    val compiledClass = CompiledClass(classFileGenerator.className, classFileGenerator.classBytes)
+
+    if (stats != null) {
+        stats.tokenCount = commonTokenStream.size()
+        stats.parseTreeNodeCount = FileStats.countParseTreeNodes(programContext)
+        stats.symbolCount = symbolTable.symbolCount()
+        stats.recordMethodSizes(compiledClass.classBytes)
+        classFileGenerator.peepholeOptimizer?.let { stats.recordPeepholeSavings(it) }
+        classFileGenerator.functionInliner?.let { stats.recordInlinedCalls(it) }
+    }
+
+    return compiledClass
+}
+
+/**
+ * Runs block, as a phase of stats if there are stats to be collected.
+ */
+private fun <T> FileStats?.measure(phaseName: String, block: () -> T): T =
+    if (this == null) block() else phase(phaseName, block)
+
+/**
+ * Reports the failures of the background verification. The class files have been written already,
+ * but the compilation fails if there are any.
+ */
+private fun reportVerificationFailures(failures: List<VerificationFailure>) {
+    if (failures.isEmpty()) {
+        return
+    }
+    failures.forEach { it.report() }
+    val failedFiles = failures.map { it.sourceFile }.distinct().size
+    err("samosac: The generated classes for $failedFiles file(s) failed verification, quitting.")
+}
+
+private fun classFileIn(outputDir: File, className: String) = File(outputDir, "$className.class")
+
+private fun reportThroughput(results: List<FileCompileResult>, totalNanos: Long) {
+    if (results.size <= 1) {
+        return
+    }
+
+    val totalBytes = results.sumOf { it.sourceBytes }
+    val filesPerSec = results.size / (totalNanos / 1e9)
+    infoStream().println("samosac: Compiled ${results.size} files in ${formatMillis(totalNanos)} ms " +
+            "(${"%.1f".format(filesPerSec)} files/s, ${formatRate(totalBytes, totalNanos)} KiB/s)")
+}
+
+private fun formatMillis(nanos: Long) = "%.2f".format(nanos / 1e6)
+
+private fun formatRate(bytes: Long, nanos: Long) = "%.1f".format((bytes / 1024.0) / (nanos / 1e9))
@@ -0,0 +1,309 @@
+package com.sachett.samosa.samosac.compiler
+
+import com.sachett.samosa.logging.TraceCategory
+import com.sachett.samosa.logging.err
+import com.sachett.samosa.samosac.codegen.peephole.PeepholePass
+import java.io.File
+
+/**
+ * Options for a single run of samosac, parsed from the command line arguments.
+ */
+data class CompilerOptions(
+    val inputFiles: List<String>,
+    val outputDir: File,
+    val jobs: Int,
+    val cacheDir: File? = null,
+    val daemon: Boolean = false,
+    val daemonDir: File = defaultDaemonDir(),
+    val stats: Boolean = false,
+    val statsJson: File? = null,
+    val profileParser: Boolean = false,
+    val verbose: Boolean = false,
+    val traceCategories: Set<TraceCategory> = emptySet(),
+    val disassemblyDir: File? = null,
+    val verificationLevel: VerificationLevel = VerificationLevel.FULL,
+    val codegenOptions: CodegenOptions = CodegenOptions()
+) {
+    /**
+     * Should per-file stats be collected?
+     */
+    val collectStats: Boolean get() = stats || statsJson != null
+
+    /**
+     * The flags that affect the generated code, as a string.
+     */
+    fun codegenFlags(): String = codegenOptions.flags()
+
+    /**
+     * The flags that are a part of the incremental cache key: the codegen flags and the verification level, so that a
+     * class is only taken from the cache if it was verified at the level that is asked for.
+     */
+    fun cacheKeyFlags(): String = "${codegenFlags()};verify=${verificationLevel.optionName}"
+
+    /**
+     * Returns a copy of these options with relative input and output paths resolved against dir.
+     */
+    fun resolvedAgainst(dir: File): CompilerOptions = copy(
+        inputFiles = inputFiles.map { if (File(it).isAbsolute) it else File(dir, it).path },
+        outputDir = if (outputDir.isAbsolute) outputDir else File(dir, outputDir.path),
+        cacheDir = cacheDir?.let { if (it.isAbsolute) it else File(dir, it.path) },
+        statsJson = statsJson?.let { if (it.isAbsolute) it else File(dir, it.path) },
+        disassemblyDir = disassemblyDir?.let { if (it.isAbsolute) it else File(dir, it.path) }
+    )
+
+    companion object {
+        /**
+         * Parses the command line arguments.
+         *
+         * Supported options:
+         *   -o<dir>       Output directory for the class files (default: ./out)
+         *   --jobs N      Number of files to compile in parallel (default: no. of available processors)
+         *   --jobs=N      Same as above
+         *   --cache       Enable the incremental compilation cache in ./.samosac-cache
+         *   --cache-dir=<dir>  Enable the incremental compilation cache in dir
+         *   --daemon      Start a resident compile daemon instead of compiling (see CompileDaemon)
+         *   --daemon-dir=<dir>  Directory where the daemon publishes its connection info (default: ~/.samosac)
+         *   --stats       Print per-phase timing/allocation and size metrics of each file
+         *   --stats-json=<file>  Write the same metrics as JSON to file
+         *   --profile-parser  Report the parser's most expensive prediction decisions for each file
+         *   -v, --verbose  Print the progress of the compilation
+         *   --trace=<categories>  Print traces of the comma separated categories (checker, types, delegation) or all
+         *   --dump-asm    Write the disassembly of each generated class to [className].asm.txt in the output directory
+         *   --dump-asm=<dir>  Same as above, but in dir
+         *   --verify=<level>  Verification of the generated classes: none, structural or full (default: full,
+         *                     done in the background while the class files are written)
+         *   --seed=N      Seed the random numbers of uncertain statements, so that every run of the programs makes
+         *                 the same choices (without it, a run can be seeded with java -Dsamosa.seed=N)
+         *   --target N    The Java release the classes are generated for: 8, 11, 17 or 21 (default: 8)
+         *   --target=N    Same as above
+         *   --peephole    Optimize the generated methods with all the peephole passes (see PeepholePass); what
+         *                 every pass saved is reported with --stats
+         *   --peephole=<passes>  Same as above, with the comma separated passes (iinc, store-load, jump-chains,
+         *                 invert-branches, goto-next, dead-code), all or none
+         *   --split-main=N  Continue the top-level code of a program in another method once main has N bytes of
+         *                 bytecode, so that no method is too big to be JIT-compiled (default: 6000); none keeps
+         *                 all of it in main
+         *   --no-tail-calls  Compile the returns of a call of a function to itself as calls (by default they jump back
+         *                 to the start of the function, see FunctionCodegen)
+         *   --inline      Inline the calls of the functions whose methods have at most 35 bytes of bytecode and do not
+         *                 call themselves (see FunctionInliner); the inlined calls are reported with --stats
+         *   --inline=N    Same as above, with functions of at most N bytes; none turns inlining off (the default)
+         * Every other argument not starting with "-" is considered an input file.
+         */
+        fun parse(args: Array<String>): CompilerOptions {
+            val inputFiles = arrayListOf<String>()
+            var outputDir = File("./out")
+            var jobs = Runtime.getRuntime().availableProcessors()
+            var cacheDir: File? = null
+            var daemon = false
+            var daemonDir = defaultDaemonDir()
+            var stats = false
+            var statsJson: File? = null
+            var profileParser = false
+            var verbose = false
+            val traceCategories = mutableSetOf<TraceCategory>()
+            var dumpAsm = false
+            var disassemblyDir: File? = null
+            var verificationLevel = VerificationLevel.FULL
+            var randomSeed: Long? = null
+            var target = BytecodeTarget.JAVA_8
+            var peepholePasses = emptySet<PeepholePass>()
+            var mainChunkSize = CodegenOptions.DEFAULT_MAIN_CHUNK_SIZE
+            var tailCalls = true
+            var inlineBudget = 0
+
+            var i = 0
+            while (i < args.size) {
+                val arg = args[i]
+                when {
+                    arg == "--jobs" -> {
+                        if (i + 1 >= args.size) {
+                            err("samosac: --jobs requires a value.")
+                        }
+                        jobs = parseJobs(args[++i])
+                    }
+                    arg.startsWith("--jobs=") -> {
+                        jobs = parseJobs(arg.substringAfter("="))
+                    }
+                    arg == "--cache" -> {
+                        cacheDir = File("./.samosac-cache")
+                    }
+                    arg.startsWith("--cache-dir=") -> {
+                        cacheDir = File(arg.substringAfter("="))
+                    }
+                    arg == "--daemon" -> {
+                        daemon = true
+                    }
+                    arg.startsWith("--daemon-dir=") -> {
+                        daemonDir = File(arg.substringAfter("="))
+                    }
+                    arg == "--stats" -> {
+                        stats = true
+                    }
+                    arg.startsWith("--stats-json=") -> {
+                        statsJson = File(arg.substringAfter("="))
+                    }
+                    arg == "--profile-parser" -> {
+                        profileParser = true
+                    }
+                    arg == "-v" || arg == "--verbose" -> {
+                        verbose = true
+                    }
+                    arg.startsWith("--trace=") -> {
+                        traceCategories.addAll(parseTraceCategories(arg.substringAfter("=")))
+                    }
+                    arg == "--dump-asm" -> {
+                        dumpAsm = true
+                    }
+                    arg.startsWith("--dump-asm=") -> {
+                        dumpAsm = true
+                        disassemblyDir = File(arg.substringAfter("="))
+                    }
+                    arg.startsWith("--verify=") -> {
+                        verificationLevel = parseVerificationLevel(arg.substringAfter("="))
+                    }
+                    arg == "--target" -> {
+                        if (i + 1 >= args.size) {
+                            err("samosac: --target requires a value.")
+                        }
+                        target = parseTarget(args[++i])
+                    }
+                    arg.startsWith("--target=") -> {
+                        target = parseTarget(arg.substringAfter("="))
+                    }
+                    arg == "--peephole" -> {
+                        peepholePasses = PeepholePass.values().toSet()
+                    }
+                    arg.startsWith("--peephole=") -> {
+                        peepholePasses = parsePeepholePasses(arg.substringAfter("="))
+                    }
+                    arg.startsWith("--split-main=") -> {
+                        mainChunkSize = parseMainChunkSize(arg.substringAfter("="))
+                    }
+                    arg == "--inline" -> {
+                        inlineBudget = CodegenOptions.DEFAULT_INLINE_BUDGET
+                    }
+                    arg.startsWith("--inline=") -> {
+                        inlineBudget = parseInlineBudget(arg.substringAfter("="))
+                    }
+                    arg == "--no-tail-calls" -> {
+                        tailCalls = false
+                    }
+                    arg.startsWith("--seed=") -> {
+                        randomSeed = parseSeed(arg.substringAfter("="))
+                    }
+                    arg.startsWith("-o") -> {
+                        outputDir = File(arg.substring(2))
+                    }
+                    arg.startsWith("-") -> {
+                        err("samosac: Unknown option $arg.")
+                    }
+                    else -> {
+                        inputFiles.add(arg)
+                    }
+                }
+                i++
+            }
+
+            if (dumpAsm && disassemblyDir == null) {
+                disassemblyDir = outputDir
+            }
+
+            return CompilerOptions(
+                inputFiles, outputDir, jobs, cacheDir, daemon, daemonDir, stats, statsJson, profileParser,
+                verbose, traceCategories, disassemblyDir, verificationLevel,
+                CodegenOptions(randomSeed, target, peepholePasses, mainChunkSize, tailCalls, inlineBudget)
+            )
+        }
+
+        /**
+         * Returns the index of the first input file in the command line arguments, or -1 if there is none.
+         */
+        fun indexOfFirstInputFile(args: List<String>): Int {
+            var i = 0
+            while (i < args.size) {
+                val arg = args[i]
+                if (arg in optionsWithSeparateValue) {
+                    i++
+                } else if (!arg.startsWith("-")) {
+                    return i
+                }
+                i++
+            }
+            return -1
+        }
+
+        /* The options whose value is the next argument */
+        private val optionsWithSeparateValue = setOf("--jobs", "--target")
+
+        fun defaultDaemonDir() = File(System.getProperty("user.home"), ".samosac")
+
+        private fun parseTraceCategories(value: String): Set<TraceCategory> {
+            if (value == "all") {
+                return TraceCategory.values().toSet()
+            }
+            return value.split(",").filter { it.isNotBlank() }.map {
+                TraceCategory.fromOptionName(it.trim())
+                    ?: err("samosac: Unknown trace category $it. Expected one of: " +
+                            TraceCategory.values().joinToString(", ") { category -> category.optionName } + ", all.")
+            }.toSet()
+        }
+
+        private fun parseVerificationLevel(value: String): VerificationLevel =
+            VerificationLevel.fromOptionName(value)
+                ?: err("samosac: Unknown verification level $value. Expected one of: " +
+                        VerificationLevel.values().joinToString(", ") { it.optionName } + ".")
+
+        private fun parseTarget(value: String): BytecodeTarget =
+            value.toIntOrNull()?.let { BytecodeTarget.fromRelease(it) }
+                ?: err("samosac: Invalid value for --target: $value. Expected one of: " +
+                        BytecodeTarget.values().joinToString(", ") { it.release.toString() } + ".")
+
+        private fun parsePeepholePasses(value: String): Set<PeepholePass> {
+            if (value == "all") {
+                return PeepholePass.values().toSet()
+            }
+            if (value == "none") {
+                return emptySet()
+            }
+            return value.split(",").filter { it.isNotBlank() }.map {
+                PeepholePass.fromOptionName(it.trim())
+                    ?: err("samosac: Unknown peephole pass $it. Expected one of: " +
+                            PeepholePass.values().joinToString(", ") { pass -> pass.optionName } + ", all, none.")
+            }.toSet()
+        }
+
+        private fun parseMainChunkSize(value: String): Int {
+            if (value == "none") {
+                return 0
+            }
+            val size = value.toIntOrNull()
+            if (size == null || size < 1) {
+                err("samosac: Invalid value for --split-main: $value. Expected a positive number of bytes or none.")
+            }
+            return size
+        }
+
+        private fun parseInlineBudget(value: String): Int {
+            if (value == "none") {
+                return 0
+            }
+            val budget = value.toIntOrNull()
+            if (budget == null || budget < 1) {
+                err("samosac: Invalid value for --inline: $value. Expected a positive number of bytes or none.")
+            }
+            return budget
+        }
+
+        private fun parseSeed(value: String): Long =
+            value.toLongOrNull() ?: err("samosac: Invalid value for --seed: $value. Expected an integer.")
+
+        private fun parseJobs(value: String): Int {
+            val jobs = value.toIntOrNull()
+            if (jobs == null || jobs < 1) {
+                err("samosac: Invalid value for --jobs: $value. Expected a positive integer.")
+            }
+            return jobs
+        }
+    }
+}
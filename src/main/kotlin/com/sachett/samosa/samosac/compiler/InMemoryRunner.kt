@@ -0,0 +1,90 @@
+package com.sachett.samosa.samosac.compiler
+
+import com.sachett.samosa.logging.Diagnostics
+import com.sachett.samosa.logging.err
+import com.sachett.samosa.logging.withDiagnosticsStream
+import com.sachett.samosa.runtime.SamosaRuntime
+import java.io.File
+import java.lang.reflect.InvocationTargetException
+
+/**
+ * Compiles samosa programs and runs them in the current JVM, without writing class files to the disk.
+ *
+ * Every loaded program gets a class loader of its own, so the same program (or different programs
+ * with the same class name) can be loaded any number of times.
+ * The programs use the runtime support class (SamosaRuntime) of the compiler, so they share its I/O buffers.
+ * Note that a program calling the exit builtin exits the current JVM.
+ */
+class InMemoryRunner(private val options: CompilerOptions = CompilerOptions.parse(arrayOf())) {
+
+    /**
+     * Class loader for a single compiled program.
+     */
+    private class CompiledClassLoader(parent: ClassLoader) : ClassLoader(parent) {
+        fun define(compiledClass: CompiledClass): Class<*> =
+            defineClass(compiledClass.className, compiledClass.classBytes, 0, compiledClass.classBytes.size)
+    }
+
+    /**
+     * Compiles a program. If stats is not null, the metrics of the compilation are recorded in it.
+     */
+    @JvmOverloads
+    fun compile(sourceFile: File, stats: FileStats? = null): CompiledClass {
+        if (!sourceFile.exists()) {
+            err("samosac: Input source file ${sourceFile.path} not found, quitting.")
+        }
+        return compileSource(sourceFile, sourceFile.readBytes(), options, stats)
+    }
+
+    fun load(compiledClass: CompiledClass): Class<*> =
+        CompiledClassLoader(InMemoryRunner::class.java.classLoader).define(compiledClass)
+
+    /**
+     * Invokes the main method of a compiled program.
+     * Exceptions thrown by the program are rethrown as is. The output of the program is flushed (to the current
+     * System.out) before this returns, even if the program fails.
+     */
+    fun run(compiledClass: CompiledClass, programArgs: Array<String> = arrayOf()) {
+        val mainMethod = load(compiledClass).getMethod("main", Array<String>::class.java)
+        try {
+            mainMethod.invoke(null, programArgs)
+        } catch (e: InvocationTargetException) {
+            throw e.cause ?: e
+        } finally {
+            SamosaRuntime.flush()
+        }
+    }
+
+    fun run(sourceFile: File, programArgs: Array<String> = arrayOf()) = run(compile(sourceFile), programArgs)
+}
+
+/**
+ * Implements "samosac run [options] file.samo args": compiles the file in memory with the options (the same as samosac's,
+ * see CompilerOptions.parse) and runs it right away with the arguments that follow the file.
+ * The diagnostics and reports of the compiler (progress with -v, traces with --trace and the stats if they are asked
+ * for) are printed to System.err, so that only the output of the program is seen on System.out.
+ */
+fun runInMemory(args: List<String>) {
+    val fileIndex = CompilerOptions.indexOfFirstInputFile(args)
+    if (fileIndex < 0) {
+        err("samosac: No input file to run!")
+    }
+
+    val options = CompilerOptions.parse(args.subList(0, fileIndex + 1).toTypedArray())
+    val runner = InMemoryRunner(options)
+    val sourceFile = File(args[fileIndex])
+    val stats = if (options.collectStats) FileStats(sourceFile) else null
+    Diagnostics.configure(options.verbose, options.traceCategories)
+    val compiledClass = withDiagnosticsStream(System.err) {
+        val compiledClass = runner.compile(sourceFile, stats)
+        if (stats != null && options.stats) {
+            printStats(listOf(stats))
+        }
+        compiledClass
+    }
+    if (stats != null) {
+        options.statsJson?.let { writeStatsJson(listOf(stats), it) }
+    }
+
+    runner.run(compiledClass, args.drop(fileIndex + 1).toTypedArray())
+}
@@ -0,0 +1,93 @@
+package com.sachett.samosa.samosac.compiler
+
+import com.sachett.samosa.logging.Severity
+import com.sachett.samosa.logging.err
+import com.sachett.samosa.logging.fmterror
+import com.sachett.samosa.logging.infoStream
+import com.sachett.samosa.parser.SamosaParser
+import org.antlr.v4.runtime.*
+import org.antlr.v4.runtime.atn.DecisionInfo
+import org.antlr.v4.runtime.atn.PredictionMode
+import org.antlr.v4.runtime.misc.ParseCancellationException
+
+/**
+ * Parses a samosa program in two stages.
+ *
+ * The first stage uses SLL prediction with a bailing error strategy, which is much faster and succeeds
+ * for almost all valid programs. Only if it fails (either the program has a syntax error or SLL is not
+ * powerful enough for it), the program is re-parsed with full LL prediction and the default error
+ * strategy, which reports the syntax errors. Compilation stops if there are any syntax errors.
+ *
+ * @param profile If true, ANTLR's ProfilingATNSimulator is used and a report of the prediction
+ *                decisions that were the most costly is printed after parsing.
+ */
+fun parseProgram(tokens: CommonTokenStream, profile: Boolean = false, sourceName: String = ""): SamosaParser.ProgramContext {
+    val samosaParser = SamosaParser(tokens)
+    samosaParser.setProfile(profile)
+
+    samosaParser.interpreter.predictionMode = PredictionMode.SLL
+    samosaParser.errorHandler = BailErrorStrategy()
+    samosaParser.removeErrorListeners()
+
+    var usedFullLL = false
+    val programContext = try {
+        samosaParser.program()
+    } catch (e: ParseCancellationException) {
+        usedFullLL = true
+        tokens.seek(0)
+        samosaParser.reset()
+        samosaParser.interpreter.predictionMode = PredictionMode.LL
+        samosaParser.errorHandler = DefaultErrorStrategy()
+        samosaParser.addErrorListener(SyntaxErrorListener)
+        samosaParser.program()
+    }
+
+    if (profile) {
+        printParserProfile(samosaParser, sourceName, usedFullLL)
+    }
+
+    if (samosaParser.numberOfSyntaxErrors > 0) {
+        err("samosac: ${samosaParser.numberOfSyntaxErrors} syntax error(s) in $sourceName, quitting.")
+    }
+
+    return programContext
+}
+
+/**
+ * Reports syntax errors in the same format as the other diagnostics.
+ */
+private object SyntaxErrorListener : BaseErrorListener() {
+    override fun syntaxError(
+        recognizer: Recognizer<*, *>?, offendingSymbol: Any?,
+        line: Int, charPositionInLine: Int, msg: String?, e: RecognitionException?
+    ) {
+        fmterror("Syntax error at column $charPositionInLine: $msg", line, Severity.ERROR)
+    }
+}
+
+private const val PROFILE_REPORT_DECISIONS = 10
+
+private fun printParserProfile(samosaParser: SamosaParser, sourceName: String, usedFullLL: Boolean) {
+    val decisionInfos = samosaParser.parseInfo.decisionInfo
+    val out = infoStream()
+
+    out.println("samosac: Parser profile for $sourceName " +
+            "(${if (usedFullLL) "SLL failed, re-parsed with LL" else "SLL succeeded"})")
+    out.println("  %-8s %-24s %11s %10s %10s %12s %10s %8s".format(
+        "decision", "rule", "invocations", "SLL look", "LL look", "LL fallback", "ambig", "time ms"
+    ))
+
+    decisionInfos
+        .filter { it.invocations > 0 }
+        .sortedWith(compareByDescending<DecisionInfo> { it.LL_TotalLook }
+            .thenByDescending { it.ambiguities.size }
+            .thenByDescending { it.SLL_TotalLook })
+        .take(PROFILE_REPORT_DECISIONS)
+        .forEach {
+            val ruleIndex = samosaParser.atn.decisionToState[it.decision].ruleIndex
+            out.println("  %-8d %-24s %11d %10d %10d %12d %10d %8.3f".format(
+                it.decision, samosaParser.ruleNames[ruleIndex], it.invocations, it.SLL_TotalLook,
+                it.LL_TotalLook, it.LL_Fallback, it.ambiguities.size, it.timeInPrediction / 1e6
+            ))
+        }
+}
@@ -0,0 +1,53 @@
+package com.sachett.samosa.samosac.compiler
+
+import com.sachett.samosa.builtins.Builtins
+import com.sachett.samosa.logging.err
+import com.sachett.samosa.runtime.SamosaRuntime
+import org.objectweb.asm.ClassReader
+import org.objectweb.asm.ClassVisitor
+import org.objectweb.asm.ClassWriter
+import org.objectweb.asm.Opcodes
+import java.io.File
+
+/**
+ * The runtime support class the generated programs call into (see SamosaRuntime). The compiler writes it to the
+ * output directory, next to the generated classes, so that the programs can be run from there.
+ */
+object RuntimeSupport {
+    /**
+     * The class file of the runtime, with the class file version of the generated classes.
+     */
+    val classBytes: ByteArray by lazy { readRuntimeClass() }
+
+    /**
+     * Writes the runtime class to outputDir, if it is not there already (or is from a different compiler).
+     */
+    fun install(outputDir: File) {
+        val classFile = File(outputDir, "${Builtins.RUNTIME_CLASS}.class")
+        synchronized(this) {
+            if (classFile.isFile && classFile.readBytes().contentEquals(classBytes)) {
+                return
+            }
+            classFile.parentFile.mkdirs()
+            classFile.writeBytes(classBytes)
+        }
+    }
+
+    private fun readRuntimeClass(): ByteArray {
+        val resource = "/${Builtins.RUNTIME_CLASS}.class"
+        val originalBytes = SamosaRuntime::class.java.getResourceAsStream(resource)?.use { it.readBytes() }
+            ?: err("samosac: Internal error: The runtime class $resource is missing.")
+
+        // The runtime is compiled along with the compiler, for a newer JVM than the generated classes need
+        val classWriter = ClassWriter(0)
+        ClassReader(originalBytes).accept(object : ClassVisitor(Opcodes.ASM9, classWriter) {
+            override fun visit(
+                version: Int, access: Int, name: String, signature: String?, superName: String?,
+                interfaces: Array<out String>?
+            ) {
+                super.visit(Opcodes.V1_8, access, name, signature, superName, interfaces)
+            }
+        }, 0)
+        return classWriter.toByteArray()
+    }
+}
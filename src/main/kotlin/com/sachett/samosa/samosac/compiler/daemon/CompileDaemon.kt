@@ -0,0 +1,161 @@
+package com.sachett.samosa.samosac.compiler.daemon
+
+import com.sachett.samosa.logging.CompilationFailedException
+import com.sachett.samosa.logging.Diagnostics
+import com.sachett.samosa.logging.err
+import com.sachett.samosa.logging.withDiagnosticsStream
+import com.sachett.samosa.parser.SamosaLexer
+import com.sachett.samosa.parser.SamosaParser
+import com.sachett.samosa.samosac.compiler.CompilerOptions
+import com.sachett.samosa.samosac.compiler.compileAndReport
+import com.sachett.samosa.samosac.symbol.symboltable.SymbolTable
+import org.antlr.v4.runtime.CharStreams
+import org.antlr.v4.runtime.CommonTokenStream
+import java.io.*
+import java.net.InetAddress
+import java.net.ServerSocket
+import java.net.Socket
+import java.net.SocketException
+import java.nio.file.Files
+import java.nio.file.attribute.PosixFilePermissions
+import java.security.SecureRandom
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+
+/**
+ * A resident compile server. Keeping the JVM alive between compilations keeps the JIT warm, the ANTLR
+ * DFA cache of SamosaLexer/SamosaParser (which is static, hence shared by all parser instances) populated
+ * and the reflectively registered builtins of SymbolTable around.
+ *
+ * Each request is handled on its own thread with its own diagnostics stream (see withDiagnosticsStream), that the
+ * errors, warnings, progress and reports of its compilation are printed to and sent back to its client, and its files
+ * are compiled sequentially on that thread; parallelism comes from serving several requests at once (up to
+ * options.jobs). A failing compilation fails only its own request, and the -v and --trace options of a request only
+ * apply to its own compilation (see Diagnostics.withSettings).
+ * The daemon never redirects System.out, which is shared by all the requests.
+ */
+class CompileDaemon(private val options: CompilerOptions) {
+    private val token = generateToken()
+    private val requestPool: ExecutorService = Executors.newFixedThreadPool(options.jobs)
+    private val log: PrintStream = System.out
+
+    @Volatile
+    private var running = true
+
+    fun serve() {
+        warmUp()
+
+        ServerSocket(0, 50, InetAddress.getLoopbackAddress()).use { serverSocket ->
+            publishInfo(serverSocket.localPort)
+            log.println("samosac: Daemon listening on port ${serverSocket.localPort}")
+
+            while (running) {
+                val socket = try {
+                    serverSocket.accept()
+                } catch (e: SocketException) {
+                    break
+                }
+                requestPool.submit { handle(socket, serverSocket) }
+            }
+        }
+
+        requestPool.shutdown()
+        DaemonProtocol.infoFile(options.daemonDir).delete()
+        log.println("samosac: Daemon stopped")
+    }
+
+    private fun handle(socket: Socket, serverSocket: ServerSocket) {
+        socket.use {
+            val input = DataInputStream(BufferedInputStream(socket.getInputStream()))
+            val output = DataOutputStream(BufferedOutputStream(socket.getOutputStream()))
+
+            try {
+                if (input.readUTF() != token) {
+                    return
+                }
+                val workingDir = File(input.readUTF())
+                val args = Array(input.readInt()) { input.readUTF() }
+
+                if (args.size == 1 && args[0] == DaemonProtocol.STOP_REQUEST) {
+                    running = false
+                    output.writeByte(DaemonProtocol.TAG_EXIT)
+                    output.writeInt(0)
+                    output.flush()
+                    serverSocket.close()
+                    return
+                }
+
+                compile(workingDir, args, output)
+            } catch (e: IOException) {
+                log.println("samosac: Daemon request failed: ${e.message}")
+            }
+        }
+    }
+
+    private fun compile(workingDir: File, args: Array<String>, output: DataOutputStream) {
+        val diagnostics = ByteArrayOutputStream()
+        val diagnosticsStream = PrintStream(diagnostics, true, Charsets.UTF_8)
+        val outputPaths = arrayListOf<String>()
+
+        val status = withDiagnosticsStream(diagnosticsStream) {
+            try {
+                val requestOptions = CompilerOptions.parse(args).resolvedAgainst(workingDir).copy(jobs = 1)
+                if (requestOptions.inputFiles.isEmpty()) {
+                    err("samosac: No input files!")
+                }
+                Diagnostics.withSettings(requestOptions.verbose, requestOptions.traceCategories) {
+                    compileAndReport(requestOptions).forEach { outputPaths.add(it.classFile.path) }
+                }
+                0
+            } catch (e: CompilationFailedException) {
+                -1
+            } catch (e: Exception) {
+                diagnosticsStream.println("samosac: Internal error: $e")
+                -1
+            }
+        }
+
+        diagnostics.toString(Charsets.UTF_8).lineSequence().filter { it.isNotEmpty() }.forEach {
+            output.writeByte(DaemonProtocol.TAG_DIAGNOSTIC)
+            output.writeUTF(it)
+        }
+        for (path in outputPaths) {
+            output.writeByte(DaemonProtocol.TAG_OUTPUT)
+            output.writeUTF(path)
+        }
+        output.writeByte(DaemonProtocol.TAG_EXIT)
+        output.writeInt(status)
+        output.flush()
+    }
+
+    /**
+     * Loads the parser and builtins eagerly so that the first request does not pay for it.
+     */
+    private fun warmUp() {
+        val samosaParser = SamosaParser(CommonTokenStream(SamosaLexer(CharStreams.fromString("<samosa>\n</samosa>"))))
+        samosaParser.program()
+        SymbolTable()
+    }
+
+    private fun publishInfo(port: Int) {
+        options.daemonDir.mkdirs()
+        val infoFile = DaemonProtocol.infoFile(options.daemonDir)
+        val tempFile = File.createTempFile("daemon", ".info", options.daemonDir)
+        try {
+            Files.setPosixFilePermissions(tempFile.toPath(), PosixFilePermissions.fromString("rw-------"))
+        } catch (e: UnsupportedOperationException) {
+            // not a POSIX file system
+        }
+        tempFile.writeText("$port\n$token\n")
+        if (!tempFile.renameTo(infoFile)) {
+            tempFile.delete()
+            err("samosac: Could not write daemon info file ${infoFile.path}.")
+        }
+    }
+
+    private fun generateToken(): String {
+        val bytes = ByteArray(16)
+        SecureRandom().nextBytes(bytes)
+        return bytes.joinToString("") { "%02x".format(it) }
+    }
+}
@@ -0,0 +1,61 @@
+package com.sachett.samosa.samosac.compiler.daemon
+
+import com.sachett.samosa.samosac.compiler.CompilerOptions
+import java.io.*
+import java.net.InetAddress
+import java.net.Socket
+import kotlin.system.exitProcess
+
+/**
+ * Thin client for the compile daemon (see CompileDaemon).
+ * Takes the same arguments as samosac and forwards them to the daemon, along with the current directory.
+ * Use --daemon-dir=<dir> if the daemon was started with one, and --stop to shut the daemon down.
+ * Exits with the status of the compilation.
+ */
+fun main(args: Array<String>) {
+    var daemonDir = CompilerOptions.defaultDaemonDir()
+    val forwardedArgs = args.filter {
+        if (it.startsWith("--daemon-dir=")) {
+            daemonDir = File(it.substringAfter("="))
+            false
+        } else {
+            true
+        }
+    }
+
+    val infoFile = DaemonProtocol.infoFile(daemonDir)
+    if (!infoFile.isFile) {
+        System.err.println("samosac: No daemon running (${infoFile.path} not found). Start one with: samosac --daemon")
+        exitProcess(-1)
+    }
+    val (port, token) = infoFile.readLines()
+
+    val status = try {
+        Socket(InetAddress.getLoopbackAddress(), port.toInt()).use { socket ->
+            val output = DataOutputStream(BufferedOutputStream(socket.getOutputStream()))
+            output.writeUTF(token)
+            output.writeUTF(File("").absolutePath)
+            output.writeInt(forwardedArgs.size)
+            forwardedArgs.forEach { output.writeUTF(it) }
+            output.flush()
+
+            readReply(DataInputStream(BufferedInputStream(socket.getInputStream())))
+        }
+    } catch (e: IOException) {
+        System.err.println("samosac: Could not talk to the daemon: ${e.message}")
+        -1
+    }
+
+    exitProcess(status)
+}
+
+private fun readReply(input: DataInputStream): Int {
+    while (true) {
+        when (input.readUnsignedByte()) {
+            DaemonProtocol.TAG_DIAGNOSTIC -> System.err.println(input.readUTF())
+            DaemonProtocol.TAG_OUTPUT -> println("samosac: Wrote ${input.readUTF()}")
+            DaemonProtocol.TAG_EXIT -> return input.readInt()
+            else -> throw IOException("Malformed reply from the daemon")
+        }
+    }
+}
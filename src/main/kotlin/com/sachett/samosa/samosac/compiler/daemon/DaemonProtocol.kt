@@ -0,0 +1,25 @@
+package com.sachett.samosa.samosac.compiler.daemon
+
+import java.io.File
+
+/**
+ * The wire protocol between the compile daemon and its clients.
+ *
+ * The daemon listens on a loopback TCP port and publishes the port along with a random token in
+ * [infoFile] (readable only by the owner). A request is:
+ *   UTF token, UTF working directory of the client, int argc, argc x UTF argument
+ * The daemon replies with a sequence of records, each a single byte tag followed by its payload:
+ *   [TAG_DIAGNOSTIC] UTF line      a line of diagnostics (errors, warnings, progress and reports) of the compilation
+ *   [TAG_OUTPUT] UTF path          path of a class file written by the compilation
+ *   [TAG_EXIT] int status          exit status of the compilation; always the last record
+ */
+object DaemonProtocol {
+    const val TAG_DIAGNOSTIC: Int = 'D'.code
+    const val TAG_OUTPUT: Int = 'O'.code
+    const val TAG_EXIT: Int = 'X'.code
+
+    /* Sent as the only argument to ask the daemon to shut down. */
+    const val STOP_REQUEST = "--stop"
+
+    fun infoFile(daemonDir: File) = File(daemonDir, "daemon.info")
+}
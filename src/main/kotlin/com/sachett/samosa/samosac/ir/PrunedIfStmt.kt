@@ -0,0 +1,38 @@
+package com.sachett.samosa.samosac.ir
+
+import com.sachett.samosa.parser.SamosaParser
+
+/**
+ * An if statement without the arms that can never be taken, as decided by its conditions that are compile-time
+ * constants (see TypedParseTree.getConditionValue). Shared by the control path analysis and codegen, so that both
+ * see the same statement.
+ *
+ * An arm whose condition is always false is dropped. An arm whose condition is always true is taken whenever the
+ * arms before it are not: its block becomes the default block (like an else block), and the arms after it are dropped.
+ * The arms are indices into IfStmtContext.block(): 0 is the if, then the else ifs, then the else (if present).
+ * @param testedArms    The arms whose conditions are tested at run time (IfStmtContext.booleanExpr() has the same
+ *                      indices), in order.
+ * @param defaultArm    The arm that runs when none of the tested arms is taken, or null if there's none.
+ */
+class PrunedIfStmt(val testedArms: List<Int>, val defaultArm: Int?) {
+    /**
+     * Whether one of the blocks always runs.
+     */
+    val isExhaustive: Boolean
+        get() = defaultArm != null
+
+    companion object {
+        fun of(ctx: SamosaParser.IfStmtContext, typedParseTree: TypedParseTree): PrunedIfStmt {
+            val testedArms = arrayListOf<Int>()
+            for ((arm, condition) in ctx.booleanExpr().withIndex()) {
+                when (typedParseTree.getConditionValue(condition)) {
+                    null -> testedArms.add(arm)
+                    true -> return PrunedIfStmt(testedArms, arm)
+                    false -> {}
+                }
+            }
+            val elseArm = if (ctx.elseblock.isEmpty()) null else ctx.booleanExpr().size
+            return PrunedIfStmt(testedArms, elseArm)
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.sachett.samosa.samosac.ir
+
+import com.sachett.samosa.parser.SamosaParser
+import com.sachett.samosa.samosac.symbol.FunctionSymbol
+import com.sachett.samosa.samosac.symbol.ISymbol
+import com.sachett.samosa.samosac.symbol.SymbolType
+import org.antlr.v4.runtime.tree.ParseTree
+import org.antlr.v4.runtime.tree.ParseTreeProperty
+import java.lang.reflect.Method
+
+/**
+ * An identifier resolved to the symbol it refers to.
+ * @param symbol        The symbol the identifier refers to.
+ * @param scopeIndex    The scope index of the scope the symbol was found in (0 for globals).
+ */
+data class Binding(val symbol: ISymbol, val scopeIndex: Int) {
+    val isGlobal: Boolean
+        get() = scopeIndex == 0
+
+    /**
+     * Whether the identifier refers to a constant: a global whose initial value is known at compile time and that is
+     * never assigned to. The value of the symbol can be used in place of the variable.
+     * (Only globals: the parameters of a function also have a "calculated" initial value.)
+     */
+    val isConstant: Boolean
+        get() = isGlobal && symbol.isInitialValueCalculated && !symbol.isReassigned
+                && symbol.symbolType != SymbolType.FUNCTION
+}
+
+/**
+ * A function call resolved to the function it calls.
+ * @param functionSymbol    The function symbol (of the matching overload, for builtins).
+ * @param builtin           The codegen method of the builtin, or null if the function is defined in the program.
+ */
+data class ResolvedCall(val functionSymbol: FunctionSymbol, val builtin: Method?) {
+    val isBuiltin: Boolean
+        get() = builtin != null
+}
+
+/**
+ * The typed view of a program: the results of resolving the parse tree, attached to its nodes.
+ *
+ * The static types checker fills this in as it resolves the program (expression types, the symbols the
+ * identifiers refer to and the functions (overloads) the calls refer to) and the later phases (analysis and
+ * codegen) use them instead of detecting types and looking up symbols again for the same node.
+ * Only the results of successful resolutions are stored; a node with no entry is resolved as usual.
+ */
+class TypedParseTree {
+    private val exprTypes = ParseTreeProperty<Pair<Boolean, SymbolType>>()
+    private val bindings = ParseTreeProperty<Binding>()
+    private val calls = ParseTreeProperty<ResolvedCall>()
+    private val conditionValues = ParseTreeProperty<Boolean>()
+
+    /**
+     * The type of the expression as given by ExpressionTypeDetector.getType.
+     */
+    fun getExprType(ctx: SamosaParser.ExprContext): Pair<Boolean, SymbolType>? = exprTypes.get(ctx)
+
+    fun setExprType(ctx: SamosaParser.ExprContext, type: Pair<Boolean, SymbolType>) = exprTypes.put(ctx, type)
+
+    /**
+     * The binding of the identifier in an identifier expression or on the LHS of an assignment.
+     */
+    fun getBinding(ctx: ParseTree): Binding? = bindings.get(ctx)
+
+    fun setBinding(ctx: ParseTree, binding: Binding) = bindings.put(ctx, binding)
+
+    /**
+     * The function a FunctionCallNoArgsContext or a FunctionCallWithArgsContext calls.
+     */
+    fun getCall(ctx: ParseTree): ResolvedCall? = calls.get(ctx)
+
+    fun setCall(ctx: ParseTree, call: ResolvedCall) = calls.put(ctx, call)
+
+    /**
+     * The value of the condition of an if or while statement, if it is a compile-time constant
+     * (null if it is decided at run time).
+     */
+    fun getConditionValue(ctx: SamosaParser.BooleanExprContext): Boolean? = conditionValues.get(ctx)
+
+    fun setConditionValue(ctx: SamosaParser.BooleanExprContext, value: Boolean) = conditionValues.put(ctx, value)
+}
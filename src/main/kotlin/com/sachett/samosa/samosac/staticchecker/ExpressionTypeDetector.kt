@@ -1,9 +1,11 @@
 package com.sachett.samosa.samosac.staticchecker
 
 import com.sachett.samosa.logging.Severity
+import com.sachett.samosa.logging.TraceCategory
 import com.sachett.samosa.logging.err
 import com.sachett.samosa.logging.fmterror
 import com.sachett.samosa.logging.fmtfatalerr
+import com.sachett.samosa.logging.trace
 import com.sachett.samosa.parser.SamosaBaseVisitor
 import com.sachett.samosa.parser.SamosaParser
 import com.sachett.samosa.samosac.symbol.FunctionSymbol
@@ -42,7 +44,10 @@ class ExpressionTypeDetector(
      *          The second element is the <code>SymbolType</code> that appears the most times in the expression.
      */
     fun getType(ctx: SamosaParser.ExprContext): Pair<Boolean, SymbolType> {
-        println("----- Finding expr type for expr -----") // DEBUG
+        // the type of the expression does not change once it is detected
+        symbolTable.typedParseTree.getExprType(ctx)?.let { return it }
+
+        trace(TraceCategory.TYPES) { "Finding expr type for expr ${ctx.text}" }
 
         // clear the table
         symbolTypesInExpr = emptySymbolTypesInExpr.toMutableMap()
@@ -62,7 +67,9 @@ class ExpressionTypeDetector(
             nTerms += it.value
         }
 
-        return Pair(maxFreq == nTerms, maxFreqSymbolType)
+        val exprType = Pair(maxFreq == nTerms, maxFreqSymbolType)
+        symbolTable.typedParseTree.setExprType(ctx, exprType)
+        return exprType
     }
 
     /* -----------------  Visitor methods -------------------- */
@@ -96,7 +103,10 @@ class ExpressionTypeDetector(
         val idName = ctx?.IDENTIFIER()?.text
         val lineNumber = ctx?.IDENTIFIER()?.symbol?.line
 
-        val symbol = symbolTable.lookup(idName!!) ?: fmtfatalerr("Unknown identifier ${idName}.", lineNumber!!)
+        val binding = symbolTable.typedParseTree.getBinding(ctx!!)
+            ?: symbolTable.lookupBinding(idName!!)?.also { symbolTable.typedParseTree.setBinding(ctx, it) }
+            ?: fmtfatalerr("Unknown identifier ${idName}.", lineNumber!!)
+        val symbol = binding.symbol
 
         symbolTypesInExpr[symbol.symbolType] = symbolTypesInExpr.getOrDefault(symbol.symbolType, 0) + 1
         return super.visitExprIdentifier(ctx)
@@ -5,6 +5,7 @@ import com.sachett.samosa.logging.Severity
 import com.sachett.samosa.logging.err
 import com.sachett.samosa.logging.fmterror
 import com.sachett.samosa.parser.SamosaParser
+import com.sachett.samosa.samosac.ir.ResolvedCall
 import com.sachett.samosa.samosac.symbol.FunctionSymbol
 import com.sachett.samosa.samosac.symbol.SymbolType
 import com.sachett.samosa.samosac.symbol.symboltable.SymbolTable
@@ -18,6 +19,8 @@ class FunctionCallExprChecker {
         /**
          * Type checks the passed arguments in a function call, checks the function's existence
          * and returns the SymbolType that corresponds to the return value of the function call.
+         * The function (overload) the call resolves to is recorded in the symbol table's typed parse tree,
+         * and the call is not checked again if it has already been resolved.
          * @param   ctx
          * @param   symbolTable   SymbolTable to be used
          * @return  SymbolType that corresponds to the return value of the function call
@@ -26,8 +29,10 @@ class FunctionCallExprChecker {
             ctx: SamosaParser.FunctionCallWithArgsContext?,
             symbolTable: SymbolTable
         ): SymbolType {
-            val funcIdName = ctx?.IDENTIFIER()?.text
-            val lineNumber = ctx?.IDENTIFIER()?.symbol?.line
+            symbolTable.typedParseTree.getCall(ctx!!)?.let { return it.functionSymbol.returnType }
+
+            val funcIdName = ctx.IDENTIFIER()?.text
+            val lineNumber = ctx.IDENTIFIER()?.symbol?.line
             var symbol = symbolTable.lookup(funcIdName!!)
             var isBuiltin: Boolean = false
 
@@ -65,6 +70,7 @@ class FunctionCallExprChecker {
                             "(There is probably additional detail above this message.)")
                 }
                 // if all okay, return the function symbol's return type
+                symbolTable.typedParseTree.setCall(ctx, ResolvedCall(functionSymbol, null))
                 return functionSymbol.returnType
             }
             else {
@@ -89,6 +95,7 @@ class FunctionCallExprChecker {
                             "Use one of the following overloads: \n$expectedArgs")
                 }
 
+                symbolTable.typedParseTree.setCall(ctx, ResolvedCall(functionSymbol.first, functionSymbol.second))
                 return functionSymbol.first.returnType // as same return type for all overloads
             }
         }
@@ -105,8 +112,10 @@ class FunctionCallExprChecker {
             ctx: SamosaParser.FunctionCallNoArgsContext?,
             symbolTable: SymbolTable
         ): SymbolType {
-            val funcIdName = ctx?.IDENTIFIER()?.text
-            val lineNumber = ctx?.IDENTIFIER()?.symbol?.line
+            symbolTable.typedParseTree.getCall(ctx!!)?.let { return it.functionSymbol.returnType }
+
+            val funcIdName = ctx.IDENTIFIER()?.text
+            val lineNumber = ctx.IDENTIFIER()?.symbol?.line
             var symbol = symbolTable.lookup(funcIdName!!)
             var isBuiltin: Boolean = false
 
@@ -130,6 +139,7 @@ class FunctionCallExprChecker {
                 }
 
                 val functionSymbol = symbol as FunctionSymbol
+                symbolTable.typedParseTree.setCall(ctx, ResolvedCall(functionSymbol, null))
                 return functionSymbol.returnType
             }
             else {
@@ -139,6 +149,7 @@ class FunctionCallExprChecker {
                 ) ?: err("[Error, Line ${lineNumber}] Bad arguments passed to function in call to ${funcIdName}. " +
                             "Expected no arguments.")
 
+                symbolTable.typedParseTree.setCall(ctx, ResolvedCall(functionSymbol.first, functionSymbol.second))
                 return functionSymbol.first.returnType
             }
         }
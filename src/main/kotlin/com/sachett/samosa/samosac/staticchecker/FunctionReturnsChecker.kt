@@ -1,7 +1,9 @@
 package com.sachett.samosa.samosac.staticchecker
 
+import com.sachett.samosa.logging.TraceCategory
 import com.sachett.samosa.logging.fmterror
 import com.sachett.samosa.logging.fmtfatalerr
+import com.sachett.samosa.logging.trace
 import com.sachett.samosa.parser.SamosaBaseListener
 import com.sachett.samosa.parser.SamosaParser
 import com.sachett.samosa.samosac.symbol.FunctionSymbol
@@ -27,16 +29,16 @@ class FunctionReturnsChecker(
     private var foundReturn = false
 
     fun checkReturnStmts(ctx: SamosaParser.ImplicitRetTypeFuncDefContext): Boolean {
-        println("###---- Checking returns -----") // DEBUG
+        trace(TraceCategory.CHECKER) { "###---- Checking returns -----" }
         ParseTreeWalker.DEFAULT.walk(this, ctx)
-        println("###----- Finished checking returns -----") // DEBUG
+        trace(TraceCategory.CHECKER) { "###----- Finished checking returns -----" }
         return allOk
     }
 
     fun checkReturnStmts(ctx: SamosaParser.ExplicitRetTypeFuncDefContext): Boolean {
-        println("###---- Checking returns -----") // DEBUG
+        trace(TraceCategory.CHECKER) { "###---- Checking returns -----" }
         ParseTreeWalker.DEFAULT.walk(this, ctx)
-        println("###----- Finished checking returns -----") // DEBUG
+        trace(TraceCategory.CHECKER) { "###----- Finished checking returns -----" }
         return allOk
     }
 
@@ -86,7 +88,7 @@ class FunctionReturnsChecker(
         val lineNum = ctx!!.RETURN().symbol.line
         foundReturn = true
 
-        println("Checking return at line ${lineNum}") // DEBUG
+        trace(TraceCategory.CHECKER) { "Checking return at line ${lineNum}" }
         val expressionTypeDetector = ExpressionTypeDetector(symbolTable)
         val (homoTypes, expType) = expressionTypeDetector.getType(ctx.expr())
 
@@ -114,12 +116,12 @@ class FunctionReturnsChecker(
     }
 
     override fun enterBlock(ctx: SamosaParser.BlockContext?) {
-        println("Inc scope in FunctionReturnsChecker") // DEBUG
+        trace(TraceCategory.CHECKER) { "Inc scope in FunctionReturnsChecker" }
         symbolTable.incrementScopeOverrideScopeCreation(false)
     }
 
     override fun exitBlock(ctx: SamosaParser.BlockContext?) {
-        println("Dec scope in FunctionReturnsChecker") // DEBUG
+        trace(TraceCategory.CHECKER) { "Dec scope in FunctionReturnsChecker" }
         symbolTable.decrementScope()
     }
 }
\ No newline at end of file
@@ -1,7 +1,11 @@
 package com.sachett.samosa.samosac.staticchecker
 
+import com.sachett.samosa.logging.Severity
+import com.sachett.samosa.logging.TraceCategory
 import com.sachett.samosa.logging.err
+import com.sachett.samosa.logging.fmterror
 import com.sachett.samosa.logging.fmtfatalerr
+import com.sachett.samosa.logging.trace
 import com.sachett.samosa.parser.SamosaBaseVisitor
 import com.sachett.samosa.parser.SamosaParser
 import com.sachett.samosa.samosac.staticchecker.analyzers.FunctionControlPathAnalyzer
@@ -117,17 +121,16 @@ class StaticTypesChecker(private val symbolTable: SymbolTable) : SamosaBaseVisit
     /* -----------------  Visitor methods -------------------- */
 
     override fun visitProgram(ctx: SamosaParser.ProgramContext?): Void? {
-        println("Visiting program...")
+        trace(TraceCategory.CHECKER) { "Visiting program..." }
         return super.visitProgram(ctx)
     }
 
     override fun visitBlock(ctx: SamosaParser.BlockContext?): Void? {
-        println("Visiting block...")
+        trace(TraceCategory.CHECKER) { "Visiting block..." }
         symbolTable.incrementScope()
         val blockVisit = super.visitBlock(ctx)
 
-        val blockStart = Pair(ctx!!.start.line, ctx.start.charPositionInLine)
-        symbolTable.registerBlockInCurrentCoordinates(blockStart)
+        symbolTable.registerBlockInCurrentCoordinates(ctx!!.start.line, ctx.start.charPositionInLine)
 
         symbolTable.decrementScope()
         return blockVisit
@@ -136,7 +139,7 @@ class StaticTypesChecker(private val symbolTable: SymbolTable) : SamosaBaseVisit
     // TODO: refactor out existing symbol checks in the following functions
 
     override fun visitDeclStmt(ctx: SamosaParser.DeclStmtContext?): Void? {
-        println("Visiting DeclStmt...") // debug
+        trace(TraceCategory.CHECKER) { "Visiting DeclStmt..." }
         val idName = ctx!!.IDENTIFIER().symbol.text
         val firstAppearedLineNum = ctx.IDENTIFIER().symbol.line
         val typeNameCtx = ctx.typeName()
@@ -151,16 +154,16 @@ class StaticTypesChecker(private val symbolTable: SymbolTable) : SamosaBaseVisit
         }
 
         if (typeNameCtx.BOOLTYPE() != null) {
-            println("Found boolie type id $idName")
+            trace(TraceCategory.CHECKER) { "Found boolie type id $idName" }
             // isInitialValueCalculated is true here because the var is initialized to a default value
             val boolSymbol = BoolSymbol(idName, firstAppearedLineNum, isInitialValueCalculated = true, initializeExpressionPresent = false)
             symbolTable.insert(idName, boolSymbol)
         } else if (typeNameCtx.INTTYPE() != null) {
-            println("Found int type for id $idName")
+            trace(TraceCategory.CHECKER) { "Found int type for id $idName" }
             val intSymbol = IntSymbol(idName, firstAppearedLineNum, isInitialValueCalculated = true, initializeExpressionPresent = false)
             symbolTable.insert(idName, intSymbol)
         } else if (typeNameCtx.STRINGTYPE() != null) {
-            println("Found string type for id $idName")
+            trace(TraceCategory.CHECKER) { "Found string type for id $idName" }
             val stringSymbol = StringSymbol(idName, firstAppearedLineNum, isInitialValueCalculated = true, initializeExpressionPresent = false)
             symbolTable.insert(idName, stringSymbol)
         } else if (typeNameCtx.VOIDTYPE() != null) {
@@ -172,7 +175,7 @@ class StaticTypesChecker(private val symbolTable: SymbolTable) : SamosaBaseVisit
     }
 
     override fun visitNormalDeclAssignStmt(ctx: SamosaParser.NormalDeclAssignStmtContext?): Void? {
-        println("Visiting NormalDeclAssignStmt...") // debug
+        trace(TraceCategory.CHECKER) { "Visiting NormalDeclAssignStmt..." }
         val idName = ctx!!.IDENTIFIER().symbol.text
         val firstAppearedLineNum = ctx.IDENTIFIER().symbol.line
         val typeNameCtx = ctx.typeName()
@@ -252,7 +255,7 @@ class StaticTypesChecker(private val symbolTable: SymbolTable) : SamosaBaseVisit
     }
 
     override fun visitBooleanDeclAssignStmt(ctx: SamosaParser.BooleanDeclAssignStmtContext?): Void? {
-        println("Visiting BooleanDeclAssign...") // debug
+        trace(TraceCategory.CHECKER) { "Visiting BooleanDeclAssign..." }
         val idName = ctx!!.IDENTIFIER().symbol.text
         val firstAppearedLineNum = ctx.IDENTIFIER().symbol.line
 
@@ -295,7 +298,7 @@ class StaticTypesChecker(private val symbolTable: SymbolTable) : SamosaBaseVisit
     }
 
     override fun visitTypeInferredDeclAssignStmt(ctx: SamosaParser.TypeInferredDeclAssignStmtContext?): Void? {
-        println("Visiting TypeInferredDeclAssignStmt...") // debug
+        trace(TraceCategory.CHECKER) { "Visiting TypeInferredDeclAssignStmt..." }
         val idName = ctx!!.IDENTIFIER().symbol.text
         val firstAppearedLineNum = ctx.IDENTIFIER().symbol.line
 
@@ -397,7 +400,7 @@ class StaticTypesChecker(private val symbolTable: SymbolTable) : SamosaBaseVisit
     }
 
     override fun visitTypeInferredBooleanDeclAssignStmt(ctx: SamosaParser.TypeInferredBooleanDeclAssignStmtContext?): Void? {
-        println("Visiting TypeInferredBooleanDeclAssign...") // debug
+        trace(TraceCategory.CHECKER) { "Visiting TypeInferredBooleanDeclAssign..." }
         val idName = ctx!!.IDENTIFIER().symbol.text
         val firstAppearedLineNum = ctx.IDENTIFIER().symbol.line
 
@@ -440,15 +443,18 @@ class StaticTypesChecker(private val symbolTable: SymbolTable) : SamosaBaseVisit
     }
 
     override fun visitExprAssign(ctx: SamosaParser.ExprAssignContext?): Void? {
-        println("Visiting ExprAssignStmt...") // debug
+        trace(TraceCategory.CHECKER) { "Visiting ExprAssignStmt..." }
         val idName = ctx!!.IDENTIFIER().symbol.text
         val lineNum = ctx.IDENTIFIER().symbol.line
 
-        val existingSymbol = symbolTable.lookup(idName)
+        val existingBinding = symbolTable.lookupBinding(idName)
             ?: fmtfatalerr(
                 "Cannot assign to unknown identifier $idName.",
                 lineNum
             )
+        symbolTable.typedParseTree.setBinding(ctx, existingBinding)
+        val existingSymbol = existingBinding.symbol
+        existingSymbol.isReassigned = true
 
         val existingSymbolBuiltins = symbolTable.lookupBuiltinFunctionAllOverloads(idName)
 
@@ -526,15 +532,16 @@ class StaticTypesChecker(private val symbolTable: SymbolTable) : SamosaBaseVisit
     }
 
     override fun visitExprIdentifier(ctx: SamosaParser.ExprIdentifierContext?): Void? {
-        println("Visiting ExprIdentifier...") // debug
+        trace(TraceCategory.CHECKER) { "Visiting ExprIdentifier..." }
         val idName = ctx!!.IDENTIFIER().symbol.text
         val lineNum = ctx.IDENTIFIER().symbol.line
 
-        symbolTable.lookup(idName)
+        val binding = symbolTable.lookupBinding(idName)
             ?: fmtfatalerr(
                 "Unknown identifier $idName.",
                 lineNum
             )
+        symbolTable.typedParseTree.setBinding(ctx, binding)
 
         return super.visitExprIdentifier(ctx)
     }
@@ -558,7 +565,7 @@ class StaticTypesChecker(private val symbolTable: SymbolTable) : SamosaBaseVisit
 
         // left side should have a boolean identifier
 
-        println("Visiting BooleanExprAssign...") // debug
+        trace(TraceCategory.CHECKER) { "Visiting BooleanExprAssign..." }
         val idName = ctx!!.IDENTIFIER().symbol.text
         val lineNum = ctx.IDENTIFIER().symbol.line
 
@@ -577,6 +584,8 @@ class StaticTypesChecker(private val symbolTable: SymbolTable) : SamosaBaseVisit
             )
         }
 
+        existingSymbol.isReassigned = true
+
         if (existingSymbol.symbolType != SymbolType.BOOL) {
             fmtfatalerr(
                 "Unexpected type found on left side of assignment: " +
@@ -649,7 +658,7 @@ class StaticTypesChecker(private val symbolTable: SymbolTable) : SamosaBaseVisit
     }
 
     override fun visitExplicitRetTypeFuncDef(ctx: SamosaParser.ExplicitRetTypeFuncDefContext?): Void? {
-        println("Visiting ExplicitRetTypeFuncDef")
+        trace(TraceCategory.CHECKER) { "Visiting ExplicitRetTypeFuncDef" }
         val idName = ctx!!.IDENTIFIER().symbol.text
         val definedLineNum = ctx.IDENTIFIER().symbol.line
 
@@ -720,6 +729,7 @@ class StaticTypesChecker(private val symbolTable: SymbolTable) : SamosaBaseVisit
                             "for if statement.", ctx.IF(it).symbol.line
                 )
             }
+            recordConditionValue(boolExprsInIfStmt[it])
         }
 
         return super.visitIfStmt(ctx)
@@ -733,9 +743,21 @@ class StaticTypesChecker(private val symbolTable: SymbolTable) : SamosaBaseVisit
                         "for while statement.", ctx.WHILE().symbol.line
             )
         }
+        recordConditionValue(ctx.booleanExpr())
         return super.visitWhileStmt(ctx)
     }
 
+    /**
+     * Records the value of an if or while condition that is a compile-time constant,
+     * for the control path analysis and codegen (which drop the code that can never run).
+     */
+    private fun recordConditionValue(conditionCtx: SamosaParser.BooleanExprContext) {
+        val boolExpressionEvaluator = BoolExpressionEvaluator(conditionCtx, symbolTable)
+        if (boolExpressionEvaluator.checkStaticEvaluable()) {
+            symbolTable.typedParseTree.setConditionValue(conditionCtx, boolExpressionEvaluator.evaluate())
+        }
+    }
+
     override fun visitBreakControlStmt(ctx: SamosaParser.BreakControlStmtContext?): Void? {
         var parentBlockCtx = ctx!!.parent
 
@@ -774,7 +796,7 @@ class StaticTypesChecker(private val symbolTable: SymbolTable) : SamosaBaseVisit
     }
 
     override fun visitNeedsStmt(ctx: SamosaParser.NeedsStmtContext?): Void? {
-        println("[Warning, Line ${ctx!!.start.line}] Needs statement is not yet supported. Will be coming soon!") // warning log
+        fmterror("Needs statement is not yet supported. Will be coming soon!", ctx!!.start.line, Severity.WARNING)
         return super.visitNeedsStmt(ctx)
     }
 
@@ -823,7 +845,7 @@ class StaticTypesChecker(private val symbolTable: SymbolTable) : SamosaBaseVisit
         }
 
         if (statement1.javaClass.name.contains(Regex(".*[uU]ncertain.*"))) {
-            println("[Warning, Line ${ctx.start.line}] Nested probable statements with alternates is an untested feature. ")
+            fmterror("Nested probable statements with alternates is an untested feature. ", ctx.start.line, Severity.WARNING)
         }
 
         val expressionTypeDetector = ExpressionTypeDetector(symbolTable)
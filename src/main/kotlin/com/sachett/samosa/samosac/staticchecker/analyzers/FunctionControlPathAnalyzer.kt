@@ -1,13 +1,17 @@
 package com.sachett.samosa.samosac.staticchecker.analyzers
 
+import com.sachett.samosa.logging.TraceCategory
+import com.sachett.samosa.logging.trace
 import com.sachett.samosa.parser.SamosaBaseListener
 import com.sachett.samosa.parser.SamosaParser
+import com.sachett.samosa.samosac.ir.PrunedIfStmt
 import com.sachett.samosa.samosac.staticchecker.ExpressionTypeDetector
 import com.sachett.samosa.samosac.staticchecker.analyzers.blocks.*
 import com.sachett.samosa.samosac.symbol.FunctionSymbol
 import com.sachett.samosa.samosac.symbol.SymbolType
 import com.sachett.samosa.samosac.symbol.symboltable.SymbolTable
 import org.antlr.v4.runtime.tree.ErrorNode
+import org.antlr.v4.runtime.tree.ParseTree
 import org.antlr.v4.runtime.tree.ParseTreeWalker
 import java.util.ArrayDeque
 
@@ -17,7 +21,7 @@ class FunctionControlPathAnalyzer(
 ) : SamosaBaseListener() {
 
     fun checkAllControlPathsForReturns(ctx: SamosaParser.ImplicitRetTypeFuncDefContext): Boolean {
-        println("**--- Starting control paths analysis ---") // DEBUG
+        trace(TraceCategory.CHECKER) { "**--- Starting control paths analysis ---" }
         // No need to check if it returns void
         if (fnSymbol.returnType == SymbolType.VOID) {
             return true
@@ -29,7 +33,7 @@ class FunctionControlPathAnalyzer(
     }
 
     fun checkAllControlPathsForReturns(ctx: SamosaParser.ExplicitRetTypeFuncDefContext): Boolean {
-        println("**--- Starting control paths analysis ---") // DEBUG
+        trace(TraceCategory.CHECKER) { "**--- Starting control paths analysis ---" }
         // No need to check if it returns void
         if (fnSymbol.returnType == SymbolType.VOID) {
             return true
@@ -110,7 +114,8 @@ class FunctionControlPathAnalyzer(
     }
 
     override fun enterIfStmt(ctx: SamosaParser.IfStmtContext?) {
-        val ifControlNode = IfControlNode(fnSymbol, currentStrayBlock.parent!!, ctx!!)
+        val prunedIfStmt = PrunedIfStmt.of(ctx!!, symbolTable.typedParseTree)
+        val ifControlNode = IfControlNode(fnSymbol, currentStrayBlock.parent!!, ctx, prunedIfStmt)
         addControlNode(ifControlNode)
     }
 
@@ -119,10 +124,25 @@ class FunctionControlPathAnalyzer(
     }
 
     override fun enterWhileStmt(ctx: SamosaParser.WhileStmtContext?) {
-        val whileControlNode = WhileControlNode(fnSymbol, currentStrayBlock.parent!!, ctx!!)
+        val loopsForever = symbolTable.typedParseTree.getConditionValue(ctx!!.booleanExpr()) == true
+                && !hasBreak(ctx, ctx.block())
+        val whileControlNode = WhileControlNode(fnSymbol, currentStrayBlock.parent!!, ctx, loopsForever)
         addControlNode(whileControlNode)
     }
 
+    /**
+     * Checks if the subtree has a break statement that leaves the given loop (and not a loop nested in it).
+     */
+    private fun hasBreak(whileCtx: SamosaParser.WhileStmtContext, subtree: ParseTree): Boolean {
+        if (subtree is SamosaParser.BreakControlStmtContext) {
+            return true
+        }
+        if (subtree is SamosaParser.WhileStmtContext && subtree !== whileCtx) {
+            return false
+        }
+        return (0 until subtree.childCount).any { hasBreak(whileCtx, subtree.getChild(it)) }
+    }
+
     override fun exitWhileStmt(ctx: SamosaParser.WhileStmtContext?) {
         exitControlNode()
     }
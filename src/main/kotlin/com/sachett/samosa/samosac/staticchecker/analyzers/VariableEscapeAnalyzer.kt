@@ -0,0 +1,80 @@
+package com.sachett.samosa.samosac.staticchecker.analyzers
+
+import com.sachett.samosa.parser.SamosaBaseListener
+import com.sachett.samosa.parser.SamosaParser
+import com.sachett.samosa.samosac.symbol.ISymbol
+import com.sachett.samosa.samosac.symbol.symboltable.SymbolTable
+import org.antlr.v4.runtime.tree.ParseTree
+import org.antlr.v4.runtime.tree.ParseTreeWalker
+import java.util.Collections
+import java.util.IdentityHashMap
+
+/**
+ * Finds the variables that are referenced from the functions of a program. A variable of the top-level code (a global,
+ * or a variable of a block outside the functions) that is not among them is only used by the top-level code, so it
+ * does not have to be a static field of the class: codegen keeps it in a local (see ClassFileGenerator).
+ *
+ * The identifiers are resolved like codegen resolves them: with the bindings of the typed parse tree, or else by
+ * looking them up in the scopes of the blocks they are in.
+ */
+class VariableEscapeAnalyzer(private val symbolTable: SymbolTable) : SamosaBaseListener() {
+    private val escapingSymbols: MutableSet<ISymbol> = Collections.newSetFromMap(IdentityHashMap())
+    private var functionDepth = 0
+
+    /**
+     * Returns the symbols that are referenced from a function of the program (compared by identity).
+     * The symbol table is left at the scope it was in.
+     */
+    fun findEscapingSymbols(ctx: SamosaParser.ProgramContext): Set<ISymbol> {
+        ParseTreeWalker.DEFAULT.walk(this, ctx)
+        return escapingSymbols
+    }
+
+    private fun reference(ctx: ParseTree, name: String) {
+        if (functionDepth == 0) {
+            return
+        }
+        val binding = symbolTable.typedParseTree.getBinding(ctx) ?: symbolTable.lookupBinding(name) ?: return
+        escapingSymbols.add(binding.symbol)
+    }
+
+    override fun enterBlock(ctx: SamosaParser.BlockContext) {
+        symbolTable.goToBlock(ctx.start.line, ctx.start.charPositionInLine)
+    }
+
+    override fun exitBlock(ctx: SamosaParser.BlockContext) {
+        symbolTable.restoreLastCoordinates()
+    }
+
+    override fun enterImplicitRetTypeFuncDef(ctx: SamosaParser.ImplicitRetTypeFuncDefContext) {
+        functionDepth++
+    }
+
+    override fun exitImplicitRetTypeFuncDef(ctx: SamosaParser.ImplicitRetTypeFuncDefContext) {
+        functionDepth--
+    }
+
+    override fun enterExplicitRetTypeFuncDef(ctx: SamosaParser.ExplicitRetTypeFuncDefContext) {
+        functionDepth++
+    }
+
+    override fun exitExplicitRetTypeFuncDef(ctx: SamosaParser.ExplicitRetTypeFuncDefContext) {
+        functionDepth--
+    }
+
+    override fun enterExprIdentifier(ctx: SamosaParser.ExprIdentifierContext) {
+        reference(ctx, ctx.IDENTIFIER().text)
+    }
+
+    override fun enterBooleanExprIdentifier(ctx: SamosaParser.BooleanExprIdentifierContext) {
+        reference(ctx, ctx.IDENTIFIER().text)
+    }
+
+    override fun enterExprAssign(ctx: SamosaParser.ExprAssignContext) {
+        reference(ctx, ctx.IDENTIFIER().text)
+    }
+
+    override fun enterBooleanExprAssign(ctx: SamosaParser.BooleanExprAssignContext) {
+        reference(ctx, ctx.IDENTIFIER().text)
+    }
+}
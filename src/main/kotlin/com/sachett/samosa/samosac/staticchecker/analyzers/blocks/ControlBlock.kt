@@ -45,7 +45,9 @@ class ControlBlock(
         // Compute doesReturnProperly for this node recursively by visiting the nodes
         var tempDoesReturnProperly = false
         for (child in children) {
-            if (((child is IfControlNode) && !child.hasElseBlock) || (child is WhileControlNode)) {
+            // an if statement that may run none of its blocks, and a loop that may not run (or may be left),
+            // don't make the block return
+            if (((child is IfControlNode) && !child.isExhaustive) || ((child is WhileControlNode) && !child.isInfinite)) {
                 continue
             }
 
@@ -1,18 +1,26 @@
 package com.sachett.samosa.samosac.staticchecker.analyzers.blocks
 
 import com.sachett.samosa.parser.SamosaParser
+import com.sachett.samosa.samosac.ir.PrunedIfStmt
 import com.sachett.samosa.samosac.symbol.FunctionSymbol
 
 class IfControlNode(
     override val parentFnSymbol: FunctionSymbol,
     override val parent: IFunctionInnerBlock,
-    ifCtx: SamosaParser.IfStmtContext
+    ifCtx: SamosaParser.IfStmtContext,
+    private val prunedIfStmt: PrunedIfStmt
 ) :
     ControlNode(parentFnSymbol, parent) {
     private var doesReturnComputed = false
     override val children: ArrayList<IFunctionInnerBlock> = arrayListOf()
     var hasElseBlock: Boolean = false
 
+    /**
+     * Whether one of the blocks always runs (there is an else block, or a condition is always true).
+     */
+    val isExhaustive: Boolean
+        get() = prunedIfStmt.isExhaustive
+
     init {
         // Partially build the IfControlNode using the ifCtx.
         // This part builds the children of this node (if, else if and else control blocks)
@@ -42,6 +50,7 @@ class IfControlNode(
 
     /**
      * For an if-control-node, all the children blocks must return a value for the node to return a value.
+     * The blocks that can never run (see PrunedIfStmt) are not considered.
      */
     override var doesReturnProperly: Boolean = false
         get() {
@@ -49,11 +58,14 @@ class IfControlNode(
                 return field
             }
 
+            // the children are the blocks in order: if, else ifs, else
             var returns = true
 
-            for (child in children) {
-                returns = returns && child.doesReturnProperly
+            for (arm in prunedIfStmt.testedArms) {
+                returns = returns && children[arm].doesReturnProperly
             }
+            val defaultArm = prunedIfStmt.defaultArm
+            returns = returns && defaultArm != null && children[defaultArm].doesReturnProperly
 
             field = returns
             doesReturnComputed = true
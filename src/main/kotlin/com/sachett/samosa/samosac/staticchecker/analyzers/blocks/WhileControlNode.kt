@@ -6,7 +6,8 @@ import com.sachett.samosa.samosac.symbol.FunctionSymbol
 class WhileControlNode(
     override val parentFnSymbol: FunctionSymbol,
     override val parent: IFunctionInnerBlock,
-    whileCtx: SamosaParser.WhileStmtContext
+    whileCtx: SamosaParser.WhileStmtContext,
+    private val loopsForever: Boolean = false
 ) :
     ControlNode(parentFnSymbol, parent) {
     private var doesReturnComputed = false
@@ -21,8 +22,15 @@ class WhileControlNode(
         children.add(whileControlBlock)
     }
 
+    /**
+     * Whether the loop can only be left by returning (its condition is always true and it has no break).
+     */
+    val isInfinite: Boolean
+        get() = loopsForever
+
     /**
      * For an if-control-node, all the children blocks must return a value for the node to return a value.
+     * A loop that never ends does not need to: nothing after it runs.
      */
     override var doesReturnProperly: Boolean = false
         get() {
@@ -36,7 +44,7 @@ class WhileControlNode(
                 returns = returns && child.doesReturnProperly
             }
 
-            field = returns
+            field = loopsForever || returns
             doesReturnComputed = true
             return field
         }
@@ -14,6 +14,7 @@ class BoolExpressionEvaluator(
     private var isExprStaticEvaluable = true
     private var isExprStaticEvaluableCalculated = false
     private var evaluationResult: Boolean = false
+    private val intConstantFolder = IntConstantFolder()
 
     /**
      * Checks if the expression can be evaluated at compile time.
@@ -24,6 +25,7 @@ class BoolExpressionEvaluator(
         }
 
         evaluationResult = visit(exprContext)
+        isExprStaticEvaluableCalculated = true
         return isExprStaticEvaluable
     }
 
@@ -71,6 +73,7 @@ class BoolExpressionEvaluator(
             || (lhsType.second != rhsType.second)
             || !lhsType.second.canBeUsedWithRelOp
         ) {
+            isExprStaticEvaluable = false
             return false
         }
 
@@ -82,7 +85,7 @@ class BoolExpressionEvaluator(
 
         // Since we only have int expressions that can be compared using relops right now
         if (lhsType.second == SymbolType.INT && rhsType.second == SymbolType.INT) {
-            val intExpressionEvaluator = IntExpressionEvaluator(ctx.expr(0))
+            val intExpressionEvaluator = IntExpressionEvaluator(ctx.expr(0), intConstantFolder)
             if (!intExpressionEvaluator.checkStaticEvaluable()) {
                 isExprStaticEvaluable = false
                 return false
@@ -140,20 +143,21 @@ class BoolExpressionEvaluator(
         // check for incompatible types
         if ((!lhsType.first || !rhsType.first)
             || (lhsType.second != rhsType.second)
-            || !lhsType.second.canBeUsedWithRelOp
+            || !lhsType.second.canBeUsedWithCompOp
         ) {
+            isExprStaticEvaluable = false
             return false
         }
 
         val theCompOp = ctx.compOp()
 
         // RelOp expressions have two operands
-        var leftVal: Any? = null
-        var rightVal: Any? = null
+        val leftVal: Any
+        val rightVal: Any
 
         // Currently, we can only compare strings and ints using == and !=
         if (lhsType.second == SymbolType.INT && rhsType.second == SymbolType.INT) {
-            val intExpressionEvaluator = IntExpressionEvaluator(ctx.expr(0))
+            val intExpressionEvaluator = IntExpressionEvaluator(ctx.expr(0), intConstantFolder)
             if (!intExpressionEvaluator.checkStaticEvaluable()) {
                 isExprStaticEvaluable = false
                 return false
@@ -180,19 +184,23 @@ class BoolExpressionEvaluator(
                 return false
             }
             rightVal = stringExpressionEvaluator.evaluate()
+        } else {
+            // boolie operands are identifiers or function calls
+            isExprStaticEvaluable = false
+            return false
         }
 
         if (theCompOp.COMP() != null) {
             if (lhsType.second == SymbolType.INT && rhsType.second == SymbolType.INT) {
-                comparisonResult = (leftVal!! as Int) == (rightVal!! as Int)
+                comparisonResult = (leftVal as Int) == (rightVal as Int)
             } else if (lhsType.second == SymbolType.STRING && rhsType.second == SymbolType.STRING) {
-                comparisonResult = (leftVal!! as String) == (rightVal!! as String)
+                comparisonResult = (leftVal as String) == (rightVal as String)
             }
         } else if (theCompOp.COMPNOTEQ() != null) {
             if (lhsType.second == SymbolType.INT && rhsType.second == SymbolType.INT) {
-                comparisonResult = (leftVal!! as Int) != (rightVal!! as Int)
+                comparisonResult = (leftVal as Int) != (rightVal as Int)
             } else if (lhsType.second == SymbolType.STRING && rhsType.second == SymbolType.STRING) {
-                comparisonResult = (leftVal!! as String) != (rightVal!! as String)
+                comparisonResult = (leftVal as String) != (rightVal as String)
             }
         } else {
             err("[Error] Unknown comparison operator.")
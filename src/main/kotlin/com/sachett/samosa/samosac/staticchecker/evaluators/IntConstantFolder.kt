@@ -0,0 +1,88 @@
+package com.sachett.samosa.samosac.staticchecker.evaluators
+
+import com.sachett.samosa.parser.SamosaBaseVisitor
+import com.sachett.samosa.parser.SamosaParser
+import java.util.IdentityHashMap
+
+/**
+ * Folds int expressions into constants on the parse tree, with the semantics of the JVM int arithmetic
+ * (overflow wraps around, division and remainder truncate towards zero).
+ * An expression is not constant if it contains a function call, an identifier that has no constant value, if it
+ * divides by zero (that is left to throw at run time), or if one of its literals does not fit in an int.
+ * The value of every node is remembered, so the subexpressions of a folded expression can be folded for free.
+ * @param identifierValue   The constant value of an identifier, or null if it has none. Codegen resolves the
+ *                          constant globals with it; no identifier has a value by default (while the program is
+ *                          checked, it is not yet known which variables are assigned to).
+ */
+class IntConstantFolder @JvmOverloads constructor(
+    private val identifierValue: (SamosaParser.ExprIdentifierContext) -> Int? = { null }
+) : SamosaBaseVisitor<Int?>() {
+    private val foldedValues = IdentityHashMap<SamosaParser.ExprContext, Int?>()
+
+    /**
+     * Returns the value of the expression, or null if it is not a compile-time constant.
+     */
+    fun fold(exprContext: SamosaParser.ExprContext): Int? {
+        if (foldedValues.containsKey(exprContext)) {
+            return foldedValues[exprContext]
+        }
+
+        val value = visit(exprContext)
+        foldedValues[exprContext] = value
+        return value
+    }
+
+    override fun visitExprDecint(ctx: SamosaParser.ExprDecintContext?): Int? {
+        val literal = ctx!!.DECINT().text.toLongOrNull() ?: return null
+        return if (literal <= Int.MAX_VALUE) literal.toInt() else null
+    }
+
+    override fun visitUnaryMinus(ctx: SamosaParser.UnaryMinusContext?): Int? {
+        val operand = ctx!!.expr()
+        if (operand is SamosaParser.ExprDecintContext && operand.DECINT().text.toLongOrNull() == -Int.MIN_VALUE.toLong()) {
+            // -2147483648: the literal alone is out of range
+            return Int.MIN_VALUE
+        }
+        return fold(operand)?.unaryMinus()
+    }
+
+    override fun visitExprParen(ctx: SamosaParser.ExprParenContext?): Int? {
+        return fold(ctx!!.expr())
+    }
+
+    override fun visitExprPlus(ctx: SamosaParser.ExprPlusContext?): Int? {
+        val left = fold(ctx!!.expr(0)) ?: return null
+        val right = fold(ctx.expr(1)) ?: return null
+        return left + right
+    }
+
+    override fun visitExprMinus(ctx: SamosaParser.ExprMinusContext?): Int? {
+        val left = fold(ctx!!.expr(0)) ?: return null
+        val right = fold(ctx.expr(1)) ?: return null
+        return left - right
+    }
+
+    override fun visitExprMultiply(ctx: SamosaParser.ExprMultiplyContext?): Int? {
+        val left = fold(ctx!!.expr(0)) ?: return null
+        val right = fold(ctx.expr(1)) ?: return null
+        return left * right
+    }
+
+    override fun visitExprDivide(ctx: SamosaParser.ExprDivideContext?): Int? {
+        val left = fold(ctx!!.expr(0)) ?: return null
+        val right = fold(ctx.expr(1)) ?: return null
+        return if (right == 0) null else left / right
+    }
+
+    override fun visitExprModulo(ctx: SamosaParser.ExprModuloContext?): Int? {
+        val left = fold(ctx!!.expr(0)) ?: return null
+        val right = fold(ctx.expr(1)) ?: return null
+        return if (right == 0) null else left % right
+    }
+
+    override fun visitExprIdentifier(ctx: SamosaParser.ExprIdentifierContext?): Int? = identifierValue(ctx!!)
+
+    override fun visitExprString(ctx: SamosaParser.ExprStringContext?): Int? = null
+
+    override fun visitExprFunctionCall(ctx: SamosaParser.ExprFunctionCallContext?): Int? = null
+}
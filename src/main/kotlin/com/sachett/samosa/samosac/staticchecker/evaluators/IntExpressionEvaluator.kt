@@ -1,30 +1,25 @@
 package com.sachett.samosa.samosac.staticchecker.evaluators
 
-import com.sachett.samosa.parser.SamosaBaseVisitor
 import com.sachett.samosa.parser.SamosaParser
 import com.sachett.samosa.samosac.symbol.SymbolType
 
-import net.objecthunter.exp4j.ExpressionBuilder
-
-class IntExpressionEvaluator(private var exprContext: SamosaParser.ExprContext): SamosaBaseVisitor<Void?>() {
-    private var isExprStaticEvaluable = true
-    private var isExprStaticEvaluableCalculated = false
+/**
+ * Evaluates int expressions at compile time.
+ * @param folder    The folder that computes the values (can be shared by evaluators of the same tree).
+ */
+class IntExpressionEvaluator(
+    private var exprContext: SamosaParser.ExprContext,
+    private val folder: IntConstantFolder = IntConstantFolder()
+) {
     /**
      * Checks if the expression can be evaluated at compile time.
      */
     fun checkStaticEvaluable(): Boolean {
-        if (isExprStaticEvaluableCalculated) {
-            return isExprStaticEvaluable
-        }
-
-        visit(exprContext)
-        return isExprStaticEvaluable
+        return folder.fold(exprContext) != null
     }
 
     fun setExprContext(exprContext: SamosaParser.ExprContext) {
         this.exprContext = exprContext
-        isExprStaticEvaluableCalculated = false
-        isExprStaticEvaluable = true
     }
 
     /**
@@ -32,21 +27,6 @@ class IntExpressionEvaluator(private var exprContext: SamosaParser.ExprContext):
      * Returns default value of the symbol type if not possible to evaluate at compile time.
      */
     fun evaluate(): Int {
-        if (!checkStaticEvaluable()) {
-            return SymbolType.INT.defaultValue!! as Int
-        }
-
-        val exp = ExpressionBuilder(exprContext.text).build()
-        return exp.evaluate().toInt()
-    }
-
-    override fun visitExprIdentifier(ctx: SamosaParser.ExprIdentifierContext?): Void? {
-        isExprStaticEvaluable = false
-        return super.visitExprIdentifier(ctx)
-    }
-
-    override fun visitExprFunctionCall(ctx: SamosaParser.ExprFunctionCallContext?): Void? {
-        isExprStaticEvaluable = false
-        return super.visitExprFunctionCall(ctx)
+        return folder.fold(exprContext) ?: SymbolType.INT.defaultValue!! as Int
     }
-}
\ No newline at end of file
+}
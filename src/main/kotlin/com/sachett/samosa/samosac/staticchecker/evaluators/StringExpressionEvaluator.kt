@@ -4,8 +4,6 @@ import com.sachett.samosa.parser.SamosaBaseVisitor
 import com.sachett.samosa.parser.SamosaParser
 import com.sachett.samosa.samosac.symbol.SymbolType
 
-import net.objecthunter.exp4j.ExpressionBuilder
-
 class StringExpressionEvaluator(private var exprContext: SamosaParser.ExprContext): SamosaBaseVisitor<String>() {
     private var isExprStaticEvaluable = true
     private var isExprStaticEvaluableCalculated = false
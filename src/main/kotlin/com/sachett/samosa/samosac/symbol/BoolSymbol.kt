@@ -9,6 +9,7 @@ class BoolSymbol(
     override var initializeExpressionPresent: Boolean,
     override var symbolCoordinates: Pair<Int, Int>? = null
 ) : ISymbol {
+    override var isReassigned: Boolean = false
     override val symbolType: SymbolType = SymbolType.BOOL
 
     override fun isSymbolType(symbolType: SymbolType): Boolean = symbolType == SymbolType.BOOL
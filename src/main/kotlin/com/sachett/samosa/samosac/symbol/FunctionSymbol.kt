@@ -11,6 +11,7 @@ class FunctionSymbol(
     override var symbolCoordinates: Pair<Int, Int>? = null
 ) : ISymbol {
     override val symbolType: SymbolType = SymbolType.FUNCTION
+    override var isReassigned: Boolean = false
 
     companion object {
         val allowedReturnTypes =
@@ -9,6 +9,7 @@ class IntSymbol(
     override var initializeExpressionPresent: Boolean,
     override var symbolCoordinates: Pair<Int, Int>? = null
 ) : ISymbol {
+    override var isReassigned: Boolean = false
     override val symbolType: SymbolType = SymbolType.INT
 
     override fun isSymbolType(symbolType: SymbolType): Boolean {
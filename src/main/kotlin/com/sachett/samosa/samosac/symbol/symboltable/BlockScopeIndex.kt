@@ -0,0 +1,69 @@
+package com.sachett.samosa.samosac.symbol.symboltable
+
+/**
+ * Maps the start of a block (line and character position of its '{', packed into a long) to the scope entry
+ * of the block, without boxing the keys. Open addressing with linear probing; entries are never removed.
+ */
+class BlockScopeIndex {
+    private var keys = LongArray(INITIAL_CAPACITY)
+    private var entries = arrayOfNulls<SymbolTableRecordEntry>(INITIAL_CAPACITY)
+
+    var size = 0
+        private set
+
+    operator fun get(blockStart: Long): SymbolTableRecordEntry? {
+        val mask = keys.size - 1
+        var slot = mix(blockStart) and mask
+        while (true) {
+            val entry = entries[slot] ?: return null
+            if (keys[slot] == blockStart) return entry
+            slot = (slot + 1) and mask
+        }
+    }
+
+    fun containsKey(blockStart: Long): Boolean = get(blockStart) != null
+
+    /**
+     * Registers the scope entry for a block, if the block is not registered yet.
+     */
+    fun putIfAbsent(blockStart: Long, entry: SymbolTableRecordEntry) {
+        if ((size + 1) * 2 > keys.size) {
+            grow()
+        }
+        val mask = keys.size - 1
+        var slot = mix(blockStart) and mask
+        while (entries[slot] != null) {
+            if (keys[slot] == blockStart) return
+            slot = (slot + 1) and mask
+        }
+        keys[slot] = blockStart
+        entries[slot] = entry
+        size++
+    }
+
+    private fun grow() {
+        val oldKeys = keys
+        val oldEntries = entries
+        keys = LongArray(oldKeys.size * 2)
+        entries = arrayOfNulls(oldKeys.size * 2)
+        size = 0
+        for (i in oldKeys.indices) {
+            val entry = oldEntries[i] ?: continue
+            putIfAbsent(oldKeys[i], entry)
+        }
+    }
+
+    companion object {
+        private const val INITIAL_CAPACITY = 16
+
+        private fun mix(key: Long): Int {
+            val h = key * -0x61c8864680b583ebL
+            return (h xor (h ushr 32)).toInt()
+        }
+
+        /**
+         * Packs a pair of non-negative ints (e.g. line number and character position) into a long.
+         */
+        fun pack(first: Int, second: Int): Long = (first.toLong() shl 32) or (second.toLong() and 0xffffffffL)
+    }
+}
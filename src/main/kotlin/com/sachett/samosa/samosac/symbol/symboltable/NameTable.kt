@@ -0,0 +1,26 @@
+package com.sachett.samosa.samosac.symbol.symboltable
+
+/**
+ * Interns the names of the symbols in a symbol table as sequential integer IDs,
+ * so that the scopes can be probed with an int instead of hashing the name again at each level.
+ */
+class NameTable {
+    private val ids: HashMap<String, Int> = HashMap()
+
+    /**
+     * Returns the ID of the name, assigning a new one if the name has not been seen before.
+     */
+    fun intern(name: String): Int = ids.getOrPut(name) { ids.size }
+
+    /**
+     * Returns the ID of the name, or NO_ID if no symbol with this name was ever inserted.
+     */
+    fun idOf(name: String): Int = ids[name] ?: NO_ID
+
+    val size: Int
+        get() = ids.size
+
+    companion object {
+        const val NO_ID = -1
+    }
+}
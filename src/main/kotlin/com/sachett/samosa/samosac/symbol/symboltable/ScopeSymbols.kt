@@ -0,0 +1,105 @@
+package com.sachett.samosa.samosac.symbol.symboltable
+
+import com.sachett.samosa.samosac.symbol.ISymbol
+
+/**
+ * The symbols of a single scope, keyed by the interned IDs of their names (see NameTable).
+ *
+ * Most scopes only have a handful of symbols, so the IDs are scanned linearly until there are more than
+ * LINEAR_SCAN_LIMIT of them; after that an open-addressing hash index over the IDs is maintained.
+ * Symbols are kept in the order of insertion.
+ */
+class ScopeSymbols {
+    private var ids = IntArray(INITIAL_CAPACITY)
+    private var symbols = arrayOfNulls<ISymbol>(INITIAL_CAPACITY)
+
+    /* Hash index: slot -> (position in ids/symbols) + 1, 0 for an empty slot. Only used for larger scopes. */
+    private var index: IntArray? = null
+
+    var size = 0
+        private set
+
+    operator fun get(nameId: Int): ISymbol? {
+        val position = positionOf(nameId)
+        return if (position < 0) null else symbols[position]
+    }
+
+    fun containsKey(nameId: Int): Boolean = positionOf(nameId) >= 0
+
+    /**
+     * Adds a symbol with the given name ID.
+     * @return  <code>false</code> if there is already a symbol with the same name in this scope.
+     */
+    fun put(nameId: Int, symbol: ISymbol): Boolean {
+        if (positionOf(nameId) >= 0) return false
+
+        if (size == ids.size) {
+            ids = ids.copyOf(size * 2)
+            symbols = symbols.copyOf(size * 2)
+        }
+        ids[size] = nameId
+        symbols[size] = symbol
+        size++
+
+        if (size > LINEAR_SCAN_LIMIT) {
+            val currentIndex = index
+            if (currentIndex == null || size * 2 > currentIndex.size) {
+                rebuildIndex()
+            } else {
+                insertIntoIndex(currentIndex, size - 1)
+            }
+        }
+        return true
+    }
+
+    /**
+     * Returns the symbols in this scope, in order of insertion.
+     */
+    fun values(): List<ISymbol> = List(size) { symbols[it]!! }
+
+    private fun positionOf(nameId: Int): Int {
+        val currentIndex = index
+        if (currentIndex == null) {
+            for (i in 0 until size) {
+                if (ids[i] == nameId) return i
+            }
+            return -1
+        }
+
+        val mask = currentIndex.size - 1
+        var slot = mix(nameId) and mask
+        while (true) {
+            val entry = currentIndex[slot]
+            if (entry == 0) return -1
+            if (ids[entry - 1] == nameId) return entry - 1
+            slot = (slot + 1) and mask
+        }
+    }
+
+    private fun rebuildIndex() {
+        var capacity = Integer.highestOneBit(size) shl 2
+        if (capacity < 16) capacity = 16
+        val newIndex = IntArray(capacity)
+        for (i in 0 until size) {
+            insertIntoIndex(newIndex, i)
+        }
+        index = newIndex
+    }
+
+    private fun insertIntoIndex(index: IntArray, position: Int) {
+        val mask = index.size - 1
+        var slot = mix(ids[position]) and mask
+        while (index[slot] != 0) {
+            slot = (slot + 1) and mask
+        }
+        index[slot] = position + 1
+    }
+
+    companion object {
+        private const val INITIAL_CAPACITY = 4
+        private const val LINEAR_SCAN_LIMIT = 8
+
+        /* Name IDs are sequential, so they are scrambled before being used as slots */
+        private fun mix(nameId: Int): Int = nameId * -0x61c88647
+    }
+}
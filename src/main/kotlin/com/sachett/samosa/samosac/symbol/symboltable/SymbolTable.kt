@@ -2,6 +2,8 @@ package com.sachett.samosa.samosac.symbol.symboltable
 
 import com.sachett.samosa.builtins.Builtins
 import com.sachett.samosa.logging.err
+import com.sachett.samosa.samosac.ir.Binding
+import com.sachett.samosa.samosac.ir.TypedParseTree
 import com.sachett.samosa.samosac.symbol.FunctionSymbol
 import com.sachett.samosa.samosac.symbol.ISymbol
 import com.sachett.samosa.samosac.symbol.SymbolType
@@ -21,16 +23,18 @@ class SymbolTable {
      * are represented as a string (in the JVM descriptor format).
      * The map maps the name of the builtin function to its overloads.
      */
-    private val builtinMethods: MutableMap<String, MutableMap<String, Pair<FunctionSymbol, Method>>> =
-        mutableMapOf()
+    private val builtinMethods: Map<String, Map<String, Pair<FunctionSymbol, Method>>> = registeredBuiltins
 
     /**
-     * Stores a map of blocks with their scope coordinates in the table for quick access.
+     * Stores a map of blocks with their scope entries in the table for quick access.
      * The whole block context is not stored; rather, only the start of the block's position is stored.
      * The start of the block's position is indicated by the '{' character's position
-     * as a pair: (line number, character number).
+     * (line number, character number), packed into a long.
      */
-    private val blockScopes: MutableMap<Pair<Int, Int>, Pair<Int, Int>?> = mutableMapOf()
+    private val blockScopes: BlockScopeIndex = BlockScopeIndex()
+
+    /* Interned IDs of the names of all the symbols inserted into the table */
+    private val names: NameTable = NameTable()
 
     /* Stores which scope of the top-level symbol table we are currently in */
     private var currentScopeCoordinates: Pair<Int, Int> = Pair(0, 0)
@@ -41,89 +45,110 @@ class SymbolTable {
     /* On next scope increment, should a new scope be created? */
     var createNewScopeEntryOnIncrement: Boolean = true
 
-    /* When coordinates are changed manually, this stack keeps track of the coordinates */
-    private var lastCoordinates: java.util.ArrayDeque<Pair<Int, Int>> = java.util.ArrayDeque()
+    /* When coordinates are changed manually, this stack keeps track of the record entries to go back to */
+    private var lastRecords: java.util.ArrayDeque<SymbolTableRecordEntry> = java.util.ArrayDeque()
+
+    /**
+     * The types, bindings and calls resolved for the parse tree of the program this table is for.
+     * It is kept here because the symbol table is what all the phases share.
+     */
+    val typedParseTree: TypedParseTree = TypedParseTree()
 
     init {
         val globalEntry = SymbolTableRecordEntry(null, prevScopeIndex = -1, scopeIndex = 0)
         globalEntry.recordEntryCoordinates = Pair(0, 0)
         symbolScope.add(arrayListOf(globalEntry))
         currentSymbolTableRecord = globalEntry
-
-        registerBuiltinFunctions()
     }
 
-    private fun registerBuiltinFunctions() {
-        // Registers builtin functions
-        // Populates the builtins dynamically
-        val builtinFunctionsClass = Class.forName("com.sachett.samosa.builtins.Builtins\$Functions");
-        for (builtinMethod in builtinFunctionsClass.declaredMethods) {
-            // register only public ones
-            if (Modifier.isPublic(builtinMethod.modifiers) && Modifier.isStatic(builtinMethod.modifiers)) {
-                val mtdNameAnnotation =
-                    builtinMethod.getAnnotationsByType(Builtins.Functions.SamosaBuiltinFuncName::class.java)
-                val samosaMethodOverloadsAnnotation = builtinMethod.getAnnotationsByType(
-                    Builtins.Functions.SamosaBuiltinFuncOverload::class.java
-                )
+    companion object {
+        /**
+         * The builtin functions are registered (through reflection) only once per JVM and the resulting
+         * map is shared (read-only) by all the symbol tables.
+         */
+        private val registeredBuiltins: Map<String, Map<String, Pair<FunctionSymbol, Method>>> by lazy {
+            registerBuiltinFunctions()
+        }
 
-                if (mtdNameAnnotation.size != 1) {
-                    System.err.println(
-                        "Internal warning: Method ${builtinMethod.name} must use @SamosaBuiltinFuncName annotation exactly once " +
-                                "if it needs to be registered as a builtin function. Skipping it."
+        private fun registerBuiltinFunctions(): Map<String, Map<String, Pair<FunctionSymbol, Method>>> {
+            // Registers builtin functions
+            // Populates the builtins dynamically
+            val builtinMethods: MutableMap<String, MutableMap<String, Pair<FunctionSymbol, Method>>> = mutableMapOf()
+            val builtinFunctionsClass = Class.forName("com.sachett.samosa.builtins.Builtins\$Functions");
+            for (builtinMethod in builtinFunctionsClass.declaredMethods) {
+                // register only public ones
+                if (Modifier.isPublic(builtinMethod.modifiers) && Modifier.isStatic(builtinMethod.modifiers)) {
+                    val mtdNameAnnotation =
+                        builtinMethod.getAnnotationsByType(Builtins.Functions.SamosaBuiltinFuncName::class.java)
+                    val samosaMethodOverloadsAnnotation = builtinMethod.getAnnotationsByType(
+                        Builtins.Functions.SamosaBuiltinFuncOverload::class.java
                     )
-                    continue
-                }
-                if (samosaMethodOverloadsAnnotation.isEmpty()) {
-                    err("Internal error: Builtin function ${builtinMethod.name} must use @SamosaBuiltinFuncOverloads annotation at least once.")
-                }
 
-                val samosaBuiltinName = mtdNameAnnotation[0].name
-                val samosaBuiltinFuncOverloads = samosaMethodOverloadsAnnotation.map { it.descriptorString }
-
-                // Check that all the descriptors return the same type (all overloads of the function should return the
-                // same type).
-                var returnType: SymbolType? = null;
-                for (overloadDescriptorString in samosaBuiltinFuncOverloads) {
-                    val functionSymbol = Builtins.Functions.Utils.descriptorToFunctionSymbol(
-                        overloadDescriptorString,
-                        samosaBuiltinName,
-                        builtinMethod
-                    )
+                    if (mtdNameAnnotation.size != 1) {
+                        System.err.println(
+                            "Internal warning: Method ${builtinMethod.name} must use @SamosaBuiltinFuncName annotation exactly once " +
+                                    "if it needs to be registered as a builtin function. Skipping it."
+                        )
+                        continue
+                    }
+                    if (samosaMethodOverloadsAnnotation.isEmpty()) {
+                        err("Internal error: Builtin function ${builtinMethod.name} must use @SamosaBuiltinFuncOverloads annotation at least once.")
+                    }
 
-                    if (returnType == null) {
-                        returnType = functionSymbol.returnType
-                    } else {
-                        if (functionSymbol.returnType != returnType) {
-                            err("Internal error: Builtin function $samosaBuiltinName has specified different return types" +
-                                    " for different overloads, which is not supported.")
+                    val samosaBuiltinName = mtdNameAnnotation[0].name
+                    val samosaBuiltinFuncOverloads = samosaMethodOverloadsAnnotation.map { it.descriptorString }
+
+                    // Check that all the descriptors return the same type (all overloads of the function should return the
+                    // same type).
+                    var returnType: SymbolType? = null;
+                    for (overloadDescriptorString in samosaBuiltinFuncOverloads) {
+                        val functionSymbol = Builtins.Functions.Utils.descriptorToFunctionSymbol(
+                            overloadDescriptorString,
+                            samosaBuiltinName,
+                            builtinMethod
+                        )
+
+                        if (returnType == null) {
+                            returnType = functionSymbol.returnType
+                        } else {
+                            if (functionSymbol.returnType != returnType) {
+                                err("Internal error: Builtin function $samosaBuiltinName has specified different return types" +
+                                        " for different overloads, which is not supported.")
+                            }
                         }
-                    }
 
-                    registerBuiltinFun(functionSymbol, overloadDescriptorString, builtinMethod)
+                        registerBuiltinFun(builtinMethods, functionSymbol, overloadDescriptorString, builtinMethod)
+                    }
                 }
             }
+            return builtinMethods
         }
-    }
 
-    /**
-     * Registers a builtin function (or its overload).
-     * @param symbol The function symbol representing the builtin.
-     * @param descriptorString The descriptorString representation of the builtin (from the user's POV).
-     * @param javaMethod The java.lang.reflect.Method instance of the builtin.
-     */
-    private fun registerBuiltinFun(symbol: FunctionSymbol, descriptorString: String, javaMethod: Method) {
-        if (builtinMethods.containsKey(symbol.name)) {
-            builtinMethods[symbol.name]?.put(descriptorString, Pair(symbol, javaMethod));
-        } else {
-            builtinMethods[symbol.name] = mutableMapOf(Pair(descriptorString, Pair(symbol, javaMethod)))
+        /**
+         * Registers a builtin function (or its overload).
+         * @param builtinMethods The map to register the builtin in.
+         * @param symbol The function symbol representing the builtin.
+         * @param descriptorString The descriptorString representation of the builtin (from the user's POV).
+         * @param javaMethod The java.lang.reflect.Method instance of the builtin.
+         */
+        private fun registerBuiltinFun(
+            builtinMethods: MutableMap<String, MutableMap<String, Pair<FunctionSymbol, Method>>>,
+            symbol: FunctionSymbol, descriptorString: String, javaMethod: Method
+        ) {
+            if (builtinMethods.containsKey(symbol.name)) {
+                builtinMethods[symbol.name]?.put(descriptorString, Pair(symbol, javaMethod));
+            } else {
+                builtinMethods[symbol.name] = mutableMapOf(Pair(descriptorString, Pair(symbol, javaMethod)))
+            }
         }
     }
 
     /* Insert a symbol into the current scope */
     fun insert(name: String, symbol: ISymbol): Boolean {
-        if (currentSymbolTableRecord.table.containsKey(name)) return false
+        val nameId = names.intern(name)
+        if (currentSymbolTableRecord.table.containsKey(nameId)) return false
         symbol.symbolCoordinates = currentSymbolTableRecord.recordEntryCoordinates
-        currentSymbolTableRecord.table[name] = symbol
+        currentSymbolTableRecord.table.put(nameId, symbol)
         return true
     }
 
@@ -231,21 +256,43 @@ class SymbolTable {
      * @param   name    The symbol name to look up.
      */
     fun lookup(name: String): ISymbol? {
-        var tempScope: SymbolTableRecordEntry? = currentSymbolTableRecord
+        val nameId = names.idOf(name)
+        if (nameId == NameTable.NO_ID) return null
 
-        while (tempScope != null && !tempScope.table.containsKey(name)) {
+        var tempScope: SymbolTableRecordEntry? = currentSymbolTableRecord
+        while (tempScope != null) {
+            val symbol = tempScope.table[nameId]
+            if (symbol != null) return symbol
             tempScope = tempScope.prevScopeTable
         }
-        return tempScope?.table?.get(name)
+        return null
     }
 
+    /**
+     * Returns the number of symbols in all the scopes (builtins not included).
+     */
+    fun symbolCount(): Int = symbolScope.sumOf { scopes -> scopes.sumOf { it.table.size } }
+
+    /**
+     * Returns the number of scope entries in the table.
+     */
+    fun scopeCount(): Int = symbolScope.sumOf { it.size }
+
     /**
      * Register a block with its symbol table coordinates as the current coordinates.
      * @param   blockStart  A pair indicating the starting position of the block (the '{' character's position).
      */
     fun registerBlockInCurrentCoordinates(blockStart: Pair<Int, Int>) {
-        if (blockScopes.containsKey(blockStart)) return
-        blockScopes[blockStart] = currentSymbolTableRecord.recordEntryCoordinates
+        registerBlockInCurrentCoordinates(blockStart.first, blockStart.second)
+    }
+
+    /**
+     * Register a block with its symbol table coordinates as the current coordinates.
+     * @param   line                Line number of the '{' character of the block.
+     * @param   charPositionInLine  Character position of the '{' character of the block.
+     */
+    fun registerBlockInCurrentCoordinates(line: Int, charPositionInLine: Int) {
+        blockScopes.putIfAbsent(BlockScopeIndex.pack(line, charPositionInLine), currentSymbolTableRecord)
     }
 
     /**
@@ -254,13 +301,32 @@ class SymbolTable {
      * Returns a pair of nulls if the symbol is not found.
      */
     fun lookupWithNearestScopeValue(name: String): Pair<ISymbol?, Int?> {
-        var tempScope: SymbolTableRecordEntry? = currentSymbolTableRecord
+        val scope = lookupScope(name) ?: return Pair(null, null)
+        return Pair(scope.table[names.idOf(name)], scope.scopeIndex)
+    }
+
+    /**
+     * Returns the nearest record entry (from the current one outwards) that has a symbol with the given name,
+     * or null if there's none.
+     */
+    private fun lookupScope(name: String): SymbolTableRecordEntry? {
+        val nameId = names.idOf(name)
+        if (nameId == NameTable.NO_ID) return null
 
-        while (tempScope != null && !tempScope.table.containsKey(name)) {
+        var tempScope: SymbolTableRecordEntry? = currentSymbolTableRecord
+        while (tempScope != null && !tempScope.table.containsKey(nameId)) {
             tempScope = tempScope.prevScopeTable
         }
+        return tempScope
+    }
 
-        return Pair(tempScope?.table?.get(name), tempScope?.scopeIndex)
+    /**
+     * Looks up a symbol and returns its binding (the symbol with the scopeIndex of the scope it is in),
+     * or null if the symbol is not found.
+     */
+    fun lookupBinding(name: String): Binding? {
+        val scope = lookupScope(name) ?: return null
+        return Binding(scope.table[names.idOf(name)]!!, scope.scopeIndex)
     }
 
     /**
@@ -270,11 +336,8 @@ class SymbolTable {
     fun lookupInCoordinates(name: String, coordinates: Pair<Int, Int>): ISymbol? {
         return try {
             val tempScope: SymbolTableRecordEntry = symbolScope[coordinates.first][coordinates.second]
-            if (tempScope.table.containsKey(name)) {
-                tempScope.table[name]
-            } else {
-                null
-            }
+            val nameId = names.idOf(name)
+            if (nameId == NameTable.NO_ID) null else tempScope.table[nameId]
         } catch (e: IndexOutOfBoundsException) {
             // TODO: throw?
             null
@@ -286,21 +349,18 @@ class SymbolTable {
      * @param   name    The name of the symbol to look up.
      */
     fun lookupInCurrentScopeOnly(name: String): ISymbol? {
-        return if (currentSymbolTableRecord.table.containsKey(name)) {
-            currentSymbolTableRecord.table[name]
-        } else {
-            null
-        }
+        val nameId = names.idOf(name)
+        return if (nameId == NameTable.NO_ID) null else currentSymbolTableRecord.table[nameId]
     }
 
     /**
-     * Goes to mentioned scope coordinates in the symbol table. Note: Prone to exception if wrong coordinates passed.
-     * @param   coordinates The coordinates to go to.
+     * Goes to the given record entry in the symbol table (remembering the current one).
+     * @param   record  The record entry to go to.
      */
-    private fun goToCoordinates(coordinates: Pair<Int, Int>) {
-        lastCoordinates.push(currentScopeCoordinates)
-        currentScopeCoordinates = coordinates
-        currentSymbolTableRecord = symbolScope[coordinates.first][coordinates.second]
+    private fun goToRecord(record: SymbolTableRecordEntry) {
+        lastRecords.push(currentSymbolTableRecord)
+        currentScopeCoordinates = record.recordEntryCoordinates!!
+        currentSymbolTableRecord = record
     }
 
     /**
@@ -308,18 +368,27 @@ class SymbolTable {
      * @param   blockStart The starting position of the block (i.e., position of the '}' character).
      */
     fun goToBlock(blockStart: Pair<Int, Int>) {
-        val blockCoordinates = blockScopes[blockStart]!!
-        goToCoordinates(blockCoordinates)
+        goToBlock(blockStart.first, blockStart.second)
+    }
+
+    /**
+     * Goes to mentioned block's scope coordinates in the symbol table. Note: Prone to exception if bad block passed.
+     * Unlike goToBlock(Pair), this does not allocate.
+     * @param   line                Line number of the '{' character of the block.
+     * @param   charPositionInLine  Character position of the '{' character of the block.
+     */
+    fun goToBlock(line: Int, charPositionInLine: Int) {
+        goToRecord(blockScopes[BlockScopeIndex.pack(line, charPositionInLine)]!!)
     }
 
     /**
-     * If previously goToCoordinates or goToBlock was used to navigate to some other coordinates,
+     * If previously goToBlock was used to navigate to some other coordinates,
      * this function can be called to restore the last coordinates
-     * (the coordinates before goToCoordinates was called).
+     * (the coordinates before goToBlock was called).
      */
     fun restoreLastCoordinates() {
-        currentScopeCoordinates = lastCoordinates.pop()
-        currentSymbolTableRecord = symbolScope[currentScopeCoordinates.first][currentScopeCoordinates.second]
+        currentSymbolTableRecord = lastRecords.pop()
+        currentScopeCoordinates = currentSymbolTableRecord.recordEntryCoordinates!!
     }
 
     /**
@@ -1,10 +1,8 @@
 package com.sachett.samosa.samosac.symbol.symboltable
 
-import com.sachett.samosa.samosac.symbol.ISymbol
-
 data class SymbolTableRecordEntry(
     var prevScopeTable: SymbolTableRecordEntry?,
-    val table: MutableMap<String, ISymbol> = mutableMapOf(),
+    val table: ScopeSymbols = ScopeSymbols(),
     var prevScopeIndex: Int,
 
     // TODO: remove scopeIndex because it is redundant
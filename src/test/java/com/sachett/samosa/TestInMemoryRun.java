@@ -0,0 +1,263 @@
+package com.sachett.samosa;
+
+import com.sachett.samosa.logging.Diagnostics;
+import com.sachett.samosa.samosac.compiler.CompiledClass;
+import com.sachett.samosa.samosac.compiler.CompilerKt;
+import com.sachett.samosa.samosac.compiler.CompilerOptions;
+import com.sachett.samosa.samosac.compiler.InMemoryRunner;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestFactory;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.IntInsnNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class has tests for running the programs that are supposed to compile and run successfully
+ * in memory (without class files and a separate JVM).
+ */
+public class TestInMemoryRun {
+
+    static final File programsDir = new File("src/test/data/positive-compile-run/test-programs");
+    static final File expectedRunOutputDir = new File("src/test/data/positive-compile-run/expected-run-outputs");
+    static final File expectedRunErrorDir = new File("src/test/data/positive-compile-run/expected-run-errors");
+    static final File compilerFlagsDir = new File("src/test/data/positive-compile-run/compiler-flags");
+
+    @TestFactory
+    Stream<DynamicTest> testInMemoryRunOutputsOfSourceFiles() {
+        File[] sourceFiles = programsDir.listFiles((dir, name) -> name.toLowerCase().endsWith(".samo"));
+
+        assertNotNull(sourceFiles, "No test source files found!");
+        assertTrue(sourceFiles.length > 0, "No test source files found!");
+
+        return Arrays.stream(sourceFiles)
+                .flatMap((file) -> TestPositiveCompileRun.readCompilerFlagSets(compilerFlagsDir, file))
+                .map((flagSet) -> DynamicTest.dynamicTest(flagSet.displayName(), () -> {
+                    File file = flagSet.programFile;
+                    File expectedRunOutputFile = new File(
+                            expectedRunOutputDir.getPath() + File.separator + file.getName() + ".run.log.should"
+                    );
+                    File expectedRunErrorFile = new File(
+                            expectedRunErrorDir.getPath() + File.separator + file.getName() + ".run.err.should"
+                    );
+                    // a program with an expected error output is expected to fail (e.g. with an uncaught exception)
+                    boolean expectFailure = !FileUtils.readFileToString(expectedRunErrorFile, StandardCharsets.UTF_8)
+                            .isBlank();
+
+                    InMemoryRunner runner = new InMemoryRunner(
+                            CompilerOptions.Companion.parse(flagSet.flags.toArray(new String[0]))
+                    );
+                    PrintStream prevOut = System.out;
+                    ByteArrayOutputStream runOutput = new ByteArrayOutputStream();
+
+                    try {
+                        // Compile (discarding the compiler's output), then run with the program's output captured
+                        System.setOut(new PrintStream(NullOutputStream.NULL_OUTPUT_STREAM));
+                        CompiledClass compiledClass = runner.compile(file);
+
+                        System.setOut(new PrintStream(runOutput, true, StandardCharsets.UTF_8));
+                        if (expectFailure) {
+                            assertThrows(
+                                    Throwable.class, () -> runner.run(compiledClass, new String[]{}),
+                                    "Expected the in-memory run to fail for test source file: \n\t"
+                                            + file.getAbsolutePath()
+                            );
+                        } else {
+                            runner.run(compiledClass, new String[]{});
+                        }
+                    } finally {
+                        System.setOut(prevOut);
+                    }
+
+                    assertEquals(
+                            FileUtils.readFileToString(expectedRunOutputFile, StandardCharsets.UTF_8)
+                                    .replace("\r\n", "\n").stripTrailing(),
+                            runOutput.toString(StandardCharsets.UTF_8).replace("\r\n", "\n").stripTrailing(),
+                            "Unexpected in-memory run output for test source file: \n\t" + file.getAbsolutePath()
+                    );
+                })
+        );
+    }
+
+    @Test
+    void testRunCommandWithOptions() throws Exception {
+        // The options before the file are the compiler's, the arguments after it are the program's.
+        // What the compiler prints (here with -v) goes to System.err, so System.out only has the program's output.
+        File file = new File(programsDir, "HelloWorld.samo");
+        PrintStream prevOut = System.out;
+        PrintStream prevErr = System.err;
+        ByteArrayOutputStream runOutput = new ByteArrayOutputStream();
+        ByteArrayOutputStream compilerOutput = new ByteArrayOutputStream();
+
+        try {
+            System.setOut(new PrintStream(runOutput, true, StandardCharsets.UTF_8));
+            System.setErr(new PrintStream(compilerOutput, true, StandardCharsets.UTF_8));
+            CompilerKt.main(new String[]{
+                    "run", "--jobs", "1", "--target", "11", "-v", file.getPath(), "--not-an-option", "arg"
+            });
+        } finally {
+            System.setOut(prevOut);
+            System.setErr(prevErr);
+            Diagnostics.configure(false, Set.of());
+        }
+
+        assertTrue(compilerOutput.toString(StandardCharsets.UTF_8).contains("samosac: Checking HelloWorld.samo"));
+
+        assertEquals(
+                FileUtils.readFileToString(
+                        new File(expectedRunOutputDir, file.getName() + ".run.log.should"), StandardCharsets.UTF_8
+                ).replace("\r\n", "\n").stripTrailing(),
+                runOutput.toString(StandardCharsets.UTF_8).replace("\r\n", "\n").stripTrailing()
+        );
+    }
+
+    @Test
+    void testFoldedExpressionsArePushedAsConstants(@TempDir Path tempDir) throws Exception {
+        // A constant expression is generated as a single push of its value; only the parts of an expression that
+        // depend on a variable are computed at run time
+        File programFile = tempDir.resolve("Folding.samo").toFile();
+        FileUtils.writeStringToFile(programFile, String.join("\n",
+                "<samosa>",
+                "let f(n: int): int {",
+                "    return n * 2 + 3 * 4 - 10 / 5.",
+                "}",
+                "(2 * 3 + 4) -> putout.",
+                "((1 + 2) * (10 - 4) / 3 - -7) -> putout.",
+                "</samosa>"
+        ), StandardCharsets.UTF_8);
+
+        PrintStream prevOut = System.out;
+        CompiledClass compiledClass;
+        try {
+            System.setOut(new PrintStream(NullOutputStream.NULL_OUTPUT_STREAM));
+            compiledClass = new InMemoryRunner().compile(programFile);
+        } finally {
+            System.setOut(prevOut);
+        }
+
+        ClassNode classNode = new ClassNode();
+        new ClassReader(compiledClass.getClassBytes()).accept(classNode, 0);
+        Map<String, MethodNode> methods = classNode.methods.stream()
+                .collect(Collectors.toMap(method -> method.name, method -> method));
+
+        MethodNode main = methods.get("main");
+        assertEquals(List.of(10, 13), intConstantsPushed(main));
+        assertEquals(List.of(), arithmeticOpcodes(main));
+
+        MethodNode f = methods.get("f");
+        assertEquals(List.of(2, 12, 2), intConstantsPushed(f));
+        assertEquals(List.of(Opcodes.IMUL, Opcodes.IADD, Opcodes.ISUB), arithmeticOpcodes(f));
+    }
+
+    @Test
+    void testMainOnlyGlobalsAreLocals() throws Exception {
+        // Globals1 has globals that its functions use, and globals that only its top-level code uses
+        PrintStream prevOut = System.out;
+        CompiledClass compiledClass;
+        try {
+            System.setOut(new PrintStream(NullOutputStream.NULL_OUTPUT_STREAM));
+            compiledClass = new InMemoryRunner().compile(new File(programsDir, "Globals1.samo"));
+        } finally {
+            System.setOut(prevOut);
+        }
+
+        ClassNode classNode = new ClassNode();
+        new ClassReader(compiledClass.getClassBytes()).accept(classNode, 0);
+        assertEquals(Set.of("calls", "greeting"),
+                classNode.fields.stream().map(field -> field.name).collect(Collectors.toSet()));
+    }
+
+    @Test
+    void testConstantGlobalsAreInlined() throws Exception {
+        PrintStream prevOut = System.out;
+        CompiledClass compiledClass;
+        try {
+            System.setOut(new PrintStream(NullOutputStream.NULL_OUTPUT_STREAM));
+            compiledClass = new InMemoryRunner().compile(new File(programsDir, "Constants1.samo"));
+        } finally {
+            System.setOut(prevOut);
+        }
+
+        ClassNode classNode = new ClassNode();
+        new ClassReader(compiledClass.getClassBytes()).accept(classNode, 0);
+        Map<String, FieldNode> fields = classNode.fields.stream()
+                .collect(Collectors.toMap(field -> field.name, field -> field));
+        Set<String> fieldsRead = new HashSet<>();
+        for (MethodNode method : classNode.methods) {
+            for (AbstractInsnNode insn : method.instructions) {
+                if (insn.getOpcode() == Opcodes.GETSTATIC) {
+                    fieldsRead.add(((FieldInsnNode) insn).name);
+                }
+            }
+        }
+
+        // the globals that are never reassigned are constants, and are never read from their fields
+        for (String constant : List.of("limit", "title", "verbose")) {
+            FieldNode field = fields.get(constant);
+            assertNotNull(field, "No field for " + constant);
+            assertTrue((field.access & Opcodes.ACC_FINAL) != 0, constant + " is not final");
+            assertNotNull(field.value, constant + " has no ConstantValue");
+            assertFalse(fieldsRead.contains(constant), constant + " is read from its field");
+        }
+        // doubled is only known to be constant at codegen, where its initializer is folded; only the top-level
+        // code uses it, so it is a local of main
+        assertFalse(fields.containsKey("doubled"), "doubled is a field");
+        MethodNode main = classNode.methods.stream().filter(method -> method.name.equals("main")).findFirst().get();
+        assertEquals(20, intConstantsPushed(main).get(0));
+        for (String variable : List.of("step", "hits", "label")) {
+            assertEquals(0, fields.get(variable).access & Opcodes.ACC_FINAL, variable + " is final");
+            assertTrue(fieldsRead.contains(variable), variable + " is not read from its field");
+        }
+    }
+
+    private static List<Integer> intConstantsPushed(MethodNode method) {
+        List<Integer> constants = new ArrayList<>();
+        for (AbstractInsnNode insn : method.instructions) {
+            int opcode = insn.getOpcode();
+            if (opcode >= Opcodes.ICONST_M1 && opcode <= Opcodes.ICONST_5) {
+                constants.add(opcode - Opcodes.ICONST_0);
+            } else if (opcode == Opcodes.BIPUSH || opcode == Opcodes.SIPUSH) {
+                constants.add(((IntInsnNode) insn).operand);
+            } else if (insn instanceof LdcInsnNode && ((LdcInsnNode) insn).cst instanceof Integer) {
+                constants.add((Integer) ((LdcInsnNode) insn).cst);
+            }
+        }
+        return constants;
+    }
+
+    private static List<Integer> arithmeticOpcodes(MethodNode method) {
+        List<Integer> opcodes = new ArrayList<>();
+        for (AbstractInsnNode insn : method.instructions) {
+            int opcode = insn.getOpcode();
+            if (opcode >= Opcodes.IADD && opcode <= Opcodes.LXOR) {
+                opcodes.add(opcode);
+            }
+        }
+        return opcodes;
+    }
+}
@@ -1,17 +1,38 @@
 package com.sachett.samosa;
 
+import com.sachett.samosa.logging.Diagnostics;
+import com.sachett.samosa.parser.SamosaLexer;
+import com.sachett.samosa.parser.SamosaParser;
 import com.sachett.samosa.samosac.compiler.CompilerKt;
+import com.sachett.samosa.samosac.compiler.ProgramParserKt;
+import com.sachett.samosa.samosac.compiler.daemon.DaemonProtocol;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.NullOutputStream;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestFactory;
+import org.junit.jupiter.api.io.TempDir;
 
-import java.io.File;
-import java.io.PrintStream;
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static com.github.stefanbirkner.systemlambda.SystemLambda.catchSystemExit;
@@ -31,6 +52,7 @@ public class TestPositiveCompileRun {
     static final File expectedRunOutputDir = new File("src/test/data/positive-compile-run/expected-run-outputs");
     static final File expectedRunErrorDir = new File("src/test/data/positive-compile-run/expected-run-errors");
     static final File classFileOutDir = new File("src/test/data/positive-compile-run/out");
+    static final File compilerFlagsDir = new File("src/test/data/positive-compile-run/compiler-flags");
 
     @BeforeAll
     static void createDirs() {
@@ -51,17 +73,20 @@ public class TestPositiveCompileRun {
         assertNotNull(sourceFiles, "No test source files found!");
         assertTrue(sourceFiles.length > 0, "No test source files found!");
 
-        return Arrays.stream(sourceFiles).parallel().map((file) ->
-           DynamicTest.dynamicTest("Test Source File: " + file.getName(), () -> {
-               // First compile the file
+        return Arrays.stream(sourceFiles).parallel().flatMap((file) -> readCompilerFlagSets(compilerFlagsDir, file))
+           .map((flagSet) -> DynamicTest.dynamicTest(flagSet.displayName(), () -> {
+               File file = flagSet.programFile;
+               File outDir = flagSet.classFileOutDir(classFileOutDir);
+
+               // First compile the file (with the flags of the flag set)
                // Store the error and output of the compilation process into designated directories
 
                if (!System.getProperties().containsKey("nocompile")) {
                    File compilationOutputFile = new File(
-                           programsCompOutputDir.getPath() + File.separator + file.getName() + ".compile.log"
+                           programsCompOutputDir.getPath() + File.separator + file.getName() + flagSet.suffix() + ".compile.log"
                    );
                    File compilationErrorFile = new File(
-                           programsCompErrorDir.getPath() + File.separator + file.getName() + ".compile.err"
+                           programsCompErrorDir.getPath() + File.separator + file.getName() + flagSet.suffix() + ".compile.err"
                    );
 
                    compilationOutputFile.createNewFile();
@@ -75,8 +100,12 @@ public class TestPositiveCompileRun {
                    System.setErr(redirectedErr);
 
                    // Do compilation
+                   List<String> compilerArgs = new ArrayList<>(
+                           List.of(file.getAbsolutePath(), "-o" + outDir.getAbsolutePath())
+                   );
+                   compilerArgs.addAll(flagSet.flags);
                    int compileStatusCode = catchSystemExit(() -> {
-                       CompilerKt.main(new String[]{ file.getAbsolutePath(), "-o" + classFileOutDir.getAbsolutePath() });
+                       CompilerKt.main(compilerArgs.toArray(new String[0]));
                        System.exit(0); // test will fail otherwise
                    });
 
@@ -97,10 +126,10 @@ public class TestPositiveCompileRun {
 
                if (!System.getProperties().containsKey("norun")) {
                    File runOutputFile = new File(
-                           programsRunOutputDir.getPath() + File.separator + file.getName() + ".run.log"
+                           programsRunOutputDir.getPath() + File.separator + file.getName() + flagSet.suffix() + ".run.log"
                    );
                    File runErrorFile = new File(
-                           programsRunErrorDir.getPath() + File.separator + file.getName() + ".run.err"
+                           programsRunErrorDir.getPath() + File.separator + file.getName() + flagSet.suffix() + ".run.err"
                    );
                    File expectedRunOutputFile = new File(
                            expectedRunOutputDir.getPath() + File.separator + file.getName() + ".run.log.should"
@@ -114,8 +143,8 @@ public class TestPositiveCompileRun {
 
                    String classFileName = getClassFileNameFromFileName(file.getName());
                    ProcessBuilder runProcess = new ProcessBuilder("java", classFileName);
-                   classFileOutDir.mkdirs();
-                   runProcess.directory(classFileOutDir);
+                   outDir.mkdirs();
+                   runProcess.directory(outDir);
                    runProcess.redirectOutput(runOutputFile);
                    runProcess.redirectError(runErrorFile);
 
@@ -143,8 +172,504 @@ public class TestPositiveCompileRun {
         );
     }
 
+    @Test
+    void testParallelCompilation(@TempDir Path tempDir) throws Exception {
+        // Compile all the test programs at once on a pool of threads, and one by one; the classes should be the same
+        File[] sourceFiles = programsDir.listFiles((dir, name) -> name.toLowerCase().endsWith(".samo"));
+        assertNotNull(sourceFiles, "No test source files found!");
+        assertTrue(sourceFiles.length > 1, "Not enough test source files to compile in parallel!");
+
+        File parallelOutDir = tempDir.resolve("parallel").toFile();
+        File sequentialOutDir = tempDir.resolve("sequential").toFile();
+
+        List<String> parallelArgs = new ArrayList<>(List.of("--jobs", "4", "-o" + parallelOutDir.getAbsolutePath()));
+        for (File file : sourceFiles) {
+            parallelArgs.add(file.getAbsolutePath());
+        }
+
+        PrintStream prevOut = System.out;
+        try {
+            // the compiler's output is of no interest here
+            System.setOut(new PrintStream(NullOutputStream.NULL_OUTPUT_STREAM));
+
+            assertEquals(0, compileWithStatus(parallelArgs), "Parallel compilation of the test programs failed.");
+            for (File file : sourceFiles) {
+                assertEquals(0,
+                        compileWithStatus(List.of(
+                                "--jobs", "1", "-o" + sequentialOutDir.getAbsolutePath(), file.getAbsolutePath()
+                        )),
+                        "Compilation failed for test source file: \n\t" + file.getAbsolutePath()
+                );
+            }
+        } finally {
+            System.setOut(prevOut);
+        }
+
+        for (File file : sourceFiles) {
+            String classFileName = getClassFileNameFromFileName(file.getName()) + ".class";
+            assertArrayEquals(
+                    FileUtils.readFileToByteArray(new File(sequentialOutDir, classFileName)),
+                    FileUtils.readFileToByteArray(new File(parallelOutDir, classFileName)),
+                    "Parallel compilation generated a different class for test source file: \n\t"
+                            + file.getAbsolutePath()
+            );
+        }
+    }
+
+    @Test
+    void testCompileCache(@TempDir Path tempDir) throws Exception {
+        // A miss compiles the program, a hit writes the class from the cache, and a change of the program is a miss
+        File programFile = tempDir.resolve("Cached.samo").toFile();
+        FileUtils.copyFile(new File(programsDir, "HelloWorld.samo"), programFile);
+        File outDir = tempDir.resolve("out").toFile();
+        File classFile = new File(outDir, getClassFileNameFromFileName(programFile.getName()) + ".class");
+        List<String> compilerArgs = List.of(
+                programFile.getAbsolutePath(), "-o" + outDir.getAbsolutePath(),
+                "--cache-dir=" + tempDir.resolve("cache").toFile().getAbsolutePath()
+        );
+
+        assertTrue(compileCapturingOutput(compilerArgs).contains("Cache: 0 hits, 1 misses"),
+                "The first compilation of the program should be a cache miss.");
+        byte[] compiledClass = FileUtils.readFileToByteArray(classFile);
+
+        assertTrue(classFile.delete());
+        assertTrue(compileCapturingOutput(compilerArgs).contains("Cache: 1 hits, 0 misses"),
+                "The second compilation of the program should be a cache hit.");
+        assertArrayEquals(compiledClass, FileUtils.readFileToByteArray(classFile),
+                "The class written from the cache differs from the compiled one.");
+
+        String program = FileUtils.readFileToString(programFile, StandardCharsets.UTF_8);
+        FileUtils.writeStringToFile(programFile,
+                program.replace("</samosa>", "(\"changed\") -> putout.\n</samosa>"), StandardCharsets.UTF_8);
+        assertTrue(compileCapturingOutput(compilerArgs).contains("Cache: 0 hits, 1 misses"),
+                "The compilation of the changed program should be a cache miss.");
+        assertFalse(Arrays.equals(compiledClass, FileUtils.readFileToByteArray(classFile)),
+                "The changed program should have been compiled again.");
+
+        // A class cached at one verification level is not taken for another
+        List<String> unverifiedArgs = new ArrayList<>(compilerArgs);
+        unverifiedArgs.add("--verify=none");
+        assertTrue(compileCapturingOutput(unverifiedArgs).contains("Cache: 0 hits, 1 misses"),
+                "A compilation at another verification level should be a cache miss.");
+        assertTrue(compileCapturingOutput(unverifiedArgs).contains("Cache: 1 hits, 0 misses"),
+                "A second compilation at the same verification level should be a cache hit.");
+        assertTrue(compileCapturingOutput(compilerArgs).contains("Cache: 1 hits, 0 misses"),
+                "The fully verified class should still be in the cache.");
+    }
+
+    @Test
+    void testDaemonRoundTrip(@TempDir Path tempDir) throws Exception {
+        // Start a daemon, send it a failing request and two concurrent ones, then stop it
+        File daemonDir = tempDir.resolve("daemon").toFile();
+        String outDirArg = "-o" + tempDir.resolve("out").toFile().getAbsolutePath();
+        Thread daemonThread = new Thread(() -> CompilerKt.main(new String[]{
+                "--daemon", "--jobs", "2", "--daemon-dir=" + daemonDir.getAbsolutePath()
+        }));
+        daemonThread.start();
+
+        try {
+            File infoFile = DaemonProtocol.INSTANCE.infoFile(daemonDir);
+            for (int i = 0; i < 300 && !infoFile.isFile(); i++) {
+                Thread.sleep(100);
+            }
+            assertTrue(infoFile.isFile(), "The daemon did not start.");
+
+            List<String> failedReply = requestCompilation(daemonDir, List.of(
+                    new File(programsDir, "NoSuchProgram.samo").getAbsolutePath(), outDirArg
+            ));
+            assertEquals("X -1", failedReply.get(failedReply.size() - 1), "Unexpected reply: " + failedReply);
+            assertTrue(failedReply.stream().anyMatch(line -> line.startsWith("D ") && line.contains("not found")),
+                    "Unexpected reply: " + failedReply);
+
+            // the diagnostics and the -v/--trace options of each request are its own, even when they are compiled
+            // at the same time
+            List<String> programs = List.of("HelloWorld.samo", "Functions1.samo");
+            List<List<String>> flags = List.of(List.of("-v"), List.of("-v", "--trace=checker"));
+            List<CompletableFuture<List<String>>> replies = new ArrayList<>();
+            for (int i = 0; i < programs.size(); i++) {
+                List<String> args = new ArrayList<>(List.of(
+                        new File(programsDir, programs.get(i)).getAbsolutePath(), outDirArg
+                ));
+                args.addAll(flags.get(i));
+                replies.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return requestCompilation(daemonDir, args);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }));
+            }
+            for (int i = 0; i < programs.size(); i++) {
+                String program = programs.get(i);
+                String otherProgram = programs.get(1 - i);
+                List<String> reply = replies.get(i).get(60, TimeUnit.SECONDS);
+
+                assertEquals("X 0", reply.get(reply.size() - 1), "Unexpected reply: " + reply);
+                File classFile = new File(
+                        tempDir.resolve("out").toFile(), getClassFileNameFromFileName(program) + ".class"
+                );
+                assertTrue(reply.contains("O " + classFile.getAbsolutePath()), "Unexpected reply: " + reply);
+                assertTrue(classFile.isFile(), "The daemon did not write " + classFile.getAbsolutePath());
+                assertTrue(reply.stream().anyMatch(line -> line.startsWith("D ") && line.contains(program)),
+                        "Unexpected reply: " + reply);
+                assertTrue(reply.stream().noneMatch(line -> line.contains(otherProgram)),
+                        "The reply has diagnostics of another request: " + reply);
+                assertTrue(reply.contains("D samosac: Checking " + program), "Unexpected reply: " + reply);
+                assertEquals(flags.get(i).contains("--trace=checker"),
+                        reply.stream().anyMatch(line -> line.startsWith("D [checker] ")), "Unexpected reply: " + reply);
+            }
+
+            // the stats of a request are sent back to its client too
+            List<String> statsReply = requestCompilation(daemonDir, List.of(
+                    new File(programsDir, "HelloWorld.samo").getAbsolutePath(), outDirArg, "--stats"
+            ));
+            assertEquals("X 0", statsReply.get(statsReply.size() - 1), "Unexpected reply: " + statsReply);
+            assertTrue(statsReply.stream().anyMatch(line -> line.startsWith("D samosac: Stats for ")),
+                    "Unexpected reply: " + statsReply);
+            assertTrue(statsReply.stream().noneMatch(line -> line.startsWith("D samosac: Checking ")),
+                    "A request without -v got progress information: " + statsReply);
+        } finally {
+            if (DaemonProtocol.INSTANCE.infoFile(daemonDir).isFile()) {
+                assertEquals(List.of("X 0"), requestCompilation(daemonDir, List.of(DaemonProtocol.STOP_REQUEST)));
+            }
+            daemonThread.join(30000);
+        }
+        assertFalse(daemonThread.isAlive(), "The daemon did not stop.");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testStatsJson(@TempDir Path tempDir) throws Exception {
+        List<String> programs = List.of("HelloWorld.samo", "Functions1.samo");
+        File statsFile = tempDir.resolve("stats.json").toFile();
+        List<String> compilerArgs = new ArrayList<>(List.of(
+                "--jobs", "1", "-o" + tempDir.resolve("out").toFile().getAbsolutePath(),
+                "--stats-json=" + statsFile.getAbsolutePath()
+        ));
+        for (String program : programs) {
+            compilerArgs.add(new File(programsDir, program).getAbsolutePath());
+        }
+        compileCapturingOutput(compilerArgs);
+
+        Map<String, Object> stats = (Map<String, Object>) new JsonParser(
+                FileUtils.readFileToString(statsFile, StandardCharsets.UTF_8)
+        ).parse();
+        assertEquals(Set.of("files"), stats.keySet());
+        List<Object> files = (List<Object>) stats.get("files");
+        assertEquals(programs.size(), files.size());
+
+        for (int i = 0; i < programs.size(); i++) {
+            Map<String, Object> fileStats = (Map<String, Object>) files.get(i);
+            assertEquals(
+                    Set.of("file", "tokens", "parseTreeNodes", "symbols", "phases", "methodBytecodeSizes", "peephole",
+                            "inlinedCalls"),
+                    fileStats.keySet()
+            );
+            assertTrue(((String) fileStats.get("file")).endsWith(programs.get(i)));
+            assertTrue((Long) fileStats.get("tokens") > 0);
+            assertTrue((Long) fileStats.get("parseTreeNodes") > (Long) fileStats.get("tokens"));
+            assertTrue((Long) fileStats.get("symbols") >= 0);
+
+            List<String> phaseNames = new ArrayList<>();
+            for (Object phase : (List<Object>) fileStats.get("phases")) {
+                Map<String, Object> phaseStats = (Map<String, Object>) phase;
+                assertEquals(Set.of("name", "nanos", "allocatedBytes"), phaseStats.keySet());
+                assertTrue((Long) phaseStats.get("nanos") >= 0);
+                assertTrue((Long) phaseStats.get("allocatedBytes") >= -1);
+                phaseNames.add((String) phaseStats.get("name"));
+            }
+            assertEquals(List.of("lex", "parse", "check", "codegen", "write"),
+                    phaseNames.stream().filter(name -> !name.equals("verify")).collect(Collectors.toList()));
+
+            Map<String, Object> methodSizes = (Map<String, Object>) fileStats.get("methodBytecodeSizes");
+            assertTrue((Long) methodSizes.get("main([Ljava/lang/String;)V") > 0, "No size for main: " + methodSizes);
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testPeepholeSavingsPerPass(@TempDir Path tempDir) throws Exception {
+        File statsFile = tempDir.resolve("stats.json").toFile();
+        compileCapturingOutput(List.of(
+                "--peephole", "-o" + tempDir.resolve("out").toFile().getAbsolutePath(),
+                "--stats-json=" + statsFile.getAbsolutePath(), new File(programsDir, "Peephole1.samo").getAbsolutePath()
+        ));
+
+        Map<String, Object> stats = (Map<String, Object>) new JsonParser(
+                FileUtils.readFileToString(statsFile, StandardCharsets.UTF_8)
+        ).parse();
+        Map<String, Object> fileStats = (Map<String, Object>) ((List<Object>) stats.get("files")).get(0);
+        Map<String, Object> peephole = (Map<String, Object>) fileStats.get("peephole");
+
+        // Peephole1 has code for every pass, so each of them must have rewritten something
+        assertEquals(
+                List.of("iinc", "store-load", "jump-chains", "invert-branches", "goto-next", "dead-code"),
+                new ArrayList<>(peephole.keySet())
+        );
+        for (Map.Entry<String, Object> entry : peephole.entrySet()) {
+            Map<String, Object> savings = (Map<String, Object>) entry.getValue();
+            assertEquals(Set.of("rewrites", "instructions", "bytes"), savings.keySet());
+            assertTrue((Long) savings.get("rewrites") > 0, "No rewrites by " + entry.getKey() + ": " + peephole);
+            assertTrue((Long) savings.get("instructions") >= 0, "Negative savings of " + entry.getKey() + ": " + peephole);
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testInlinedCalls(@TempDir Path tempDir) throws Exception {
+        File programFile = new File(programsDir, "Inlining1.samo");
+        Map<String, Set<String>> calleesPerVariant = new HashMap<>();
+        for (FlagSet flagSet : readCompilerFlagSets(compilerFlagsDir, programFile).collect(Collectors.toList())) {
+            File statsFile = tempDir.resolve("stats" + flagSet.suffix() + ".json").toFile();
+            List<String> compilerArgs = new ArrayList<>(List.of(
+                    "-o" + tempDir.resolve("out" + flagSet.suffix()).toFile().getAbsolutePath(),
+                    "--stats-json=" + statsFile.getAbsolutePath(), programFile.getAbsolutePath()
+            ));
+            compilerArgs.addAll(flagSet.flags);
+            compileCapturingOutput(compilerArgs);
+
+            Map<String, Object> stats = (Map<String, Object>) new JsonParser(
+                    FileUtils.readFileToString(statsFile, StandardCharsets.UTF_8)
+            ).parse();
+            Map<String, Object> fileStats = (Map<String, Object>) ((List<Object>) stats.get("files")).get(0);
+            Set<String> callees = new HashSet<>();
+            Set<String> calls = new HashSet<>();
+            for (Object call : (List<Object>) fileStats.get("inlinedCalls")) {
+                Map<String, Object> inlinedCall = (Map<String, Object>) call;
+                assertEquals(Set.of("callee", "caller", "line", "column", "bytes"), inlinedCall.keySet());
+                callees.add((String) inlinedCall.get("callee"));
+                calls.add(inlinedCall.get("callee") + " -> " + inlinedCall.get("caller"));
+            }
+            calleesPerVariant.put(flagSet.variant, callees);
+
+            if (flagSet.variant.isEmpty()) {
+                // with the default budget, bothEven and countEvens are too large to be inlined
+                assertEquals(Set.of(
+                        "sq -> clampSq", "maxOf -> clampSq", "isEven -> bothEven", "isEven -> countEvens",
+                        "report -> countEvens", "sq -> main", "maxOf -> main", "seven -> main", "isEven -> main",
+                        "greet -> main", "sumTo -> main", "clampSq -> main", "report -> main"
+                ), calls);
+            }
+        }
+
+        assertEquals(Set.of("", "optimized"), calleesPerVariant.keySet());
+        // the optimized variant has a budget large enough for every function that is called
+        assertEquals(Set.of("sq", "maxOf", "clampSq", "isEven", "bothEven", "greet", "seven", "report", "sumTo",
+                        "countEvens"),
+                calleesPerVariant.get("optimized"));
+    }
+
+    @Test
+    void testDiagnosticLevels(@TempDir Path tempDir) throws Exception {
+        List<String> compilerArgs = List.of(
+                "-o" + tempDir.toFile().getAbsolutePath(), new File(programsDir, "Functions1.samo").getAbsolutePath()
+        );
+        try {
+            String quietOutput = compileCapturingOutput(compilerArgs);
+            assertFalse(quietOutput.contains("samosac: Checking "), quietOutput);
+            assertFalse(quietOutput.contains("["), quietOutput);
+
+            List<String> verboseArgs = new ArrayList<>(compilerArgs);
+            verboseArgs.add("-v");
+            String verboseOutput = compileCapturingOutput(verboseArgs);
+            assertTrue(verboseOutput.contains("samosac: Checking Functions1.samo"), verboseOutput);
+            assertTrue(verboseOutput.contains("samosac: Compiled Functions1.samo in "), verboseOutput);
+            assertFalse(verboseOutput.contains("["), verboseOutput);
+
+            // only the categories that are asked for are traced
+            List<String> traceArgs = new ArrayList<>(compilerArgs);
+            traceArgs.add("--trace=checker,types");
+            String traceOutput = compileCapturingOutput(traceArgs);
+            assertTrue(traceOutput.contains("[checker] "), traceOutput);
+            assertTrue(traceOutput.contains("[types] "), traceOutput);
+            assertFalse(traceOutput.contains("[delegation] "), traceOutput);
+            assertFalse(traceOutput.contains("samosac: Checking "), traceOutput);
+        } finally {
+            Diagnostics.configure(false, Set.of());
+        }
+    }
+
+    @Test
+    void testTwoStageParsing() throws Exception {
+        File[] sourceFiles = programsDir.listFiles((dir, name) -> name.toLowerCase().endsWith(".samo"));
+        assertNotNull(sourceFiles, "No test source files found!");
+
+        for (File file : sourceFiles) {
+            // The fast SLL stage must accept every valid program, and give the same tree as a full LL parse.
+            SamosaParser llParser = new SamosaParser(new CommonTokenStream(new SamosaLexer(CharStreams.fromPath(file.toPath()))));
+            String llTree = llParser.program().toStringTree(llParser);
+
+            String report = compileCapturingOutput(List.of(
+                    "--jobs", "1", "--profile-parser", "-o" + classFileOutDir.getAbsolutePath(), file.getAbsolutePath()
+            ));
+            assertTrue(report.contains("Parser profile for " + file.getName() + " (SLL succeeded)"), report);
+
+            SamosaParser.ProgramContext programContext = ProgramParserKt.parseProgram(
+                    new CommonTokenStream(new SamosaLexer(CharStreams.fromPath(file.toPath()))), false, file.getName()
+            );
+            assertEquals(llTree, programContext.toStringTree(llParser), "Parse trees differ for " + file.getName());
+        }
+
+        // A program with a syntax error fails the SLL stage, and is re-parsed with LL to report the error.
+        File badProgram = new File("src/test/data/negative-compile/test-programs/SyntaxError1.samo");
+        PrintStream prevOut = System.out;
+        PrintStream prevErr = System.err;
+        ByteArrayOutputStream compilerOutput = new ByteArrayOutputStream();
+        int status;
+        try {
+            System.setOut(new PrintStream(compilerOutput, true, StandardCharsets.UTF_8));
+            System.setErr(new PrintStream(NullOutputStream.NULL_OUTPUT_STREAM));
+            status = compileWithStatus(List.of(
+                    "--profile-parser", "-o" + classFileOutDir.getAbsolutePath(), badProgram.getAbsolutePath()
+            ));
+        } finally {
+            System.setOut(prevOut);
+            System.setErr(prevErr);
+        }
+        assertNotEquals(0, status);
+        assertTrue(compilerOutput.toString(StandardCharsets.UTF_8).contains(
+                "Parser profile for SyntaxError1.samo (SLL failed, re-parsed with LL)"
+        ), compilerOutput.toString(StandardCharsets.UTF_8));
+    }
+
     // --------------  Utils  ------------------
 
+    /**
+     * Runs the compiler with the given arguments and returns its exit status.
+     */
+    static int compileWithStatus(List<String> compilerArgs) throws Exception {
+        return catchSystemExit(() -> {
+            CompilerKt.main(compilerArgs.toArray(new String[0]));
+            System.exit(0);
+        });
+    }
+
+    /**
+     * Runs the compiler with the given arguments, checks that it succeeds and returns its output.
+     */
+    static String compileCapturingOutput(List<String> compilerArgs) throws Exception {
+        PrintStream prevOut = System.out;
+        ByteArrayOutputStream compilerOutput = new ByteArrayOutputStream();
+        int status;
+        try {
+            System.setOut(new PrintStream(compilerOutput, true, StandardCharsets.UTF_8));
+            status = compileWithStatus(compilerArgs);
+        } finally {
+            System.setOut(prevOut);
+        }
+        assertEquals(0, status, "Compilation failed with the arguments: " + compilerArgs);
+        return compilerOutput.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Sends a request to the daemon that published its connection info in daemonDir, the way DaemonClient does,
+     * and returns the records of its reply, one per line: "D line" for a diagnostic, "O path" for an output file
+     * and "X status" for the exit status.
+     */
+    static List<String> requestCompilation(File daemonDir, List<String> args) throws IOException {
+        List<String> info = FileUtils.readLines(DaemonProtocol.INSTANCE.infoFile(daemonDir), StandardCharsets.UTF_8);
+        List<String> reply = new ArrayList<>();
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(info.get(0)))) {
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            output.writeUTF(info.get(1));
+            output.writeUTF(new File("").getAbsolutePath());
+            output.writeInt(args.size());
+            for (String arg : args) {
+                output.writeUTF(arg);
+            }
+            output.flush();
+
+            DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            while (true) {
+                int tag = input.readUnsignedByte();
+                if (tag == DaemonProtocol.TAG_EXIT) {
+                    reply.add("X " + input.readInt());
+                    return reply;
+                }
+                reply.add((tag == DaemonProtocol.TAG_OUTPUT ? "O " : "D ") + input.readUTF());
+            }
+        }
+    }
+
+    /**
+     * A test program and the flags it is compiled with in one of its runs.
+     */
+    static final class FlagSet {
+        final File programFile;
+        /* "" for the default flags, else the name of the variant (see readCompilerFlagSets) */
+        final String variant;
+        final List<String> flags;
+
+        FlagSet(File programFile, String variant, List<String> flags) {
+            this.programFile = programFile;
+            this.variant = variant;
+            this.flags = flags;
+        }
+
+        String displayName() {
+            return "Test Source File: " + programFile.getName() + (variant.isEmpty() ? "" : " (" + variant + ")");
+        }
+
+        /**
+         * The suffix of the names of the files the run writes, so that the runs of a program do not overwrite
+         * each other's files.
+         */
+        String suffix() {
+            return variant.isEmpty() ? "" : "." + variant;
+        }
+
+        File classFileOutDir(File defaultOutDir) {
+            return variant.isEmpty() ? defaultOutDir : new File(defaultOutDir, variant);
+        }
+    }
+
+    /**
+     * Reads the flag sets a test program is compiled and run with, all of them expected to give the same output:
+     * <ul>
+     *     <li>the default one, with the flags in the file <code>&lt;filename&gt;.flags</code> in flagsDir (no flags
+     *     if there is no such file);</li>
+     *     <li>a variant for each file <code>&lt;filename&gt;.&lt;variant&gt;.flags</code> in flagsDir.</li>
+     * </ul>
+     * The flags files have one flag per line.
+     */
+    public static Stream<FlagSet> readCompilerFlagSets(File flagsDir, File programFile) {
+        String prefix = programFile.getName() + ".";
+        File[] variantFiles = flagsDir.listFiles((dir, name) ->
+                name.startsWith(prefix) && name.endsWith(".flags") && name.length() > (prefix + "flags").length()
+        );
+        List<FlagSet> flagSets = new ArrayList<>();
+        flagSets.add(new FlagSet(programFile, "", readFlags(new File(flagsDir, prefix + "flags"))));
+        if (variantFiles != null) {
+            Arrays.sort(variantFiles);
+            for (File variantFile : variantFiles) {
+                String variant = variantFile.getName().substring(
+                        prefix.length(), variantFile.getName().length() - ".flags".length()
+                );
+                flagSets.add(new FlagSet(programFile, variant, readFlags(variantFile)));
+            }
+        }
+        return flagSets.stream();
+    }
+
+    private static List<String> readFlags(File flagsFile) {
+        List<String> flags = new ArrayList<>();
+        if (!flagsFile.isFile()) {
+            return flags;
+        }
+
+        try {
+            for (String line : FileUtils.readLines(flagsFile, StandardCharsets.UTF_8)) {
+                if (!line.isBlank()) {
+                    flags.add(line.strip());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return flags;
+    }
+
     public static String getClassFileNameFromFileName(String fileName) {
         String[] fileNameParts = fileName.split("\\.");
         StringBuilder genClassNameBuilder = new StringBuilder();
@@ -174,4 +699,109 @@ public class TestPositiveCompileRun {
         // in the last step, replace any other non-alphanumeric symbols in the name
         return (tempClassNameNoNumbers + tempClassNameNumbers).replaceAll("[^0-9a-zA-Z]", "");
     }
+
+    /**
+     * A minimal parser for the JSON the compiler writes (see --stats-json): objects are parsed to maps (in the order
+     * of their keys), arrays to lists, numbers to longs.
+     */
+    static class JsonParser {
+        private final String json;
+        private int position = 0;
+
+        JsonParser(String json) {
+            this.json = json;
+        }
+
+        Object parse() {
+            Object value = parseValue();
+            skipWhitespace();
+            assertEquals(json.length(), position, "Trailing characters in JSON");
+            return value;
+        }
+
+        private Object parseValue() {
+            skipWhitespace();
+            char c = json.charAt(position);
+            if (c == '{') {
+                Map<String, Object> object = new LinkedHashMap<>();
+                position++;
+                skipWhitespace();
+                if (json.charAt(position) == '}') {
+                    position++;
+                    return object;
+                }
+                do {
+                    skipWhitespace();
+                    String key = parseString();
+                    skipWhitespace();
+                    expect(':');
+                    assertNull(object.put(key, parseValue()), "Duplicate key in JSON: " + key);
+                    skipWhitespace();
+                } while (consume(','));
+                expect('}');
+                return object;
+            }
+            if (c == '[') {
+                List<Object> array = new ArrayList<>();
+                position++;
+                skipWhitespace();
+                if (json.charAt(position) == ']') {
+                    position++;
+                    return array;
+                }
+                do {
+                    array.add(parseValue());
+                    skipWhitespace();
+                } while (consume(','));
+                expect(']');
+                return array;
+            }
+            if (c == '"') {
+                return parseString();
+            }
+            int start = position;
+            if (c == '-') {
+                position++;
+            }
+            while (position < json.length() && Character.isDigit(json.charAt(position))) {
+                position++;
+            }
+            return Long.parseLong(json.substring(start, position));
+        }
+
+        private String parseString() {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            char c;
+            while ((c = json.charAt(position++)) != '"') {
+                if (c == '\\') {
+                    c = json.charAt(position++);
+                    if (c == 'u') {
+                        c = (char) Integer.parseInt(json.substring(position, position + 4), 16);
+                        position += 4;
+                    }
+                }
+                value.append(c);
+            }
+            return value.toString();
+        }
+
+        private void skipWhitespace() {
+            while (position < json.length() && Character.isWhitespace(json.charAt(position))) {
+                position++;
+            }
+        }
+
+        private boolean consume(char c) {
+            if (position < json.length() && json.charAt(position) == c) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(char c) {
+            assertTrue(consume(c), "Expected '" + c + "' at " + position + " in JSON");
+        }
+    }
 }
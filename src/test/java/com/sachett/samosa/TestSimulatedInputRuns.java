@@ -111,21 +111,24 @@ public class TestSimulatedInputRuns {
 
                         String classFileName = TestPositiveCompileRun.getClassFileNameFromFileName(file.getName());
 
-                        ProcessBuilder runProcessBuilder = new ProcessBuilder("java", classFileName);
+                        // the programs read and write UTF-8, whatever the default charset of the platform is
+                        ProcessBuilder runProcessBuilder = new ProcessBuilder(
+                                "java", "-Dfile.encoding=UTF-8", classFileName
+                        );
                         classFileOutDir.mkdirs();
                         runProcessBuilder.directory(classFileOutDir);
                         runProcessBuilder.redirectError(runErrorFile);
 
-                        FileWriter runOutputFileStream = new FileWriter(runOutputFile);
-                        BufferedReader inputsFileStream = new BufferedReader(new FileReader(inputFile));
+                        FileWriter runOutputFileStream = new FileWriter(runOutputFile, StandardCharsets.UTF_8);
+                        BufferedReader inputsFileStream = new BufferedReader(new FileReader(inputFile, StandardCharsets.UTF_8));
 
                         Process runProcess = runProcessBuilder.start();
 
                         InputStream runProcessStdout = runProcess.getInputStream();
                         OutputStream runProcessStdin = runProcess.getOutputStream();
 
-                        BufferedReader outReader = new BufferedReader(new InputStreamReader(runProcessStdout));
-                        BufferedWriter inputWriter = new BufferedWriter(new OutputStreamWriter(runProcessStdin));
+                        BufferedReader outReader = new BufferedReader(new InputStreamReader(runProcessStdout, StandardCharsets.UTF_8));
+                        BufferedWriter inputWriter = new BufferedWriter(new OutputStreamWriter(runProcessStdin, StandardCharsets.UTF_8));
 
                         Thread resultOutStreamPoll = new Thread(() -> {
                             try {
@@ -169,14 +172,14 @@ public class TestSimulatedInputRuns {
 
                         // Check if there was any run error
                         assertTrue(
-                                FileUtils.contentEqualsIgnoreEOL(runErrorFile, expectedRunErrorFile, null),
+                                FileUtils.contentEqualsIgnoreEOL(runErrorFile, expectedRunErrorFile, "UTF-8"),
                                 "Execution failed unexpectedly for test source file: \n\t" + file.getAbsolutePath()
                                         + "." + "\n" + "See " + runErrorFile.getAbsolutePath() + " for details."
                         );
 
                         // Check if there is any difference in output (expected vs. result)
                         assertTrue(
-                                FileUtils.contentEqualsIgnoreEOL(runOutputFile, expectedRunOutputFile, null),
+                                FileUtils.contentEqualsIgnoreEOL(runOutputFile, expectedRunOutputFile, "UTF-8"),
                                 "Unexpected output for test source file: \n\t" + file.getAbsolutePath()
                                         + "." + "\n" + "Expected output is in file: \n\t" + expectedRunOutputFile.getAbsolutePath()
                                         + "\n" + "Output received is written to file: \n\t" + runOutputFile.getAbsolutePath()